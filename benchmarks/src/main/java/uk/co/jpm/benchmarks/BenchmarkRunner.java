@@ -0,0 +1,48 @@
+package uk.co.jpm.benchmarks;
+
+import java.io.IOException;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks. Takes the same command line as JMH's own runner, but the
+ * GC profiler is always used so that allocation rates are reported alongside
+ * throughput.
+ * 
+ * @author smf
+ */
+public class BenchmarkRunner {
+
+    /**
+     * @param args the command line arguments, see <code>-h</code>
+     */
+    public static void main(String[] args) throws RunnerException {
+        CommandLineOptions command_line;
+        try {
+            command_line = new CommandLineOptions (args);
+        } catch (CommandLineOptionException e) {
+            System.err.println ("Error: " + e.getMessage());
+            System.exit (1);
+            return;
+        }
+        if (command_line.shouldHelp()) {
+            try {
+                command_line.showHelp();
+            } catch (IOException e) {
+                System.err.println ("Error: " + e.getMessage());
+            }
+            return;
+        }
+        
+        ChainedOptionsBuilder options = new OptionsBuilder().parent (command_line);
+        if (command_line.getProfilers().stream().noneMatch (profiler -> profiler.getKlass().equalsIgnoreCase ("gc") ||
+                                                                        profiler.getKlass().equals (GCProfiler.class.getName())))
+            options.addProfiler (GCProfiler.class);
+        new Runner (options.build()).run();
+    }
+}
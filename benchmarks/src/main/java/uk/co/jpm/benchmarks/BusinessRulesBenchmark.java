@@ -0,0 +1,54 @@
+package uk.co.jpm.benchmarks;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.co.jpm.TradingLibrary.BusinessRules;
+
+/**
+ * Measures finding the actual settlement date for each trade. The entities don't
+ * matter to the business rules, so unlike the other benchmarks this one only
+ * varies the number of trades.
+ * 
+ * @author smf
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BusinessRulesBenchmark {
+    
+    /** The number of trades processed by each benchmark operation */
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int n_trades;
+    
+    // the trades' nominal settlement dates and currencies
+    private SyntheticTrades trades;
+    private Date nominal_settlement_dates [];
+    
+    @Setup(Level.Trial)
+    public void setUp () {
+        trades = new SyntheticTrades (n_trades, 1, 20170101l);
+        nominal_settlement_dates = trades.createNominalSettlementDates();
+    }
+    
+    @Benchmark
+    public void findActualSettlementDate (Blackhole blackhole) {
+        for (int count = 0; count < n_trades; count ++)
+            blackhole.consume (BusinessRules.findActualSettlementDate (nominal_settlement_dates [count], trades.currencies [count]));
+    }
+    
+    @Benchmark
+    public void findActualSettlementEpochDay (Blackhole blackhole) {
+        for (int count = 0; count < n_trades; count ++)
+            blackhole.consume (BusinessRules.findActualSettlementEpochDay (trades.nominal_settlement_days [count], trades.currencies [count]));
+    }
+}
@@ -0,0 +1,44 @@
+package uk.co.jpm.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.TearDown;
+import java.util.concurrent.TimeUnit;
+import uk.co.jpm.TradingLibrary.TradingDataList;
+
+/**
+ * Measures reading a CSV file into a {@link TradingDataList}. The file is written
+ * once for each set of parameters, so after the first iteration it will normally be
+ * in the operating system's cache and the benchmark measures parsing, not the disk.
+ * 
+ * @author smf
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class CsvParsingBenchmark extends TradeParams {
+    
+    // the CSV file
+    private File csv_file;
+    
+    @Override
+    protected void prepare () throws IOException {
+        csv_file = File.createTempFile ("trades", ".csv");
+        csv_file.deleteOnExit();
+        trades.writeCsv (csv_file);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown () {
+        csv_file.delete();
+    }
+    
+    @Benchmark
+    public TradingDataList parseTradingDataList () throws IOException {
+        return new TradingDataList (csv_file);
+    }
+}
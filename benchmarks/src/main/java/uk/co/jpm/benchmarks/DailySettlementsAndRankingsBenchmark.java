@@ -0,0 +1,29 @@
+package uk.co.jpm.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import uk.co.jpm.TradeReport.DailySettlementsAndRankings;
+
+/**
+ * Measures accumulating trades in a {@link DailySettlementsAndRankings} object.
+ * The trades are not sorted by date, which is the worst case for its cache of the
+ * most recently used day.
+ * 
+ * @author smf
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class DailySettlementsAndRankingsBenchmark extends TradeParams {
+    
+    @Benchmark
+    public DailySettlementsAndRankings append () {
+        DailySettlementsAndRankings daily_sar = new DailySettlementsAndRankings ();
+        for (int count = 0; count < n_trades; count ++)
+            daily_sar.append (trades.actual_settlement_days [count], trades.trade_types [count],
+                              trades.entity_names [count], trades.trade_values [count]);
+        return daily_sar;
+    }
+}
@@ -0,0 +1,66 @@
+package uk.co.jpm.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import uk.co.jpm.TradeReport.DailyTradeReport;
+import uk.co.jpm.TradeReport.SettlementsAndRankings;
+import uk.co.jpm.TradeReport.TradeReportAggregator;
+import uk.co.jpm.TradeReport.TextReportWriter;
+
+/**
+ * Measures rendering the whole report (every day, then the overall results) as
+ * text. The output is thrown away, so only the cost of rendering is measured.
+ * 
+ * @author smf
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class PrintSARBenchmark extends TradeParams {
+    
+    // the results to print
+    private TradeReportAggregator aggregator;
+    
+    // somewhere to print them
+    private PrintStream null_stream;
+    
+    @Override
+    protected void prepare () {
+        aggregator = new TradeReportAggregator ();
+        for (int count = 0; count < n_trades; count ++) {
+            aggregator.getOverallSAR().append (trades.actual_settlement_days [count], trades.trade_types [count],
+                                               trades.entity_names [count], trades.trade_values [count]);
+            aggregator.getDailySARs().append (trades.actual_settlement_days [count], trades.trade_types [count],
+                                              trades.entity_names [count], trades.trade_values [count]);
+        }
+        null_stream = new PrintStream (new NullOutputStream ());
+    }
+    
+    @Benchmark
+    public void printSAR () {
+        for (SettlementsAndRankings sar : aggregator.getDailySARs().getDailySAR().values())
+            DailyTradeReport.printSAR (null_stream, sar);
+        DailyTradeReport.printSAR (null_stream, aggregator.getOverallSAR());
+    }
+    
+    @Benchmark
+    public void writeReport () throws IOException {
+        TextReportWriter writer = new TextReportWriter (Channels.newChannel (new NullOutputStream ()), Integer.MAX_VALUE);
+        writer.writeReport (aggregator.getDailySARs().getDailySAR().values(), aggregator.getOverallSAR());
+    }
+    
+    /** An OutputStream that throws away everything written to it. */
+    private static class NullOutputStream extends OutputStream {
+        @Override
+        public void write (int b) { }
+        
+        @Override
+        public void write (byte buffer [], int off, int len) { }
+    }
+}
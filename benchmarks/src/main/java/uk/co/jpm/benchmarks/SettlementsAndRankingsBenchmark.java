@@ -0,0 +1,55 @@
+package uk.co.jpm.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.infra.Blackhole;
+import uk.co.jpm.TradeReport.SettlementsAndRankings;
+
+/**
+ * Measures accumulating trades in a {@link SettlementsAndRankings} object and
+ * creating its entity rankings.
+ * 
+ * @author smf
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class SettlementsAndRankingsBenchmark extends TradeParams {
+    
+    // the results for all the trades, for the ranking benchmarks
+    private SettlementsAndRankings sar;
+    
+    @Override
+    protected void prepare () {
+        sar = appendAll ();
+    }
+    
+    @Benchmark
+    public SettlementsAndRankings append () {
+        return appendAll ();
+    }
+    
+    @Benchmark
+    public void createRankings (Blackhole blackhole) {
+        blackhole.consume (sar.createIncomingRankings());
+        blackhole.consume (sar.createOutgoingRankings());
+    }
+    
+    @Benchmark
+    public void topRankings (Blackhole blackhole) {
+        blackhole.consume (sar.topIncoming (10));
+        blackhole.consume (sar.topOutgoing (10));
+    }
+    
+    /** Helper function to append all the trades to a new object.
+     * @return the results */
+    private SettlementsAndRankings appendAll () {
+        SettlementsAndRankings new_sar = new SettlementsAndRankings (null);
+        for (int count = 0; count < n_trades; count ++)
+            new_sar.append (trades.actual_settlement_days [count], trades.trade_types [count],
+                            trades.entity_names [count], trades.trade_values [count]);
+        return new_sar;
+    }
+}
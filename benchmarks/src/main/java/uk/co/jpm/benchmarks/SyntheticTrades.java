@@ -0,0 +1,133 @@
+package uk.co.jpm.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Date;
+import java.util.Random;
+import uk.co.jpm.TradingLibrary.BusinessRules;
+import uk.co.jpm.TradingLibrary.EpochDay;
+import uk.co.jpm.TradingLibrary.TradingData;
+
+/**
+ * A reproducible set of random trades for the benchmarks, held as one array per
+ * field so that the benchmarks can feed millions of trades to the code being
+ * measured without the cost of creating them being included. Trades are spread
+ * evenly over the entities and over a year of instruction dates.
+ * 
+ * @author smf
+ */
+public class SyntheticTrades {
+    
+    // currencies to choose from, including both weekend conventions
+    private static final String CURRENCIES [] = { "USD", "GBP", "EUR", "SGD", "AED", "SAR" };
+    
+    // month names for dd-MMM-yyyy dates
+    private static final String MONTH_NAMES [] = {
+        "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"
+    };
+    
+    // the first instruction date and the number of days the trades are spread over
+    private static final int FIRST_DAY = EpochDay.of (2016, 1, 1);
+    private static final int N_DAYS = 366;
+    
+    /** The number of trades */
+    public final int n_trades;
+    
+    /** The fields of each trade */
+    public final String entity_names [];
+    public final TradingData.TradeType trade_types [];
+    public final double agreed_fx [];
+    public final String currencies [];
+    public final int instruction_days [];
+    public final int nominal_settlement_days [];
+    public final int number_of_units [];
+    public final double price_per_unit [];
+    
+    /** The fields calculated from each trade: the actual settlement day and the value in USD */
+    public final int actual_settlement_days [];
+    public final double trade_values [];
+    
+    /** Create a set of random trades.
+     * @param n_trades the number of trades
+     * @param n_entities the number of different entities
+     * @param seed the seed for the random number generator - the same seed gives the same trades
+     */
+    public SyntheticTrades (int n_trades, int n_entities, long seed) {
+        this.n_trades = n_trades;
+        entity_names = new String [n_trades];
+        trade_types = new TradingData.TradeType [n_trades];
+        agreed_fx = new double [n_trades];
+        currencies = new String [n_trades];
+        instruction_days = new int [n_trades];
+        nominal_settlement_days = new int [n_trades];
+        number_of_units = new int [n_trades];
+        price_per_unit = new double [n_trades];
+        actual_settlement_days = new int [n_trades];
+        trade_values = new double [n_trades];
+        
+        String names [] = new String [n_entities];
+        for (int count = 0; count < n_entities; count ++)
+            names [count] = "entity" + count;
+        
+        Random random = new Random (seed);
+        for (int count = 0; count < n_trades; count ++) {
+            entity_names [count] = names [random.nextInt (n_entities)];
+            trade_types [count] = random.nextBoolean() ? TradingData.TradeType.BUY : TradingData.TradeType.SELL;
+            agreed_fx [count] = (random.nextInt (200) + 1) / 100.0;
+            currencies [count] = CURRENCIES [random.nextInt (CURRENCIES.length)];
+            instruction_days [count] = FIRST_DAY + random.nextInt (N_DAYS);
+            nominal_settlement_days [count] = instruction_days [count] + random.nextInt (4);
+            number_of_units [count] = random.nextInt (1000) + 1;
+            price_per_unit [count] = (random.nextInt (100000) + 1) / 100.0;
+            actual_settlement_days [count] = BusinessRules.findActualSettlementEpochDay (nominal_settlement_days [count], currencies [count]);
+            trade_values [count] = BusinessRules.calcPriceUSD (price_per_unit [count], number_of_units [count], agreed_fx [count]);
+        }
+    }
+    
+    /** Create the nominal settlement dates as Date objects.
+     * @return the dates, one for each trade */
+    public Date [] createNominalSettlementDates () {
+        Date dates [] = new Date [n_trades];
+        for (int count = 0; count < n_trades; count ++)
+            dates [count] = EpochDay.toDate (nominal_settlement_days [count]);
+        return dates;
+    }
+    
+    /** Write the trades to a CSV file in the format read by TradingDataList.
+     * @param csv_file the file to write
+     * @throws IOException if there was an error writing the file
+     */
+    public void writeCsv (File csv_file) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter (new FileWriter (csv_file), 1 << 16)) {
+            writer.write ("Entity,Buy/Sell,AgreedFx,Currency,InstructionDate,SettlementDate,Units,Price per unit\n");
+            StringBuilder line = new StringBuilder ();
+            for (int count = 0; count < n_trades; count ++) {
+                line.setLength (0);
+                line.append (entity_names [count]).append (',')
+                    .append (trade_types [count] == TradingData.TradeType.BUY ? 'B' : 'S').append (',')
+                    .append (agreed_fx [count]).append (',')
+                    .append (currencies [count]).append (',');
+                appendDate (line, instruction_days [count]);
+                line.append (',');
+                appendDate (line, nominal_settlement_days [count]);
+                line.append (',').append (number_of_units [count]).append (',')
+                    .append (price_per_unit [count]).append ('\n');
+                writer.append (line);
+            }
+        }
+    }
+    
+    /** Helper function to append an epoch day as dd-MMM-yyyy.
+     * @param line where to append the date
+     * @param epoch_day the date */
+    private static void appendDate (StringBuilder line, int epoch_day) {
+        int year_month_day = EpochDay.toYearMonthDay (epoch_day);
+        int day_of_month = year_month_day % 100;
+        if (day_of_month < 10) line.append ('0');
+        line.append (day_of_month).append ('-')
+            .append (MONTH_NAMES [year_month_day / 100 % 100 - 1]).append ('-')
+            .append (year_month_day / 10000);
+    }
+}
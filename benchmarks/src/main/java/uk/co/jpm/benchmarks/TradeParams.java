@@ -0,0 +1,46 @@
+package uk.co.jpm.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * The parameters shared by the benchmarks: the number of trades and the number
+ * of different entities. Each combination of parameters is a separate benchmark
+ * run, using the same synthetic trades every time. Select a subset from the
+ * command line with e.g. <code>-p n_trades=1000000 -p n_entities=10</code>.
+ * 
+ * @author smf
+ */
+@State(Scope.Benchmark)
+public abstract class TradeParams {
+    
+    // seed for the synthetic trades, so that every run measures the same data
+    private static final long SEED = 20170101l;
+    
+    /** The number of trades processed by each benchmark operation */
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int n_trades;
+    
+    /** The number of different entities in the trades */
+    @Param({"10", "1000", "100000"})
+    public int n_entities;
+    
+    /** The trades */
+    protected SyntheticTrades trades;
+    
+    /** Create the trades, then let the benchmark prepare anything else it needs.
+     * @throws Exception if the benchmark could not be prepared */
+    @Setup(Level.Trial)
+    public void setUp () throws Exception {
+        trades = new SyntheticTrades (n_trades, n_entities, SEED);
+        prepare ();
+    }
+    
+    /** Prepare the benchmark after the trades have been created. The default does nothing.
+     * @throws Exception if the benchmark could not be prepared */
+    protected void prepare () throws Exception {
+    }
+}
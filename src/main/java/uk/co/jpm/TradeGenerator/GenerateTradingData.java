@@ -0,0 +1,62 @@
+package uk.co.jpm.TradeGenerator;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import uk.co.jpm.TradingLibrary.TradingDataGenerator;
+
+/**
+ * A program that writes a CSV file of random trading data, for testing the daily
+ * trade report at scale. See {@link TradingDataGenerator} for details and
+ * {@link GeneratorOptions} for the command line.
+ * 
+ * @author smf
+ */
+public class GenerateTradingData {
+
+    /**
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        // check command line
+        GeneratorOptions options = null;
+        try {
+            options = new GeneratorOptions (args);
+        } catch (IllegalArgumentException e) {
+            System.err.println ("Error:");
+            System.err.println ("  " + e.getMessage() + "\n" + GeneratorOptions.USAGE);
+            System.exit (1);
+        }
+        
+        TradingDataGenerator generator = new TradingDataGenerator ();
+        generator.setNEntities (options.getNEntities());
+        generator.setZipfExponent (options.getZipfExponent());
+        if (options.getCurrencyWeights() != null) {
+            try {
+                generator.setCurrencyWeights (options.getCurrencyWeights());
+            } catch (IllegalArgumentException e) {
+                System.err.println ("Error:");
+                System.err.println ("  " + e.getMessage() + "\n" + GeneratorOptions.USAGE);
+                System.exit (1);
+            }
+        }
+        generator.setDateSpan (options.getFirstDay(), options.getNDays());
+        generator.setWeekendShare (options.getWeekendShare());
+        generator.setSeed (options.getSeed());
+        
+        // the generator writes large blocks, so the output isn't buffered again
+        try {
+            if (options.getOutputFilename().equals ("-"))
+                generator.generate (System.out, options.getNRows());
+            else {
+                try (OutputStream out = new FileOutputStream (options.getOutputFilename())) {
+                    generator.generate (out, options.getNRows());
+                }
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println ("Error:");
+            System.err.println ("  " + e.getClass().getName() + ": " + e.getMessage());
+            System.exit (1);
+        }
+    }
+}
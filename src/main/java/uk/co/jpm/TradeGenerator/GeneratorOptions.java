@@ -0,0 +1,172 @@
+package uk.co.jpm.TradeGenerator;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import uk.co.jpm.TradingLibrary.TradeDateParser;
+
+/**
+ * Options for the trading data generator, decoded from the command line. Options
+ * start with a '-' and come before the name of the output file.
+ * 
+ * @author smf
+ */
+public class GeneratorOptions {
+    
+    /** Description of the command line, for use in error messages */
+    public static final String USAGE = 
+            "Usage: GenerateTradingData [options] <file.csv | ->\n" +
+            "  Options:\n" +
+            "    -rows <n>         number of trades to write (default: 1000)\n" +
+            "    -entities <n>     number of different entities (default: 1000)\n" +
+            "    -zipf <s>         skew of entity popularity, 0 for none, 1 for Zipf's law (default: 0)\n" +
+            "    -currencies <c>   currency mix as code=weight pairs, e.g. USD=5,GBP=2,AED=1\n" +
+            "                      (default: equal amounts of USD, GBP, EUR, SGD, AED and SAR)\n" +
+            "    -start <date>     first settlement date, dd-MMM-yyyy (default: 01-Jan-2016)\n" +
+            "    -days <n>         number of days of settlement dates (default: 366)\n" +
+            "    -weekend <f>      share of settlement dates on a weekend, 0 to 1 (default: 0)\n" +
+            "    -seed <n>         seed for the random numbers (default: 0)";
+    
+    // name of the output file, "-" for stdout
+    private String output_filename;
+    
+    // number of records to write
+    private long n_rows;
+    
+    // the generator's settings - null currency weights for the generator's default mix
+    private int n_entities;
+    private double zipf_exponent;
+    private Map<String, Double> currency_weights;
+    private int first_day;
+    private int n_days;
+    private double weekend_share;
+    private long seed;
+    
+    /** Decode the command line.
+     * 
+     * @param args the command line arguments
+     * @throws IllegalArgumentException if the command line is not valid
+     */
+    public GeneratorOptions (String args []) {
+        output_filename = null;
+        n_rows = 1000;
+        n_entities = 1000;
+        zipf_exponent = 0.0;
+        currency_weights = null;
+        first_day = TradeDateParser.parseEpochDay ("01-Jan-2016");
+        n_days = 366;
+        weekend_share = 0.0;
+        seed = 0;
+        
+        for (int count = 0; count < args.length; count ++) {
+            String arg = args [count];
+            String value = count + 1 < args.length ? args [count + 1] : null;
+            if (output_filename != null)
+                throw new IllegalArgumentException ("Unexpected command line argument: " + arg);
+            else if (arg.equals ("-") || ! arg.startsWith ("-")) {
+                output_filename = arg;
+                continue;
+            }
+            else if (value == null)
+                throw new IllegalArgumentException ("Missing value for " + arg);
+            else if (arg.equals ("-rows"))
+                n_rows = parseNumber (arg, value, 0, Long.MAX_VALUE).longValue();
+            else if (arg.equals ("-entities"))
+                n_entities = parseNumber (arg, value, 1, Integer.MAX_VALUE).intValue();
+            else if (arg.equals ("-zipf"))
+                zipf_exponent = parseNumber (arg, value, 0, Double.MAX_VALUE).doubleValue();
+            else if (arg.equals ("-currencies"))
+                currency_weights = parseCurrencies (arg, value);
+            else if (arg.equals ("-start")) {
+                first_day = TradeDateParser.parseEpochDay (value);
+                if (first_day == TradeDateParser.INVALID_DATE)
+                    throw new IllegalArgumentException ("Bad value for " + arg + ": " + value);
+            }
+            else if (arg.equals ("-days"))
+                n_days = parseNumber (arg, value, 7, 1000000).intValue();
+            else if (arg.equals ("-weekend"))
+                weekend_share = parseNumber (arg, value, 0, 1).doubleValue();
+            else if (arg.equals ("-seed"))
+                seed = parseNumber (arg, value, Long.MIN_VALUE, Long.MAX_VALUE).longValue();
+            else
+                throw new IllegalArgumentException ("Unknown option: " + arg);
+            count ++;
+        }
+        
+        if (output_filename == null)
+            throw new IllegalArgumentException ("Missing command line argument: name of output CSV file");
+    }
+    
+    /** Helper function to decode the numeric value of an option.
+     * @param option the name of the option, for error messages
+     * @param value the value to decode
+     * @param min the smallest allowed value
+     * @param max the largest allowed value
+     * @return the value, as a Long if it is a whole number, otherwise a Double
+     * @throws IllegalArgumentException if the value is not a number in range
+     */
+    private static Number parseNumber (String option, String value, double min, double max) {
+        Number number;
+        try {
+            number = Long.parseLong (value);
+        } catch (NumberFormatException e) {
+            try { number = Double.parseDouble (value); }
+            catch (NumberFormatException e2) { number = Double.NaN; }
+        }
+        if (! (number.doubleValue() >= min && number.doubleValue() <= max))
+            throw new IllegalArgumentException ("Bad value for " + option + ": " + value);
+        return number;
+    }
+    
+    /** Helper function to decode a currency mix, e.g. "USD=5,GBP=2,AED=1".
+     * @param option the name of the option, for error messages
+     * @param value the value to decode
+     * @return the currencies and their weights, in the order given
+     * @throws IllegalArgumentException if the value is not valid
+     */
+    private static Map<String, Double> parseCurrencies (String option, String value) {
+        Map<String, Double> weights = new LinkedHashMap<> ();
+        for (String pair : value.split (",")) {
+            String parts [] = pair.split ("=");
+            if (parts.length != 2 || parts [0].trim().isEmpty())
+                throw new IllegalArgumentException ("Bad value for " + option + ": " + value);
+            weights.put (parts [0].trim(), parseNumber (option, parts [1].trim(), 0, Double.MAX_VALUE).doubleValue());
+        }
+        return weights;
+    }
+    
+    /** Get the name of the output file.
+     * @return the file name, "-" for stdout */
+    public String getOutputFilename () { return output_filename; }
+    
+    /** Get the number of trades to write.
+     * @return the number of trades */
+    public long getNRows () { return n_rows; }
+    
+    /** Get the number of different entities.
+     * @return the number of entities */
+    public int getNEntities () { return n_entities; }
+    
+    /** Get the skew of entity popularity.
+     * @return the Zipf exponent */
+    public double getZipfExponent () { return zipf_exponent; }
+    
+    /** Get the currency mix.
+     * @return currency codes and weights, null for the generator's default mix */
+    public Map<String, Double> getCurrencyWeights () { return currency_weights; }
+    
+    /** Get the first settlement date.
+     * @return the date as an epoch day */
+    public int getFirstDay () { return first_day; }
+    
+    /** Get the number of days of settlement dates.
+     * @return the number of days */
+    public int getNDays () { return n_days; }
+    
+    /** Get the share of settlement dates on a weekend.
+     * @return the share, 0 to 1 */
+    public double getWeekendShare () { return weekend_share; }
+    
+    /** Get the seed for the random numbers.
+     * @return the seed */
+    public long getSeed () { return seed; }
+}
@@ -0,0 +1,188 @@
+package uk.co.jpm.TradeReport;
+
+import java.util.Date;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import uk.co.jpm.TradingLibrary.BusinessRules;
+import uk.co.jpm.TradingLibrary.EpochDay;
+import uk.co.jpm.TradingLibrary.TradingData;
+import uk.co.jpm.TradingLibrary.TradingDataVisitor;
+
+/**
+ * A thread safe version of {@link DailySettlementsAndRankings} that many threads
+ * can append to at once. Days are held in a concurrent sorted map, and each day's
+ * results are split into stripes - each thread appends to the stripe chosen by its
+ * thread id under that stripe's lock, so threads appending to the same day don't
+ * normally wait for each other. The stripes are merged when the results are read.
+ *
+ * Reading the results creates a snapshot that later appends don't change. Each
+ * stripe is merged under its lock, so a snapshot never holds part of a trade:
+ * it includes every append that finished before the snapshot was started, and
+ * may include some that were running at the same time.
+ *
+ * @author smf
+ */
+public class ConcurrentDailySettlementsAndRankings implements TradingDataVisitor {
+
+    // the days, keyed by epoch day so that finding a day doesn't create a Date
+    private final ConcurrentSkipListMap<Integer, StripedDay> daily_sar;
+
+    // number of stripes for each day - a power of 2
+    private final int n_stripes;
+
+    // true to accumulate exact fixed point values, see BusinessRules.setFixedPointMoney
+    private final boolean fixed_point;
+
+    /** Create an empty set of results with enough stripes for the
+     * number of processors. */
+    public ConcurrentDailySettlementsAndRankings () {
+        this (Runtime.getRuntime().availableProcessors());
+    }
+
+    /** Create an empty set of results.
+     * @param n_threads the number of threads expected to append at once, used
+     *        to choose the number of stripes
+     */
+    public ConcurrentDailySettlementsAndRankings (int n_threads) {
+        daily_sar = new ConcurrentSkipListMap<> ();
+        n_stripes = Integer.highestOneBit (Math.max (n_threads, 1) * 2 - 1);
+        fixed_point = BusinessRules.isFixedPointMoney();
+    }
+
+    /** Append a transaction to the accumulation of results. May be called by
+     * any number of threads at once.
+     * @param trading_data The transaction to append.
+     */
+    @Override
+    public void visit (TradingData trading_data) {
+        append (trading_data);
+    }
+
+    /** Append a transaction to the accumulation of results. May be called by
+     * any number of threads at once.
+     * @param trading_data The transaction to append.
+     */
+    public void append (TradingData trading_data) {
+        if (fixed_point)
+            appendFixed (trading_data.getActualSettlementEpochDay(), trading_data.getTradeType(),
+                         trading_data.getEntityName(), trading_data.calcPriceUSDFixed());
+        else
+            append (trading_data.getActualSettlementEpochDay(), trading_data.getTradeType(),
+                    trading_data.getEntityName(), trading_data.calcPriceUSD());
+    }
+
+    /** Append the parts of a transaction that are needed for the results. May be
+     * called by any number of threads at once.
+     * @param trans_day The actual settlement date of the transaction as an epoch day.
+     * @param trade_type The type of the transaction.
+     * @param entity_name The entity responsible for the transaction.
+     * @param trade_value The value of the transaction in USD.
+     */
+    public void append (int trans_day, TradingData.TradeType trade_type, String entity_name, double trade_value) {
+        SettlementsAndRankings stripe = findStripe (trans_day);
+        synchronized (stripe) {
+            stripe.append (trans_day, trade_type, entity_name, trade_value);
+        }
+    }
+
+    /** Append the parts of a transaction that are needed for the results, with an
+     * exact fixed point value (see {@link TradingData#calcPriceUSDFixed}). May be
+     * called by any number of threads at once.
+     * @param trans_day The actual settlement date of the transaction as an epoch day.
+     * @param trade_type The type of the transaction.
+     * @param entity_name The entity responsible for the transaction.
+     * @param trade_value The value of the transaction in USD, as a fixed point value.
+     */
+    public void appendFixed (int trans_day, TradingData.TradeType trade_type, String entity_name, long trade_value) {
+        SettlementsAndRankings stripe = findStripe (trans_day);
+        synchronized (stripe) {
+            stripe.appendFixed (trans_day, trade_type, entity_name, trade_value);
+        }
+    }
+
+    /** Helper function to find the current thread's stripe of the results for a day,
+     * creating the day if there are no results for it.
+     * @param trans_day The day as an epoch day.
+     * @return The stripe, which must be locked while it is appended to.
+     */
+    private SettlementsAndRankings findStripe (int trans_day) {
+        StripedDay day = daily_sar.get (trans_day);
+        if (day == null)
+            day = daily_sar.computeIfAbsent (trans_day, key -> new StripedDay (key, n_stripes));
+        return day.getStripe (Long.hashCode (Thread.currentThread().getId()) & (n_stripes - 1));
+    }
+
+    /** Create a snapshot of the daily settlements and rankings. The snapshot
+     * belongs to the caller and is not changed by later appends.
+     * @return daily settlements and rankings ordered by date */
+    public TreeMap<Date, SettlementsAndRankings> getDailySAR () {
+        TreeMap<Date, SettlementsAndRankings> snapshot = new TreeMap<> ();
+        for (StripedDay day : daily_sar.values()) {
+            SettlementsAndRankings sar = day.createSnapshot ();
+            snapshot.put (sar.getAllowedDate(), sar);
+        }
+        return snapshot;
+    }
+
+    /** Create a snapshot of the results for a single day.
+     * @param date the day
+     * @return the day's settlements and rankings, null if there have been no trades on the day */
+    public SettlementsAndRankings getDaySAR (Date date) {
+        StripedDay day = daily_sar.get (EpochDay.fromDate (date));
+        return day == null ? null : day.createSnapshot ();
+    }
+
+    /** Create a snapshot of the results for all days together.
+     * @return settlements and rankings with no date bound */
+    public SettlementsAndRankings createOverallSAR () {
+        SettlementsAndRankings overall_sar = new SettlementsAndRankings (null);
+        for (StripedDay day : daily_sar.values())
+            day.mergeInto (overall_sar);
+        return overall_sar;
+    }
+
+    /** The results for one day, split into stripes that are created when they are first used. */
+    private static class StripedDay {
+        private final Date date;
+        private final AtomicReferenceArray<SettlementsAndRankings> stripes;
+
+        StripedDay (int day, int n_stripes) {
+            date = EpochDay.toDate (day);
+            stripes = new AtomicReferenceArray<> (n_stripes);
+        }
+
+        /** Get a stripe, creating it if needed.
+         * @param index the stripe number
+         * @return the stripe */
+        SettlementsAndRankings getStripe (int index) {
+            SettlementsAndRankings stripe = stripes.get (index);
+            if (stripe == null) {
+                stripes.compareAndSet (index, null, new SettlementsAndRankings (date));
+                stripe = stripes.get (index);
+            }
+            return stripe;
+        }
+
+        /** Merge all the stripes into a new object.
+         * @return the merged results */
+        SettlementsAndRankings createSnapshot () {
+            SettlementsAndRankings sar = new SettlementsAndRankings (date);
+            mergeInto (sar);
+            return sar;
+        }
+
+        /** Merge all the stripes into another object.
+         * @param sar the object to merge into */
+        void mergeInto (SettlementsAndRankings sar) {
+            for (int index = 0; index < stripes.length(); index ++) {
+                SettlementsAndRankings stripe = stripes.get (index);
+                if (stripe != null) {
+                    synchronized (stripe) {
+                        sar.merge (stripe);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package uk.co.jpm.TradeReport;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Writes the daily trade report as a CSV table (RFC 4180), one row for each total
+ * and each entity ranking, so that it can be loaded into other systems. The columns are:
+ * <ol>
+ * <li>Period - "day" for a single day, "overall" for the whole of the input data</li>
+ * <li>FirstDate, LastDate - the dates covered, as yyyy-MM-dd (empty if there were no trades)</li>
+ * <li>Record - incoming_total, outgoing_total, incoming_rank or outgoing_rank</li>
+ * <li>Rank, Entity - the position in the ranking and the entity (empty for totals)</li>
+ * <li>USD - the amount, with 2 decimal places</li>
+ * </ol>
+ * 
+ * @author smf
+ */
+public class CsvReportWriter extends ReportWriter {
+    
+    // line ending required by RFC 4180
+    private static final String LINE_SEPARATOR = "\r\n";
+    
+    /** Create a CSV report writer.
+     * @param channel where to write the report
+     * @param max_rankings the maximum number of entities to write in each ranking
+     */
+    public CsvReportWriter (WritableByteChannel channel, int max_rankings) {
+        super (channel, max_rankings);
+    }
+    
+    @Override
+    public void startReport () throws IOException {
+        buffer.append ("Period,FirstDate,LastDate,Record,Rank,Entity,USD").append (LINE_SEPARATOR);
+    }
+    
+    @Override
+    public void writeSAR (SettlementsAndRankings sar) throws IOException {
+        writeRow (sar, "incoming_total", 0, null, sar.getIncomingTotalUSD());
+        writeRow (sar, "outgoing_total", 0, null, sar.getOutgoingTotalUSD());
+        int rank_no = 1;
+        for (Map.Entry<String, Double> entry : getRankings (sar, true))
+            writeRow (sar, "incoming_rank", rank_no ++, entry.getKey(), entry.getValue());
+        rank_no = 1;
+        for (Map.Entry<String, Double> entry : getRankings (sar, false))
+            writeRow (sar, "outgoing_rank", rank_no ++, entry.getKey(), entry.getValue());
+    }
+    
+    @Override
+    public void endReport () throws IOException {
+    }
+    
+    /** Helper function to write a row of the table.
+     * @param sar the settlements and rankings the row belongs to
+     * @param record the type of row
+     * @param rank_no the position in the ranking, 0 for a total
+     * @param entity_name the entity, null for a total
+     * @param value the amount
+     * @throws IOException if there was an error writing the report */
+    private void writeRow (SettlementsAndRankings sar, String record, int rank_no, String entity_name, double value) throws IOException {
+        buffer.append (sar.getAllowedDate() == null ? "overall" : "day").append (',');
+        appendDate (sar.getEarlistActualSettlementDate(), sar.getAllowedDate());
+        buffer.append (',');
+        appendDate (sar.getLatestActualSettlementDate(), sar.getAllowedDate());
+        buffer.append (',').append (record).append (',');
+        if (rank_no > 0)
+            buffer.append (rank_no);
+        buffer.append (',');
+        if (entity_name != null)
+            appendField (entity_name);
+        buffer.append (',');
+        appendMoney (value);
+        buffer.append (LINE_SEPARATOR);
+        flushIfFull ();
+    }
+    
+    /** Helper function to append a date field.
+     * @param found_date the date found in the trades (may be null)
+     * @param allowed_date the date the results are bound to, used in preference
+     *        to the found date (may be null) */
+    private void appendDate (Date found_date, Date allowed_date) {
+        Date date = allowed_date == null ? found_date : allowed_date;
+        if (date != null)
+            appendIsoDate (date);
+    }
+    
+    /** Helper function to append a text field, quoting it if needed.
+     * @param field the text */
+    private void appendField (String field) {
+        boolean needs_quotes = false;
+        for (int count = 0; count < field.length() && ! needs_quotes; count ++) {
+            char c = field.charAt (count);
+            needs_quotes = c == ',' || c == '"' || c == '\r' || c == '\n';
+        }
+        if (! needs_quotes)
+            buffer.append (field);
+        else {
+            buffer.append ('"');
+            for (int count = 0; count < field.length(); count ++) {
+                char c = field.charAt (count);
+                if (c == '"') buffer.append ('"');
+                buffer.append (c);
+            }
+            buffer.append ('"');
+        }
+    }
+}
@@ -1,7 +1,13 @@
 package uk.co.jpm.TradeReport;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Date;
 import java.util.TreeMap;
+import java.util.stream.Collector;
+import uk.co.jpm.TradingLibrary.BusinessRules;
+import uk.co.jpm.TradingLibrary.EpochDay;
 import uk.co.jpm.TradingLibrary.TradingData;
 
 /**
@@ -19,25 +25,124 @@ public class DailySettlementsAndRankings {
     // be automaticaly sorted by date
     private TreeMap <Date, SettlementsAndRankings> daily_sar;
     
+    // the most recently used entry in the map - input data is usually grouped
+    // by date, so this avoids creating a Date key to look up most transactions
+    private int last_day;
+    private SettlementsAndRankings last_sar;
+    
+    // true to accumulate exact fixed point values, see BusinessRules.setFixedPointMoney
+    private final boolean fixed_point;
+    
     public DailySettlementsAndRankings () {
         daily_sar = new TreeMap<> ();
+        last_day = 0;
+        last_sar = null;
+        fixed_point = BusinessRules.isFixedPointMoney();
     }
     
     /** Append a transaction to the accumulation of results.
      * @param trading_data The transaction to append.
      */
     public void append (TradingData trading_data) {
+        if (fixed_point)
+            appendFixed (trading_data.getActualSettlementEpochDay(), trading_data.getTradeType(),
+                         trading_data.getEntityName(), trading_data.calcPriceUSDFixed());
+        else
+            append (trading_data.getActualSettlementEpochDay(), trading_data.getTradeType(),
+                    trading_data.getEntityName(), trading_data.calcPriceUSD());
+    }
+    
+    /** Append the parts of a transaction that are needed for the results.
+     * @param trans_day The actual settlement date of the transaction as an epoch day.
+     * @param trade_type The type of the transaction.
+     * @param entity_name The entity responsible for the transaction.
+     * @param trade_value The value of the transaction in USD.
+     */
+    public void append (int trans_day, TradingData.TradeType trade_type, String entity_name, double trade_value) {
+        findDaySAR (trans_day).append (trans_day, trade_type, entity_name, trade_value);
+    }
+    
+    /** Append the parts of a transaction that are needed for the results, with an
+     * exact fixed point value (see {@link TradingData#calcPriceUSDFixed}).
+     * @param trans_day The actual settlement date of the transaction as an epoch day.
+     * @param trade_type The type of the transaction.
+     * @param entity_name The entity responsible for the transaction.
+     * @param trade_value The value of the transaction in USD, as a fixed point value.
+     */
+    public void appendFixed (int trans_day, TradingData.TradeType trade_type, String entity_name, long trade_value) {
+        findDaySAR (trans_day).appendFixed (trans_day, trade_type, entity_name, trade_value);
+    }
+    
+    /** Helper function to find the results for a day, creating them if there are none.
+     * @param trans_day The day as an epoch day.
+     * @return The day's results.
+     */
+    private SettlementsAndRankings findDaySAR (int trans_day) {
         // is there already a SettlementsAndRankins object in the map for this date?
         // if not create one
-        Date trans_date = trading_data.getActualSettlementDate();
-        SettlementsAndRankings sar = daily_sar.get (trans_date);
-        if (sar == null) {
-            sar = new SettlementsAndRankings(trans_date);
-            daily_sar.put (trans_date, sar);
+        if (last_sar == null || trans_day != last_day) {
+            Date trans_date = EpochDay.toDate (trans_day);
+            SettlementsAndRankings sar = daily_sar.get (trans_date);
+            if (sar == null) {
+                sar = new SettlementsAndRankings(trans_date);
+                daily_sar.put (trans_date, sar);
+            }
+            last_day = trans_day;
+            last_sar = sar;
         }
-        
-        // append this TradingData to the daily SattlementsAndRankings
-        sar.append (trading_data);
+        return last_sar;
+    }
+    
+    /** Merge the daily results accumulated in another DailySettlementsAndRankings
+     * object into this one.
+     * @param other the results to merge, which are not changed
+     */
+    public void merge (DailySettlementsAndRankings other) {
+        for (SettlementsAndRankings other_sar : other.daily_sar.values()) {
+            Date trans_date = other_sar.getAllowedDate();
+            SettlementsAndRankings sar = daily_sar.get (trans_date);
+            if (sar == null) {
+                sar = new SettlementsAndRankings(trans_date);
+                daily_sar.put (trans_date, sar);
+            }
+            sar.merge (other_sar);
+        }
+    }
+    
+    /** Write the daily results to a stream (see {@link SettlementsAndRankings#write}).
+     * @param out the stream
+     * @throws IOException if there was an error writing the stream */
+    void write (DataOutput out) throws IOException {
+        out.writeInt (daily_sar.size());
+        for (SettlementsAndRankings sar : daily_sar.values())
+            sar.write (out);
+    }
+    
+    /** Read daily results written by {@link #write}.
+     * @param in the stream
+     * @return the daily results
+     * @throws IOException if there was an error reading the stream, or it doesn't hold daily results */
+    static DailySettlementsAndRankings read (DataInput in) throws IOException {
+        DailySettlementsAndRankings daily_sars = new DailySettlementsAndRankings ();
+        int n_days = in.readInt ();
+        for (int count = 0; count < n_days; count ++) {
+            SettlementsAndRankings sar = SettlementsAndRankings.read (in);
+            if (sar.getAllowedDate() == null)
+                throw new IOException ("Daily results without a date");
+            daily_sars.daily_sar.put (sar.getAllowedDate(), sar);
+        }
+        return daily_sars;
+    }
+    
+    /** Create a Collector that accumulates a stream of transactions into a
+     * DailySettlementsAndRankings object. The Collector can be used with
+     * parallel streams - partial results are combined with {@link #merge}.
+     * @return the Collector */
+    public static Collector<TradingData, DailySettlementsAndRankings, DailySettlementsAndRankings> collector () {
+        return Collector.of (DailySettlementsAndRankings::new,
+                             DailySettlementsAndRankings::append,
+                             (daily_sar1, daily_sar2) -> { daily_sar1.merge (daily_sar2); return daily_sar1; },
+                             Collector.Characteristics.IDENTITY_FINISH);
     }
     
     /** return the map of daily settlements and rankings
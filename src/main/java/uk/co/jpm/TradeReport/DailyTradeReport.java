@@ -1,14 +1,31 @@
 package uk.co.jpm.TradeReport;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.IOException;
 import java.io.PrintStream;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.TimeZone;
+import javax.management.JMException;
+import uk.co.jpm.TradingLibrary.BusinessRules;
+import uk.co.jpm.TradingLibrary.CurrencyRegistry;
+import uk.co.jpm.TradingLibrary.HolidayCalendars;
+import uk.co.jpm.TradingLibrary.PipelineMetrics;
+import uk.co.jpm.TradingLibrary.QuarantineFile;
 import uk.co.jpm.TradingLibrary.TradingData;
+import uk.co.jpm.TradingLibrary.TradingDataChunk;
+import uk.co.jpm.TradingLibrary.TradingDataColumns;
+import uk.co.jpm.TradingLibrary.TradingDataFiles;
 import uk.co.jpm.TradingLibrary.TradingDataList;
+import uk.co.jpm.TradingLibrary.TradingDataSnapshot;
+import uk.co.jpm.TradingLibrary.TradingDataStream;
 
 /**
  * A program that reads individual trading data transactions to create a daily
@@ -23,28 +40,158 @@ public class DailyTradeReport {
      * @param args the command line arguments
      */
     public static void main(String[] args) {
+        // check command line
+        ReportOptions options = null;
         try {
-            // check command line
-            if (args.length != 1)
-                handleError ("Missing command line argument: name of input CSV file", null);
+            options = new ReportOptions (args);
+        } catch (IllegalArgumentException e) {
+            handleError (e.getMessage() + "\n" + ReportOptions.USAGE, null);
+        }
+        
+        // make the pipeline metrics visible to JMX - not being able to is not an error
+        PipelineMetrics metrics = PipelineMetrics.getDefault();
+        try {
+            metrics.registerMBean ();
+        } catch (JMException e) {
+            System.err.println ("Warning: unable to register metrics with JMX: " + e.getMessage());
+        }
+        
+        QuarantineFile quarantine = null;
+        try {
+            // load public holidays before any settlement dates are calculated
+            if (options.getHolidayDirectory() != null)
+                BusinessRules.setHolidayCalendars (HolidayCalendars.loadDirectory (new File (options.getHolidayDirectory()),
+                                                   options.getFirstHolidayYear(), options.getLastHolidayYear()));
+            
+            // choose how USD amounts are added up before any results are created
+            BusinessRules.setFixedPointMoney (options.isFixedPoint());
+            if (options.isCommonsCSV())
+                TradingDataStream.setByteTokenizer (false);
+            
+            // in lenient mode skip bad records, writing them to the quarantine file
+            if (options.getQuarantineFilename() != null)
+                quarantine = new QuarantineFile (new File (options.getQuarantineFilename()), options.isTail());
+            
+            // in tail mode print updates as trades arrive until the input ends (or forever when following a file)
+            if (options.isTail()) {
+                TailingTradeReport tailing_report = new TailingTradeReport (System.out, options.getMaxRankings(), options.getUpdateInterval());
+                if (options.isStandardInput())
+                    tailing_report.run (System.in, false, quarantine);
+                else {
+                    try (InputStream in = new FileInputStream (options.getInputFilename())) {
+                        tailing_report.run (in, true, quarantine);
+                    }
+                }
+                if (quarantine != null)
+                    quarantine.close ();
+                return;
+            }
+            
+            // create SettlementsAndRankings from trading data - the aggregator holds the settlements
+            // and rankings for the whole of the input data and the daily settlements and rankings
+            TradeReportAggregator aggregator;
+            long load_start = System.nanoTime();
+            List<File> input_files = new ArrayList<> ();
+            for (String input_filename : options.getInputFilenames())
+                input_files.addAll (TradingDataFiles.find (input_filename));
+            File input_file = input_files.get (0);
+            if (input_files.size() > 1) {
+                // load the files at once, each on its own thread, and merge them in order
+                if (options.getSnapshotFilename() != null)
+                    handleError ("A snapshot can only be written from a single input file", null);
+                if (options.getCacheDirectory() != null)
+                    handleError ("-cache can only be used with a single input file", null);
+                aggregator = new MultiFileTradeReportLoader (options.getNThreads()).load (input_files, quarantine);
+            } else if (TradingDataSnapshot.isSnapshot (input_file)) {
+                // scan the trades in a snapshot without any parsing
+                if (options.getSnapshotFilename() != null)
+                    handleError ("A snapshot can only be written from a CSV input file", null);
+                if (options.getCacheDirectory() != null)
+                    handleError ("-cache can only be used with a CSV input file", null);
+                aggregator = new TradeReportAggregator ();
+                try (TradingDataSnapshot snapshot = new TradingDataSnapshot (input_file)) {
+                    aggregator.appendAll (snapshot);
+                }
+            } else if (options.getCacheDirectory() != null) {
+                // load the results for as much of the file as possible from the cache, reading the rest
+                TradeReportCache cache = new TradeReportCache (new File (options.getCacheDirectory()), options.getMaxCacheSize());
+                if (options.getHolidayDirectory() != null)
+                    cache.addSetting (new File (options.getHolidayDirectory()));
+                cache.addSetting ("years " + options.getFirstHolidayYear() + "-" + options.getLastHolidayYear());
+                aggregator = cache.load (input_file, quarantine);
+                if (cache.getWriteError() != null)
+                    System.err.println ("Warning: unable to write to the cache: " + cache.getWriteError().getMessage());
+                if (options.isMetrics())
+                    System.err.println ("Cache: " + cache.getNCachedBytes() + " of " + input_file.length() + " bytes loaded from the cache");
+            } else if (options.isParallel()) {
+                // parse and aggregate chunks of the CSV file on several threads
+                aggregator = new ParallelTradeReportLoader (options.getNThreads()).load (input_file, quarantine);
+            } else if (options.isLazy() && TradingDataStream.isByteTokenizer() && options.getSnapshotFilename() == null) {
+                // walk the mapped file with a lazy view of each chunk, decoding only the fields the report needs
+                aggregator = new TradeReportAggregator ();
+                try (FileChannel channel = FileChannel.open (input_file.toPath(), StandardOpenOption.READ)) {
+                    for (TradingDataChunk chunk : TradingDataChunk.split (channel, 1))
+                        aggregator.appendAll (chunk.createView ());
+                }
+            } else if (options.isColumnar() || options.getSnapshotFilename() != null) {
+                // load data from CSV file into columns, then scan the columns
+                TradingDataColumns columns = new TradingDataColumns (options.isOffHeap());
+                try (TradingDataStream trading_data_stream = new TradingDataStream (input_file)) {
+                    trading_data_stream.visitAll (columns, quarantine);
+                }
+                if (options.getSnapshotFilename() != null)
+                    TradingDataSnapshot.write (columns, new File (options.getSnapshotFilename()));
+                aggregator = new TradeReportAggregator ();
+                aggregator.appendAll (columns);
+            } else if (options.isStreaming()) {
+                // pass each trade to the aggregator as it is read from the CSV file
+                aggregator = new TradeReportAggregator ();
+                try (TradingDataStream trading_data_stream = new TradingDataStream (input_file)) {
+                    trading_data_stream.visitAll (aggregator, quarantine);
+                }
+            } else {
+                // load data from CSV file
+                aggregator = new TradeReportAggregator ();
+                TradingDataList trading_data_list = new TradingDataList (input_file, quarantine);
+                for (TradingData transaction : trading_data_list)
+                    aggregator.visit (transaction);
+            }
+            
+            metrics.addStageNanos (PipelineMetrics.Stage.LOAD, System.nanoTime() - load_start);
+            aggregator.updateMetrics (metrics);
             
-            // load data from CSV file
-            TradingDataList trading_data_list = new TradingDataList (new File (args[0]));
+            // write reports to the console or a file
+            long rendering_start = System.nanoTime();
+            if (options.getOutputFilename() == null) {
+                ReportWriter writer = ReportWriter.create (options.getReportFormat(), Channels.newChannel (System.out), options.getMaxRankings());
+                writer.writeReport (aggregator.getDailySARs().getDailySAR().values(), aggregator.getOverallSAR());
+                System.out.flush ();
+            } else {
+                try (FileChannel channel = FileChannel.open (Paths.get (options.getOutputFilename()), StandardOpenOption.CREATE,
+                                                             StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    ReportWriter writer = ReportWriter.create (options.getReportFormat(), channel, options.getMaxRankings());
+                    writer.writeReport (aggregator.getDailySARs().getDailySAR().values(), aggregator.getOverallSAR());
+                }
+            }
+            metrics.addStageNanos (PipelineMetrics.Stage.RENDERING, System.nanoTime() - rendering_start);
+            
+            // currencies that aren't known use the Monday to Friday work week - warn the user
+            Map<String, Long> unknown_currencies = CurrencyRegistry.getDefault().getUnknownCurrencyCounts();
+            if (! unknown_currencies.isEmpty()) {
+                System.err.println ("Warning: unknown currency codes, Monday to Friday work week used:");
+                for (Map.Entry<String, Long> entry : unknown_currencies.entrySet())
+                    System.err.println ("  " + entry.getKey() + " (" + entry.getValue() + " trades)");
+            }
             
-            // create SettlementsAndRankings from trading data - overall_sar holds the settlements and
-            // rankings for the whole of the input data, daily_sar holds the daily settlements and rankings
-            SettlementsAndRankings overall_sar = new SettlementsAndRankings(null);
-            DailySettlementsAndRankings daily_sars = new DailySettlementsAndRankings();
-            for (TradingData transaction : trading_data_list) {
-                overall_sar.append(transaction);
-                daily_sars.append(transaction);
+            // bad records were skipped - tell the user where they are
+            if (quarantine != null) {
+                quarantine.close ();
+                if (quarantine.getNRecords() > 0)
+                    System.err.println ("Warning: " + quarantine.getNRecords() + " bad records skipped, see " + options.getQuarantineFilename());
             }
             
-            // write reports to the console
-            System.out.println ("Daily Trade Reports");
-            for (Map.Entry<Date, SettlementsAndRankings> daily_entry : daily_sars.getDailySAR().entrySet())
-                printSAR (System.out, daily_entry.getValue());
-            printSAR (System.out, overall_sar);
+            if (options.isMetrics())
+                metrics.printSummary (System.err);
         } catch (Exception e) {
             // It's generally not good style to catch Exception - instead we should
             // catch specific sub-classes. However it makes sense to do so here because
@@ -91,33 +238,28 @@ public class DailyTradeReport {
         System.exit (1);
     }
     
+    /** Print the settlements and all the entity rankings for a period.
+     * @param stream where to print
+     * @param sar the settlements and rankings to print
+     */
     public static void printSAR (PrintStream stream, SettlementsAndRankings sar) {
-        
-        // print title
-        SimpleDateFormat date_format = new SimpleDateFormat ("dd-MMM-yyyy");
-        date_format.setTimeZone(TimeZone.getTimeZone("GMT"));
-        if (sar.getAllowedDate() == null)
-            stream.println ("  Overall total for " + date_format.format (sar.getEarlistActualSettlementDate()) +
-                            " to " + date_format.format (sar.getLatestActualSettlementDate()) + ":");
-        else
-            stream.println ("  Total for " + date_format.format (sar.getAllowedDate()) + ":");
-        
-        // print total settlements for the period
-        stream.printf  ("    Total incoming (USD): %.2f%n", sar.getIncomingTotalUSD());
-        stream.printf  ("    Total outgoing (USD): %.2f%n", sar.getOutgoingTotalUSD());
-
-        // print entity rankings for the period
-        stream.println ("    Entity rankings, incoming:");
-        List <Map.Entry<String, Double>> ranks = sar.createIncomingRankings();
-        int rank_no = 1;
-        for (Map.Entry<String, Double> entry : ranks)
-            stream.printf ("      %d) %s (%.2f)%n", rank_no ++, entry.getKey(), entry.getValue());
-        
-        stream.println ("    Entity rankings, outgoing:");
-        ranks = sar.createOutgoingRankings();
-        rank_no = 1;
-        for (Map.Entry<String, Double> entry : ranks)
-            stream.printf ("      %d) %s (%.2f)%n", rank_no ++, entry.getKey(), entry.getValue());
+        printSAR (stream, sar, Integer.MAX_VALUE);
+    }
+    
+    /** Print the settlements and the top entity rankings for a period.
+     * @param stream where to print
+     * @param sar the settlements and rankings to print
+     * @param max_rankings the maximum number of entities to print in each ranking
+     */
+    public static void printSAR (PrintStream stream, SettlementsAndRankings sar, int max_rankings) {
+        try {
+            TextReportWriter writer = new TextReportWriter (Channels.newChannel (stream), max_rankings);
+            writer.writeSAR (sar);
+            writer.flush ();
+        } catch (IOException e) {
+            // a PrintStream doesn't throw exceptions, so this should never happen
+            throw new UncheckedIOException (e);
+        }
     }
     
 }
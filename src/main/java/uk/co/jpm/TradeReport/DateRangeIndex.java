@@ -0,0 +1,191 @@
+package uk.co.jpm.TradeReport;
+
+import java.util.Arrays;
+import java.util.Date;
+import uk.co.jpm.TradingLibrary.EpochDay;
+
+/**
+ * An index over the daily settlements and rankings that answers questions about
+ * any range of dates without going back to the trades or re-adding every day in
+ * the range. It is built once, after the trades have been loaded, and is not
+ * changed by later appends to the daily results.
+ *
+ * Incoming and outgoing totals and the number of settlements are held as prefix
+ * sums over the days, so the totals for a range are found with two binary searches
+ * and a subtraction, in O(log n) time for n days. Because the totals are found by
+ * subtraction they can differ from adding up the days in the range by a rounding
+ * error relative to the total of all the days.
+ *
+ * Entity rankings are held in a segment tree: each node holds the results for a
+ * block of days, merged from the nodes below it. The rankings for a range are made
+ * by merging the O(log n) nodes that cover it, so their cost depends on the number
+ * of entities in those nodes rather than on the number of days or trades. The tree
+ * holds each entity's totals about log n times over.
+ *
+ * Date ranges include both their first and last days.
+ *
+ * @author smf
+ */
+public class DateRangeIndex {
+
+    // the days that have results, as epoch days in ascending order
+    private final int days [];
+
+    // sums of the results of the days before each day - entry i is the sum for days [0..i-1]
+    private final double prefix_incoming [];
+    private final double prefix_outgoing [];
+    private final long prefix_settlements [];
+
+    // segment tree of results - node 1 is the root, the children of node i are
+    // 2i and 2i+1 and the days are the leaves, from node n_leaves onwards
+    private final SettlementsAndRankings tree [];
+    private final int n_leaves;
+
+    /** Build an index over daily results.
+     * @param daily_sars the daily results, which are not changed - the results for each
+     *        day are shared with the index, so they should not be appended to later
+     */
+    public DateRangeIndex (DailySettlementsAndRankings daily_sars) {
+        int n_days = daily_sars.getDailySAR().size();
+        days = new int [n_days];
+        prefix_incoming = new double [n_days + 1];
+        prefix_outgoing = new double [n_days + 1];
+        prefix_settlements = new long [n_days + 1];
+        n_leaves = Integer.highestOneBit (Math.max (n_days, 1) * 2 - 1);
+        tree = new SettlementsAndRankings [n_leaves * 2];
+
+        int index = 0;
+        for (SettlementsAndRankings sar : daily_sars.getDailySAR().values()) {
+            days [index] = EpochDay.fromDate (sar.getAllowedDate());
+            prefix_incoming [index + 1] = prefix_incoming [index] + sar.getIncomingTotalUSD();
+            prefix_outgoing [index + 1] = prefix_outgoing [index] + sar.getOutgoingTotalUSD();
+            prefix_settlements [index + 1] = prefix_settlements [index] + sar.getNSettlements();
+            tree [n_leaves + index] = sar;
+            index ++;
+        }
+
+        // merge the days into blocks, from the bottom of the tree up
+        for (int node = n_leaves - 1; node > 0; node --) {
+            SettlementsAndRankings left = tree [node * 2];
+            SettlementsAndRankings right = tree [node * 2 + 1];
+            if (right == null)
+                tree [node] = left;
+            else {
+                tree [node] = new SettlementsAndRankings (null);
+                tree [node].merge (left);
+                tree [node].merge (right);
+            }
+        }
+    }
+
+    /** Get the total of incoming trades settled in a range of dates.
+     * @param first the first day of the range
+     * @param last the last day of the range
+     * @return the total in USD */
+    public double getIncomingTotalUSD (Date first, Date last) {
+        return getIncomingTotalUSD (EpochDay.fromDate (first), EpochDay.fromDate (last));
+    }
+
+    /** Get the total of incoming trades settled in a range of epoch days.
+     * @param first_day the first day of the range
+     * @param last_day the last day of the range
+     * @return the total in USD */
+    public double getIncomingTotalUSD (int first_day, int last_day) {
+        int start = findStart (first_day);
+        int end = findEnd (last_day);
+        return start < end ? prefix_incoming [end] - prefix_incoming [start] : 0.0;
+    }
+
+    /** Get the total of outgoing trades settled in a range of dates.
+     * @param first the first day of the range
+     * @param last the last day of the range
+     * @return the total in USD */
+    public double getOutgoingTotalUSD (Date first, Date last) {
+        return getOutgoingTotalUSD (EpochDay.fromDate (first), EpochDay.fromDate (last));
+    }
+
+    /** Get the total of outgoing trades settled in a range of epoch days.
+     * @param first_day the first day of the range
+     * @param last_day the last day of the range
+     * @return the total in USD */
+    public double getOutgoingTotalUSD (int first_day, int last_day) {
+        int start = findStart (first_day);
+        int end = findEnd (last_day);
+        return start < end ? prefix_outgoing [end] - prefix_outgoing [start] : 0.0;
+    }
+
+    /** Get the number of trades settled in a range of dates.
+     * @param first the first day of the range
+     * @param last the last day of the range
+     * @return the number of settlements */
+    public long getNSettlements (Date first, Date last) {
+        return getNSettlements (EpochDay.fromDate (first), EpochDay.fromDate (last));
+    }
+
+    /** Get the number of trades settled in a range of epoch days.
+     * @param first_day the first day of the range
+     * @param last_day the last day of the range
+     * @return the number of settlements */
+    public long getNSettlements (int first_day, int last_day) {
+        int start = findStart (first_day);
+        int end = findEnd (last_day);
+        return start < end ? prefix_settlements [end] - prefix_settlements [start] : 0;
+    }
+
+    /** Create the settlements and rankings for a range of dates, including the
+     * entity rankings.
+     * @param first the first day of the range
+     * @param last the last day of the range
+     * @return new results with no date bound, belonging to the caller */
+    public SettlementsAndRankings createRangeSAR (Date first, Date last) {
+        return createRangeSAR (EpochDay.fromDate (first), EpochDay.fromDate (last));
+    }
+
+    /** Create the settlements and rankings for a range of epoch days, including the
+     * entity rankings.
+     * @param first_day the first day of the range
+     * @param last_day the last day of the range
+     * @return new results with no date bound, belonging to the caller */
+    public SettlementsAndRankings createRangeSAR (int first_day, int last_day) {
+        SettlementsAndRankings range_sar = new SettlementsAndRankings (null);
+        int start = findStart (first_day) + n_leaves;
+        int end = findEnd (last_day) + n_leaves;
+        for (; start < end; start /= 2, end /= 2) {
+            // a node that is the right child of its parent, or the left child at the end
+            // of the range, is only partly covered by its parent - merge it on its own
+            if ((start & 1) != 0)
+                mergeNode (range_sar, start ++);
+            if ((end & 1) != 0)
+                mergeNode (range_sar, -- end);
+        }
+        return range_sar;
+    }
+
+    /** Helper function to merge a node of the tree into a set of results.
+     * @param sar the results to merge into
+     * @param node the node, which may be empty */
+    private void mergeNode (SettlementsAndRankings sar, int node) {
+        if (tree [node] != null)
+            sar.merge (tree [node]);
+    }
+
+    /** Get the number of days that have results.
+     * @return the number of days */
+    public int size () { return days.length; }
+
+    /** Helper function to find the first day on or after an epoch day.
+     * @param day the epoch day
+     * @return the index of the day, days.length if there isn't one */
+    private int findStart (int day) {
+        int index = Arrays.binarySearch (days, day);
+        return index >= 0 ? index : - index - 1;
+    }
+
+    /** Helper function to find the end of a range of days that ends on an epoch day.
+     * @param day the epoch day
+     * @return the index after the last day on or before the epoch day */
+    private int findEnd (int day) {
+        int index = Arrays.binarySearch (days, day);
+        return index >= 0 ? index + 1 : - index - 1;
+    }
+}
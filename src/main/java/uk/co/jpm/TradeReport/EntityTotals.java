@@ -0,0 +1,357 @@
+package uk.co.jpm.TradeReport;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import uk.co.jpm.TradingLibrary.FixedPoint;
+
+/**
+ * A map from entity name to the total value of the entity's trades. This
+ * replaces a HashMap of String and Double on the accumulation path: names and
+ * totals are held in parallel arrays using open addressing with linear probing,
+ * so adding to an existing entity's total does not allocate.
+ * 
+ * In fixed point mode (see {@link FixedPoint}) each total is held as a 128 bit
+ * integer in two parallel arrays instead, so totals and rankings are exact.
+ * 
+ * @author smf
+ */
+class EntityTotals {
+    
+    // initial number of slots - must be a power of 2
+    private static final int INITIAL_CAPACITY = 16;
+    
+    // entity names and totals, a null name marks an empty slot - fixed point
+    // totals are held in the high and low arrays, and the double array is null
+    private final boolean fixed_point;
+    private String names [];
+    private double totals [];
+    private long fixed_highs [];
+    private long fixed_lows [];
+    
+    // number of entities in the map
+    private int size;
+    
+    public EntityTotals () {
+        this (false);
+    }
+    
+    /** Create an empty map.
+     * @param fixed_point true to hold exact fixed point totals, false for doubles
+     */
+    public EntityTotals (boolean fixed_point) {
+        this.fixed_point = fixed_point;
+        names = new String [INITIAL_CAPACITY];
+        allocateTotals (INITIAL_CAPACITY);
+        size = 0;
+    }
+    
+    /** Add a value to an entity's total, adding the entity if it is not already in the map.
+     * A fixed point map rounds the value to {@link FixedPoint#USD_DIGITS} places.
+     * @param entity_name the entity
+     * @param value the value to add
+     */
+    public void add (String entity_name, double value) {
+        if (fixed_point) {
+            addFixed (entity_name, FixedPoint.toScaled (value, FixedPoint.USD_DIGITS));
+            return;
+        }
+        int slot = findOrInsert (entity_name);
+        totals [slot] += value;
+    }
+    
+    /** Add a fixed point value to an entity's total, adding the entity if it is not
+     * already in the map.
+     * @param entity_name the entity
+     * @param value the value to add, scaled to {@link FixedPoint#USD_DIGITS} places
+     */
+    public void addFixed (String entity_name, long value) {
+        if (! fixed_point) {
+            add (entity_name, FixedPoint.toDouble (value, FixedPoint.USD_DIGITS));
+            return;
+        }
+        int slot = findOrInsert (entity_name);
+        fixed_highs [slot] = FixedPoint.addHigh (fixed_highs [slot], fixed_lows [slot], value);
+        fixed_lows [slot] += value;
+    }
+    
+    /** Add all the totals from another map to this one.
+     * @param other the totals to add, which are not changed
+     */
+    public void addAll (EntityTotals other) {
+        for (int slot = 0; slot < other.names.length; slot ++) {
+            if (other.names [slot] == null) continue;
+            if (fixed_point && other.fixed_point) {
+                int this_slot = findOrInsert (other.names [slot]);
+                fixed_highs [this_slot] = FixedPoint.addHigh (fixed_highs [this_slot], fixed_lows [this_slot],
+                                                              other.fixed_highs [slot], other.fixed_lows [slot]);
+                fixed_lows [this_slot] += other.fixed_lows [slot];
+            } else
+                add (other.names [slot], other.getTotal (slot));
+        }
+    }
+    
+    /** Get an entity's total.
+     * @param entity_name the entity
+     * @return the total, 0.0 if the entity is not in the map */
+    public double get (String entity_name) {
+        int slot = findSlot (names, entity_name);
+        return names [slot] == null ? 0.0 : getTotal (slot);
+    }
+    
+    /** Find out whether the map holds fixed point totals.
+     * @return true for fixed point, false for doubles */
+    public boolean isFixedPoint () { return fixed_point; }
+    
+    /** Count the entities in this map that are not in another map.
+     * @param other the other map
+     * @return the number of entities */
+    public int countNotIn (EntityTotals other) {
+        int n_entities = 0;
+        for (int slot = 0; slot < names.length; slot ++) {
+            if (names [slot] != null && other.names [findSlot (other.names, names [slot])] == null)
+                n_entities ++;
+        }
+        return n_entities;
+    }
+    
+    /** Get the number of entities in the map.
+     * @return the number of entities */
+    public int size () { return size; }
+    
+    /** Create a List of entities and their totals. Sort order is reversed (greatest
+     * first), and entities with equal totals are in order of name, so the List
+     * doesn't depend on the order the entities were added in.
+     * @return the sorted List */
+    public List<Map.Entry<String, Double>> createSortedList () {
+        // sort the slots rather than the entries, so fixed point totals are
+        // compared exactly
+        List<Integer> slots = new ArrayList<> (size);
+        for (int slot = 0; slot < names.length; slot ++) {
+            if (names [slot] != null)
+                slots.add (slot);
+        }
+        Collections.sort (slots, this::compareRanks);
+        List<Map.Entry<String, Double>> list = new ArrayList<> (size);
+        for (int slot : slots)
+            list.add (new AbstractMap.SimpleImmutableEntry<> (names [slot], getTotal (slot)));
+        return list;
+    }
+    
+    /** Create a List of the k entities with the greatest totals, greatest first. A
+     * bounded heap is used to find the entities, so the cost is O(n log k) rather
+     * than the O(n log n) of sorting every entity. The List is the same as the first
+     * k entries of the List returned by {@link #createSortedList}.
+     * @param k the maximum number of entities to return
+     * @return the sorted List */
+    public List<Map.Entry<String, Double>> createTopList (int k) {
+        if (k >= size) return createSortedList ();
+        List<Map.Entry<String, Double>> list = new ArrayList<> (Math.max (k, 0));
+        if (k <= 0) return list;
+        
+        // find the top k slots using a heap with the lowest ranked slot at the root
+        int heap [] = new int [k];
+        int heap_size = 0;
+        for (int slot = 0; slot < names.length; slot ++) {
+            if (names [slot] == null) continue;
+            if (heap_size < k) {
+                heap [heap_size] = slot;
+                siftUp (heap, heap_size ++);
+            } else if (ranksBefore (slot, heap [0])) {
+                heap [0] = slot;
+                siftDown (heap, heap_size, 0);
+            }
+        }
+        
+        // sort the heap in place by repeatedly moving the lowest ranked slot to the end
+        for (int end = heap_size - 1; end > 0; end --) {
+            int slot = heap [end];
+            heap [end] = heap [0];
+            heap [0] = slot;
+            siftDown (heap, end, 0);
+        }
+        for (int count = 0; count < heap_size; count ++)
+            list.add (new AbstractMap.SimpleImmutableEntry<> (names [heap [count]], getTotal (heap [count])));
+        return list;
+    }
+    
+    /** Helper function for the ranking order - greater totals first, ties in order
+     * of name. Slot order depends on the order entities were added (and maps were
+     * merged) in, so it isn't used.
+     * @param slot1 the first slot
+     * @param slot2 the second slot
+     * @return less than 0 if slot1 is ranked before slot2, greater than 0 if it is ranked after */
+    private int compareRanks (int slot1, int slot2) {
+        int comparison = compareTotals (slot2, slot1);
+        return comparison != 0 ? comparison : names [slot1].compareTo (names [slot2]);
+    }
+    
+    private boolean ranksBefore (int slot1, int slot2) { return compareRanks (slot1, slot2) < 0; }
+    
+    /** Helper function to compare the totals in two slots.
+     * @param slot1 the first slot
+     * @param slot2 the second slot
+     * @return less than, equal to or greater than 0 as the first total is less than,
+     *         equal to or greater than the second */
+    private int compareTotals (int slot1, int slot2) {
+        if (fixed_point)
+            return FixedPoint.compare (fixed_highs [slot1], fixed_lows [slot1], fixed_highs [slot2], fixed_lows [slot2]);
+        if (totals [slot1] > totals [slot2]) return 1;
+        if (totals [slot1] < totals [slot2]) return -1;
+        return 0;
+    }
+    
+    /** Write the map to a stream, slot by slot, so that it can be read back with
+     * every entity in the same slot.
+     * @param out the stream
+     * @throws IOException if there was an error writing the stream */
+    void write (DataOutput out) throws IOException {
+        out.writeBoolean (fixed_point);
+        out.writeInt (names.length);
+        out.writeInt (size);
+        for (int slot = 0; slot < names.length; slot ++) {
+            if (names [slot] == null) {
+                out.writeInt (-1);
+                continue;
+            }
+            byte name [] = names [slot].getBytes (StandardCharsets.UTF_8);
+            out.writeInt (name.length);
+            out.write (name);
+            if (fixed_point) {
+                out.writeLong (fixed_highs [slot]);
+                out.writeLong (fixed_lows [slot]);
+            } else
+                out.writeDouble (totals [slot]);
+        }
+    }
+    
+    /** Read a map written by {@link #write}.
+     * @param in the stream
+     * @return the map
+     * @throws IOException if there was an error reading the stream, or it doesn't hold a map */
+    static EntityTotals read (DataInput in) throws IOException {
+        EntityTotals entity_totals = new EntityTotals (in.readBoolean ());
+        int capacity = in.readInt ();
+        if (capacity < INITIAL_CAPACITY || Integer.bitCount (capacity) != 1)
+            throw new IOException ("Bad entity totals capacity: " + capacity);
+        entity_totals.names = new String [capacity];
+        entity_totals.allocateTotals (capacity);
+        entity_totals.size = in.readInt ();
+        for (int slot = 0; slot < capacity; slot ++) {
+            int name_length = in.readInt ();
+            if (name_length < 0) continue;
+            byte name [] = new byte [name_length];
+            in.readFully (name);
+            entity_totals.names [slot] = new String (name, StandardCharsets.UTF_8);
+            if (entity_totals.fixed_point) {
+                entity_totals.fixed_highs [slot] = in.readLong ();
+                entity_totals.fixed_lows [slot] = in.readLong ();
+            } else
+                entity_totals.totals [slot] = in.readDouble ();
+        }
+        return entity_totals;
+    }
+    
+    /** Helper function to get the total in a slot as a double.
+     * @param slot the slot
+     * @return the total */
+    private double getTotal (int slot) {
+        return fixed_point ? FixedPoint.toDouble (fixed_highs [slot], fixed_lows [slot], FixedPoint.USD_DIGITS) : totals [slot];
+    }
+    
+    /** Helper function to find the slot that holds an entity, inserting the entity
+     * if it is not already in the map.
+     * @param entity_name the entity
+     * @return the slot number */
+    private int findOrInsert (String entity_name) {
+        int slot = findSlot (names, entity_name);
+        if (names [slot] == null) {
+            names [slot] = entity_name;
+            if (++ size * 2 > names.length) {
+                grow ();
+                slot = findSlot (names, entity_name);
+            }
+        }
+        return slot;
+    }
+    
+    /** Helper function to move a heap entry towards the root until its parent is ranked before it.
+     * @param heap the heap
+     * @param index the entry to move */
+    private void siftUp (int heap [], int index) {
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (! ranksBefore (heap [parent], heap [index])) break;
+            int slot = heap [parent];
+            heap [parent] = heap [index];
+            heap [index] = slot;
+            index = parent;
+        }
+    }
+    
+    /** Helper function to move a heap entry away from the root until both its children are ranked before it.
+     * @param heap the heap
+     * @param heap_size the number of entries in the heap
+     * @param index the entry to move */
+    private void siftDown (int heap [], int heap_size, int index) {
+        while (true) {
+            int child = index * 2 + 1;
+            if (child >= heap_size) break;
+            if (child + 1 < heap_size && ranksBefore (heap [child], heap [child + 1])) child ++;
+            if (! ranksBefore (heap [index], heap [child])) break;
+            int slot = heap [child];
+            heap [child] = heap [index];
+            heap [index] = slot;
+            index = child;
+        }
+    }
+    
+    /** Double the number of slots, re-inserting the existing entities. */
+    private void grow () {
+        String old_names [] = names;
+        double old_totals [] = totals;
+        long old_highs [] = fixed_highs;
+        long old_lows [] = fixed_lows;
+        names = new String [old_names.length * 2];
+        allocateTotals (old_names.length * 2);
+        for (int old_slot = 0; old_slot < old_names.length; old_slot ++) {
+            if (old_names [old_slot] != null) {
+                int slot = findSlot (names, old_names [old_slot]);
+                names [slot] = old_names [old_slot];
+                if (fixed_point) {
+                    fixed_highs [slot] = old_highs [old_slot];
+                    fixed_lows [slot] = old_lows [old_slot];
+                } else
+                    totals [slot] = old_totals [old_slot];
+            }
+        }
+    }
+    
+    /** Helper function to create empty arrays of totals for the mode of the map.
+     * @param capacity the number of slots */
+    private void allocateTotals (int capacity) {
+        totals = fixed_point ? null : new double [capacity];
+        fixed_highs = fixed_point ? new long [capacity] : null;
+        fixed_lows = fixed_point ? new long [capacity] : null;
+    }
+    
+    /** Helper function to find the slot that holds an entity, or the empty
+     * slot where it should be inserted.
+     * @param names the slots to search
+     * @param entity_name the entity to find
+     * @return the slot number */
+    private static int findSlot (String names [], String entity_name) {
+        int mask = names.length - 1;
+        int hash = entity_name.hashCode();
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        while (names [slot] != null && ! names [slot].equals (entity_name))
+            slot = (slot + 1) & mask;
+        return slot;
+    }
+}
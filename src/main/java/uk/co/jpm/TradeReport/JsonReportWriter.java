@@ -0,0 +1,137 @@
+package uk.co.jpm.TradeReport;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.Date;
+import java.util.Map;
+
+/**
+ * Writes the daily trade report as a JSON document, so that it can be read by
+ * other systems. The document is an object with a "days" array, holding the
+ * results for each day, and an "overall" object, holding the results for the
+ * whole of the input data. Dates are strings formatted as yyyy-MM-dd and
+ * amounts are numbers with 2 decimal places, e.g.
+ * <pre>
+ * {"days": [
+ *   {"date": "2016-01-04", "incomingUSD": 100.00, "outgoingUSD": 0.00,
+ *    "incomingRankings": [{"rank": 1, "entity": "foo", "usd": 100.00}], "outgoingRankings": []}
+ *  ],
+ *  "overall":
+ *   {"firstDate": "2016-01-04", "lastDate": "2016-01-04", "incomingUSD": 100.00, "outgoingUSD": 0.00,
+ *    "incomingRankings": [{"rank": 1, "entity": "foo", "usd": 100.00}], "outgoingRankings": []}
+ * }
+ * </pre>
+ * 
+ * @author smf
+ */
+public class JsonReportWriter extends ReportWriter {
+    
+    // digits for unicode escapes
+    private static final char HEX_DIGITS [] = "0123456789abcdef".toCharArray();
+    
+    // true while days are being written, and the number written
+    private boolean in_days;
+    private int n_days;
+    
+    /** Create a JSON report writer.
+     * @param channel where to write the report
+     * @param max_rankings the maximum number of entities to write in each ranking
+     */
+    public JsonReportWriter (WritableByteChannel channel, int max_rankings) {
+        super (channel, max_rankings);
+        in_days = false;
+        n_days = 0;
+    }
+    
+    @Override
+    public void startReport () throws IOException {
+        buffer.append ("{\"days\": [");
+        in_days = true;
+        n_days = 0;
+    }
+    
+    @Override
+    public void writeSAR (SettlementsAndRankings sar) throws IOException {
+        if (sar.getAllowedDate() != null) {
+            buffer.append (n_days ++ == 0 ? "\n" : ",\n").append ("  {\"date\": ");
+            appendDate (sar.getAllowedDate());
+        } else {
+            endDays ();
+            buffer.append (",\n \"overall\":\n  {\"firstDate\": ");
+            appendDate (sar.getEarlistActualSettlementDate());
+            buffer.append (", \"lastDate\": ");
+            appendDate (sar.getLatestActualSettlementDate());
+        }
+        buffer.append (", \"incomingUSD\": ");
+        appendMoney (sar.getIncomingTotalUSD());
+        buffer.append (", \"outgoingUSD\": ");
+        appendMoney (sar.getOutgoingTotalUSD());
+        buffer.append (",\n   \"incomingRankings\": ");
+        writeRankings (sar, true);
+        buffer.append (", \"outgoingRankings\": ");
+        writeRankings (sar, false);
+        buffer.append ('}');
+        flushIfFull ();
+    }
+    
+    @Override
+    public void endReport () throws IOException {
+        endDays ();
+        buffer.append ("\n}\n");
+    }
+    
+    /** Helper function to close the array of days, if it is open. */
+    private void endDays () {
+        if (in_days) {
+            buffer.append ("\n ]");
+            in_days = false;
+        }
+    }
+    
+    /** Helper function to write one of the entity rankings as an array.
+     * @param sar the settlements and rankings
+     * @param incoming true for the incoming ranking, false for outgoing
+     * @throws IOException if there was an error writing the report */
+    private void writeRankings (SettlementsAndRankings sar, boolean incoming) throws IOException {
+        buffer.append ('[');
+        int rank_no = 1;
+        for (Map.Entry<String, Double> entry : getRankings (sar, incoming)) {
+            if (rank_no > 1) buffer.append (", ");
+            buffer.append ("{\"rank\": ").append (rank_no ++).append (", \"entity\": ");
+            appendString (entry.getKey());
+            buffer.append (", \"usd\": ");
+            appendMoney (entry.getValue());
+            buffer.append ('}');
+            flushIfFull ();
+        }
+        buffer.append (']');
+    }
+    
+    /** Helper function to append a date as a JSON string, or null.
+     * @param date the date (may be null) */
+    private void appendDate (Date date) {
+        if (date == null)
+            buffer.append ("null");
+        else {
+            buffer.append ('"');
+            appendIsoDate (date);
+            buffer.append ('"');
+        }
+    }
+    
+    /** Helper function to append a JSON string, escaping characters as needed.
+     * @param text the string */
+    private void appendString (String text) {
+        buffer.append ('"');
+        for (int count = 0; count < text.length(); count ++) {
+            char c = text.charAt (count);
+            if (c == '"' || c == '\\')
+                buffer.append ('\\').append (c);
+            else if (c < 0x20)
+                buffer.append ("\\u00").append (HEX_DIGITS [c >> 4]).append (HEX_DIGITS [c & 0xf]);
+            else
+                buffer.append (c);
+        }
+        buffer.append ('"');
+    }
+}
@@ -0,0 +1,143 @@
+package uk.co.jpm.TradeReport;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import uk.co.jpm.TradingLibrary.RejectedRecords;
+import uk.co.jpm.TradingLibrary.TradingDataRejectHandler;
+import uk.co.jpm.TradingLibrary.TradingDataStream;
+
+/**
+ * Loads several CSV files of trading data at once (e.g. one file per desk per day,
+ * see {@link uk.co.jpm.TradingLibrary.TradingDataFiles}). Each file is streamed into
+ * its own {@link TradeReportAggregator} on a fixed size pool of threads, so no more
+ * than one file per thread is being read at a time, and the results are merged in
+ * the order the files are given. Files finished ahead of the merging wait in memory,
+ * so no more than {@link #FILES_AHEAD_PER_THREAD} files per thread are read or held
+ * before they are merged. In fixed point mode (see
+ * {@link uk.co.jpm.TradingLibrary.BusinessRules#setFixedPointMoney}) the report is
+ * the same as for a single file holding all the trades of the files in that order.
+ * With doubles each file's totals are added up separately and then added together,
+ * which rounds differently, so totals can differ from the single file's in the
+ * last place (e.g. by a cent in a large total).
+ *
+ * @author smf
+ */
+public class MultiFileTradeReportLoader {
+
+    /** Most files per thread that are read or held before they are merged */
+    public static final int FILES_AHEAD_PER_THREAD = 2;
+
+    // number of files to read at once
+    private final int n_threads;
+
+    /** Create a loader.
+     * @param n_threads the number of threads to use
+     */
+    public MultiFileTradeReportLoader (int n_threads) {
+        this.n_threads = n_threads;
+    }
+
+    /** Read and aggregate CSV files of trading data.
+     *
+     * @param csv_files the files to read, each with a header row
+     * @return the aggregated results
+     * @throws IOException if there was an error in the CSV data
+     */
+    public TradeReportAggregator load (List<File> csv_files) throws IOException {
+        return load (csv_files, null);
+    }
+
+    /** Read and aggregate CSV files of trading data, passing records that can't be
+     * decoded to a reject handler instead of stopping. Each file keeps its own bad
+     * records and they are passed to the handler in file order as the files are
+     * merged, with the name of the file at the start of the reason.
+     *
+     * @param csv_files the files to read, each with a header row
+     * @param rejects the object that will receive bad records, null to stop at the first one
+     * @return the aggregated results
+     * @throws IOException if there was an error reading a file, an error in the CSV
+     *         data and no reject handler, or the reject handler failed
+     */
+    public TradeReportAggregator load (List<File> csv_files, TradingDataRejectHandler rejects) throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool (n_threads);
+        try {
+            // merge in file order - a finished file waits in memory until the files before it
+            // have been merged, so files are only submitted a limited distance ahead of the
+            // merging, and each file's results are dropped once they have been merged
+            List<Future<FileResult>> futures = new ArrayList<> ();
+            TradeReportAggregator aggregator = new TradeReportAggregator ();
+            for (int index = 0; index < csv_files.size(); index ++) {
+                while (futures.size() < csv_files.size() && futures.size() < index + n_threads * FILES_AHEAD_PER_THREAD) {
+                    File next_file = csv_files.get (futures.size());
+                    futures.add (pool.submit (() -> loadFile (next_file, rejects != null)));
+                }
+                File csv_file = csv_files.get (index);
+                FileResult result = getResult (csv_file, futures.get (index));
+                futures.set (index, null);
+                aggregator.merge (result.aggregator);
+                if (rejects != null)
+                    result.rejects.replay ((line_number, reason, fields) -> rejects.reject (line_number, csv_file.getPath() + ": " + reason, fields), 1);
+            }
+            return aggregator;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Helper function to read and aggregate one file.
+     * @param csv_file the file to read
+     * @param lenient true to keep bad records, false to stop at the first one
+     * @return the results for the file
+     * @throws IOException if there was an error reading the file, or an error in
+     *         the CSV data and bad records aren't being kept
+     */
+    private static FileResult loadFile (File csv_file, boolean lenient) throws IOException {
+        TradeReportAggregator aggregator = new TradeReportAggregator ();
+        RejectedRecords rejects = lenient ? new RejectedRecords () : null;
+        try (TradingDataStream trading_data_stream = new TradingDataStream (csv_file)) {
+            trading_data_stream.visitAll (aggregator, rejects);
+        }
+        return new FileResult (aggregator, rejects);
+    }
+
+    /** Helper function to wait for the results for a file.
+     * @param csv_file the file, for error messages
+     * @param future the results
+     * @return the results for the file
+     * @throws IOException if the file could not be loaded, or the thread was
+     *         interrupted while waiting
+     */
+    private static FileResult getResult (File csv_file, Future<FileResult> future) throws IOException {
+        try {
+            return future.get ();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException ("Interrupted while loading " + csv_file.getPath());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw new IOException (csv_file.getPath() + ": " + e.getCause().getMessage(), e.getCause());
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException (e.getCause());
+        }
+    }
+
+    /** The results of aggregating a file, and its bad records (null if bad records
+     * stop the reading). */
+    private static class FileResult {
+        final TradeReportAggregator aggregator;
+        final RejectedRecords rejects;
+
+        FileResult (TradeReportAggregator aggregator, RejectedRecords rejects) {
+            this.aggregator = aggregator;
+            this.rejects = rejects;
+        }
+    }
+}
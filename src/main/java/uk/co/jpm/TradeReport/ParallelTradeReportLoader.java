@@ -0,0 +1,145 @@
+package uk.co.jpm.TradeReport;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import uk.co.jpm.TradingLibrary.RejectedRecords;
+import uk.co.jpm.TradingLibrary.TradingDataChunk;
+import uk.co.jpm.TradingLibrary.TradingDataRejectHandler;
+
+/**
+ * Loads a CSV file of trading data using several threads. The file is split into
+ * chunks (see {@link TradingDataChunk}), each chunk is parsed and aggregated on a
+ * fork-join pool and the partial results are merged into a single
+ * {@link TradeReportAggregator}.
+ * 
+ * As with {@link MultiFileTradeReportLoader}, the results are only exactly the
+ * same as reading the file on one thread in fixed point mode - with doubles the
+ * chunks' totals are rounded separately before they are added together.
+ * 
+ * @author smf
+ */
+public class ParallelTradeReportLoader {
+    
+    // number of chunks to create for each thread - more than one
+    // so that threads that finish early can take work from others
+    private static final int CHUNKS_PER_THREAD = 4;
+    
+    // number of threads to parse with
+    private final int n_threads;
+    
+    /** Create a loader.
+     * @param n_threads the number of threads to use
+     */
+    public ParallelTradeReportLoader (int n_threads) {
+        this.n_threads = n_threads;
+    }
+    
+    /** Read and aggregate a CSV file of trading data.
+     * 
+     * @param csv_file the file to read
+     * @return the aggregated results
+     * @throws IOException if there was an error in the CSV data
+     */
+    public TradeReportAggregator load (File csv_file) throws IOException {
+        return load (csv_file, null);
+    }
+    
+    /** Read and aggregate a CSV file of trading data, passing records that can't be
+     * decoded to a reject handler instead of stopping. Each chunk keeps its own bad
+     * records and they are passed to the handler in file order, with line numbers
+     * counted from the start of the file, once all the chunks have been read.
+     * 
+     * @param csv_file the file to read
+     * @param rejects the object that will receive bad records, null to stop at the first one
+     * @return the aggregated results
+     * @throws IOException if there was an error reading the CSV data, an error in the
+     *         CSV data and no reject handler, or the reject handler failed
+     */
+    public TradeReportAggregator load (File csv_file, TradingDataRejectHandler rejects) throws IOException {
+        ForkJoinPool pool = new ForkJoinPool (n_threads);
+        ChunkResult result;
+        try (FileChannel channel = FileChannel.open (csv_file.toPath(), StandardOpenOption.READ)) {
+            List<TradingDataChunk> chunks = TradingDataChunk.split (channel, n_threads * CHUNKS_PER_THREAD);
+            result = pool.invoke (new ChunkTask (chunks, 0, chunks.size(), rejects != null));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+        
+        if (rejects != null) {
+            long first_line = 1;
+            for (RejectedRecords chunk_rejects : result.rejects) {
+                chunk_rejects.replay (rejects, first_line);
+                first_line += chunk_rejects.getNLines();
+            }
+        }
+        return result.aggregator;
+    }
+    
+    /** The results of aggregating a range of chunks, and the bad records from each chunk
+     * in file order (null if bad records stop the reading). */
+    private static class ChunkResult {
+        final TradeReportAggregator aggregator;
+        final List<RejectedRecords> rejects;
+        
+        ChunkResult (TradeReportAggregator aggregator, List<RejectedRecords> rejects) {
+            this.aggregator = aggregator;
+            this.rejects = rejects;
+        }
+    }
+    
+    /** A task that aggregates a range of chunks, splitting the range in two until
+     * there is only one chunk to process. */
+    private static class ChunkTask extends RecursiveTask<ChunkResult> {
+        private static final long serialVersionUID = 1L;
+        
+        private final List<TradingDataChunk> chunks;
+        private final int first;
+        private final int last;
+        private final boolean lenient;
+        
+        public ChunkTask (List<TradingDataChunk> chunks, int first, int last, boolean lenient) {
+            this.chunks = chunks;
+            this.first = first;
+            this.last = last;
+            this.lenient = lenient;
+        }
+        
+        @Override
+        protected ChunkResult compute () {
+            if (last - first <= 1) {
+                TradeReportAggregator aggregator = new TradeReportAggregator ();
+                List<RejectedRecords> rejects = lenient ? new ArrayList<> () : null;
+                try {
+                    if (first < last) {
+                        RejectedRecords chunk_rejects = lenient ? new RejectedRecords () : null;
+                        chunks.get (first).visitAll (aggregator, chunk_rejects);
+                        if (lenient) rejects.add (chunk_rejects);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException (e);
+                }
+                return new ChunkResult (aggregator, rejects);
+            }
+            
+            // split the work, merging results in file order
+            int middle = (first + last) / 2;
+            ChunkTask left = new ChunkTask (chunks, first, middle, lenient);
+            ChunkTask right = new ChunkTask (chunks, middle, last, lenient);
+            left.fork ();
+            ChunkResult right_result = right.compute ();
+            ChunkResult left_result = left.join ();
+            left_result.aggregator.merge (right_result.aggregator);
+            if (lenient) left_result.rejects.addAll (right_result.rejects);
+            return left_result;
+        }
+    }
+}
@@ -0,0 +1,341 @@
+package uk.co.jpm.TradeReport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Options for the daily trade report, decoded from the command line. Options
+ * start with a '-' and come before the names of the input files.
+ * 
+ * @author smf
+ */
+public class ReportOptions {
+    
+    /** Description of the command line, for use in error messages */
+    public static final String USAGE = 
+            "Usage: DailyTradeReport [options] <file.csv | directory | glob>...\n" +
+            "       DailyTradeReport -tail [options] <file.csv | ->\n" +
+            "  Several files are loaded at once (see -threads) and reported on together\n" +
+            "  Options:\n" +
+            "    -tail         follow the file as trades are added to it (or read stdin for '-'),\n" +
+            "                  printing the results for days that change as text on the console\n" +
+            "    -interval <n> minimum time between updates for -tail, in milliseconds (default: 500)\n" +
+            "    -stream       process trades as they are read instead of loading the whole file first\n" +
+            "    -parallel     parse and aggregate the file on several threads\n" +
+            "    -columnar     load trades into a columnar store before processing\n" +
+            "    -offheap      hold the columnar store outside the Java heap\n" +
+            "    -lazy         walk the memory mapped file, decoding only the fields the report\n" +
+            "                  needs - bad values in other fields aren't found\n" +
+            "    -snapshot <f> also write the trades to a binary snapshot file that can be\n" +
+            "                  reported on instead of the CSV file, without parsing\n" +
+            "    -cache <d>    keep the results for the file in a cache directory, so only\n" +
+            "                  the parts changed since the last run are parsed\n" +
+            "    -cache-size <n> most space the cache may take up, in MB (default: 256)\n" +
+            "    -threads <n>  number of threads for -parallel or for loading several files\n" +
+            "                  (default: number of processors)\n" +
+            "    -top <n>      only print the top n entities in each ranking\n" +
+            "    -fixed        add up USD amounts exactly in fixed point, so totals and rankings\n" +
+            "                  don't depend on the order of the trades\n" +
+            "    -commons-csv  parse files with commons-csv instead of the byte tokenizer\n" +
+            "    -format <f>   format of the report: text, csv or json (default: text)\n" +
+            "    -output <f>   write the report to a file instead of the console\n" +
+            "    -quarantine <f> skip records that can't be decoded, writing them to a CSV file\n" +
+            "                  with their line numbers and the reasons they were rejected\n" +
+            "    -metrics      print timings and counts for each stage of the run on stderr\n" +
+            "    -holidays <d> directory of public holiday files, one per currency (e.g. GBP.txt)\n" +
+            "    -years <f-l>  range of years covered by the holiday calendars (default: 1970-2099)";
+
+    // names of the input CSV files, directories or glob patterns
+    private final List<String> input_filenames;
+    
+    // true to follow the input as it grows, and the time between updates
+    private boolean tail;
+    private int update_interval;
+    
+    // true to feed trades to the report as they are parsed
+    private boolean streaming;
+    
+    // true to parse and aggregate on several threads
+    private boolean parallel;
+    
+    // true to load trades into a columnar store, optionally off the heap
+    private boolean columnar;
+    private boolean off_heap;
+    
+    // name of a snapshot file to write, null for none
+    private String snapshot_filename;
+    
+    // directory of the results cache, null for none, and the most it may take up in bytes
+    private String cache_directory;
+    private long max_cache_size;
+    
+    // number of threads to use
+    private int n_threads;
+    
+    // format of the report and the file to write it to, null for the console
+    private String report_format;
+    private String output_filename;
+    
+    // file to write bad records to instead of stopping at the first one, null for none
+    private String quarantine_filename;
+    
+    // true to print the pipeline metrics at the end of the run
+    private boolean metrics;
+    
+    // true to walk the file with a lazy view, decoding only the fields that are needed
+    private boolean lazy;
+    
+    // true to accumulate USD amounts as exact fixed point values
+    private boolean fixed_point;
+    
+    // true to parse files with commons-csv rather than as bytes
+    private boolean commons_csv;
+    
+    // maximum length of the printed entity rankings
+    private int max_rankings;
+    
+    // directory of public holiday files, null for none, and the years they cover
+    private String holiday_directory;
+    private int first_holiday_year;
+    private int last_holiday_year;
+    
+    /** Decode the command line.
+     * 
+     * @param args the command line arguments
+     * @throws IllegalArgumentException if the command line is not valid
+     */
+    public ReportOptions (String args []) {
+        input_filenames = new ArrayList<> ();
+        tail = false;
+        update_interval = 500;
+        streaming = false;
+        parallel = false;
+        columnar = false;
+        off_heap = false;
+        snapshot_filename = null;
+        lazy = false;
+        cache_directory = null;
+        max_cache_size = TradeReportCache.DEFAULT_MAX_SIZE;
+        n_threads = Runtime.getRuntime().availableProcessors();
+        max_rankings = Integer.MAX_VALUE;
+        fixed_point = false;
+        commons_csv = false;
+        report_format = "text";
+        output_filename = null;
+        quarantine_filename = null;
+        metrics = false;
+        holiday_directory = null;
+        first_holiday_year = 1970;
+        last_holiday_year = 2099;
+        
+        for (int count = 0; count < args.length; count ++) {
+            String arg = args [count];
+            if (! input_filenames.isEmpty()) {
+                if (arg.startsWith ("-"))
+                    throw new IllegalArgumentException ("Unexpected command line argument: " + arg);
+                input_filenames.add (arg);
+            }
+            else if (arg.equals ("-tail"))
+                tail = true;
+            else if (arg.equals ("-interval"))
+                update_interval = parsePositiveInt (arg, ++ count < args.length ? args [count] : null);
+            else if (arg.equals ("-stream"))
+                streaming = true;
+            else if (arg.equals ("-parallel"))
+                parallel = true;
+            else if (arg.equals ("-columnar"))
+                columnar = true;
+            else if (arg.equals ("-offheap"))
+                columnar = off_heap = true;
+            else if (arg.equals ("-snapshot")) {
+                if (++ count >= args.length)
+                    throw new IllegalArgumentException ("Missing value for " + arg);
+                snapshot_filename = args [count];
+            }
+            else if (arg.equals ("-cache")) {
+                if (++ count >= args.length)
+                    throw new IllegalArgumentException ("Missing value for " + arg);
+                cache_directory = args [count];
+            }
+            else if (arg.equals ("-cache-size"))
+                max_cache_size = parsePositiveInt (arg, ++ count < args.length ? args [count] : null) * 1024l * 1024l;
+            else if (arg.equals ("-threads"))
+                n_threads = parsePositiveInt (arg, ++ count < args.length ? args [count] : null);
+            else if (arg.equals ("-holidays")) {
+                if (++ count >= args.length)
+                    throw new IllegalArgumentException ("Missing value for " + arg);
+                holiday_directory = args [count];
+            }
+            else if (arg.equals ("-years")) {
+                String years [] = count + 1 < args.length ? args [count + 1].split ("-") : new String [0];
+                if (years.length != 2)
+                    throw new IllegalArgumentException ("Bad or missing value for " + arg + ": " + (count + 1 < args.length ? args [count + 1] : null));
+                first_holiday_year = parsePositiveInt (arg, years [0]);
+                last_holiday_year = parsePositiveInt (arg, years [1]);
+                if (last_holiday_year < first_holiday_year)
+                    throw new IllegalArgumentException ("Bad value for " + arg + ": " + args [count + 1]);
+                count ++;
+            }
+            else if (arg.equals ("-format")) {
+                if (++ count >= args.length || ! Arrays.asList (ReportWriter.FORMATS).contains (args [count]))
+                    throw new IllegalArgumentException ("Bad or missing value for " + arg + ": " + (count < args.length ? args [count] : null));
+                report_format = args [count];
+            }
+            else if (arg.equals ("-output")) {
+                if (++ count >= args.length)
+                    throw new IllegalArgumentException ("Missing value for " + arg);
+                output_filename = args [count];
+            }
+            else if (arg.equals ("-quarantine")) {
+                if (++ count >= args.length)
+                    throw new IllegalArgumentException ("Missing value for " + arg);
+                quarantine_filename = args [count];
+            }
+            else if (arg.equals ("-metrics"))
+                metrics = true;
+            else if (arg.equals ("-lazy"))
+                lazy = true;
+            else if (arg.equals ("-fixed"))
+                fixed_point = true;
+            else if (arg.equals ("-commons-csv"))
+                commons_csv = true;
+            else if (arg.equals ("-top"))
+                max_rankings = parsePositiveInt (arg, ++ count < args.length ? args [count] : null);
+            else if (arg.startsWith ("-") && ! (tail && arg.equals ("-")))
+                throw new IllegalArgumentException ("Unknown option: " + arg);
+            else
+                input_filenames.add (arg);
+        }
+        
+        if (input_filenames.isEmpty())
+            throw new IllegalArgumentException ("Missing command line argument: name of input CSV file");
+        if (tail && input_filenames.size() > 1)
+            throw new IllegalArgumentException ("Only one input file can be followed with -tail");
+        if (tail && (output_filename != null || ! report_format.equals ("text")))
+            throw new IllegalArgumentException ("-tail prints text updates to the console, so it can't be used with -format or -output");
+        if (lazy && quarantine_filename != null)
+            throw new IllegalArgumentException ("-lazy can't be used with -quarantine, as fields that aren't read aren't checked");
+        if (snapshot_filename != null && (tail || parallel))
+            throw new IllegalArgumentException ("-snapshot can't be used with " + (tail ? "-tail" : "-parallel") + ", as the trades aren't loaded into a store to write from");
+        if (cache_directory != null && input_filenames.size() > 1)
+            throw new IllegalArgumentException ("-cache can only be used with a single input file");
+        if (cache_directory != null && parallel)
+            throw new IllegalArgumentException ("-cache reads the file on one thread, so it can't be used with -parallel");
+        if (cache_directory != null && (tail || streaming || columnar || off_heap || lazy || snapshot_filename != null))
+            throw new IllegalArgumentException ("-cache loads the file its own way, so it can't be used with -tail, -stream, -columnar, -offheap, -lazy or -snapshot");
+    }
+    
+    /** Helper function to decode the numeric value of an option.
+     * @param option the name of the option, for error messages
+     * @param value the value to decode (may be null if it was missing)
+     * @return the value
+     * @throws IllegalArgumentException if the value is missing or not a positive integer
+     */
+    private static int parsePositiveInt (String option, String value) {
+        int int_value;
+        try { int_value = Integer.parseInt (value); }
+        catch (NumberFormatException e) { int_value = 0; }
+        if (int_value <= 0)
+            throw new IllegalArgumentException ("Bad or missing value for " + option + ": " + value);
+        return int_value;
+    }
+    
+    /** Get the name of the first input file.
+     * @return the file name */
+    public String getInputFilename () { return input_filenames.get (0); }
+    
+    /** Get the names of all the input files, directories and glob patterns, in the
+     * order they were given.
+     * @return the names */
+    public List<String> getInputFilenames () { return input_filenames; }
+    
+    /** Find out whether the input should be followed as trades are added to it.
+     * @return true for tail mode */
+    public boolean isTail () { return tail; }
+    
+    /** Find out whether the input is the standard input stream (only in tail mode).
+     * @return true to read trades from stdin */
+    public boolean isStandardInput () { return tail && getInputFilename().equals ("-"); }
+    
+    /** Get the minimum time between updates in tail mode.
+     * @return the time in milliseconds */
+    public int getUpdateInterval () { return update_interval; }
+    
+    /** Find out whether trades should be processed as they are read.
+     * @return true for streaming mode, false to load all trades before processing */
+    public boolean isStreaming () { return streaming; }
+    
+    /** Find out whether trades should be parsed and aggregated on several threads.
+     * @return true for parallel mode */
+    public boolean isParallel () { return parallel; }
+    
+    /** Find out whether trades should be loaded into a columnar store.
+     * @return true for the columnar store */
+    public boolean isColumnar () { return columnar; }
+    
+    /** Find out whether the columnar store should be held outside the heap.
+     * @return true for off-heap storage */
+    public boolean isOffHeap () { return off_heap; }
+    
+    /** Get the name of the snapshot file to write.
+     * @return the file name, null if no snapshot should be written */
+    public String getSnapshotFilename () { return snapshot_filename; }
+    
+    /** Get the number of threads to use in parallel mode or when loading several files.
+     * @return the number of threads */
+    public int getNThreads () { return n_threads; }
+    
+    /** Get the directory of public holiday files.
+     * @return the directory name, null if no holidays should be used */
+    public String getHolidayDirectory () { return holiday_directory; }
+    
+    /** Get the first year covered by the holiday calendars.
+     * @return the year */
+    public int getFirstHolidayYear () { return first_holiday_year; }
+    
+    /** Get the last year covered by the holiday calendars.
+     * @return the year */
+    public int getLastHolidayYear () { return last_holiday_year; }
+    
+    /** Get the format of the report.
+     * @return one of {@link ReportWriter#FORMATS} */
+    public String getReportFormat () { return report_format; }
+    
+    /** Get the name of the file to write the report to.
+     * @return the file name, null to write the report to the console */
+    public String getOutputFilename () { return output_filename; }
+    
+    /** Get the name of the file to write records that can't be decoded to. If there
+     * is one, bad records are skipped rather than stopping the program.
+     * @return the file name, null to stop at the first bad record */
+    public String getQuarantineFilename () { return quarantine_filename; }
+    
+    /** Find out whether the pipeline metrics should be printed at the end of the run.
+     * @return true to print the metrics */
+    public boolean isMetrics () { return metrics; }
+    
+    /** Find out whether the file should be walked with a lazy view.
+     * @return true to decode only the fields that are needed */
+    public boolean isLazy () { return lazy; }
+    
+    /** Get the directory of the results cache.
+     * @return the directory name, null for no cache */
+    public String getCacheDirectory () { return cache_directory; }
+    
+    /** Get the most space that the results cache may take up.
+     * @return the size in bytes */
+    public long getMaxCacheSize () { return max_cache_size; }
+    
+    /** Find out whether USD amounts should be added up in fixed point.
+     * @return true for fixed point, false for doubles */
+    public boolean isFixedPoint () { return fixed_point; }
+    
+    /** Find out whether files should be parsed with commons-csv.
+     * @return true for commons-csv, false to read them as bytes where possible */
+    public boolean isCommonsCSV () { return commons_csv; }
+    
+    /** Get the maximum number of entities to print in each ranking.
+     * @return the maximum, Integer.MAX_VALUE if there is no limit */
+    public int getMaxRankings () { return max_rankings; }
+}
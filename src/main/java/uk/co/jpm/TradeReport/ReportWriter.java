@@ -0,0 +1,204 @@
+package uk.co.jpm.TradeReport;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import uk.co.jpm.TradingLibrary.EpochDay;
+
+/**
+ * Writes the daily trade report in one of several formats. The report is rendered
+ * into a reusable buffer, without creating formatters or intermediate strings, and
+ * the buffer is written to a channel (e.g. a file) in large blocks. Subclasses
+ * render the report in a particular format - use {@link #create} to make a writer
+ * for a named format.
+ *
+ * @author smf
+ */
+public abstract class ReportWriter implements Flushable {
+
+    /** The names of the formats understood by {@link #create} */
+    public static final String FORMATS [] = { "text", "csv", "json" };
+
+    // size of the output buffers - the character buffer is written out when it gets this big
+    private static final int BUFFER_SIZE = 65536;
+
+    // month names for dd-MMM-yyyy dates
+    private static final String MONTH_NAMES [] = {
+        "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"
+    };
+
+    // values at least this big are formatted the slow way, as the fast way loses precision
+    private static final double MAX_FAST_FORMAT = 1e10;
+
+    // values whose scaled fraction is this close to a half are formatted the slow way
+    private static final double ROUNDING_TOLERANCE = 1e-3;
+
+    /** The buffer the report is rendered into */
+    protected final StringBuilder buffer;
+
+    /** The maximum number of entities to write in each ranking */
+    protected final int max_rankings;
+
+    // where the report is written and the objects used to encode it
+    private final WritableByteChannel channel;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer byte_buffer;
+
+    /** Create a report writer.
+     * @param channel where to write the report
+     * @param max_rankings the maximum number of entities to write in each ranking
+     */
+    protected ReportWriter (WritableByteChannel channel, int max_rankings) {
+        this.channel = channel;
+        this.max_rankings = max_rankings;
+        buffer = new StringBuilder (BUFFER_SIZE + BUFFER_SIZE / 4);
+        encoder = StandardCharsets.UTF_8.newEncoder();
+        byte_buffer = ByteBuffer.allocate (BUFFER_SIZE);
+    }
+
+    /** Create a report writer for a named format.
+     * @param format the name of the format, one of {@link #FORMATS}
+     * @param channel where to write the report
+     * @param max_rankings the maximum number of entities to write in each ranking
+     * @return the writer
+     * @throws IllegalArgumentException if the format is not known
+     */
+    public static ReportWriter create (String format, WritableByteChannel channel, int max_rankings) {
+        switch (format.toLowerCase (Locale.ROOT)) {
+            case "text": return new TextReportWriter (channel, max_rankings);
+            case "csv":  return new CsvReportWriter (channel, max_rankings);
+            case "json": return new JsonReportWriter (channel, max_rankings);
+            default: throw new IllegalArgumentException ("Unknown report format: " + format);
+        }
+    }
+
+    /** Write a complete report and flush it to the channel.
+     * @param daily_sars the settlements and rankings for each day, in date order
+     * @param overall_sar the settlements and rankings for the whole of the input data
+     * @throws IOException if there was an error writing the report
+     */
+    public void writeReport (Iterable<SettlementsAndRankings> daily_sars, SettlementsAndRankings overall_sar) throws IOException {
+        startReport ();
+        for (SettlementsAndRankings sar : daily_sars)
+            writeSAR (sar);
+        writeSAR (overall_sar);
+        endReport ();
+        flush ();
+    }
+
+    /** Render the start of the report.
+     * @throws IOException if there was an error writing the report */
+    public abstract void startReport () throws IOException;
+
+    /** Render the settlements and rankings for a day, or for the whole of the
+     * input data if the SettlementsAndRankings has no date bound. Days must be
+     * written first, in date order, followed by the overall results.
+     * @param sar the settlements and rankings
+     * @throws IOException if there was an error writing the report */
+    public abstract void writeSAR (SettlementsAndRankings sar) throws IOException;
+
+    /** Render the end of the report.
+     * @throws IOException if there was an error writing the report */
+    public abstract void endReport () throws IOException;
+
+    /** Write the contents of the buffer to the channel if the buffer is full. Subclasses
+     * call this between the parts of the report.
+     * @throws IOException if there was an error writing to the channel */
+    protected void flushIfFull () throws IOException {
+        if (buffer.length() >= BUFFER_SIZE)
+            flush ();
+    }
+
+    /** Write the contents of the buffer to the channel.
+     * @throws IOException if there was an error writing to the channel */
+    @Override
+    public void flush () throws IOException {
+        CharBuffer chars = CharBuffer.wrap (buffer);
+        encoder.reset();
+        CoderResult result;
+        do {
+            result = encoder.encode (chars, byte_buffer, true);
+            if (result.isError())
+                result.throwException();
+            writeBytes ();
+        } while (result.isOverflow());
+        while (encoder.flush (byte_buffer).isOverflow())
+            writeBytes ();
+        writeBytes ();
+        buffer.setLength (0);
+    }
+
+    /** Helper function to write everything in the byte buffer to the channel.
+     * @throws IOException if there was an error writing to the channel */
+    private void writeBytes () throws IOException {
+        byte_buffer.flip ();
+        while (byte_buffer.hasRemaining())
+            channel.write (byte_buffer);
+        byte_buffer.clear ();
+    }
+
+    /** Append an amount of money to the buffer with 2 decimal places, the same as
+     * formatting it with "%.2f" (e.g. 1234.5 gives "1234.50"). Most values are
+     * formatted with integer arithmetic - values that are large, negative or close
+     * to half way between two cents are passed to String.format.
+     * @param value the amount */
+    protected void appendMoney (double value) {
+        double scaled = value * 100.0;
+        double fraction = scaled - Math.floor (scaled);
+        if (value >= 0.0 && value < MAX_FAST_FORMAT && Math.abs (fraction - 0.5) > ROUNDING_TOLERANCE) {
+            long cents = (long) Math.floor (scaled) + (fraction > 0.5 ? 1 : 0);
+            buffer.append (cents / 100).append ('.');
+            long remainder = cents % 100;
+            if (remainder < 10) buffer.append ('0');
+            buffer.append (remainder);
+        } else
+            buffer.append (String.format (Locale.ROOT, "%.2f", value));
+    }
+
+    /** Append a date to the buffer as dd-MMM-yyyy (e.g. 02-Jan-2017).
+     * @param date the date */
+    protected void appendDayMonthYear (Date date) {
+        int year_month_day = EpochDay.toYearMonthDay (EpochDay.fromDate (date));
+        appendDigits (year_month_day % 100, 2);
+        buffer.append ('-').append (MONTH_NAMES [year_month_day / 100 % 100 - 1]).append ('-');
+        appendDigits (year_month_day / 10000, 4);
+    }
+
+    /** Append a date to the buffer in ISO 8601 format, yyyy-MM-dd (e.g. 2017-01-02).
+     * @param date the date */
+    protected void appendIsoDate (Date date) {
+        int year_month_day = EpochDay.toYearMonthDay (EpochDay.fromDate (date));
+        appendDigits (year_month_day / 10000, 4);
+        buffer.append ('-');
+        appendDigits (year_month_day / 100 % 100, 2);
+        buffer.append ('-');
+        appendDigits (year_month_day % 100, 2);
+    }
+
+    /** Helper function to append a positive number padded with leading zeros.
+     * @param value the number
+     * @param n_digits the minimum number of digits */
+    private void appendDigits (int value, int n_digits) {
+        for (int limit = 10; n_digits > 1; n_digits --, limit *= 10) {
+            if (value < limit) buffer.append ('0');
+        }
+        buffer.append (value);
+    }
+
+    /** Helper function to get an entity ranking with at most max_rankings entries.
+     * @param sar the settlements and rankings
+     * @param incoming true for the incoming ranking, false for outgoing
+     * @return the ranking, highest total first */
+    protected List<Map.Entry<String, Double>> getRankings (SettlementsAndRankings sar, boolean incoming) {
+        return incoming ? sar.topIncoming (max_rankings) : sar.topOutgoing (max_rankings);
+    }
+}
@@ -1,52 +1,79 @@
 package uk.co.jpm.TradeReport;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.stream.Collector;
+import uk.co.jpm.TradingLibrary.BusinessRules;
+import uk.co.jpm.TradingLibrary.EpochDay;
+import uk.co.jpm.TradingLibrary.FixedPoint;
 import uk.co.jpm.TradingLibrary.TradingData;
 
 /**
  * A class to accumulate trading statistics.
  * 
+ * If fixed point money was chosen when the object was created (see
+ * {@link BusinessRules#setFixedPointMoney}) the totals are held as exact 128 bit
+ * fixed point values, so they, and the rankings, don't depend on the order the
+ * trades were appended or merged in.
+ * 
  * @author smf
  */
 public class SettlementsAndRankings {
 
-    // date bound for settlements - null means no bound
+    // date bound for settlements - null means no bound, the epoch day
+    // is only valid when there is a bound
     private Date allowed_date;
+    private int allowed_day;
     
-    // dates found in settlements
-    private Date earliest_found_date;
-    private Date latest_found_date;
+    // dates found in settlements, as epoch days - only valid
+    // when at least one settlement has been found
+    private int earliest_found_day;
+    private int latest_found_day;
     
     // total number of settlements
     private int n_settlements = 0;
     
-    // totals for incoming and outgoing settlements
+    // totals for incoming and outgoing settlements - in fixed point mode they
+    // are held as the high and low longs of 128 bit values instead
+    private final boolean fixed_point;
     private double total_incoming_settlements;
     private double total_outgoing_settlements;
+    private long fixed_incoming_high, fixed_incoming_low;
+    private long fixed_outgoing_high, fixed_outgoing_low;
     
-    // incoming and outgoing entity rankings
-    private Map <String, Double> entity_incoming_rankings;
-    private Map <String, Double> entity_outgoing_rankings;
+    // incoming and outgoing entity rankings - held in primitive maps so that
+    // accumulating a trade does not allocate
+    private EntityTotals entity_incoming_rankings;
+    private EntityTotals entity_outgoing_rankings;
     
     /** Create a new SettlementsAndRnakings object specifying the valid date for settlements.
      * 
      * @param allowed_date Actual settlement dates must be on this date, null indicates no bound.
      */
     public SettlementsAndRankings (Date allowed_date) {
+        this (allowed_date, BusinessRules.isFixedPointMoney());
+    }
+    
+    /** Helper constructor for results in a given mode.
+     * @param allowed_date Actual settlement dates must be on this date, null indicates no bound.
+     * @param fixed_point true to hold exact fixed point totals, false for doubles
+     */
+    private SettlementsAndRankings (Date allowed_date, boolean fixed_point) {
         this.allowed_date = allowed_date;
-        earliest_found_date = null;
-        latest_found_date = null;
+        allowed_day = allowed_date == null ? 0 : EpochDay.fromDate (allowed_date);
+        earliest_found_day = 0;
+        latest_found_day = 0;
         n_settlements = 0;
         total_incoming_settlements = 0.0;
         total_outgoing_settlements = 0.0;
-        entity_incoming_rankings = new HashMap<> ();
-        entity_outgoing_rankings = new HashMap<> ();
+        this.fixed_point = fixed_point;
+        entity_incoming_rankings = new EntityTotals (fixed_point);
+        entity_outgoing_rankings = new EntityTotals (fixed_point);
     }
 
     /** Append a transaction to the accumulation of results.
@@ -54,98 +81,274 @@ public class SettlementsAndRankings {
      * @param trading_data The transaction to append.
      */
     public void append (TradingData trading_data) {
-        // check date bound
-        if (allowed_date != null)
-        {
-            if (trading_data.getActualSettlementDate().getTime() != allowed_date.getTime())
-                throw new RuntimeException ("SettlementsAndRankings.append passed invalid date: " + trading_data.getActualSettlementDate().toString());
+        if (fixed_point)
+            appendFixed (trading_data.getActualSettlementEpochDay(), trading_data.getTradeType(),
+                         trading_data.getEntityName(), trading_data.calcPriceUSDFixed());
+        else
+            append (trading_data.getActualSettlementEpochDay(), trading_data.getTradeType(),
+                    trading_data.getEntityName(), trading_data.calcPriceUSD());
+    }
+    
+    /** Append the parts of a transaction that are needed for the results. Allows
+     * results to be accumulated from sources that don't hold TradingData objects.
+     * 
+     * @param actual_day The actual settlement date of the transaction as an epoch day.
+     * @param trade_type The type of the transaction.
+     * @param entity_name The entity responsible for the transaction.
+     * @param trade_value The value of the transaction in USD, rounded to
+     *        {@link FixedPoint#USD_DIGITS} places in fixed point mode.
+     */
+    public void append (int actual_day, TradingData.TradeType trade_type, String entity_name, double trade_value) {
+        if (fixed_point) {
+            appendFixed (actual_day, trade_type, entity_name, FixedPoint.toScaled (trade_value, FixedPoint.USD_DIGITS));
+            return;
         }
-        
-        // general information
-        if (earliest_found_date == null)
-            earliest_found_date = trading_data.getActualSettlementDate();
-        else if (trading_data.getActualSettlementDate().getTime() < earliest_found_date.getTime())
-            earliest_found_date = trading_data.getActualSettlementDate();
-        if (latest_found_date == null)
-            latest_found_date = trading_data.getActualSettlementDate();
-        else if (trading_data.getActualSettlementDate().getTime() > latest_found_date.getTime())
-            latest_found_date = trading_data.getActualSettlementDate();
-        n_settlements ++;
+        countSettlement (actual_day);
         
         // accumulate settlement totals and trading entity rankings
-        double trade_value = trading_data.calcPriceUSD();
-        switch (trading_data.getTradeType()) {
+        switch (trade_type) {
             case SELL: 
                 total_incoming_settlements += trade_value; 
-                accumulateRankingValue (entity_incoming_rankings, trading_data.getEntityName(), trade_value);
+                entity_incoming_rankings.add (entity_name, trade_value);
                 break;
             case BUY:  
                 total_outgoing_settlements += trade_value; 
-                accumulateRankingValue (entity_outgoing_rankings, trading_data.getEntityName(), trade_value);
+                entity_outgoing_rankings.add (entity_name, trade_value);
+                break;
+            default: 
+                throw new RuntimeException ("Bad trading type: " + trade_type.toString());
+        }
+    }
+    
+    /** Append the parts of a transaction that are needed for the results, with
+     * an exact fixed point value (see {@link TradingData#calcPriceUSDFixed}).
+     * 
+     * @param actual_day The actual settlement date of the transaction as an epoch day.
+     * @param trade_type The type of the transaction.
+     * @param entity_name The entity responsible for the transaction.
+     * @param trade_value The value of the transaction in USD, scaled to {@link FixedPoint#USD_DIGITS} places.
+     */
+    public void appendFixed (int actual_day, TradingData.TradeType trade_type, String entity_name, long trade_value) {
+        if (! fixed_point) {
+            append (actual_day, trade_type, entity_name, FixedPoint.toDouble (trade_value, FixedPoint.USD_DIGITS));
+            return;
+        }
+        countSettlement (actual_day);
+        
+        // accumulate settlement totals and trading entity rankings
+        switch (trade_type) {
+            case SELL: 
+                fixed_incoming_high = FixedPoint.addHigh (fixed_incoming_high, fixed_incoming_low, trade_value);
+                fixed_incoming_low += trade_value;
+                entity_incoming_rankings.addFixed (entity_name, trade_value);
+                break;
+            case BUY:  
+                fixed_outgoing_high = FixedPoint.addHigh (fixed_outgoing_high, fixed_outgoing_low, trade_value);
+                fixed_outgoing_low += trade_value;
+                entity_outgoing_rankings.addFixed (entity_name, trade_value);
                 break;
             default: 
-                throw new RuntimeException ("Bad trading type: " + trading_data.getTradeType().toString());
+                throw new RuntimeException ("Bad trading type: " + trade_type.toString());
+        }
+    }
+    
+    /** Helper function to check the date of a transaction and count it.
+     * @param actual_day The actual settlement date of the transaction as an epoch day.
+     */
+    private void countSettlement (int actual_day) {
+        // check date bound
+        if (allowed_date != null)
+        {
+            if (actual_day != allowed_day)
+                throw new RuntimeException ("SettlementsAndRankings.append passed invalid date: " + EpochDay.toDate (actual_day).toString());
         }
+        
+        // general information
+        if (n_settlements == 0 || actual_day < earliest_found_day)
+            earliest_found_day = actual_day;
+        if (n_settlements == 0 || actual_day > latest_found_day)
+            latest_found_day = actual_day;
+        n_settlements ++;
     }
     
+    /** Merge the results accumulated in another SettlementsAndRankings object into
+     * this one. The result is the same as if all the transactions appended to the
+     * other object had been appended to this one.
+     * 
+     * @param other the results to merge, which are not changed
+     */
+    public void merge (SettlementsAndRankings other) {
+        // check date bound
+        if (allowed_date != null && other.n_settlements > 0)
+        {
+            if (other.earliest_found_day != allowed_day || other.latest_found_day != allowed_day)
+                throw new RuntimeException ("SettlementsAndRankings.merge passed invalid date: " + other.getEarlistActualSettlementDate().toString());
+        }
+        
+        // general information
+        if (other.n_settlements > 0) {
+            if (n_settlements == 0 || other.earliest_found_day < earliest_found_day)
+                earliest_found_day = other.earliest_found_day;
+            if (n_settlements == 0 || other.latest_found_day > latest_found_day)
+                latest_found_day = other.latest_found_day;
+        }
+        n_settlements += other.n_settlements;
+        
+        // accumulate settlement totals and trading entity rankings
+        if (fixed_point && other.fixed_point) {
+            fixed_incoming_high = FixedPoint.addHigh (fixed_incoming_high, fixed_incoming_low, other.fixed_incoming_high, other.fixed_incoming_low);
+            fixed_incoming_low += other.fixed_incoming_low;
+            fixed_outgoing_high = FixedPoint.addHigh (fixed_outgoing_high, fixed_outgoing_low, other.fixed_outgoing_high, other.fixed_outgoing_low);
+            fixed_outgoing_low += other.fixed_outgoing_low;
+        } else if (fixed_point) {
+            fixed_incoming_high = FixedPoint.addHigh (fixed_incoming_high, fixed_incoming_low, toFixed (other.total_incoming_settlements));
+            fixed_incoming_low += toFixed (other.total_incoming_settlements);
+            fixed_outgoing_high = FixedPoint.addHigh (fixed_outgoing_high, fixed_outgoing_low, toFixed (other.total_outgoing_settlements));
+            fixed_outgoing_low += toFixed (other.total_outgoing_settlements);
+        } else {
+            total_incoming_settlements += other.getIncomingTotalUSD();
+            total_outgoing_settlements += other.getOutgoingTotalUSD();
+        }
+        entity_incoming_rankings.addAll (other.entity_incoming_rankings);
+        entity_outgoing_rankings.addAll (other.entity_outgoing_rankings);
+    }
+    
+    /** Create a Collector that accumulates a stream of transactions into a
+     * SettlementsAndRankings object with no date bound. The Collector can be used
+     * with parallel streams - partial results are combined with {@link #merge}.
+     * @return the Collector */
+    public static Collector<TradingData, SettlementsAndRankings, SettlementsAndRankings> collector () {
+        return Collector.of (() -> new SettlementsAndRankings (null),
+                             SettlementsAndRankings::append,
+                             (sar1, sar2) -> { sar1.merge (sar2); return sar1; },
+                             Collector.Characteristics.IDENTITY_FINISH);
+    }
+    
+    /** Write the results to a stream, exactly as they are held, so that they can
+     * be read back and appended to as if they had never been written.
+     * @param out the stream
+     * @throws IOException if there was an error writing the stream */
+    void write (DataOutput out) throws IOException {
+        out.writeBoolean (allowed_date != null);
+        out.writeInt (allowed_day);
+        out.writeInt (earliest_found_day);
+        out.writeInt (latest_found_day);
+        out.writeInt (n_settlements);
+        out.writeBoolean (fixed_point);
+        if (fixed_point) {
+            out.writeLong (fixed_incoming_high);
+            out.writeLong (fixed_incoming_low);
+            out.writeLong (fixed_outgoing_high);
+            out.writeLong (fixed_outgoing_low);
+        } else {
+            out.writeDouble (total_incoming_settlements);
+            out.writeDouble (total_outgoing_settlements);
+        }
+        entity_incoming_rankings.write (out);
+        entity_outgoing_rankings.write (out);
+    }
+    
+    /** Read results written by {@link #write}.
+     * @param in the stream
+     * @return the results
+     * @throws IOException if there was an error reading the stream */
+    static SettlementsAndRankings read (DataInput in) throws IOException {
+        boolean has_allowed_date = in.readBoolean ();
+        int allowed_day = in.readInt ();
+        int earliest_found_day = in.readInt ();
+        int latest_found_day = in.readInt ();
+        int n_settlements = in.readInt ();
+        SettlementsAndRankings sar = new SettlementsAndRankings (has_allowed_date ? EpochDay.toDate (allowed_day) : null, in.readBoolean ());
+        sar.earliest_found_day = earliest_found_day;
+        sar.latest_found_day = latest_found_day;
+        sar.n_settlements = n_settlements;
+        if (sar.fixed_point) {
+            sar.fixed_incoming_high = in.readLong ();
+            sar.fixed_incoming_low = in.readLong ();
+            sar.fixed_outgoing_high = in.readLong ();
+            sar.fixed_outgoing_low = in.readLong ();
+        } else {
+            sar.total_incoming_settlements = in.readDouble ();
+            sar.total_outgoing_settlements = in.readDouble ();
+        }
+        sar.entity_incoming_rankings = EntityTotals.read (in);
+        sar.entity_outgoing_rankings = EntityTotals.read (in);
+        return sar;
+    }
+    
+    /** Helper function to round a double USD amount to fixed point.
+     * @param value the amount
+     * @return the amount scaled to {@link FixedPoint#USD_DIGITS} places */
+    private static long toFixed (double value) { return FixedPoint.toScaled (value, FixedPoint.USD_DIGITS); }
+    
     /** Get the total of incoming trades.
      * @return The total in USD. */
-    public double getIncomingTotalUSD () { return total_incoming_settlements; }
+    public double getIncomingTotalUSD () {
+        return fixed_point ? FixedPoint.toDouble (fixed_incoming_high, fixed_incoming_low, FixedPoint.USD_DIGITS) : total_incoming_settlements;
+    }
     
     /** Get the total of outgoing trades.
      * @return The total in USD. */
-    public double getOutgoingTotalUSD () { return total_outgoing_settlements; }
+    public double getOutgoingTotalUSD () {
+        return fixed_point ? FixedPoint.toDouble (fixed_outgoing_high, fixed_outgoing_low, FixedPoint.USD_DIGITS) : total_outgoing_settlements;
+    }
+    
+    /** Get the exact total of incoming trades. In double mode this is the exact
+     * value of the double total.
+     * @return The total in USD. */
+    public BigDecimal getExactIncomingTotalUSD () {
+        return fixed_point ? FixedPoint.toBigDecimal (fixed_incoming_high, fixed_incoming_low, FixedPoint.USD_DIGITS) : new BigDecimal (total_incoming_settlements);
+    }
+    
+    /** Get the exact total of outgoing trades. In double mode this is the exact
+     * value of the double total.
+     * @return The total in USD. */
+    public BigDecimal getExactOutgoingTotalUSD () {
+        return fixed_point ? FixedPoint.toBigDecimal (fixed_outgoing_high, fixed_outgoing_low, FixedPoint.USD_DIGITS) : new BigDecimal (total_outgoing_settlements);
+    }
+    
+    /** Find out whether the totals are held as exact fixed point values.
+     * @return true for fixed point, false for doubles */
+    public boolean isFixedPoint () { return fixed_point; }
     
     /** Create a List of entities with the total incoming trades each has transacted, in order of highest total.
      * @return The list, sorted into ascending order. */
-    public List<Map.Entry<String, Double>> createIncomingRankings () { return createSortedListFromMap (entity_incoming_rankings); }
+    public List<Map.Entry<String, Double>> createIncomingRankings () { return entity_incoming_rankings.createSortedList (); }
 
     /** Create a List of entities with the total outgoing trades each has transacted, in order of highest total.
      * @return The list, sorted into ascending order. */
-    public List<Map.Entry<String, Double>> createOutgoingRankings () { return createSortedListFromMap (entity_outgoing_rankings); }
+    public List<Map.Entry<String, Double>> createOutgoingRankings () { return entity_outgoing_rankings.createSortedList (); }
 
+    /** Create a List of the k entities with the highest incoming totals, in order of highest total.
+     * This is cheaper than createIncomingRankings when there are many more entities than k.
+     * @param k the maximum number of entities in the list
+     * @return The list, sorted into ascending order. */
+    public List<Map.Entry<String, Double>> topIncoming (int k) { return entity_incoming_rankings.createTopList (k); }
+
+    /** Create a List of the k entities with the highest outgoing totals, in order of highest total.
+     * This is cheaper than createOutgoingRankings when there are many more entities than k.
+     * @param k the maximum number of entities in the list
+     * @return The list, sorted into ascending order. */
+    public List<Map.Entry<String, Double>> topOutgoing (int k) { return entity_outgoing_rankings.createTopList (k); }
+
+    /** Count the different entities that have made incoming or outgoing trades.
+     * @return The number of entities. */
+    public int countEntities () { return entity_incoming_rankings.size() + entity_outgoing_rankings.countNotIn (entity_incoming_rankings); }
+    
     /** get the allowed date for this set of SettlementsAndRankings
      * @return the allowed date which will be null if there is no date bound */
     public Date getAllowedDate () { return allowed_date; }
     
     /** Get the earliest settlement date in the statistics or null.
      * @return May return null if no trades have been appended. */
-    public Date getEarlistActualSettlementDate () { return earliest_found_date; }
+    public Date getEarlistActualSettlementDate () { return n_settlements == 0 ? null : EpochDay.toDate (earliest_found_day); }
 
     /** Get the latest settlement date in the statistics or null.
      * @return May return null if no trades have been appended. */
-    public Date getLatestActualSettlementDate () { return latest_found_date; }
+    public Date getLatestActualSettlementDate () { return n_settlements == 0 ? null : EpochDay.toDate (latest_found_day); }
     
     /** Get the number of settlements transacted.
      * @return The number of settlements. */
     public int getNSettlements () { return n_settlements; }
-
-    /** Helper function to accumulate rankings for entities into a Map
-     * @param entity_rankings the map
-     * @param entity_name the entity name to add or accumulate in the map
-     * @param trade_value the value of the transaction to accumulate
-     */
-    private static void accumulateRankingValue (Map<String, Double> entity_rankings, String entity_name, double trade_value) {
-        Double total_value = entity_rankings.get (entity_name);
-        if (total_value == null) total_value = new Double (0.0);
-        total_value = new Double (total_value.doubleValue() + trade_value);
-        entity_rankings.put (entity_name, total_value);
-    }
-    
-    /** Helper function to convert an unsorted Map to a sorted List. Sorting is done
-     * using the value of the Double map values (could be implemented using generics for
-     * a more general solution. Sort order is reversed (greatest first).
-     * @param unsorted_map the map to sort
-     * @return the sorted List */
-    private static List<Map.Entry<String, Double>> createSortedListFromMap (Map<String, Double> unsorted_map) {
-        Set<Map.Entry<String, Double>> set = unsorted_map.entrySet();
-        List<Map.Entry<String, Double>> list = new ArrayList<> (set);
-        Collections.sort (list, (Map.Entry<String, Double> e1, Map.Entry<String, Double> e2) -> {
-            if (e1.getValue() < e2.getValue()) return 1;
-            if (e1.getValue() > e2.getValue()) return -1;
-            return 0;
-        });
-        return list;
-    }
     
 }
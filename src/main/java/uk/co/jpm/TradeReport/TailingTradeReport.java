@@ -0,0 +1,228 @@
+package uk.co.jpm.TradeReport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.PrintStream;
+import java.util.Date;
+import java.util.TreeSet;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import uk.co.jpm.TradingLibrary.PipelineMetrics;
+import uk.co.jpm.TradingLibrary.QuarantineFile;
+import uk.co.jpm.TradingLibrary.TradingData;
+import uk.co.jpm.TradingLibrary.TradingDataParser;
+import uk.co.jpm.TradingLibrary.TradingDataRejectHandler;
+import uk.co.jpm.TradingLibrary.TradingDataVisitor;
+
+/**
+ * Follows a growing source of CSV trading data (e.g. a file that trades are
+ * being appended to, or a pipe) and keeps the daily trade report up to date as
+ * trades arrive. Each trade is added to the results as soon as its record is
+ * complete, and at most once every update interval the settlements and rankings
+ * for the days that have changed are printed, followed by the overall results.
+ * Nothing is re-read or re-aggregated when an update is printed.
+ *
+ * The input is read on the calling thread. Updates are printed from within the
+ * reads, between records, so no locking is needed.
+ *
+ * @author smf
+ */
+public class TailingTradeReport implements TradingDataVisitor {
+
+    // longest time to sleep while waiting for more input, in milliseconds
+    private static final long MAX_POLL_MILLIS = 50;
+
+    // the results for all the trades read so far
+    private final TradeReportAggregator aggregator;
+
+    // the days whose results have changed since the last update was printed
+    private final TreeSet<Date> changed_days;
+
+    // where to print updates and how many entities to print in each ranking
+    private final PrintStream stream;
+    private final int max_rankings;
+
+    // minimum time between updates and the earliest time the next update may be printed
+    private final long update_interval_millis;
+    private long next_update_millis;
+
+    // number of trades read and number of bad records skipped
+    private long n_trades;
+    private long n_bad_records;
+
+    /** Create a tailing trade report.
+     *
+     * @param stream where to print the updates
+     * @param max_rankings the maximum number of entities to print in each ranking
+     * @param update_interval_millis the minimum time between updates, in milliseconds
+     */
+    public TailingTradeReport (PrintStream stream, int max_rankings, long update_interval_millis) {
+        this.aggregator = new TradeReportAggregator ();
+        this.changed_days = new TreeSet<> ();
+        this.stream = stream;
+        this.max_rankings = max_rankings;
+        this.update_interval_millis = update_interval_millis;
+        this.next_update_millis = 0;
+        this.n_trades = 0;
+        this.n_bad_records = 0;
+    }
+
+    /** Add a trade to the results and record that its day has changed.
+     * @param trading_data The transaction to add.
+     */
+    @Override
+    public void visit (TradingData trading_data) {
+        aggregator.visit (trading_data);
+        changed_days.add (trading_data.getActualSettlementDate());
+        n_trades ++;
+    }
+
+    /** Read trades until the input ends, printing updates as they become due. The
+     * first record in the input is a header. Records that can't be decoded as
+     * trading data are reported on stderr and skipped, so that one bad trade
+     * doesn't stop a live report.
+     *
+     * @param in the source of CSV data
+     * @param follow true to wait for more data at the end of the input (e.g. for a
+     *        file that is still being written), in which case this method only
+     *        returns if the thread is interrupted; false to stop at the end of the input
+     * @throws IOException if there was an error reading the input, or the thread was
+     *         interrupted while waiting for more data
+     */
+    public void run (InputStream in, boolean follow) throws IOException {
+        run (in, follow, null);
+    }
+
+    /** Read trades until the input ends, printing updates as they become due. The
+     * first record in the input is a header. Records that can't be decoded as
+     * trading data are skipped and passed to a reject handler (e.g. a
+     * {@link QuarantineFile}), or reported on stderr if there isn't one.
+     *
+     * @param in the source of CSV data
+     * @param follow true to wait for more data at the end of the input, false to
+     *        stop at the end of the input (see {@link #run(InputStream, boolean)})
+     * @param rejects the object that will receive bad records, null to report them on stderr
+     * @throws IOException if there was an error reading the input, the thread was
+     *         interrupted while waiting for more data, or the reject handler failed
+     */
+    public void run (InputStream in, boolean follow, TradingDataRejectHandler rejects) throws IOException {
+        CSVParser parser = CSVFormat.RFC4180.withFirstRecordAsHeader().parse (new InputStreamReader (new FollowingInputStream (in, follow)));
+        TradingDataParser trading_data_parser = new TradingDataParser ();
+        long n_lines = parser.getCurrentLineNumber();
+        for (CSVRecord record : parser) {
+            long line_number = n_lines + 1;
+            n_lines = parser.getCurrentLineNumber();
+            if (trading_data_parser.parse (record) == TradingDataParser.Status.OK) {
+                visit (trading_data_parser.create ());
+                PipelineMetrics.getDefault().addRecordsRead (1);
+            } else {
+                if (rejects != null)
+                    rejects.reject (line_number, trading_data_parser.getMessage(), record);
+                else
+                    System.err.println ("Warning: skipping record on line " + line_number + ": " + trading_data_parser.getMessage());
+                PipelineMetrics.getDefault().addParseFailures (1);
+                n_bad_records ++;
+            }
+        }
+
+        // report on anything left over at the end of the input
+        printUpdate ();
+    }
+
+    /** Print an update if there are any changes and the update interval has passed.
+     * @return true if an update was printed
+     */
+    public boolean printUpdateIfDue () {
+        if (changed_days.isEmpty() || System.currentTimeMillis() < next_update_millis)
+            return false;
+        printUpdate ();
+        return true;
+    }
+
+    /** Print the results for the days that have changed since the last update, followed
+     * by the overall results. Nothing is printed if there have been no changes. */
+    public void printUpdate () {
+        if (changed_days.isEmpty())
+            return;
+
+        stream.println ("Daily Trade Reports (updated, " + n_trades + " trades)");
+        for (Date day : changed_days)
+            DailyTradeReport.printSAR (stream, aggregator.getDailySARs().getDailySAR().get (day), max_rankings);
+        DailyTradeReport.printSAR (stream, aggregator.getOverallSAR(), max_rankings);
+        stream.flush ();
+
+        changed_days.clear ();
+        next_update_millis = System.currentTimeMillis() + update_interval_millis;
+    }
+
+    /** Get the results for all the trades read so far.
+     * @return the results */
+    public TradeReportAggregator getAggregator () { return aggregator; }
+
+    /** Get the number of trades read so far.
+     * @return the number of trades */
+    public long getNTrades () { return n_trades; }
+
+    /** Get the number of records skipped because they couldn't be decoded.
+     * @return the number of bad records */
+    public long getNBadRecords () { return n_bad_records; }
+
+    /** An InputStream that prints updates while it waits for data and, if
+     * following, waits for more data at the end of its input instead of ending.
+     * Only data that is already available is returned, so the CSV parser
+     * sees each record as soon as it is complete. */
+    private class FollowingInputStream extends InputStream {
+
+        private final InputStream in;
+        private final boolean follow;
+
+        FollowingInputStream (InputStream in, boolean follow) {
+            this.in = in;
+            this.follow = follow;
+        }
+
+        @Override
+        public int read () throws IOException {
+            byte buffer [] = new byte [1];
+            int n = read (buffer, 0, 1);
+            return n <= 0 ? -1 : buffer [0] & 0xff;
+        }
+
+        @Override
+        public int read (byte buffer [], int off, int len) throws IOException {
+            while (true) {
+                printUpdateIfDue ();
+
+                // without pending changes a blocking read is fine, and it is the only
+                // way to find the end of a pipe - otherwise only read what's there
+                if (in.available() > 0 || (! follow && changed_days.isEmpty())) {
+                    int n = in.read (buffer, off, len);
+                    if (n > 0)
+                        PipelineMetrics.getDefault().addBytesRead (n);
+                    if (n > 0 || ! follow)
+                        return n;
+                }
+
+                try {
+                    Thread.sleep (Math.max (1, Math.min (MAX_POLL_MILLIS, update_interval_millis)));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException ("Interrupted while waiting for trading data");
+                }
+            }
+        }
+
+        @Override
+        public int available () throws IOException {
+            return in.available();
+        }
+
+        @Override
+        public void close () throws IOException {
+            in.close();
+        }
+    }
+}
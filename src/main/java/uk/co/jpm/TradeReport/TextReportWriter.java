@@ -0,0 +1,78 @@
+package uk.co.jpm.TradeReport;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.Map;
+
+/**
+ * Writes the daily trade report as plain text, in the layout that has always
+ * been printed to the console.
+ * 
+ * @author smf
+ */
+public class TextReportWriter extends ReportWriter {
+    
+    // the same line ending as PrintStream.println
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+    
+    /** Create a text report writer.
+     * @param channel where to write the report
+     * @param max_rankings the maximum number of entities to write in each ranking
+     */
+    public TextReportWriter (WritableByteChannel channel, int max_rankings) {
+        super (channel, max_rankings);
+    }
+    
+    @Override
+    public void startReport () throws IOException {
+        buffer.append ("Daily Trade Reports").append (LINE_SEPARATOR);
+    }
+    
+    @Override
+    public void writeSAR (SettlementsAndRankings sar) throws IOException {
+        // title
+        if (sar.getAllowedDate() != null) {
+            buffer.append ("  Total for ");
+            appendDayMonthYear (sar.getAllowedDate());
+        } else if (sar.getNSettlements() > 0) {
+            buffer.append ("  Overall total for ");
+            appendDayMonthYear (sar.getEarlistActualSettlementDate());
+            buffer.append (" to ");
+            appendDayMonthYear (sar.getLatestActualSettlementDate());
+        } else
+            buffer.append ("  Overall total (no trades)");
+        buffer.append (':').append (LINE_SEPARATOR);
+        
+        // total settlements for the period
+        buffer.append ("    Total incoming (USD): ");
+        appendMoney (sar.getIncomingTotalUSD());
+        buffer.append (LINE_SEPARATOR).append ("    Total outgoing (USD): ");
+        appendMoney (sar.getOutgoingTotalUSD());
+        buffer.append (LINE_SEPARATOR);
+        
+        // entity rankings for the period
+        buffer.append ("    Entity rankings, incoming:").append (LINE_SEPARATOR);
+        writeRankings (sar, true);
+        buffer.append ("    Entity rankings, outgoing:").append (LINE_SEPARATOR);
+        writeRankings (sar, false);
+        flushIfFull ();
+    }
+    
+    @Override
+    public void endReport () throws IOException {
+    }
+    
+    /** Helper function to write one of the entity rankings.
+     * @param sar the settlements and rankings
+     * @param incoming true for the incoming ranking, false for outgoing
+     * @throws IOException if there was an error writing the report */
+    private void writeRankings (SettlementsAndRankings sar, boolean incoming) throws IOException {
+        int rank_no = 1;
+        for (Map.Entry<String, Double> entry : getRankings (sar, incoming)) {
+            buffer.append ("      ").append (rank_no ++).append (") ").append (entry.getKey()).append (" (");
+            appendMoney (entry.getValue());
+            buffer.append (')').append (LINE_SEPARATOR);
+            flushIfFull ();
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package uk.co.jpm.TradeReport;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import uk.co.jpm.TradingLibrary.CurrencyRegistry;
+import uk.co.jpm.TradingLibrary.EpochDay;
+import uk.co.jpm.TradingLibrary.StringDictionary;
+import uk.co.jpm.TradingLibrary.TradingData;
+import uk.co.jpm.TradingLibrary.TradingDataTable;
+import uk.co.jpm.TradingLibrary.TradingDataVisitor;
+
+/**
+ * A cube of trade totals that can be grouped by any of currency, entity, day
+ * (the actual settlement date) and direction (incoming or outgoing). The cube
+ * is filled in a single pass over the trades at the finest grouping it is
+ * created with, and any coarser grouping (e.g. by currency, or by entity and
+ * currency) is then made by rolling up the cells of the cube, without reading
+ * the trades again. Each cell holds the total value of its trades in USD and
+ * the number of trades - a grouping without the direction adds incoming and
+ * outgoing trades together.
+ *
+ * Entities are dictionary encoded and the codes of a cell's dimensions are
+ * packed into a single long, so cells are found in a primitive hash table and
+ * adding a trade to an existing cell does not allocate. Groupings that have been
+ * made are kept and used for later roll-ups when they are smaller than the cube.
+ *
+ * @author smf
+ */
+public class TradeCube implements TradingDataVisitor {
+
+    /** The ways trades can be grouped */
+    public enum Dimension { CURRENCY, ENTITY, DAY, DIRECTION }
+
+    // layout of the dimensions in a packed key - direction in the lowest bit, then the
+    // currency id, the day (offset so that days before 1970 are positive) and the entity code
+    private static final int DIRECTION_SHIFT = 0;
+    private static final int DIRECTION_BITS = 1;
+    private static final int CURRENCY_SHIFT = DIRECTION_SHIFT + DIRECTION_BITS;
+    private static final int CURRENCY_BITS = 12;
+    private static final int DAY_SHIFT = CURRENCY_SHIFT + CURRENCY_BITS;
+    private static final int DAY_BITS = 20;
+    private static final int DAY_OFFSET = 1 << (DAY_BITS - 1);
+    private static final int ENTITY_SHIFT = DAY_SHIFT + DAY_BITS;
+    private static final int ENTITY_BITS = 31;
+
+    // the dimensions of the cube and its cells
+    private final Set<Dimension> dimensions;
+    private final Cells cells;
+
+    // which dimensions are in the cube, so adding a trade doesn't look them up
+    private final boolean has_direction;
+    private final boolean has_currency;
+    private final boolean has_day;
+    private final boolean has_entity;
+
+    // codes for the entity names
+    private final StringDictionary entities;
+
+    // groupings that have been made, by dimensions - cleared when trades are added
+    private final Map<Set<Dimension>, Grouping> groupings;
+
+    /** Create an empty cube.
+     * @param dimensions the dimensions of the finest grouping needed - all groupings
+     *        must use some or all of these dimensions
+     */
+    public TradeCube (Dimension... dimensions) {
+        this.dimensions = toSet (dimensions);
+        has_direction = this.dimensions.contains (Dimension.DIRECTION);
+        has_currency = this.dimensions.contains (Dimension.CURRENCY);
+        has_day = this.dimensions.contains (Dimension.DAY);
+        has_entity = this.dimensions.contains (Dimension.ENTITY);
+        cells = new Cells ();
+        entities = new StringDictionary ();
+        groupings = new HashMap<> ();
+    }
+
+    /** Add a trade to the cube.
+     * @param trading_data The transaction to add.
+     */
+    @Override
+    public void visit (TradingData trading_data) {
+        append (trading_data.getActualSettlementEpochDay(), trading_data.getTradeType(), trading_data.getEntityName(),
+                trading_data.getCurrencyId(), trading_data.calcPriceUSD());
+    }
+
+    /** Add all the transactions in a table (e.g. a columnar store) to the cube.
+     * @param table The transactions to add.
+     */
+    public void appendAll (TradingDataTable table) {
+        CurrencyRegistry registry = CurrencyRegistry.getDefault();
+        for (int row = 0; row < table.size(); row ++) {
+            append (table.getActualSettlementEpochDay (row), table.getTradeType (row), table.getEntityName (row),
+                    has_currency ? registry.intern (table.getCurrencyName (row)) : 0, table.calcPriceUSD (row));
+        }
+    }
+
+    /** Add the parts of a transaction that are needed for the cube.
+     * @param actual_day The actual settlement date of the transaction as an epoch day.
+     * @param trade_type The type of the transaction.
+     * @param entity_name The entity responsible for the transaction.
+     * @param currency_id The id of the transaction's currency in the default {@link CurrencyRegistry}.
+     * @param trade_value The value of the transaction in USD.
+     */
+    public void append (int actual_day, TradingData.TradeType trade_type, String entity_name, int currency_id, double trade_value) {
+        long key = 0;
+        if (has_direction)
+            key |= (long) (trade_type == TradingData.TradeType.SELL ? 1 : 0) << DIRECTION_SHIFT;
+        if (has_currency)
+            key |= (long) checkCode (currency_id, CURRENCY_BITS, "currencies") << CURRENCY_SHIFT;
+        if (has_day)
+            key |= (long) checkCode (actual_day + DAY_OFFSET, DAY_BITS, "days") << DAY_SHIFT;
+        if (has_entity)
+            key |= (long) checkCode (entities.encode (entity_name), ENTITY_BITS, "entities") << ENTITY_SHIFT;
+        cells.add (key, trade_value, 1);
+        if (! groupings.isEmpty())
+            groupings.clear ();
+    }
+
+    /** Group the trades by some of the dimensions of the cube. The grouping is made
+     * from the cells of the cube, or from a smaller grouping that has already been
+     * made, and is kept for later calls until more trades are added.
+     * @param grouping_dimensions the dimensions to group by, none for a single total
+     * @return the grouping
+     * @throws IllegalArgumentException if a dimension is not one of the cube's dimensions
+     */
+    public Grouping rollUp (Dimension... grouping_dimensions) {
+        Set<Dimension> grouping_set = toSet (grouping_dimensions);
+        if (! dimensions.containsAll (grouping_set))
+            throw new IllegalArgumentException ("Can't group by " + grouping_set + " in a cube of " + dimensions);
+        Grouping grouping = groupings.get (grouping_set);
+        if (grouping != null)
+            return grouping;
+
+        // roll up the smallest set of cells that has all the dimensions needed
+        Cells source = cells;
+        for (Grouping made : groupings.values()) {
+            if (made.dimensions.containsAll (grouping_set) && made.cells.size < source.size)
+                source = made.cells;
+        }
+        long mask = 0;
+        for (Dimension dimension : grouping_set)
+            mask |= getMask (dimension);
+        Cells rolled_up = new Cells ();
+        for (int cell = 0; cell < source.size; cell ++)
+            rolled_up.add (source.keys [cell] & mask, source.totals [cell], source.counts [cell]);
+
+        grouping = new Grouping (grouping_set, rolled_up);
+        groupings.put (grouping_set, grouping);
+        return grouping;
+    }
+
+    /** Get the dimensions of the cube.
+     * @return the dimensions */
+    public Set<Dimension> getDimensions () { return dimensions; }
+
+    /** Get the number of cells in the cube.
+     * @return the number of cells */
+    public int size () { return cells.size; }
+
+    /** Helper function to make a set of dimensions.
+     * @param dimensions the dimensions
+     * @return the set */
+    private static Set<Dimension> toSet (Dimension dimensions []) {
+        Set<Dimension> set = EnumSet.noneOf (Dimension.class);
+        for (Dimension dimension : dimensions)
+            set.add (dimension);
+        return set;
+    }
+
+    /** Helper function to check that a code fits in its part of a packed key.
+     * @param code the code
+     * @param n_bits the size of the part of the key
+     * @param description what the code is, for the error message
+     * @return the code
+     * @throws IllegalStateException if the code doesn't fit */
+    private static int checkCode (int code, int n_bits, String description) {
+        if (code < 0 || code >= 1L << n_bits)
+            throw new IllegalStateException ("Too many " + description + " for TradeCube");
+        return code;
+    }
+
+    /** Helper function to get the bits of a packed key that hold a dimension.
+     * @param dimension the dimension
+     * @return the mask */
+    private static long getMask (Dimension dimension) {
+        switch (dimension) {
+            case DIRECTION: return ((1L << DIRECTION_BITS) - 1) << DIRECTION_SHIFT;
+            case CURRENCY:  return ((1L << CURRENCY_BITS) - 1) << CURRENCY_SHIFT;
+            case DAY:       return ((1L << DAY_BITS) - 1) << DAY_SHIFT;
+            case ENTITY:    return ((1L << ENTITY_BITS) - 1) << ENTITY_SHIFT;
+            default: throw new RuntimeException ("Bad dimension: " + dimension.toString());
+        }
+    }
+
+    /** The trade totals grouped by some of the dimensions of a cube. Cells are numbered
+     * from 0 to size() - 1. Dimensions that are not part of the grouping have no value
+     * in a cell, and their getters throw an IllegalStateException. */
+    public class Grouping {
+        private final Set<Dimension> dimensions;
+        private final Cells cells;
+
+        Grouping (Set<Dimension> dimensions, Cells cells) {
+            this.dimensions = dimensions;
+            this.cells = cells;
+        }
+
+        /** Get the dimensions of the grouping.
+         * @return the dimensions */
+        public Set<Dimension> getDimensions () { return dimensions; }
+
+        /** Get the number of cells.
+         * @return the number of cells */
+        public int size () { return cells.size; }
+
+        /** Find the cell for a combination of values.
+         * @param currency the currency code, ignored if the grouping isn't by currency
+         * @param entity_name the entity, ignored if the grouping isn't by entity
+         * @param day the day, ignored if the grouping isn't by day
+         * @param trade_type the direction, ignored if the grouping isn't by direction
+         * @return the cell, -1 if there were no trades with the values */
+        public int find (String currency, String entity_name, Date day, TradingData.TradeType trade_type) {
+            long key = 0;
+            if (dimensions.contains (Dimension.DIRECTION))
+                key |= (long) (trade_type == TradingData.TradeType.SELL ? 1 : 0) << DIRECTION_SHIFT;
+            if (dimensions.contains (Dimension.CURRENCY)) {
+                // look the code up without registering it, as a query shouldn't change the registry
+                int currency_id = CurrencyRegistry.getDefault().find (currency);
+                if (currency_id < 0)
+                    return -1;
+                key |= (long) currency_id << CURRENCY_SHIFT;
+            }
+            if (dimensions.contains (Dimension.DAY))
+                key |= (long) (EpochDay.fromDate (day) + DAY_OFFSET) << DAY_SHIFT;
+            if (dimensions.contains (Dimension.ENTITY)) {
+                int entity_code = entities.find (entity_name);
+                if (entity_code < 0)
+                    return -1;
+                key |= (long) entity_code << ENTITY_SHIFT;
+            }
+            return cells.find (key);
+        }
+
+        /** Get the total value of the trades in a cell.
+         * @param cell the cell
+         * @return the total in USD */
+        public double getTotalUSD (int cell) { return cells.totals [cell]; }
+
+        /** Get the number of trades in a cell.
+         * @param cell the cell
+         * @return the number of trades */
+        public long getNTrades (int cell) { return cells.counts [cell]; }
+
+        /** Get the currency of a cell.
+         * @param cell the cell
+         * @return the currency code */
+        public String getCurrency (int cell) {
+            return CurrencyRegistry.getDefault().get (getCode (cell, Dimension.CURRENCY, CURRENCY_SHIFT)).getCode();
+        }
+
+        /** Get the entity of a cell.
+         * @param cell the cell
+         * @return the entity name */
+        public String getEntityName (int cell) { return entities.decode (getCode (cell, Dimension.ENTITY, ENTITY_SHIFT)); }
+
+        /** Get the day of a cell.
+         * @param cell the cell
+         * @return the actual settlement day as an epoch day */
+        public int getEpochDay (int cell) { return getCode (cell, Dimension.DAY, DAY_SHIFT) - DAY_OFFSET; }
+
+        /** Get the day of a cell.
+         * @param cell the cell
+         * @return the actual settlement date */
+        public Date getDay (int cell) { return EpochDay.toDate (getEpochDay (cell)); }
+
+        /** Get the direction of a cell.
+         * @param cell the cell
+         * @return TradeType.SELL for incoming trades, TradeType.BUY for outgoing */
+        public TradingData.TradeType getTradeType (int cell) {
+            return getCode (cell, Dimension.DIRECTION, DIRECTION_SHIFT) == 1 ? TradingData.TradeType.SELL : TradingData.TradeType.BUY;
+        }
+
+        /** Helper function to unpack a dimension's code from a cell's key.
+         * @param cell the cell
+         * @param dimension the dimension
+         * @param shift the position of the code in the key
+         * @return the code
+         * @throws IllegalStateException if the grouping isn't by the dimension */
+        private int getCode (int cell, Dimension dimension, int shift) {
+            if (! dimensions.contains (dimension))
+                throw new IllegalStateException ("Grouping is not by " + dimension);
+            return (int) ((cells.keys [cell] & getMask (dimension)) >>> shift);
+        }
+    }
+
+    /** A hash table of cells keyed by packed dimension codes. The keys and measures are
+     * held in dense arrays in the order the cells were created, and the hash table
+     * holds the index of each cell plus one, so that zero marks an empty slot. */
+    private static class Cells {
+
+        // initial number of cells - the hash table has twice as many slots
+        private static final int INITIAL_CAPACITY = 16;
+
+        long keys [];
+        double totals [];
+        long counts [];
+        int size;
+        private int slots [];
+
+        Cells () {
+            keys = new long [INITIAL_CAPACITY];
+            totals = new double [INITIAL_CAPACITY];
+            counts = new long [INITIAL_CAPACITY];
+            slots = new int [INITIAL_CAPACITY * 2];
+            size = 0;
+        }
+
+        /** Add measures to a cell, creating it if needed. */
+        void add (long key, double total, long count) {
+            int slot = findSlot (key);
+            int cell = slots [slot] - 1;
+            if (cell < 0) {
+                if (size == keys.length) {
+                    grow ();
+                    slot = findSlot (key);
+                }
+                cell = size ++;
+                keys [cell] = key;
+                slots [slot] = cell + 1;
+            }
+            totals [cell] += total;
+            counts [cell] += count;
+        }
+
+        /** Find a cell.
+         * @return the cell, -1 if there isn't one */
+        int find (long key) { return slots [findSlot (key)] - 1; }
+
+        /** Find the slot that holds a key, or the empty slot where it should go. */
+        private int findSlot (long key) {
+            int mask = slots.length - 1;
+            int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+            while (slots [slot] != 0 && keys [slots [slot] - 1] != key)
+                slot = (slot + 1) & mask;
+            return slot;
+        }
+
+        /** Double the capacity and rebuild the hash table. */
+        private void grow () {
+            int capacity = keys.length * 2;
+            keys = Arrays.copyOf (keys, capacity);
+            totals = Arrays.copyOf (totals, capacity);
+            counts = Arrays.copyOf (counts, capacity);
+            slots = new int [capacity * 2];
+            for (int cell = 0; cell < size; cell ++)
+                slots [findSlot (keys [cell])] = cell + 1;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package uk.co.jpm.TradeReport;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.stream.Collector;
+import uk.co.jpm.TradingLibrary.PipelineMetrics;
+import uk.co.jpm.TradingLibrary.TradingData;
+import uk.co.jpm.TradingLibrary.TradingDataSnapshot;
+import uk.co.jpm.TradingLibrary.TradingDataTable;
+import uk.co.jpm.TradingLibrary.TradingDataView;
+import uk.co.jpm.TradingLibrary.TradingDataVisitor;
+
+/**
+ * Accumulates the results needed for the daily trade report: the settlements
+ * and rankings for the whole of the input data and the daily settlements and
+ * rankings. Implements {@link TradingDataVisitor} so that it can be fed
+ * directly from a streaming source of trades.
+ * 
+ * @author smf
+ */
+public class TradeReportAggregator implements TradingDataVisitor {
+    
+    // overall_sar holds the settlements and rankings for the whole of the input data,
+    // daily_sars holds the daily settlements and rankings
+    private final SettlementsAndRankings overall_sar;
+    private final DailySettlementsAndRankings daily_sars;
+    
+    // number of transactions visited, used to choose which ones to time
+    private long n_visited;
+    
+    public TradeReportAggregator () {
+        this (new SettlementsAndRankings (null), new DailySettlementsAndRankings ());
+    }
+    
+    /** Helper constructor for results that have already been accumulated.
+     * @param overall_sar the results for the whole of the input data
+     * @param daily_sars the daily results
+     */
+    private TradeReportAggregator (SettlementsAndRankings overall_sar, DailySettlementsAndRankings daily_sars) {
+        this.overall_sar = overall_sar;
+        this.daily_sars = daily_sars;
+        n_visited = 0;
+    }
+    
+    /** Append a transaction to both the overall and the daily results.
+     * @param trading_data The transaction to append.
+     */
+    @Override
+    public void visit (TradingData trading_data) {
+        if (PipelineMetrics.isSampled (n_visited ++)) {
+            long start = System.nanoTime();
+            overall_sar.append (trading_data);
+            daily_sars.append (trading_data);
+            PipelineMetrics.getDefault().addSampleNanos (PipelineMetrics.Stage.AGGREGATION, System.nanoTime() - start);
+        } else {
+            overall_sar.append (trading_data);
+            daily_sars.append (trading_data);
+        }
+    }
+    
+    /** Append all the transactions in a table (e.g. a columnar store) to both the
+     * overall and the daily results. Only the fields needed for the results are read.
+     * @param table The transactions to append.
+     */
+    public void appendAll (TradingDataTable table) {
+        long start = System.nanoTime();
+        boolean fixed_point = overall_sar.isFixedPoint();
+        for (int row = 0; row < table.size(); row ++) {
+            int actual_day = table.getActualSettlementEpochDay (row);
+            TradingData.TradeType trade_type = table.getTradeType (row);
+            String entity_name = table.getEntityName (row);
+            if (fixed_point) {
+                long trade_value = table.calcPriceUSDFixed (row);
+                overall_sar.appendFixed (actual_day, trade_type, entity_name, trade_value);
+                daily_sars.appendFixed (actual_day, trade_type, entity_name, trade_value);
+            } else {
+                double trade_value = table.calcPriceUSD (row);
+                overall_sar.append (actual_day, trade_type, entity_name, trade_value);
+                daily_sars.append (actual_day, trade_type, entity_name, trade_value);
+            }
+        }
+        PipelineMetrics.getDefault().addStageNanos (PipelineMetrics.Stage.AGGREGATION, System.nanoTime() - start);
+    }
+    
+    /** Append all the transactions in a snapshot file (see {@link TradingDataSnapshot})
+     * to both the overall and the daily results. The snapshot takes the place of the
+     * CSV data, so its rows and bytes are counted as read in the pipeline metrics -
+     * rows of other tables have already been counted as they were read into the table.
+     * @param snapshot The transactions to append.
+     */
+    public void appendAll (TradingDataSnapshot snapshot) {
+        appendAll ((TradingDataTable) snapshot);
+        PipelineMetrics.getDefault().addRecordsRead (snapshot.size());
+        PipelineMetrics.getDefault().addBytesRead (snapshot.getNBytes());
+    }
+    
+    /** Append all the transactions in a lazy view of CSV data (see {@link TradingDataView})
+     * to both the overall and the daily results. Only the fields needed for the results
+     * are decoded, so bad values in other fields are not noticed.
+     * @param view The transactions to append, before the first one.
+     * @return the number of transactions appended
+     * @throws IOException if there was an error in a field that was needed
+     */
+    public long appendAll (TradingDataView view) throws IOException {
+        long start = System.nanoTime();
+        boolean fixed_point = overall_sar.isFixedPoint();
+        long n_appended = 0;
+        try {
+            while (view.next ()) {
+                int actual_day = view.getActualSettlementEpochDay ();
+                TradingData.TradeType trade_type = view.getTradeType ();
+                String entity_name = view.getEntityName ();
+                if (fixed_point) {
+                    long trade_value = view.calcPriceUSDFixed ();
+                    overall_sar.appendFixed (actual_day, trade_type, entity_name, trade_value);
+                    daily_sars.appendFixed (actual_day, trade_type, entity_name, trade_value);
+                } else {
+                    double trade_value = view.calcPriceUSD ();
+                    overall_sar.append (actual_day, trade_type, entity_name, trade_value);
+                    daily_sars.append (actual_day, trade_type, entity_name, trade_value);
+                }
+                n_appended ++;
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            PipelineMetrics.getDefault().addRecordsRead (n_appended);
+            PipelineMetrics.getDefault().addBytesRead (view.getNBytes());
+            PipelineMetrics.getDefault().addStageNanos (PipelineMetrics.Stage.AGGREGATION, System.nanoTime() - start);
+        }
+        return n_appended;
+    }
+    
+    /** Merge the results from another aggregator into this one.
+     * @param other the results to merge, which are not changed
+     */
+    public void merge (TradeReportAggregator other) {
+        overall_sar.merge (other.overall_sar);
+        daily_sars.merge (other.daily_sars);
+    }
+    
+    /** Create a Collector that accumulates a stream of transactions into both
+     * the overall and the daily results, e.g.
+     * <code>trading_data_list.parallelStream().collect (TradeReportAggregator.collector())</code>
+     * @return the Collector */
+    public static Collector<TradingData, TradeReportAggregator, TradeReportAggregator> collector () {
+        return Collector.of (TradeReportAggregator::new,
+                             TradeReportAggregator::visit,
+                             (aggregator1, aggregator2) -> { aggregator1.merge (aggregator2); return aggregator1; },
+                             Collector.Characteristics.IDENTITY_FINISH);
+    }
+    
+    /** Write the results to a stream, exactly as they are held (see {@link TradeReportCache}).
+     * @param out the stream
+     * @throws IOException if there was an error writing the stream */
+    void write (DataOutput out) throws IOException {
+        overall_sar.write (out);
+        daily_sars.write (out);
+    }
+    
+    /** Read results written by {@link #write}. More transactions can be appended to
+     * them, with the same results as if they had all been appended to one aggregator.
+     * @param in the stream
+     * @return the results
+     * @throws IOException if there was an error reading the stream */
+    static TradeReportAggregator read (DataInput in) throws IOException {
+        SettlementsAndRankings overall_sar = SettlementsAndRankings.read (in);
+        return new TradeReportAggregator (overall_sar, DailySettlementsAndRankings.read (in));
+    }
+    
+    /** Record the sizes of the results in a set of pipeline metrics: the number of
+     * entities and days and the most entities on a single day.
+     * @param metrics where to record the sizes
+     */
+    public void updateMetrics (PipelineMetrics metrics) {
+        int peak_day_entities = 0;
+        for (SettlementsAndRankings sar : daily_sars.getDailySAR().values())
+            peak_day_entities = Math.max (peak_day_entities, sar.countEntities());
+        metrics.setResultSizes (overall_sar.countEntities(), daily_sars.getDailySAR().size(), peak_day_entities);
+    }
+    
+    /** Build an index for finding the results for any range of dates (see
+     * {@link DateRangeIndex}). The index shares the daily results, so no more trades
+     * should be appended once it has been built.
+     * @return the index */
+    public DateRangeIndex createDateRangeIndex () { return new DateRangeIndex (daily_sars); }
+    
+    /** Get the settlements and rankings for the whole of the input data.
+     * @return the overall settlements and rankings */
+    public SettlementsAndRankings getOverallSAR () { return overall_sar; }
+    
+    /** Get the daily settlements and rankings.
+     * @return the daily settlements and rankings */
+    public DailySettlementsAndRankings getDailySARs () { return daily_sars; }
+}
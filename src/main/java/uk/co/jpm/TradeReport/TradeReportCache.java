@@ -0,0 +1,545 @@
+package uk.co.jpm.TradeReport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import uk.co.jpm.TradingLibrary.BusinessRules;
+import uk.co.jpm.TradingLibrary.CurrencyRegistry;
+import uk.co.jpm.TradingLibrary.RejectedRecords;
+import uk.co.jpm.TradingLibrary.TradingDataChunk;
+import uk.co.jpm.TradingLibrary.TradingDataRejectHandler;
+
+/**
+ * An on-disk cache of the results of reading CSV trading data files, so that only
+ * the parts of a file that have changed or been added since the last run are
+ * parsed. Files are divided into segments of whole lines, and each entry holds the
+ * results for one segment - the overall results and the results for each day of
+ * the trades in it - keyed by a fingerprint of the segment's bytes and the
+ * settings that affect the results. Loading a file loads the entries of the
+ * segments that are in the cache, parses the others and merges the results in
+ * file order.
+ *
+ * Segment boundaries are chosen by the content of the file rather than by offset:
+ * a segment ends at the first line break after a point where a rolling hash of the
+ * last 64 bytes has its top bits clear (once the segment is at least a quarter of
+ * the segment size, and at the latest at four times it). Inserting, deleting or
+ * correcting a trade only changes the segment it is in, and appending trades only
+ * changes the last segment, so the work of a re-run follows the size of the change
+ * rather than the size of the file.
+ *
+ * A manifest for each file (keyed by its path) holds the file's size and time of
+ * last modification and the boundaries and hashes of its segments. While the size
+ * and time are the same the file is not read at all to find its segments; once
+ * they change the file is divided up again with a single pass of the rolling hash
+ * and a 64 bit FNV-1a hash of each segment, which is much cheaper than parsing.
+ * The FNV hashes only have to notice changes to the file, not resist deliberate
+ * collisions. The cost that does grow with the file is reading the entries and
+ * merging them, which grows with the number of segments and days. In fixed point
+ * mode (see {@link BusinessRules#setFixedPointMoney}) the results are the same as
+ * reading the whole file; with doubles each segment's totals are added up
+ * separately and then added together, so totals can differ in the last place, as
+ * with {@link MultiFileTradeReportLoader}.
+ *
+ * Segments end at line breaks, so records must not contain line breaks inside
+ * quoted cells (as with {@link TradingDataChunk}). A segment with bad records is
+ * not written to the cache, so records skipped in lenient mode are always read
+ * again, and neither is a last segment that doesn't end with a line break, as it
+ * may still be being written. Once the entries and manifests take up more than the
+ * maximum size the least recently used ones are deleted.
+ *
+ * An entry file ("fingerprint.dtrc") holds: a magic number ("DTRC"), the format
+ * version, the number of lines in the segment, the number of trades in each
+ * unknown currency, then the results (see {@link TradeReportAggregator#write}). A
+ * manifest file ("path fingerprint.dtrm") holds: a magic number ("DTRM"), the
+ * format version, the segment size, the file's size and time of last modification,
+ * the time the manifest was written, the number of segments and the end offset and
+ * hash of each one.
+ *
+ * @author smf
+ */
+public class TradeReportCache {
+
+    /** Magic number at the start of every cache entry - "DTRC" in ASCII */
+    public static final int MAGIC = 0x43525444;
+
+    /** Magic number at the start of every manifest - "DTRM" in ASCII */
+    public static final int MANIFEST_MAGIC = 0x4d525444;
+
+    /** The version of the entry and manifest formats written by this class */
+    public static final int VERSION = 2;
+
+    /** Default limit on the total size of the entries, in bytes */
+    public static final long DEFAULT_MAX_SIZE = 256l * 1024l * 1024l;
+
+    /** Default average size of the segments that files are divided into, in bytes */
+    public static final int DEFAULT_SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    // file name suffixes of entries and manifests
+    private static final String ENTRY_SUFFIX = ".dtrc";
+    private static final String MANIFEST_SUFFIX = ".dtrm";
+
+    // number of bytes of the digest used in entry and manifest names
+    private static final int FINGERPRINT_BYTES = 16;
+
+    // a file modified this soon before its manifest was written may have been changed
+    // again within the resolution of its time of last modification, so is divided up again
+    private static final long MODIFIED_RESOLUTION_MILLIS = 2000;
+
+    // constants of the 64 bit FNV-1a hash
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325l;
+    private static final long FNV_PRIME = 0x100000001b3l;
+
+    // random values for each byte, for the rolling hash that chooses segment boundaries -
+    // fixed so that files are divided up the same way on every run
+    private static final long GEAR [] = createGear ();
+
+    // the directory holding the entries, the most they may take up and the average size of segments
+    private final File directory;
+    private final long max_size;
+    private final int segment_size;
+
+    // digest of the settings that affect the results
+    private final MessageDigest settings_digest;
+
+    // the amount of the last file loaded that was in the cache, and the last
+    // error writing an entry or manifest (null if none)
+    private long n_cached_bytes;
+    private IOException write_error;
+
+    /** Open a cache, creating its directory if needed.
+     *
+     * @param directory the directory holding the entries
+     * @param max_size the most that the entries may take up, in bytes - the entry
+     *        used or written most recently is always kept
+     * @throws IOException if the directory could not be created
+     */
+    public TradeReportCache (File directory, long max_size) throws IOException {
+        this (directory, max_size, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /** Open a cache that divides files into segments of a given average size.
+     *
+     * @param directory the directory holding the entries
+     * @param max_size the most that the entries may take up, in bytes
+     * @param segment_size the average size of segments, in bytes - a power of 2
+     * @throws IOException if the directory could not be created
+     */
+    TradeReportCache (File directory, long max_size, int segment_size) throws IOException {
+        if (! directory.isDirectory() && ! directory.mkdirs())
+            throw new IOException ("Unable to create cache directory: " + directory);
+        this.directory = directory;
+        this.max_size = max_size;
+        this.segment_size = segment_size;
+        settings_digest = createDigest ();
+        addSetting ("version " + VERSION);
+    }
+
+    /** Add a setting that affects the results (e.g. the range of years of the
+     * holiday calendars) to the fingerprints, so entries written with different
+     * settings are not used. Fixed point mode is always added.
+     * @param setting a description of the setting
+     */
+    public void addSetting (String setting) {
+        settings_digest.update (setting.getBytes (StandardCharsets.UTF_8));
+        settings_digest.update ((byte) 0);
+    }
+
+    /** Add the contents of a file or directory that affects the results (e.g. the
+     * holiday calendars) to the fingerprints. The files in a directory are added in
+     * order of name.
+     * @param file the file or directory
+     * @throws IOException if there was an error reading a file
+     */
+    public void addSetting (File file) throws IOException {
+        addSetting (file.getName());
+        if (file.isDirectory()) {
+            File files [] = file.listFiles ();
+            if (files == null)
+                throw new IOException ("Unable to list directory: " + file);
+            Arrays.sort (files);
+            for (File child : files)
+                addSetting (child);
+        } else {
+            settings_digest.update (Files.readAllBytes (file.toPath()));
+            settings_digest.update ((byte) 0);
+        }
+    }
+
+    /** Read the results for a CSV file, loading the segments that haven't changed
+     * from the cache and writing entries for the others.
+     *
+     * @param csv_file the file
+     * @param rejects the object that will receive bad records, null to stop at the first one
+     * @return the results
+     * @throws IOException if there was an error reading the file or an error in the CSV
+     *         data and no reject handler
+     */
+    public TradeReportAggregator load (File csv_file, TradingDataRejectHandler rejects) throws IOException {
+        n_cached_bytes = 0;
+        MessageDigest digest = copyDigest (settings_digest);
+        digest.update (("fixed point " + BusinessRules.isFixedPointMoney()).getBytes (StandardCharsets.UTF_8));
+        digest.update ((byte) 0);
+        TradeReportAggregator aggregator = new TradeReportAggregator ();
+        try (FileChannel channel = FileChannel.open (csv_file.toPath(), StandardOpenOption.READ)) {
+            long file_size = channel.size();
+            long modified = csv_file.lastModified();
+
+            // divide the file into segments, unless it hasn't changed since the last time
+            File manifest_file = new File (directory, fingerprint (createDigest (), csv_file.getCanonicalPath().getBytes (StandardCharsets.UTF_8)) + MANIFEST_SUFFIX);
+            List<Segment> segments = readManifest (manifest_file, file_size, modified);
+            if (segments == null) {
+                segments = findSegments (channel, file_size);
+                writeManifest (manifest_file, file_size, modified, segments);
+            }
+
+            // load each segment from the cache or read it, merging the results in file order
+            long n_lines = 0;
+            for (Segment segment : segments) {
+                MessageDigest segment_digest = copyDigest (digest);
+                segment_digest.update (ByteBuffer.allocate (16).putLong (segment.end - segment.start).putLong (segment.hash).array());
+                File entry_file = new File (directory, fingerprint (segment_digest, null) + ENTRY_SUFFIX);
+                SegmentResult result = readEntry (entry_file);
+                if (result != null)
+                    n_cached_bytes += segment.end - segment.start;
+                else {
+                    result = readSegment (channel, segment, rejects, n_lines + 1);
+                    if (result.n_rejected == 0 && (segment.end < file_size || endsWithLineBreak (channel, file_size)))
+                        writeEntry (entry_file, result);
+                }
+                aggregator.merge (result.aggregator);
+                n_lines += result.n_lines;
+            }
+        }
+        evict ();
+        return aggregator;
+    }
+
+    /** Get the number of bytes of the last file loaded that were loaded from the cache.
+     * @return the number of bytes, 0 if none were */
+    public long getNCachedBytes () { return n_cached_bytes; }
+
+    /** Get the last error writing an entry or manifest. The cache only speeds up
+     * loading, so an entry that can't be written is not an error in the load.
+     * @return the error, null if there hasn't been one */
+    public IOException getWriteError () { return write_error; }
+
+    /** Helper function to read a segment of the file.
+     * @param channel the file
+     * @param segment the segment
+     * @param rejects the object that will receive bad records, null to stop at the first one
+     * @param first_line the number of the line the segment starts on
+     * @return the results for the segment
+     * @throws IOException if there was an error reading the file or an error in the CSV
+     *         data and no reject handler
+     */
+    private static SegmentResult readSegment (FileChannel channel, Segment segment, TradingDataRejectHandler rejects,
+                                              long first_line) throws IOException {
+        Map<String, Long> unknown_counts = CurrencyRegistry.getDefault().getUnknownCurrencyCounts();
+        SegmentResult result = new SegmentResult (new TradeReportAggregator ());
+        for (TradingDataChunk chunk : TradingDataChunk.split (channel, segment.start, segment.end, 1)) {
+            // keep the chunk's bad records to number their lines from the start of the
+            // file - the count of lines is needed for entries even when there are none
+            RejectedRecords chunk_rejects = new RejectedRecords ();
+            chunk.visitAll (result.aggregator, chunk_rejects);
+            result.n_rejected += chunk_rejects.size();
+            chunk_rejects.replay (rejects != null ? rejects : TradeReportCache::rejectStrictly, first_line + result.n_lines);
+            result.n_lines += chunk_rejects.getNLines();
+        }
+        result.unknown_counts = subtractCounts (CurrencyRegistry.getDefault().getUnknownCurrencyCounts(), unknown_counts);
+        return result;
+    }
+
+    /** Helper function to stop at a bad record, as when there is no reject handler.
+     * @param line_number the line the record starts on
+     * @param reason why the record could not be decoded
+     * @param fields the text of the record's fields
+     * @throws IOException always */
+    private static void rejectStrictly (long line_number, String reason, Iterable<String> fields) throws IOException {
+        throw new IOException (reason);
+    }
+
+    /** Helper function to divide a file into segments, hashing each one.
+     * @param channel the file
+     * @param file_size the size of the file
+     * @return the segments, in file order
+     * @throws IOException if there was an error reading the file */
+    private List<Segment> findSegments (FileChannel channel, long file_size) throws IOException {
+        List<Segment> segments = new ArrayList<> ();
+        long min_size = segment_size / 4;
+        long max_size = segment_size * 4l;
+        int shift = 64 - Integer.numberOfTrailingZeros (segment_size);
+        long start = 0;
+        long hash = FNV_OFFSET_BASIS;
+        long rolling_hash = 0;
+        boolean at_boundary = false;
+        for (long position = 0; position < file_size; ) {
+            MappedByteBuffer buffer = channel.map (FileChannel.MapMode.READ_ONLY, position, Math.min (file_size - position, TradingDataChunk.MAX_CHUNK_SIZE));
+            while (buffer.hasRemaining()) {
+                int b = buffer.get () & 0xff;
+                position ++;
+                hash = (hash ^ b) * FNV_PRIME;
+                rolling_hash = (rolling_hash << 1) + GEAR [b];
+                if (position - start >= min_size && (rolling_hash >>> shift) == 0)
+                    at_boundary = true;
+                if (b == '\n' && (at_boundary || position - start >= max_size)) {
+                    segments.add (new Segment (start, position, hash));
+                    start = position;
+                    hash = FNV_OFFSET_BASIS;
+                    at_boundary = false;
+                }
+            }
+        }
+        if (start < file_size)
+            segments.add (new Segment (start, file_size, hash));
+        return segments;
+    }
+
+    /** Helper function to find out whether a file ends with a line break.
+     * @param channel the file
+     * @param file_size the size of the file
+     * @return true if the last byte is a line feed
+     * @throws IOException if there was an error reading the file */
+    private static boolean endsWithLineBreak (FileChannel channel, long file_size) throws IOException {
+        ByteBuffer last_byte = ByteBuffer.allocate (1);
+        return file_size > 0 && channel.read (last_byte, file_size - 1) == 1 && last_byte.get (0) == '\n';
+    }
+
+    /** Helper function to load the segments of a file from its manifest, if the file
+     * hasn't changed since the manifest was written.
+     * @param manifest_file the manifest
+     * @param file_size the size of the file now
+     * @param modified the time the file was last modified now
+     * @return the segments, null if there is no manifest or the file has changed */
+    private List<Segment> readManifest (File manifest_file, long file_size, long modified) {
+        if (! manifest_file.isFile()) return null;
+        try (DataInputStream in = new DataInputStream (new BufferedInputStream (new FileInputStream (manifest_file), 65536))) {
+            if (in.readInt () != MANIFEST_MAGIC || in.readInt () != VERSION)
+                throw new IOException ("Not a cache manifest: " + manifest_file);
+            if (in.readInt () != segment_size || in.readLong () != file_size || in.readLong () != modified ||
+                in.readLong () - modified < MODIFIED_RESOLUTION_MILLIS)
+                return null;
+            int n_segments = in.readInt ();
+            List<Segment> segments = new ArrayList<> (n_segments);
+            long start = 0;
+            for (int count = 0; count < n_segments; count ++) {
+                long end = in.readLong ();
+                segments.add (new Segment (start, end, in.readLong ()));
+                start = end;
+            }
+            if (start != file_size)
+                throw new IOException ("Bad cache manifest: " + manifest_file);
+            manifest_file.setLastModified (System.currentTimeMillis());
+            return segments;
+        } catch (IOException | RuntimeException e) {
+            manifest_file.delete ();
+            return null;
+        }
+    }
+
+    /** Helper function to write the manifest of a file.
+     * @param manifest_file the manifest
+     * @param file_size the size of the file
+     * @param modified the time the file was last modified
+     * @param segments the segments of the file */
+    private void writeManifest (File manifest_file, long file_size, long modified, List<Segment> segments) {
+        writeAtomically (manifest_file, out -> {
+            out.writeInt (MANIFEST_MAGIC);
+            out.writeInt (VERSION);
+            out.writeInt (segment_size);
+            out.writeLong (file_size);
+            out.writeLong (modified);
+            out.writeLong (System.currentTimeMillis());
+            out.writeInt (segments.size());
+            for (Segment segment : segments) {
+                out.writeLong (segment.end);
+                out.writeLong (segment.hash);
+            }
+        });
+    }
+
+    /** Helper function to load an entry, if it is in the cache. An entry that can't
+     * be read is deleted.
+     * @param entry_file the entry
+     * @return the results for the segment, null if the entry is not in the cache */
+    private static SegmentResult readEntry (File entry_file) {
+        if (! entry_file.isFile()) return null;
+        Map<String, Long> unknown_counts = new HashMap<> ();
+        SegmentResult result;
+        long entry_lines;
+        try (DataInputStream in = new DataInputStream (new BufferedInputStream (new FileInputStream (entry_file), 65536))) {
+            if (in.readInt () != MAGIC || in.readInt () != VERSION)
+                throw new IOException ("Not a cache entry: " + entry_file);
+            entry_lines = in.readLong ();
+            int n_currencies = in.readInt ();
+            for (int count = 0; count < n_currencies; count ++)
+                unknown_counts.put (in.readUTF (), in.readLong ());
+            result = new SegmentResult (TradeReportAggregator.read (in));
+        } catch (IOException | RuntimeException e) {
+            entry_file.delete ();
+            return null;
+        }
+
+        // the trades in the entry count towards the unknown currency warnings
+        for (Map.Entry<String, Long> entry : unknown_counts.entrySet())
+            CurrencyRegistry.getDefault().addTradeCurrencyCount (entry.getKey(), entry.getValue());
+        result.n_lines = entry_lines;
+        result.unknown_counts = unknown_counts;
+        entry_file.setLastModified (System.currentTimeMillis());
+        return result;
+    }
+
+    /** Helper function to write an entry.
+     * @param entry_file the entry
+     * @param result the results for the segment */
+    private void writeEntry (File entry_file, SegmentResult result) {
+        writeAtomically (entry_file, out -> {
+            out.writeInt (MAGIC);
+            out.writeInt (VERSION);
+            out.writeLong (result.n_lines);
+            out.writeInt (result.unknown_counts.size());
+            for (Map.Entry<String, Long> entry : result.unknown_counts.entrySet()) {
+                out.writeUTF (entry.getKey());
+                out.writeLong (entry.getValue());
+            }
+            result.aggregator.write (out);
+        });
+    }
+
+    /** Helper function to write a file in the cache directory. The file is written to
+     * a temporary file which is then renamed, so it is never seen half written.
+     * @param file the file
+     * @param writer writes the contents of the file */
+    private void writeAtomically (File file, CacheFileWriter writer) {
+        File temp_file = null;
+        try {
+            temp_file = File.createTempFile ("entry", ".tmp", directory);
+            try (DataOutputStream out = new DataOutputStream (new BufferedOutputStream (new FileOutputStream (temp_file), 65536))) {
+                writer.write (out);
+            }
+            Files.move (temp_file.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            write_error = e;
+            if (temp_file != null)
+                temp_file.delete ();
+        }
+    }
+
+    /** Helper function to delete the least recently used entries and manifests until
+     * they take up no more than the maximum size. The most recently used one is kept. */
+    private void evict () {
+        File entries [] = directory.listFiles ((dir, name) -> name.endsWith (ENTRY_SUFFIX) || name.endsWith (MANIFEST_SUFFIX));
+        if (entries == null) return;
+        Arrays.sort (entries, Comparator.comparingLong (File::lastModified).reversed());
+        long total_size = 0;
+        for (int index = 0; index < entries.length; index ++) {
+            total_size += entries [index].length();
+            if (total_size > max_size && index > 0)
+                entries [index].delete ();
+        }
+    }
+
+    /** Helper function to find the counts that have been added since a previous count.
+     * @param counts the counts now
+     * @param previous_counts the counts before
+     * @return the differences, without the counts that haven't changed */
+    private static Map<String, Long> subtractCounts (Map<String, Long> counts, Map<String, Long> previous_counts) {
+        Map<String, Long> differences = new HashMap<> ();
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            long difference = entry.getValue() - previous_counts.getOrDefault (entry.getKey(), 0l);
+            if (difference > 0)
+                differences.put (entry.getKey(), difference);
+        }
+        return differences;
+    }
+
+    /** Helper function to make a name for a file in the cache from a digest.
+     * @param digest the digest
+     * @param bytes more bytes to add to the digest, null for none
+     * @return the start of the digest, in hex */
+    private static String fingerprint (MessageDigest digest, byte bytes []) {
+        if (bytes != null)
+            digest.update (bytes);
+        byte fingerprint [] = digest.digest ();
+        StringBuilder name = new StringBuilder ();
+        for (int index = 0; index < FINGERPRINT_BYTES; index ++)
+            name.append (Character.forDigit ((fingerprint [index] >> 4) & 0xf, 16)).append (Character.forDigit (fingerprint [index] & 0xf, 16));
+        return name.toString();
+    }
+
+    private static long [] createGear () {
+        Random random = new Random (0x44545243l);
+        long gear [] = new long [256];
+        for (int index = 0; index < gear.length; index ++)
+            gear [index] = random.nextLong ();
+        return gear;
+    }
+
+    private static MessageDigest createDigest () {
+        try {
+            return MessageDigest.getInstance ("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform has SHA-256
+            throw new IllegalStateException (e);
+        }
+    }
+
+    private static MessageDigest copyDigest (MessageDigest digest) {
+        try {
+            return (MessageDigest) digest.clone ();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException (e);
+        }
+    }
+
+    /** A segment of a file: its offsets and the FNV-1a hash of its bytes. */
+    private static class Segment {
+        final long start;
+        final long end;
+        final long hash;
+
+        Segment (long start, long end, long hash) {
+            this.start = start;
+            this.end = end;
+            this.hash = hash;
+        }
+    }
+
+    /** The results for a segment, with the number of lines and bad records in it and
+     * the number of trades in each unknown currency. */
+    private static class SegmentResult {
+        final TradeReportAggregator aggregator;
+        long n_lines;
+        long n_rejected;
+        Map<String, Long> unknown_counts;
+
+        SegmentResult (TradeReportAggregator aggregator) {
+            this.aggregator = aggregator;
+        }
+    }
+
+    /** Writes the contents of a file in the cache. */
+    private interface CacheFileWriter {
+        void write (DataOutputStream out) throws IOException;
+    }
+}
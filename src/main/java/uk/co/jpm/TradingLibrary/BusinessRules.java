@@ -2,7 +2,6 @@ package uk.co.jpm.TradingLibrary;
 
 import java.util.Date;
 import java.util.GregorianCalendar;
-import java.util.TimeZone;
 
 /**
  * A single place for the business rules.
@@ -11,6 +10,54 @@ import java.util.TimeZone;
  */
 public class BusinessRules {
     
+    /** Weekend convention for currencies whose work week is Monday to Friday */
+    public static final int WEEKEND_SAT_SUN = 0;
+    
+    /** Weekend convention for currencies whose work week is Sunday to Thursday */
+    public static final int WEEKEND_FRI_SAT = 1;
+    
+    // offset (in days) from each day of the week to the next possible trading day, for
+    // each weekend convention, indexed by the GregorianCalendar day of week constants
+    // (element 0 is unused as the constants start at 1)
+    private static final int SETTLEMENT_OFFSETS [][] = {
+        //     SUN MON TUE WED THU FRI SAT
+        { -1,   1,  0,  0,  0,  0,  0,  2 },    // WEEKEND_SAT_SUN
+        { -1,   0,  0,  0,  0,  0,  2,  1 }     // WEEKEND_FRI_SAT
+    };
+    
+    // public holiday calendars - null if only weekends are taken into account
+    private static volatile HolidayCalendars holiday_calendars = null;
+    
+    // true to accumulate USD amounts as fixed point values rather than doubles
+    private static volatile boolean fixed_point_money = false;
+    
+    /** Set the public holiday calendars used to find settlement dates. Currencies
+     * without a calendar, and dates outside the range of a calendar, only use the
+     * weekend rules. Calendars are resolved for each currency in the default
+     * {@link CurrencyRegistry}.
+     * @param calendars the calendars, null to only use the weekend rules
+     */
+    public static void setHolidayCalendars (HolidayCalendars calendars) {
+        holiday_calendars = calendars;
+        CurrencyRegistry.getDefault().setHolidayCalendars (calendars);
+    }
+    
+    /** Get the public holiday calendars used to find settlement dates.
+     * @return the calendars, null if only the weekend rules are used */
+    public static HolidayCalendars getHolidayCalendars () { return holiday_calendars; }
+    
+    /** Choose how USD amounts are accumulated. In fixed point mode each trade's USD
+     * amount is worked out exactly (see {@link #calcPriceUSDFixed}) and totals are
+     * held as exact fixed point values, so they don't depend on the order the trades
+     * are added in. Results objects take the mode that is set when they are created.
+     * @param fixed_point true for fixed point, false for double (the default)
+     */
+    public static void setFixedPointMoney (boolean fixed_point) { fixed_point_money = fixed_point; }
+    
+    /** Find out how USD amounts are accumulated.
+     * @return true for fixed point, false for double */
+    public static boolean isFixedPointMoney () { return fixed_point_money; }
+    
     /** Encapsulates the business rules for finding the working days of the week in various countries
      * (currency being a proxy for country).
      * @param nominal_date Nominal settlement date (time information ignored).
@@ -18,70 +65,76 @@ public class BusinessRules {
      * @return Actual settlement date (time information ignored).
      */
     public static Date findActualSettlementDate (Date nominal_date, String currency) {
-        // find the day of the week for the nominal date
-        // the call to TimeZone.getTimeZone with parameter "GMT" is safe because the method's
-        // contract states that it will return GMT if it can't decode the timezone string
-        GregorianCalendar cal = new GregorianCalendar (TimeZone.getTimeZone("GMT"));
-        cal.setTime(nominal_date);
-        
-        // add an offset to the nominal date to find the actual date of the settlement
-        cal.add (GregorianCalendar.DAY_OF_MONTH, 
-                 findActualSettlementOffset (cal.get (GregorianCalendar.DAY_OF_WEEK), currency));
-        
-        // return the actual date
-        return new Date (cal.getTime().getTime());
+        // add an offset to the nominal date to find the actual date of the settlement - the
+        // time of day is kept so that the result has the same time portion as the nominal date
+        int nominal_epoch_day = EpochDay.fromDate (nominal_date);
+        int offset = findActualSettlementEpochDay (nominal_epoch_day, currency) - nominal_epoch_day;
+        return new Date (nominal_date.getTime() + offset * EpochDay.MILLIS_PER_DAY);
+    }
+    
+    /** Find the actual settlement date for a nominal settlement date, using epoch
+     * days (see {@link EpochDay}) so that no objects are created. If there is a
+     * public holiday calendar for the currency it is used to find the next business
+     * day, otherwise only weekends are taken into account.
+     * @param nominal_epoch_day Nominal settlement date as an epoch day.
+     * @param currency Name of the currency for the transaction.
+     * @return Actual settlement date as an epoch day.
+     */
+    public static int findActualSettlementEpochDay (int nominal_epoch_day, String currency) {
+        return findActualSettlementEpochDay (nominal_epoch_day, CurrencyRegistry.getDefault().intern (currency));
+    }
+    
+    /** Find the actual settlement date for a nominal settlement date, for a currency
+     * that has been interned in the default {@link CurrencyRegistry}. The currency's
+     * weekend convention and holiday calendar were resolved when it was interned,
+     * so no strings are compared.
+     * @param nominal_epoch_day Nominal settlement date as an epoch day.
+     * @param currency_id Id of the currency for the transaction.
+     * @return Actual settlement date as an epoch day.
+     */
+    public static int findActualSettlementEpochDay (int nominal_epoch_day, int currency_id) {
+        CurrencyInfo currency_info = CurrencyRegistry.getDefault().get (currency_id);
+        HolidayCalendar calendar = currency_info.getCalendar();
+        if (calendar != null) {
+            int actual_epoch_day = calendar.nextBusinessDay (nominal_epoch_day);
+            if (actual_epoch_day != HolidayCalendar.OUTSIDE_CALENDAR)
+                return actual_epoch_day;
+        }
+        return nominal_epoch_day + SETTLEMENT_OFFSETS [currency_info.getWeekendConvention()] [EpochDay.dayOfWeek (nominal_epoch_day)];
     }
     
     /** given a day of the week and a currency (proxy for a country) get
-     * the offset (in days) to the next possible trading day
+     * the offset (in days) to the next possible trading day, taking only
+     * weekends into account
      * @param day_of_week one of the day of the week constants from Gregorian Calendar
      * @param currency name of the currency
      * @return the offset in days
      */
     public static int findActualSettlementOffset (int day_of_week, String currency) {
-        int offset = 0;
+        if (day_of_week < GregorianCalendar.SUNDAY || day_of_week > GregorianCalendar.SATURDAY)
+            throw new RuntimeException ("Error with DAY_OF_WEEK field: " + day_of_week);
+        return SETTLEMENT_OFFSETS [findWeekendConvention (currency)] [day_of_week];
+    }
+    
+    /** Find out whether a day of the week is a working day.
+     * @param weekend_convention WEEKEND_SAT_SUN or WEEKEND_FRI_SAT
+     * @param day_of_week one of the day of the week constants from Gregorian Calendar
+     * @return true for a working day
+     */
+    public static boolean isWorkingDay (int weekend_convention, int day_of_week) {
+        return SETTLEMENT_OFFSETS [weekend_convention] [day_of_week] == 0;
+    }
+    
+    /** Find the weekend convention for a currency (proxy for a country). The work week is
+     * Monday to Friday, unless the currency is AED or SAR, where it is Sunday to Thursday.
+     * @param currency name of the currency
+     * @return WEEKEND_SAT_SUN or WEEKEND_FRI_SAT
+     */
+    public static int findWeekendConvention (String currency) {
         if (currency.equalsIgnoreCase("AED") || currency.equalsIgnoreCase("SAR"))
-        {
-            switch (day_of_week)
-            {
-                case GregorianCalendar.SUNDAY: 
-                case GregorianCalendar.MONDAY:
-                case GregorianCalendar.TUESDAY:
-                case GregorianCalendar.WEDNESDAY:
-                case GregorianCalendar.THURSDAY:
-                    break;
-                case GregorianCalendar.FRIDAY:
-                    offset = 2; 
-                    break;
-                case GregorianCalendar.SATURDAY:
-                    offset = 1; 
-                    break;
-                default:
-                    throw new RuntimeException ("Error with DAY_OF_WEEK field: " + day_of_week);
-            }
-        }
-        else
-        {
-            switch (day_of_week)
-            {
-                case GregorianCalendar.SUNDAY: 
-                    offset = 1; 
-                    break;
-                case GregorianCalendar.MONDAY:
-                case GregorianCalendar.TUESDAY:
-                case GregorianCalendar.WEDNESDAY:
-                case GregorianCalendar.THURSDAY:
-                case GregorianCalendar.FRIDAY:
-                    break;
-                case GregorianCalendar.SATURDAY:
-                    offset = 2; 
-                    break;
-                default:
-                    throw new RuntimeException ("Error with DAY_OF_WEEK field: " + day_of_week);
-            }
-        }
-        return offset;
-    }    
+            return WEEKEND_FRI_SAT;
+        return WEEKEND_SAT_SUN;
+    }
     
     /** implements the rule:
      *   USD amount of a trade = Price per unit * Units * Agreed Fx
@@ -94,4 +147,17 @@ public class BusinessRules {
         return price_per_unit * (double) number_of_units * agreed_fx;
     }
     
+    /** implements the same rule as {@link #calcPriceUSD} on fixed point values (see
+     * {@link FixedPoint}). The amount is exact to {@link FixedPoint#USD_DIGITS}
+     * decimal places, rounded with ties to even.
+     * @param price_per_unit Price per unit, scaled to {@link FixedPoint#PRICE_DIGITS} places
+     * @param number_of_units number of units
+     * @param agreed_fx agreed exchange rate, scaled to {@link FixedPoint#FX_DIGITS} places
+     * @return the equivalent price in US dollars, scaled to {@link FixedPoint#USD_DIGITS} places
+     * @throws ArithmeticException if the amount is too large for a long
+     */
+    public static long calcPriceUSDFixed (long price_per_unit, int number_of_units, long agreed_fx) {
+        return FixedPoint.multiplyUSD (price_per_unit, number_of_units, agreed_fx);
+    }
+    
 }
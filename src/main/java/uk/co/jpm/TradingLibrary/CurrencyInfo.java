@@ -0,0 +1,61 @@
+package uk.co.jpm.TradingLibrary;
+
+/**
+ * Everything that is known about a currency, resolved once when the currency
+ * is first seen (see {@link CurrencyRegistry}). Instances are immutable.
+ * 
+ * @author smf
+ */
+public class CurrencyInfo {
+    
+    // the currency's id in the registry and its code (upper case)
+    private final int id;
+    private final String code;
+    
+    // true for an ISO 4217 currency code
+    private final boolean known;
+    
+    // reporting information - null / -1 for unknown currencies
+    private final String display_name;
+    private final int fraction_digits;
+    
+    // settlement rules
+    private final int weekend_convention;
+    private final HolidayCalendar calendar;
+    
+    /** Create the information for a currency.
+     * 
+     * @param id the currency's id in the registry
+     * @param code the currency code
+     * @param known true for an ISO 4217 currency code
+     * @param display_name the currency's name, null if not known
+     * @param fraction_digits the number of digits in the minor unit, -1 if not known
+     * @param weekend_convention BusinessRules.WEEKEND_SAT_SUN or WEEKEND_FRI_SAT
+     * @param calendar the public holiday calendar, null for none
+     */
+    public CurrencyInfo (int id, String code, boolean known, String display_name, int fraction_digits,
+                         int weekend_convention, HolidayCalendar calendar) {
+        this.id = id;
+        this.code = code;
+        this.known = known;
+        this.display_name = display_name;
+        this.fraction_digits = fraction_digits;
+        this.weekend_convention = weekend_convention;
+        this.calendar = calendar;
+    }
+    
+    /** Create a copy of this information with a different holiday calendar.
+     * @param calendar the public holiday calendar, null for none
+     * @return the new information */
+    public CurrencyInfo withCalendar (HolidayCalendar calendar) {
+        return new CurrencyInfo (id, code, known, display_name, fraction_digits, weekend_convention, calendar);
+    }
+    
+    public int getId () { return id; }
+    public String getCode () { return code; }
+    public boolean isKnown () { return known; }
+    public String getDisplayName () { return display_name; }
+    public int getFractionDigits () { return fraction_digits; }
+    public int getWeekendConvention () { return weekend_convention; }
+    public HolidayCalendar getCalendar () { return calendar; }
+}
@@ -0,0 +1,226 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.util.Arrays;
+import java.util.Currency;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Interns currency codes as small integer ids. When a code is first seen it is
+ * resolved to a {@link CurrencyInfo} holding its weekend convention, holiday
+ * calendar and reporting information, so per-trade work (e.g. finding settlement
+ * dates) can index an array by id rather than compare strings. Codes are not
+ * case sensitive.
+ * 
+ * Codes that are not ISO 4217 currencies are still given an id (and use the
+ * Monday to Friday work week), but the number of trades that use them is
+ * counted so that they can be reported. The default registry lasts as long as
+ * the program (e.g. while following a file with -tail), so once there are
+ * {@link #MAX_UNKNOWN_CURRENCIES} of them, further codes that aren't known and
+ * have no holiday calendar share the id of {@link #OTHER_CODE} rather than
+ * growing the registry. Looking those codes up takes a lock.
+ * 
+ * The registry is safe to use from any number of threads. Looking up a code that
+ * has already been seen does not lock or allocate.
+ * 
+ * @author smf
+ */
+public class CurrencyRegistry {
+    
+    /** The most codes that aren't known that are given their own ids */
+    public static final int MAX_UNKNOWN_CURRENCIES = 1024;
+    
+    /** The code of the currency shared by codes that aren't known once there are
+     * MAX_UNKNOWN_CURRENCIES of them */
+    public static final String OTHER_CODE = "(other)";
+    
+    // the most spellings of codes that are remembered - others are found by upper case code
+    private static final int MAX_SPELLINGS = 4 * MAX_UNKNOWN_CURRENCIES;
+    
+    // the registry used by TradingData and BusinessRules
+    private static final CurrencyRegistry default_registry = new CurrencyRegistry ();
+    
+    // ids for each spelling of a code that has been seen
+    private final Map<String, Integer> ids;
+    
+    // information about each currency, indexed by id - the array has spare room
+    // for new currencies and is replaced when it grows or the calendars change, so
+    // readers never need to lock
+    private volatile CurrencyInfo infos [];
+    
+    // number of trades in each currency that isn't known, indexed by id
+    private volatile LongAdder unknown_counts [];
+    
+    // number of currencies (written after the arrays), the number of them that
+    // aren't known, and the id of OTHER_CODE (-1 until it is needed)
+    private volatile int size;
+    private int n_unknown;
+    private int other_id;
+    
+    // holiday calendars used to resolve new currencies
+    private HolidayCalendars holiday_calendars;
+    
+    public CurrencyRegistry () {
+        ids = new ConcurrentHashMap<> ();
+        infos = new CurrencyInfo [16];
+        unknown_counts = new LongAdder [16];
+        size = 0;
+        n_unknown = 0;
+        other_id = -1;
+        holiday_calendars = null;
+    }
+    
+    /** Get the registry used by TradingData and BusinessRules.
+     * @return the registry */
+    public static CurrencyRegistry getDefault () { return default_registry; }
+    
+    /** Find the id for a currency code, adding the currency to the registry if needed.
+     * @param code the currency code
+     * @return the id */
+    public int intern (String code) {
+        Integer id = ids.get (code);
+        return id != null ? id : register (code);
+    }
+    
+    /** Find the id for a currency code without adding the currency to the registry,
+     * e.g. for a query. Codes that differ only in case are found, as with intern, and
+     * the codes that share an id once there are too many are found as OTHER_CODE.
+     * @param code the currency code
+     * @return the id, -1 if the currency is not in the registry */
+    public int find (String code) {
+        Integer id = ids.get (code);
+        if (id == null)
+            id = ids.get (code.toUpperCase (Locale.ROOT));
+        return id != null ? id : -1;
+    }
+    
+    /** Find the id for the currency of a trade, and count the trade if the
+     * currency is not known.
+     * @param code the currency code
+     * @return the id */
+    public int internTradeCurrency (String code) {
+        int id = intern (code);
+        if (! infos [id].isKnown())
+            unknown_counts [id].increment ();
+        return id;
+    }
+    
+    /** Count a number of trades in a currency, in the same way as internTradeCurrency
+     * does for one trade. Used when results for trades are reloaded rather than
+     * the trades themselves.
+     * @param code the currency code
+     * @param n_trades the number of trades */
+    public void addTradeCurrencyCount (String code, long n_trades) {
+        int id = intern (code);
+        if (! infos [id].isKnown())
+            unknown_counts [id].add (n_trades);
+    }
+    
+    /** Get the information for a currency.
+     * @param id the currency's id
+     * @return the information */
+    public CurrencyInfo get (int id) { return infos [id]; }
+    
+    /** Get the number of currencies in the registry.
+     * @return the number of currencies */
+    public int size () { return size; }
+    
+    /** Set the holiday calendars for the currencies in the registry, replacing any
+     * calendars set previously.
+     * @param calendars the calendars, null for none
+     */
+    public synchronized void setHolidayCalendars (HolidayCalendars calendars) {
+        holiday_calendars = calendars;
+        CurrencyInfo new_infos [] = new CurrencyInfo [infos.length];
+        for (int id = 0; id < size; id ++)
+            new_infos [id] = infos [id].withCalendar (findCalendar (infos [id].getCode()));
+        infos = new_infos;
+    }
+    
+    /** Get the currencies that are not known that have been used by trades, with
+     * the number of trades for each.
+     * @return map of currency code to number of trades, in the order the codes were first seen */
+    public Map<String, Long> getUnknownCurrencyCounts () {
+        Map<String, Long> counts = new LinkedHashMap<> ();
+        int current_size = size;
+        CurrencyInfo current_infos [] = infos;
+        LongAdder current_counts [] = unknown_counts;
+        for (int id = 0; id < current_size; id ++) {
+            if (! current_infos [id].isKnown() && current_counts [id].sum() > 0)
+                counts.put (current_infos [id].getCode(), current_counts [id].sum());
+        }
+        return counts;
+    }
+    
+    /** Add a currency to the registry (or a new spelling of a currency already in
+     * the registry).
+     * @param code the currency code
+     * @return the id */
+    private synchronized int register (String code) {
+        Integer id = ids.get (code);
+        if (id != null) return id;
+        
+        // codes that differ only in case share an id
+        String upper_code = code.toUpperCase (Locale.ROOT);
+        id = ids.get (upper_code);
+        if (id == null) {
+            Currency currency = null;
+            try {
+                currency = Currency.getInstance (upper_code);
+            } catch (IllegalArgumentException e) {
+                // not an ISO 4217 code
+            }
+            if (currency == null && findCalendar (upper_code) == null) {
+                // codes that aren't known share an id once there are too many of them
+                if (n_unknown >= MAX_UNKNOWN_CURRENCIES) {
+                    if (other_id < 0) {
+                        other_id = add (OTHER_CODE, null);
+                        ids.put (OTHER_CODE, other_id);
+                    }
+                    return other_id;
+                }
+                n_unknown ++;
+            }
+            id = add (upper_code, currency);
+            ids.put (upper_code, id);
+        }
+        if (ids.size() < MAX_SPELLINGS)
+            ids.put (code, id);
+        return id;
+    }
+    
+    /** Helper function to give a new currency an id, growing the arrays if they
+     * are full. Must be called with the lock held.
+     * @param upper_code the currency code, in upper case
+     * @param currency the ISO 4217 currency, null if the code is not known
+     * @return the id */
+    private int add (String upper_code, Currency currency) {
+        int id = size;
+        CurrencyInfo new_infos [] = infos;
+        LongAdder new_counts [] = unknown_counts;
+        if (id == new_infos.length) {
+            new_infos = Arrays.copyOf (new_infos, id * 2);
+            new_counts = Arrays.copyOf (new_counts, id * 2);
+        }
+        new_infos [id] = new CurrencyInfo (id, upper_code, currency != null,
+                                           currency != null ? currency.getDisplayName (Locale.ENGLISH) : null,
+                                           currency != null ? currency.getDefaultFractionDigits() : -1,
+                                           BusinessRules.findWeekendConvention (upper_code), findCalendar (upper_code));
+        new_counts [id] = new LongAdder ();
+        // publish the counts first - a reader that sees the new info must also see its counter
+        unknown_counts = new_counts;
+        infos = new_infos;
+        size = id + 1;
+        return id;
+    }
+    
+    /** Helper function to find the holiday calendar for a currency.
+     * @param code the currency code
+     * @return the calendar, null for none */
+    private HolidayCalendar findCalendar (String code) {
+        return holiday_calendars == null ? null : holiday_calendars.get (code);
+    }
+}
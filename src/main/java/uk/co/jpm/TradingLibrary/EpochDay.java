@@ -0,0 +1,78 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.util.Date;
+
+/**
+ * Helper functions for dates held as epoch days - the number of days since
+ * 1970-01-01 in the (proleptic) Gregorian calendar, GMT. An epoch day is a plain
+ * int, so dates can be stored, compared and offset without allocating objects.
+ * The Date equivalent of an epoch day is midnight GMT at the start of the day.
+ * 
+ * @author smf
+ */
+public class EpochDay {
+    
+    /** The number of milliseconds in a day */
+    public static final long MILLIS_PER_DAY = 86400000l;
+    
+    // 1970-01-01 was a Thursday
+    private static final int EPOCH_DAY_OF_WEEK = 4;
+    
+    /** Find the epoch day that a Date falls on (time information ignored).
+     * @param date the date
+     * @return the epoch day */
+    public static int fromDate (Date date) {
+        return (int) Math.floorDiv (date.getTime(), MILLIS_PER_DAY);
+    }
+    
+    /** Create a Date for midnight GMT at the start of an epoch day.
+     * @param epoch_day the epoch day
+     * @return the Date */
+    public static Date toDate (int epoch_day) {
+        return new Date (epoch_day * MILLIS_PER_DAY);
+    }
+    
+    /** Find the epoch day for a year, month and day of the month. The day of the
+     * month is not checked against the length of the month, so e.g. 32-Jan is
+     * treated as 1-Feb in the same way as a lenient calendar would.
+     * @param year the year
+     * @param month the month, 1 to 12
+     * @param day_of_month the day of the month, normally 1 to 31
+     * @return the epoch day */
+    public static int of (int year, int month, int day_of_month) {
+        // count years from March so that the leap day is at the end of the year,
+        // then use 400 year eras (146097 days) to handle the leap year rules
+        if (month <= 2) year --;
+        int era = Math.floorDiv (year, 400);
+        int year_of_era = year - era * 400;
+        int day_of_year = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5;
+        int day_of_era = year_of_era * 365 + year_of_era / 4 - year_of_era / 100 + day_of_year;
+        return era * 146097 + day_of_era - 719468 + day_of_month - 1;
+    }
+    
+    /** Find the year, month and day of the month for an epoch day. This is the
+     * reverse of {@link #of}.
+     * @param epoch_day the epoch day
+     * @return the date packed into an int as year * 10000 + month * 100 + day of month
+     *         (e.g. 20170102 for 2-Jan-2017) */
+    public static int toYearMonthDay (int epoch_day) {
+        // the same March based 400 year eras as in of()
+        int days = epoch_day + 719468;
+        int era = Math.floorDiv (days, 146097);
+        int day_of_era = days - era * 146097;
+        int year_of_era = (day_of_era - day_of_era / 1460 + day_of_era / 36524 - day_of_era / 146096) / 365;
+        int day_of_year = day_of_era - (365 * year_of_era + year_of_era / 4 - year_of_era / 100);
+        int month_from_march = (5 * day_of_year + 2) / 153;
+        int day_of_month = day_of_year - (153 * month_from_march + 2) / 5 + 1;
+        int month = month_from_march < 10 ? month_from_march + 3 : month_from_march - 9;
+        int year = year_of_era + era * 400 + (month <= 2 ? 1 : 0);
+        return year * 10000 + month * 100 + day_of_month;
+    }
+    
+    /** Find the day of the week for an epoch day.
+     * @param epoch_day the epoch day
+     * @return one of the day of the week constants from GregorianCalendar (SUNDAY = 1 to SATURDAY = 7) */
+    public static int dayOfWeek (int epoch_day) {
+        return Math.floorMod (epoch_day + EPOCH_DAY_OF_WEEK, 7) + 1;
+    }
+}
@@ -0,0 +1,177 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * Arithmetic on fixed point amounts of money, held as longs scaled by a power of
+ * ten. Prices are held to {@link #PRICE_DIGITS} decimal places, exchange rates to
+ * {@link #FX_DIGITS} and USD amounts to {@link #USD_DIGITS}, so the USD amount of
+ * a trade with a price in cents and an exchange rate to four places is exact.
+ *
+ * Totals of USD amounts are held as 128 bit integers, split into a high and a low
+ * long (the low long is unsigned), so adding up any number of trades is exact and
+ * gives the same total in any order.
+ *
+ * @author smf
+ */
+public class FixedPoint {
+
+    /** Number of decimal places held for prices */
+    public static final int PRICE_DIGITS = 6;
+
+    /** Number of decimal places held for exchange rates */
+    public static final int FX_DIGITS = 8;
+
+    /** Number of decimal places held for USD amounts */
+    public static final int USD_DIGITS = 6;
+
+    // powers of ten that fit in a long
+    private static final long POWERS_OF_TEN [] = {
+        1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L,
+        10000000000L, 100000000000L, 1000000000000L, 10000000000000L, 100000000000000L,
+        1000000000000000L, 10000000000000000L, 100000000000000000L, 1000000000000000000L
+    };
+
+    // the scaled value of a double can be found by multiplying and rounding when
+    // it is below this - the rounding error of the product is then well under 0.5
+    private static final double MAX_FAST_SCALED = 0x1.0p50;
+
+    // the product of a price and an exchange rate is divided by this to give USD
+    private static final long PRODUCT_DIVISOR = POWERS_OF_TEN [PRICE_DIGITS + FX_DIGITS - USD_DIGITS];
+
+    // the largest exchange rate that can be multiplied by a remainder of the divisor
+    // in a long - any rate that is used in practice
+    private static final long MAX_FAST_FX = Long.MAX_VALUE / PRODUCT_DIVISOR;
+
+    /** Convert a double to a fixed point value. A double parsed from a decimal
+     * with no more than the given number of decimal places (and no more than 15
+     * significant digits) gives back the decimal exactly. Other values are rounded
+     * to the nearest, with ties to even.
+     * @param value the value
+     * @param n_digits the number of decimal places to keep
+     * @return the value scaled by 10 to the power of n_digits
+     * @throws ArithmeticException if the value is not finite or is too large
+     */
+    public static long toScaled (double value, int n_digits) {
+        double scaled = value * POWERS_OF_TEN [n_digits];
+        if (Math.abs (scaled) < MAX_FAST_SCALED) {
+            long rounded = Math.round (scaled);
+            // only values with more decimal places than are kept can be near a tie
+            if (Math.abs (scaled - rounded) < 0.25)
+                return rounded;
+        }
+        if (Double.isNaN (value) || Double.isInfinite (value))
+            throw new ArithmeticException ("Not a fixed point number: " + value);
+        // the shortest decimal that gives back the double is the one it was parsed from
+        return new BigDecimal (Double.toString (value)).setScale (n_digits, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+    }
+
+    /** Convert a fixed point value to a double.
+     * @param scaled the value scaled by 10 to the power of n_digits
+     * @param n_digits the number of decimal places held
+     * @return the nearest double */
+    public static double toDouble (long scaled, int n_digits) {
+        if (Math.abs (scaled) < (1L << 53))
+            return (double) scaled / POWERS_OF_TEN [n_digits];
+        return BigDecimal.valueOf (scaled, n_digits).doubleValue();
+    }
+
+    /** Work out the USD amount of a trade: price * units * fx, rounded to
+     * {@link #USD_DIGITS} decimal places with ties to even. The product is worked
+     * out exactly, so there is only the one rounding.
+     * @param price_per_unit the price, scaled to {@link #PRICE_DIGITS} places
+     * @param number_of_units the number of units
+     * @param agreed_fx the exchange rate, scaled to {@link #FX_DIGITS} places
+     * @return the USD amount, scaled to {@link #USD_DIGITS} places
+     * @throws ArithmeticException if the amount is too large for a long
+     */
+    public static long multiplyUSD (long price_per_unit, int number_of_units, long agreed_fx) {
+        long fx = Math.abs (agreed_fx);
+        if (fx > MAX_FAST_FX || price_per_unit == Long.MIN_VALUE)
+            return multiplyUSDSlowly (price_per_unit, number_of_units, agreed_fx);
+        try {
+            // split price * units into whole and part multiples of the divisor, so that
+            // (whole * divisor + part) * fx / divisor = whole * fx + part * fx / divisor
+            // with each step fitting in a long
+            long price_units = Math.multiplyExact (Math.abs (price_per_unit), Math.abs ((long) number_of_units));
+            long part_fx = (price_units % PRODUCT_DIVISOR) * fx;
+            long usd = Math.addExact (Math.multiplyExact (price_units / PRODUCT_DIVISOR, fx), part_fx / PRODUCT_DIVISOR);
+            long remainder = part_fx % PRODUCT_DIVISOR;
+            if (remainder * 2 > PRODUCT_DIVISOR || (remainder * 2 == PRODUCT_DIVISOR && (usd & 1) != 0))
+                usd = Math.incrementExact (usd);
+            return (price_per_unit < 0) ^ (number_of_units < 0) ^ (agreed_fx < 0) ? - usd : usd;
+        } catch (ArithmeticException e) {
+            return multiplyUSDSlowly (price_per_unit, number_of_units, agreed_fx);
+        }
+    }
+
+    /** Helper function to work out the USD amount of a trade using BigDecimal, for
+     * amounts whose parts don't fit in a long.
+     * @param price_per_unit the scaled price
+     * @param number_of_units the number of units
+     * @param agreed_fx the scaled exchange rate
+     * @return the scaled USD amount
+     * @throws ArithmeticException if the amount is too large for a long */
+    private static long multiplyUSDSlowly (long price_per_unit, int number_of_units, long agreed_fx) {
+        return BigDecimal.valueOf (price_per_unit, PRICE_DIGITS).multiply (BigDecimal.valueOf (number_of_units))
+                         .multiply (BigDecimal.valueOf (agreed_fx, FX_DIGITS))
+                         .setScale (USD_DIGITS, RoundingMode.HALF_EVEN).unscaledValue().longValueExact();
+    }
+
+    /** Get the high long of the 128 bit sum of a 128 bit total and a long.
+     * The low long is the sum of the low long and the value.
+     * @param high the high long of the total
+     * @param low the low long of the total
+     * @param value the value to add
+     * @return the high long of the sum */
+    public static long addHigh (long high, long low, long value) {
+        return high + (value >> 63) + (Long.compareUnsigned (low + value, low) < 0 ? 1 : 0);
+    }
+
+    /** Get the high long of the sum of two 128 bit totals. The low long is the
+     * sum of the low longs.
+     * @param high1 the high long of the first total
+     * @param low1 the low long of the first total
+     * @param high2 the high long of the second total
+     * @param low2 the low long of the second total
+     * @return the high long of the sum */
+    public static long addHigh (long high1, long low1, long high2, long low2) {
+        return high1 + high2 + (Long.compareUnsigned (low1 + low2, low1) < 0 ? 1 : 0);
+    }
+
+    /** Compare two 128 bit totals.
+     * @param high1 the high long of the first total
+     * @param low1 the low long of the first total
+     * @param high2 the high long of the second total
+     * @param low2 the low long of the second total
+     * @return less than, equal to or greater than 0 as the first total is less than,
+     *         equal to or greater than the second */
+    public static int compare (long high1, long low1, long high2, long low2) {
+        return high1 != high2 ? Long.compare (high1, high2) : Long.compareUnsigned (low1, low2);
+    }
+
+    /** Convert a 128 bit total to a double.
+     * @param high the high long of the total
+     * @param low the low long of the total
+     * @param n_digits the number of decimal places held
+     * @return the nearest double */
+    public static double toDouble (long high, long low, int n_digits) {
+        if (high == (low >> 63))
+            return toDouble (low, n_digits);
+        return toBigDecimal (high, low, n_digits).doubleValue();
+    }
+
+    /** Convert a 128 bit total to a BigDecimal.
+     * @param high the high long of the total
+     * @param low the low long of the total
+     * @param n_digits the number of decimal places held
+     * @return the exact value */
+    public static BigDecimal toBigDecimal (long high, long low, int n_digits) {
+        if (high == (low >> 63))
+            return BigDecimal.valueOf (low, n_digits);
+        BigInteger unsigned_low = BigInteger.valueOf (low >>> 1).shiftLeft (1).or (BigInteger.valueOf (low & 1));
+        return new BigDecimal (BigInteger.valueOf (high).shiftLeft (64).or (unsigned_low), n_digits);
+    }
+}
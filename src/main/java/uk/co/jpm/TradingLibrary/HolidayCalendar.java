@@ -0,0 +1,108 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The business days for a currency (proxy for a country) over a range of years.
+ * Business days are precomputed from a weekend convention and a list of public
+ * holidays and held as a bitset, one bit per day, so finding the next business
+ * day is a scan for the next set bit.
+ * 
+ * @author smf
+ */
+public class HolidayCalendar {
+    
+    /** Value returned when a date is outside the range of the calendar */
+    public static final int OUTSIDE_CALENDAR = Integer.MIN_VALUE;
+    
+    // epoch day of the first day in the calendar and the number of days covered
+    private final int first_day;
+    private final int n_days;
+    
+    // one bit per day, set for business days
+    private final long business_days [];
+    
+    /** Create a calendar.
+     * 
+     * @param weekend_convention the currency's weekend, BusinessRules.WEEKEND_SAT_SUN or WEEKEND_FRI_SAT
+     * @param holidays the public holidays, as epoch days - days outside the calendar's range are ignored
+     * @param first_year the first year in the calendar
+     * @param last_year the last year in the calendar
+     */
+    public HolidayCalendar (int weekend_convention, int holidays [], int first_year, int last_year) {
+        first_day = EpochDay.of (first_year, 1, 1);
+        n_days = EpochDay.of (last_year + 1, 1, 1) - first_day;
+        business_days = new long [(n_days + 63) / 64];
+        
+        // mark weekdays, then clear holidays
+        for (int index = 0; index < n_days; index ++) {
+            if (BusinessRules.isWorkingDay (weekend_convention, EpochDay.dayOfWeek (first_day + index)))
+                business_days [index >>> 6] |= 1l << index;
+        }
+        for (int holiday : holidays) {
+            int index = holiday - first_day;
+            if (index >= 0 && index < n_days)
+                business_days [index >>> 6] &= ~ (1l << index);
+        }
+    }
+    
+    /** Create a calendar from a file of public holidays. The file has one date per line
+     * in dd-MMM-yyyy format. Blank lines and lines starting with '#' are ignored.
+     * 
+     * @param holiday_file the file to read
+     * @param weekend_convention the currency's weekend, BusinessRules.WEEKEND_SAT_SUN or WEEKEND_FRI_SAT
+     * @param first_year the first year in the calendar
+     * @param last_year the last year in the calendar
+     * @return the calendar
+     * @throws IOException if the file can't be read or contains a bad date
+     */
+    public static HolidayCalendar load (File holiday_file, int weekend_convention, int first_year, int last_year) throws IOException {
+        int holidays [] = new int [16];
+        int n_holidays = 0;
+        try (BufferedReader reader = new BufferedReader (new FileReader (holiday_file))) {
+            int line_number = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line_number ++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith ("#")) continue;
+                int holiday = TradeDateParser.parseEpochDay (line);
+                if (holiday == TradeDateParser.INVALID_DATE)
+                    throw new IOException ("Bad holiday date in " + holiday_file.getPath() + " line " + line_number + ": " + line);
+                if (n_holidays == holidays.length)
+                    holidays = Arrays.copyOf (holidays, n_holidays * 2);
+                holidays [n_holidays ++] = holiday;
+            }
+        }
+        return new HolidayCalendar (weekend_convention, Arrays.copyOf (holidays, n_holidays), first_year, last_year);
+    }
+    
+    /** Find the first business day on or after a date.
+     * @param epoch_day the date
+     * @return the business day, or OUTSIDE_CALENDAR if the date (or the next business day) is not in the calendar
+     */
+    public int nextBusinessDay (int epoch_day) {
+        int index = epoch_day - first_day;
+        if (index < 0 || index >= n_days) return OUTSIDE_CALENDAR;
+        int word = index >>> 6;
+        long bits = business_days [word] & (-1l << index);
+        while (bits == 0) {
+            if (++ word >= business_days.length) return OUTSIDE_CALENDAR;
+            bits = business_days [word];
+        }
+        return first_day + (word << 6) + Long.numberOfTrailingZeros (bits);
+    }
+    
+    /** Find out whether a date is a business day.
+     * @param epoch_day the date
+     * @return true for a business day, false for a weekend, holiday or a date outside the calendar */
+    public boolean isBusinessDay (int epoch_day) {
+        int index = epoch_day - first_day;
+        if (index < 0 || index >= n_days) return false;
+        return (business_days [index >>> 6] & (1l << index)) != 0;
+    }
+}
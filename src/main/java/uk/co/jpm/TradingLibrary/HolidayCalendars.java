@@ -0,0 +1,63 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A set of {@link HolidayCalendar}s, one for each currency that has public
+ * holidays. Currencies without a calendar only have weekends as non-business days.
+ * 
+ * @author smf
+ */
+public class HolidayCalendars {
+    
+    /** Suffix for the names of holiday files in a calendar directory */
+    public static final String FILE_SUFFIX = ".txt";
+    
+    // calendars, by currency name - names are not case sensitive, in line with the
+    // weekend rules, and a TreeMap means no new strings are needed to look them up
+    private final Map<String, HolidayCalendar> calendars;
+    
+    public HolidayCalendars () {
+        calendars = new TreeMap<> (String.CASE_INSENSITIVE_ORDER);
+    }
+    
+    /** Load calendars from a directory that holds one holiday file for each currency
+     * (see {@link HolidayCalendar#load}). Files are named after the currency with the
+     * suffix ".txt", e.g. GBP.txt. Each currency uses its normal weekend convention.
+     * 
+     * @param directory the directory to read
+     * @param first_year the first year in the calendars
+     * @param last_year the last year in the calendars
+     * @return the calendars
+     * @throws IOException if the directory or a file can't be read or contains a bad date
+     */
+    public static HolidayCalendars loadDirectory (File directory, int first_year, int last_year) throws IOException {
+        File files [] = directory.listFiles ((dir, name) -> name.endsWith (FILE_SUFFIX));
+        if (files == null)
+            throw new IOException ("Can't read holiday calendar directory: " + directory.getPath());
+        
+        HolidayCalendars holiday_calendars = new HolidayCalendars ();
+        for (File file : files) {
+            String currency = file.getName().substring (0, file.getName().length() - FILE_SUFFIX.length());
+            holiday_calendars.put (currency, HolidayCalendar.load (file, BusinessRules.findWeekendConvention (currency), first_year, last_year));
+        }
+        return holiday_calendars;
+    }
+    
+    /** Add or replace the calendar for a currency.
+     * @param currency the currency
+     * @param calendar the calendar */
+    public void put (String currency, HolidayCalendar calendar) { calendars.put (currency, calendar); }
+    
+    /** Get the calendar for a currency.
+     * @param currency the currency
+     * @return the calendar, or null if the currency has no calendar */
+    public HolidayCalendar get (String currency) { return calendars.get (currency); }
+    
+    /** Get the number of calendars.
+     * @return the number of calendars */
+    public int size () { return calendars.size(); }
+}
@@ -0,0 +1,226 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and timings for the stages of the trading data pipeline: parsing,
+ * settlement date resolution, aggregation and rendering. The metrics can be
+ * watched with JMX while a run is in progress (see {@link #registerMBean}) and
+ * printed as a summary at the end.
+ * 
+ * The metrics are cheap enough to leave on all the time. Counters are LongAdders,
+ * which many threads can update without contention, and are mostly updated once
+ * per block of records rather than once per record. Per-record stages are timed
+ * on one record in every {@link #SAMPLE_INTERVAL} (chosen by record number) and
+ * the totals are estimated as the mean sample times the number of records. The
+ * first block of each input is not sampled, as its first records pay for class
+ * loading and a cold JIT, and the estimates are capped at the load time once it
+ * has been measured. Stages that run on their own (e.g. rendering) are timed in
+ * full.
+ * 
+ * @author smf
+ */
+public class PipelineMetrics implements PipelineMetricsMXBean {
+    
+    /** One record in this many is timed, after the first block - a power of 2 */
+    public static final int SAMPLE_INTERVAL = 1024;
+    
+    /** The name the metrics are registered with in the platform MBean server */
+    public static final String MBEAN_NAME = "uk.co.jpm.TradingLibrary:type=PipelineMetrics";
+    
+    /** The stages of the pipeline */
+    public enum Stage { LOAD, PARSE, SETTLEMENT, AGGREGATION, RENDERING }
+    
+    // the metrics used by the rest of the library
+    private static final PipelineMetrics default_metrics = new PipelineMetrics ();
+    
+    // time the metrics were started
+    private volatile long start_nanos;
+    
+    // measured and sampled time for each stage
+    private final LongAdder measured_nanos [];
+    private final LongAdder sampled_nanos [];
+    private final LongAdder sample_counts [];
+    
+    // counters
+    private final LongAdder records_read;
+    private final LongAdder parse_failures;
+    private final LongAdder bytes_read;
+    
+    // sizes of the results, set once aggregation has finished
+    private volatile long distinct_entities;
+    private volatile long distinct_days;
+    private volatile long peak_day_entities;
+    
+    public PipelineMetrics () {
+        measured_nanos = new LongAdder [Stage.values().length];
+        sampled_nanos = new LongAdder [Stage.values().length];
+        sample_counts = new LongAdder [Stage.values().length];
+        for (int count = 0; count < measured_nanos.length; count ++) {
+            measured_nanos [count] = new LongAdder ();
+            sampled_nanos [count] = new LongAdder ();
+            sample_counts [count] = new LongAdder ();
+        }
+        records_read = new LongAdder ();
+        parse_failures = new LongAdder ();
+        bytes_read = new LongAdder ();
+        reset ();
+    }
+    
+    /** Get the metrics used by the rest of the library.
+     * @return the metrics */
+    public static PipelineMetrics getDefault () { return default_metrics; }
+    
+    /** Find out whether a record should be timed. The records in the first block
+     * are never timed, so the estimates aren't thrown out by the warm-up.
+     * @param record_number the number of the record in its input
+     * @return true if the record should be timed */
+    public static boolean isSampled (long record_number) {
+        return record_number >= SAMPLE_INTERVAL && (record_number & (SAMPLE_INTERVAL - 1)) == 0;
+    }
+    
+    /** Set all the metrics back to zero and restart the elapsed time. */
+    public final void reset () {
+        start_nanos = System.nanoTime();
+        for (int count = 0; count < measured_nanos.length; count ++) {
+            measured_nanos [count].reset();
+            sampled_nanos [count].reset();
+            sample_counts [count].reset();
+        }
+        records_read.reset();
+        parse_failures.reset();
+        bytes_read.reset();
+        distinct_entities = distinct_days = peak_day_entities = 0;
+    }
+    
+    /** Register the metrics with the platform MBean server, so that they can be
+     * monitored with JMX. Does nothing if they are already registered.
+     * @throws JMException if the metrics could not be registered
+     */
+    public void registerMBean () throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName (MBEAN_NAME);
+        if (! server.isRegistered (name))
+            server.registerMBean (this, name);
+    }
+    
+    /** Add the time taken by a stage that was timed in full.
+     * @param stage the stage
+     * @param nanos the time taken, in nanoseconds */
+    public void addStageNanos (Stage stage, long nanos) { measured_nanos [stage.ordinal()].add (nanos); }
+    
+    /** Add the time taken by a stage for a sampled record (see {@link #isSampled}).
+     * @param stage the stage
+     * @param nanos the time taken, in nanoseconds */
+    public void addSampleNanos (Stage stage, long nanos) {
+        sampled_nanos [stage.ordinal()].add (nanos);
+        sample_counts [stage.ordinal()].increment();
+    }
+    
+    /** Count records that have been read.
+     * @param n_records the number of records */
+    public void addRecordsRead (long n_records) { records_read.add (n_records); }
+    
+    /** Count records that could not be parsed.
+     * @param n_records the number of records */
+    public void addParseFailures (long n_records) { parse_failures.add (n_records); }
+    
+    /** Count bytes of CSV data that have been read. Data that is given as characters
+     * (a Reader) is counted a character at a time.
+     * @param n_bytes the number of bytes */
+    public void addBytesRead (long n_bytes) { bytes_read.add (n_bytes); }
+    
+    /** Set the sizes of the aggregated results.
+     * @param distinct_entities the number of different entities
+     * @param distinct_days the number of different settlement days
+     * @param peak_day_entities the most entities accumulated for a single day */
+    public void setResultSizes (long distinct_entities, long distinct_days, long peak_day_entities) {
+        this.distinct_entities = distinct_entities;
+        this.distinct_days = distinct_days;
+        this.peak_day_entities = peak_day_entities;
+    }
+    
+    /** Get the time taken by a stage - the time measured in full plus the time
+     * estimated from samples. The estimate is the mean sample time for every record
+     * the stage handled (every record read, and for parsing every failure too), and
+     * is no more than the load time once that has been measured.
+     * @param stage the stage
+     * @return the time in nanoseconds */
+    public long getStageNanos (Stage stage) {
+        long nanos = measured_nanos [stage.ordinal()].sum();
+        long n_samples = sample_counts [stage.ordinal()].sum();
+        if (n_samples > 0) {
+            long n_records = records_read.sum() + (stage == Stage.PARSE ? parse_failures.sum() : 0);
+            long estimate = (long) ((double) sampled_nanos [stage.ordinal()].sum() / n_samples * n_records);
+            long load_nanos = measured_nanos [Stage.LOAD.ordinal()].sum();
+            nanos += load_nanos > 0 ? Math.min (estimate, load_nanos) : estimate;
+        }
+        return nanos;
+    }
+    
+    @Override
+    public long getElapsedMillis () { return (System.nanoTime() - start_nanos) / 1000000; }
+    
+    @Override
+    public long getLoadMillis () { return getStageNanos (Stage.LOAD) / 1000000; }
+    
+    @Override
+    public long getParseMillis () { return getStageNanos (Stage.PARSE) / 1000000; }
+    
+    @Override
+    public long getSettlementMillis () { return getStageNanos (Stage.SETTLEMENT) / 1000000; }
+    
+    @Override
+    public long getAggregationMillis () { return getStageNanos (Stage.AGGREGATION) / 1000000; }
+    
+    @Override
+    public long getRenderingMillis () { return getStageNanos (Stage.RENDERING) / 1000000; }
+    
+    @Override
+    public long getRecordsRead () { return records_read.sum(); }
+    
+    @Override
+    public long getParseFailures () { return parse_failures.sum(); }
+    
+    @Override
+    public long getBytesRead () { return bytes_read.sum(); }
+    
+    @Override
+    public double getRecordsPerSecond () {
+        // while loading is in progress use the elapsed time
+        long nanos = getStageNanos (Stage.LOAD);
+        if (nanos == 0) nanos = System.nanoTime() - start_nanos;
+        return nanos <= 0 ? 0.0 : records_read.sum() * 1e9 / nanos;
+    }
+    
+    @Override
+    public long getDistinctEntities () { return distinct_entities; }
+    
+    @Override
+    public long getDistinctDays () { return distinct_days; }
+    
+    @Override
+    public long getPeakDayEntities () { return peak_day_entities; }
+    
+    /** Print a summary of the metrics.
+     * @param stream where to print */
+    public void printSummary (PrintStream stream) {
+        stream.println ("Pipeline metrics:");
+        stream.printf  ("  Elapsed time:          %d ms%n", getElapsedMillis());
+        stream.printf  ("  Load time:             %d ms%n", getLoadMillis());
+        stream.printf  ("    Parsing (estimated): %d ms, including settlement dates %d ms%n", getParseMillis(), getSettlementMillis());
+        stream.printf  ("    Aggregation:         %d ms%n", getAggregationMillis());
+        stream.printf  ("  Rendering time:        %d ms%n", getRenderingMillis());
+        stream.printf  ("  Records read:          %d (%.0f per second)%n", getRecordsRead(), getRecordsPerSecond());
+        stream.printf  ("  Parse failures:        %d%n", getParseFailures());
+        stream.printf  ("  Bytes read:            %d%n", getBytesRead());
+        stream.printf  ("  Distinct entities:     %d%n", getDistinctEntities());
+        stream.printf  ("  Distinct days:         %d%n", getDistinctDays());
+        stream.printf  ("  Peak entities per day: %d%n", getPeakDayEntities());
+    }
+}
@@ -0,0 +1,50 @@
+package uk.co.jpm.TradingLibrary;
+
+/**
+ * The management interface of {@link PipelineMetrics}, for monitoring a run with
+ * JMX (e.g. jconsole). Times are in milliseconds. The parse, settlement and
+ * aggregation times are estimated from a sample of the records.
+ * 
+ * @author smf
+ */
+public interface PipelineMetricsMXBean {
+    
+    /** @return the time since the metrics were started or reset */
+    long getElapsedMillis ();
+    
+    /** @return the time spent loading trades (parsing, settlement and aggregation) so far */
+    long getLoadMillis ();
+    
+    /** @return the estimated time spent parsing records, including settlement dates */
+    long getParseMillis ();
+    
+    /** @return the estimated time spent finding actual settlement dates */
+    long getSettlementMillis ();
+    
+    /** @return the estimated or measured time spent aggregating trades */
+    long getAggregationMillis ();
+    
+    /** @return the time spent rendering the report */
+    long getRenderingMillis ();
+    
+    /** @return the number of records read */
+    long getRecordsRead ();
+    
+    /** @return the number of records that could not be parsed */
+    long getParseFailures ();
+    
+    /** @return the number of bytes of CSV data read */
+    long getBytesRead ();
+    
+    /** @return records read per second of load time */
+    double getRecordsPerSecond ();
+    
+    /** @return the number of different entities, once aggregation has finished */
+    long getDistinctEntities ();
+    
+    /** @return the number of different settlement days, once aggregation has finished */
+    long getDistinctDays ();
+    
+    /** @return the most entities accumulated for a single day, once aggregation has finished */
+    long getPeakDayEntities ();
+}
@@ -0,0 +1,89 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVPrinter;
+
+/**
+ * Writes rejected trading data records to a CSV file so that they can be checked
+ * and corrected. Each row holds the line number the record started on, the reason
+ * it was rejected and then the record's own fields, so removing the first two
+ * columns gives back the original record. The header names the trading data
+ * columns after "Line" and "Reason", as in the input files.
+ * 
+ * @author smf
+ */
+public class QuarantineFile implements TradingDataRejectHandler, Closeable {
+    
+    // the header row - the line number and reason, then the columns of the trading data
+    private static final String HEADER [] = {
+        "Line", "Reason", "Entity", "Buy/Sell", "AgreedFx", "Currency", "InstructionDate", "SettlementDate", "Units", "Price per unit"
+    };
+    
+    // where the records are written
+    private final CSVPrinter printer;
+    
+    // true to write each record to the file straight away
+    private final boolean auto_flush;
+    
+    // number of records written
+    private long n_records;
+    
+    /** Create a quarantine file, replacing any file of the same name.
+     * @param file the file to write
+     * @param auto_flush true to write each record to the file as soon as it is
+     *        rejected (e.g. for a report that runs until it is interrupted), false to buffer
+     * @throws IOException if the file could not be created
+     */
+    public QuarantineFile (File file, boolean auto_flush) throws IOException {
+        this (new BufferedWriter (new OutputStreamWriter (new FileOutputStream (file), StandardCharsets.UTF_8)), auto_flush);
+    }
+    
+    /** Create a quarantine file that writes to a Writer.
+     * @param writer where to write the records
+     * @param auto_flush true to flush the writer after each record
+     * @throws IOException if the header could not be written
+     */
+    public QuarantineFile (Writer writer, boolean auto_flush) throws IOException {
+        this.printer = new CSVPrinter (writer, CSVFormat.RFC4180);
+        this.auto_flush = auto_flush;
+        this.n_records = 0;
+        printer.printRecord ((Object []) HEADER);
+        if (auto_flush) printer.flush ();
+    }
+    
+    /** Write a rejected record to the file.
+     * @param line_number the line the record starts on
+     * @param reason why the record could not be decoded
+     * @param fields the text of the record's fields
+     * @throws IOException if the record could not be written
+     */
+    @Override
+    public synchronized void reject (long line_number, String reason, Iterable<String> fields) throws IOException {
+        printer.print (line_number);
+        printer.print (reason);
+        for (String field : fields)
+            printer.print (field);
+        printer.println ();
+        if (auto_flush) printer.flush ();
+        n_records ++;
+    }
+    
+    /** Get the number of records written to the file.
+     * @return the number of records */
+    public synchronized long getNRecords () { return n_records; }
+    
+    /** Flush and close the file.
+     * @throws IOException if the file could not be written */
+    @Override
+    public synchronized void close () throws IOException {
+        printer.close ();
+    }
+}
@@ -0,0 +1,77 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds rejected records so they can be handled later. Used when parts of a file
+ * are read on several threads: each part keeps its own rejected records, numbered
+ * from the start of the part, and they are passed on in file order once the line
+ * numbers of the earlier parts are known.
+ * 
+ * @author smf
+ */
+public class RejectedRecords implements TradingDataRejectHandler {
+    
+    // the records, in input order
+    private final List<Rejection> rejections;
+    
+    // number of lines in the input the records were read from
+    private long n_lines;
+    
+    /** Create an empty list of rejected records. */
+    public RejectedRecords () {
+        rejections = new ArrayList<> ();
+        n_lines = 0;
+    }
+    
+    /** Keep a rejected record.
+     * @param line_number the line the record starts on
+     * @param reason why the record could not be decoded
+     * @param fields the text of the record's fields
+     */
+    @Override
+    public void reject (long line_number, String reason, Iterable<String> fields) {
+        List<String> copy = new ArrayList<> ();
+        for (String field : fields)
+            copy.add (field);
+        rejections.add (new Rejection (line_number, reason, copy));
+    }
+    
+    /** Pass the rejected records on to another handler.
+     * @param handler the handler
+     * @param first_line the line number of the first line of the input in the whole
+     *        file, added to each record's line number, less one
+     * @throws IOException if the handler could not handle a record
+     */
+    public void replay (TradingDataRejectHandler handler, long first_line) throws IOException {
+        for (Rejection rejection : rejections)
+            handler.reject (rejection.line_number + first_line - 1, rejection.reason, rejection.fields);
+    }
+    
+    /** Set the number of lines in the input the records were read from.
+     * @param n_lines the number of lines */
+    public void setNLines (long n_lines) { this.n_lines = n_lines; }
+    
+    /** Get the number of lines in the input the records were read from.
+     * @return the number of lines */
+    public long getNLines () { return n_lines; }
+    
+    /** Get the number of rejected records.
+     * @return the number of records */
+    public int size () { return rejections.size(); }
+    
+    /** A rejected record. */
+    private static class Rejection {
+        final long line_number;
+        final String reason;
+        final List<String> fields;
+        
+        Rejection (long line_number, String reason, List<String> fields) {
+            this.line_number = line_number;
+            this.reason = reason;
+            this.fields = fields;
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A dictionary that encodes strings (e.g. entity or currency names) as small
+ * integer ids. Ids are allocated in the order that strings are first seen,
+ * starting at 0. Only one instance of each string is kept.
+ * 
+ * @author smf
+ */
+public class StringDictionary {
+    
+    // the strings and their ids
+    private final Map<String, Integer> ids;
+    private final List<String> strings;
+    
+    public StringDictionary () {
+        ids = new HashMap<> ();
+        strings = new ArrayList<> ();
+    }
+    
+    /** Find the id for a string, adding the string to the dictionary if needed.
+     * @param string the string to encode
+     * @return the id */
+    public int encode (String string) {
+        Integer id = ids.get (string);
+        if (id == null) {
+            id = strings.size();
+            ids.put (string, id);
+            strings.add (string);
+        }
+        return id;
+    }
+    
+    /** Find the id for a string without adding it to the dictionary.
+     * @param string the string to find
+     * @return the id, or -1 if the string is not in the dictionary */
+    public int find (String string) {
+        Integer id = ids.get (string);
+        return id == null ? -1 : id;
+    }
+    
+    /** Get the string for an id.
+     * @param id the id
+     * @return the string */
+    public String decode (int id) { return strings.get (id); }
+    
+    /** Get the number of strings in the dictionary.
+     * @return the number of strings, which is also the next id that will be allocated */
+    public int size () { return strings.size(); }
+}
@@ -0,0 +1,123 @@
+package uk.co.jpm.TradingLibrary;
+
+/**
+ * A parser for dates in the dd-MMM-yyyy format used in trading data files (e.g.
+ * 02-Jan-2016). Dates are parsed directly from the characters to an epoch day
+ * (see {@link EpochDay}), without creating Date or Calendar objects.
+ * 
+ * The parser accepts the same input as a lenient SimpleDateFormat with the pattern
+ * dd-MMM-yyyy in an English locale: the day may have any number of digits and may
+ * be past the end of the month (32-Jan-2016 is 01-Feb-2016), month names are not
+ * case sensitive and may be abbreviated or in full, the year is not adjusted for
+ * century and any text after the year is ignored. Dates use the proleptic
+ * Gregorian calendar.
+ * 
+ * A file of trades only contains a few distinct dates, so recently parsed date
+ * strings are cached. The cache holds immutable entries, so the parser is safe
+ * to use from any number of threads.
+ * 
+ * @author smf
+ */
+public class TradeDateParser {
+    
+    /** Value returned when a date can't be parsed */
+    public static final int INVALID_DATE = Integer.MIN_VALUE;
+    
+    // month names, in lower case
+    private static final String MONTH_NAMES [] = {
+        "january", "february", "march", "april", "may", "june", "july",
+        "august", "september", "october", "november", "december"
+    };
+    
+    // largest number of digits to accept in a number (keeps values in range of an int)
+    private static final int MAX_DIGITS = 6;
+    
+    // cache of recently parsed dates, indexed by the hash code of the text -
+    // must be a power of 2 in size
+    private static final int CACHE_SIZE = 64;
+    private static final CacheEntry cache [] = new CacheEntry [CACHE_SIZE];
+    
+    /** Parse a date.
+     * @param text the date to parse (may be null)
+     * @return the epoch day, or INVALID_DATE if the text could not be parsed
+     */
+    public static int parseEpochDay (String text) {
+        if (text == null) return INVALID_DATE;
+        
+        // check the cache first
+        int hash = text.hashCode();
+        int index = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        CacheEntry entry = cache [index];
+        if (entry != null && entry.text.equals (text))
+            return entry.epoch_day;
+        
+        int epoch_day = parseEpochDay (text, 0, text.length());
+        if (epoch_day != INVALID_DATE)
+            cache [index] = new CacheEntry (text, epoch_day);
+        return epoch_day;
+    }
+    
+    /** Parse a date from part of a sequence of characters. The result is not cached.
+     * @param text the characters to parse
+     * @param start the index of the first character
+     * @param end the index after the last character
+     * @return the epoch day, or INVALID_DATE if the text could not be parsed
+     */
+    public static int parseEpochDay (CharSequence text, int start, int end) {
+        // day of the month
+        int pos = start;
+        int day_of_month = 0;
+        while (pos < end && isDigit (text.charAt (pos)) && pos - start < MAX_DIGITS)
+            day_of_month = day_of_month * 10 + (text.charAt (pos ++) - '0');
+        if (pos == start || pos >= end || text.charAt (pos ++) != '-') return INVALID_DATE;
+        
+        // month name
+        int month_start = pos;
+        while (pos < end && text.charAt (pos) != '-') pos ++;
+        int month = findMonth (text, month_start, pos);
+        if (month == 0 || pos >= end) return INVALID_DATE;
+        pos ++;
+        
+        // year - anything after the year's digits is ignored
+        int year_start = pos;
+        int year = 0;
+        while (pos < end && isDigit (text.charAt (pos)) && pos - year_start < MAX_DIGITS)
+            year = year * 10 + (text.charAt (pos ++) - '0');
+        if (pos == year_start) return INVALID_DATE;
+        
+        return EpochDay.of (year, month, day_of_month);
+    }
+    
+    /** Helper function to decode a month name.
+     * @param text the characters to decode
+     * @param start the index of the first character of the name
+     * @param end the index after the last character of the name
+     * @return the month (1 to 12) or 0 if the name is not recognised
+     */
+    private static int findMonth (CharSequence text, int start, int end) {
+        int length = end - start;
+        if (length < 3) return 0;
+        for (int month = 0; month < MONTH_NAMES.length; month ++) {
+            String name = MONTH_NAMES [month];
+            if (length != 3 && length != name.length()) continue;
+            boolean match = true;
+            for (int count = 0; count < length && match; count ++)
+                match = Character.toLowerCase (text.charAt (start + count)) == name.charAt (count);
+            if (match) return month + 1;
+        }
+        return 0;
+    }
+    
+    private static boolean isDigit (char c) { return c >= '0' && c <= '9'; }
+    
+    /** A cached result - immutable so it can be shared between threads without locking */
+    private static class CacheEntry {
+        private final String text;
+        private final int epoch_day;
+        
+        public CacheEntry (String text, int epoch_day) {
+            this.text = text;
+            this.epoch_day = epoch_day;
+        }
+    }
+}
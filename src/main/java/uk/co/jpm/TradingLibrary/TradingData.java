@@ -1,10 +1,7 @@
 package uk.co.jpm.TradingLibrary;
 
 import java.io.IOException;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.TimeZone;
 import org.apache.commons.csv.CSVRecord;
 
 /**
@@ -13,6 +10,9 @@ import org.apache.commons.csv.CSVRecord;
  * as each other. Time information is not part of the description of a 
  * transaction, so the time is not needed for reporting, but other parts of the 
  * application need to be able to compare dates by date only (and not time).
+ * To achieve this (and to avoid creating Date objects for every trade) dates are
+ * held internally as epoch days (see {@link EpochDay}) and Date objects are only
+ * created when requested.
  * 
  * @author smf
  */
@@ -25,57 +25,49 @@ public class TradingData {
     private final TradeType trade_type;
     private final double agreed_fx;
     private final String currency_name;
-    private final Date instruction_date;
-    private final Date nominal_settlement_date;
+    private final int currency_id;
+    private final int instruction_date;
+    private final int nominal_settlement_date;
     private final int number_of_units;
     private final double price_per_unit;
         
     // calculated data
-    private final Date actual_settlement_date;
-    
-    // All dates are read/written through this formatter. Creating it is
-    // expensive, so we have a single instance.
-    private final static SimpleDateFormat date_format;
-    
-    static
-    {
-        // the call to TimeZone.getTimeZone with parameter "GMT" is safe because the method's
-        // contract states that it will return GMT if it can't decode the timezone string
-        date_format = new SimpleDateFormat ("dd-MMM-yyyy");
-        date_format.setTimeZone(TimeZone.getTimeZone("GMT"));
-    }
+    private final int actual_settlement_date;
     
     /** Create a TradingData record from a row in a CSV file. The order of cells in
      * the row should be the same as that in the project specification example data table.
-     * Dates should be formatted for the date_format object in this class.
+     * Dates should be formatted as dd-MMM-yyyy (see {@link TradeDateParser}).
+     * Use a {@link TradingDataParser} to check records without exceptions.
      * 
      * @param csv_record the CVS row
      * @throws IOException if there is a problem with the CSV data
      */
     public TradingData (CSVRecord csv_record) throws IOException {
-        entity_name = csv_record.get(0);
-        if (entity_name == null) throw new IOException ("Missing entity name");
-        String trade_type_string = csv_record.get(1);
-        if ("B".equalsIgnoreCase(trade_type_string))
-            trade_type = TradeType.BUY;
-        else if ("S".equalsIgnoreCase(trade_type_string))
-            trade_type = TradeType.SELL;
-        else
-            throw new IOException ("Bad buy/sell code");
-        try { agreed_fx = Double.parseDouble(csv_record.get (2)); }
-        catch (NumberFormatException | NullPointerException e) { throw new IOException ("Bad or missing Agreed FX value"); }
-        currency_name = csv_record.get (3);
-        if (currency_name == null) throw new IOException ("Missing currency");
-        try { instruction_date = date_format.parse(csv_record.get (4)); }
-        catch (ParseException | NullPointerException e) { throw new IOException ("Bad or mising Instruction Date: " + csv_record.get(4)); }
-        try { nominal_settlement_date = date_format.parse(csv_record.get (5)); }
-        catch (ParseException | NullPointerException e) { throw new IOException ("Bad or mising Settlement Date: " + csv_record.get(5)); }
-        try { number_of_units = Integer.parseInt(csv_record.get (6)); }
-        catch (NumberFormatException | NullPointerException e) { throw new IOException ("Bad or missing Units"); }
-        try { price_per_unit = Double.parseDouble(csv_record.get (7)); }
-        catch (NumberFormatException | NullPointerException e) { throw new IOException ("Bad or missing Agreed FX value"); }
+        this (TradingDataParser.parseStrictly (csv_record));
+    }
+
+    /** Create a TradingData record from the values decoded by a parser, which must
+     * have decoded a good record (see {@link TradingDataParser#create}).
+     * 
+     * @param parsed the parser holding the decoded values
+     */
+    TradingData (TradingDataParser parsed) {
+        entity_name = parsed.entity_name;
+        trade_type = parsed.trade_type;
+        agreed_fx = parsed.agreed_fx;
+        currency_name = parsed.currency_name;
+        currency_id = parsed.currency_id;
+        instruction_date = parsed.instruction_date;
+        nominal_settlement_date = parsed.nominal_settlement_date;
+        number_of_units = parsed.number_of_units;
+        price_per_unit = parsed.price_per_unit;
         
-        this.actual_settlement_date = BusinessRules.findActualSettlementDate(nominal_settlement_date, currency_name);
+        if (PipelineMetrics.isSampled (parsed.record_number)) {
+            long start = System.nanoTime();
+            this.actual_settlement_date = BusinessRules.findActualSettlementEpochDay(nominal_settlement_date, currency_id);
+            PipelineMetrics.getDefault().addSampleNanos (PipelineMetrics.Stage.SETTLEMENT, System.nanoTime() - start);
+        } else
+            this.actual_settlement_date = BusinessRules.findActualSettlementEpochDay(nominal_settlement_date, currency_id);
     }
 
     /** manually initialise the TradingData record, for testing purposes
@@ -98,24 +90,37 @@ public class TradingData {
         this.trade_type = trade_type;
         this.agreed_fx = agreed_fx;
         this.currency_name = currency_name;
-        this.instruction_date = instruction_date;
-        this.nominal_settlement_date = nominal_settlement_date;
+        this.currency_id = CurrencyRegistry.getDefault().internTradeCurrency (currency_name);
+        this.instruction_date = EpochDay.fromDate (instruction_date);
+        this.nominal_settlement_date = EpochDay.fromDate (nominal_settlement_date);
         this.number_of_units = number_of_units;
         this.price_per_unit = price_per_unit;
         
-        this.actual_settlement_date = BusinessRules.findActualSettlementDate(nominal_settlement_date, currency_name);
+        this.actual_settlement_date = BusinessRules.findActualSettlementEpochDay(this.nominal_settlement_date, currency_id);
     }
     
     public String getEntityName () { return entity_name; }
     public TradeType getTradeType () { return trade_type; }
     public double getAgreedFX () { return agreed_fx; }
     public String getCurrecnyName () { return currency_name; }
-    public Date getInstructionDate () { return instruction_date; }
-    public Date getNominalSettlemenetDate () { return nominal_settlement_date; }
+    public int getCurrencyId () { return currency_id; }
+    public Date getInstructionDate () { return EpochDay.toDate (instruction_date); }
+    public Date getNominalSettlemenetDate () { return EpochDay.toDate (nominal_settlement_date); }
     public int getNumberOfUnits () { return number_of_units; }
     public double getPricePerUnit () {return price_per_unit; }
-    public Date getActualSettlementDate () { return actual_settlement_date; }
+    public Date getActualSettlementDate () { return EpochDay.toDate (actual_settlement_date); }
+    
+    public int getInstructionEpochDay () { return instruction_date; }
+    public int getNominalSettlementEpochDay () { return nominal_settlement_date; }
+    public int getActualSettlementEpochDay () { return actual_settlement_date; }
 
     public double calcPriceUSD () { return BusinessRules.calcPriceUSD(price_per_unit, number_of_units, agreed_fx); }
     
+    /** Calculate the exact USD amount of the trade, see {@link BusinessRules#calcPriceUSDFixed}.
+     * @return the USD amount, scaled to {@link FixedPoint#USD_DIGITS} decimal places */
+    public long calcPriceUSDFixed () {
+        return BusinessRules.calcPriceUSDFixed (FixedPoint.toScaled (price_per_unit, FixedPoint.PRICE_DIGITS), number_of_units,
+                                                FixedPoint.toScaled (agreed_fx, FixedPoint.FX_DIGITS));
+    }
+    
 }
@@ -0,0 +1,195 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A range of bytes in a CSV file of trading data that holds a whole number of
+ * records. A file can be split into chunks that are parsed independently (and
+ * so in parallel). Each chunk is memory mapped when it is read, so the file is
+ * not copied through the Java heap, and is tokenized in place (see
+ * {@link TradingDataTokenizer}) unless commons-csv has been chosen.
+ * 
+ * Chunk boundaries are placed at the ends of lines, so records must not contain
+ * line breaks inside quoted cells. This is always true for the trading data format
+ * (see {@link TradingDataList}), where cells are names, codes, numbers and dates.
+ * The character set must be one where a line feed byte only ever means a line
+ * feed (true of ASCII, UTF-8 and the ISO-8859 family).
+ * 
+ * @author smf
+ */
+public class TradingDataChunk {
+    
+    // largest amount of a file to map in one go - a MappedByteBuffer
+    // can't be larger than Integer.MAX_VALUE bytes
+    public static final long MAX_CHUNK_SIZE = 256l * 1024l * 1024l;
+    
+    // the file this chunk is from
+    private final FileChannel channel;
+    
+    // byte range for this chunk, end is exclusive
+    private final long start;
+    private final long end;
+    
+    // true if this chunk starts with the file's header row
+    private final boolean has_header;
+    
+    /** Create a chunk. Use {@link #split} to create chunks that align with records.
+     * 
+     * @param channel the file
+     * @param start offset of the first byte of the chunk
+     * @param end offset of the byte after the end of the chunk
+     * @param has_header true if the chunk starts with the file's header row
+     */
+    public TradingDataChunk (FileChannel channel, long start, long end, boolean has_header) {
+        this.channel = channel;
+        this.start = start;
+        this.end = end;
+        this.has_header = has_header;
+    }
+    
+    /** Split a CSV file into roughly equal sized chunks, each of which starts at
+     * the beginning of a record and ends at the end of a record. The first chunk
+     * holds the header row. Fewer chunks may be returned than were asked for if
+     * the file is small, more will be returned if needed to keep each chunk
+     * below MAX_CHUNK_SIZE.
+     * 
+     * @param channel the file to split
+     * @param n_chunks the number of chunks wanted
+     * @return the chunks, in file order
+     * @throws IOException if there was an error reading the file
+     */
+    public static List<TradingDataChunk> split (FileChannel channel, int n_chunks) throws IOException {
+        return split (channel, 0, channel.size(), n_chunks);
+    }
+    
+    /** Split a range of a CSV file into roughly equal sized chunks, in the same way
+     * as {@link #split(FileChannel, int)}. The range must start at the beginning of
+     * a record and end at the end of one. Only a chunk that starts at the beginning
+     * of the file holds the header row.
+     * 
+     * @param channel the file to split
+     * @param start offset of the first byte of the range
+     * @param end offset of the byte after the end of the range
+     * @param n_chunks the number of chunks wanted
+     * @return the chunks, in file order
+     * @throws IOException if there was an error reading the file
+     */
+    public static List<TradingDataChunk> split (FileChannel channel, long start, long end, int n_chunks) throws IOException {
+        long range_size = end - start;
+        n_chunks = (int) Math.max ((long) Math.max (n_chunks, 1), (range_size + MAX_CHUNK_SIZE - 1) / MAX_CHUNK_SIZE);
+        
+        List<TradingDataChunk> chunks = new ArrayList<> (n_chunks);
+        long chunk_start = start;
+        for (int count = 1; count <= n_chunks && chunk_start < end; count ++) {
+            long chunk_end = count == n_chunks ? end : Math.min (end, findLineStart (channel, start + (range_size * count) / n_chunks));
+            if (chunk_end > chunk_start) {
+                chunks.add (new TradingDataChunk (channel, chunk_start, chunk_end, chunk_start == 0));
+                chunk_start = chunk_end;
+            }
+        }
+        return chunks;
+    }
+    
+    /** Read the records in this chunk, passing each record to the visitor in turn.
+     * 
+     * @param visitor the object that will receive each record
+     * @return the number of records read
+     * @throws IOException if there was an error in the CSV data
+     */
+    public long visitAll (TradingDataVisitor visitor) throws IOException {
+        return visitAll (visitor, null);
+    }
+    
+    /** Read the records in this chunk, passing each good record to the visitor in turn
+     * and, in lenient mode, keeping the bad ones. The line numbers of bad records are
+     * counted from the start of the chunk, and the number of lines in the chunk is
+     * recorded with them so they can be renumbered from the start of the file.
+     * 
+     * @param visitor the object that will receive each good record
+     * @param rejects where to keep bad records, null to stop at the first bad record
+     * @return the number of good records read
+     * @throws IOException if there was an error reading the CSV data, or an error in
+     *         the CSV data and no list of rejected records
+     */
+    public long visitAll (TradingDataVisitor visitor, RejectedRecords rejects) throws IOException {
+        MappedByteBuffer buffer = channel.map (FileChannel.MapMode.READ_ONLY, start, end - start);
+        TradingDataStream stream = TradingDataStream.isByteTokenizer() ? new TradingDataStream (buffer, has_header)
+                : new TradingDataStream (new InputStreamReader (new ByteBufferInputStream (buffer)), has_header);
+        long n_records = stream.visitAll (visitor, rejects);
+        if (rejects != null)
+            rejects.setNLines (stream.getNLines());
+        return n_records;
+    }
+    
+    /** Create a lazy view of the records in this chunk (see {@link TradingDataView}),
+     * which decodes only the fields that are read. The chunk is memory mapped and
+     * tokenized in place.
+     * 
+     * @return the view, before the first record
+     * @throws IOException if there was an error mapping the file
+     */
+    public TradingDataView createView () throws IOException {
+        return new TradingDataView (channel.map (FileChannel.MapMode.READ_ONLY, start, end - start), has_header);
+    }
+    
+    /** Get the offset of the first byte of the chunk.
+     * @return the offset */
+    public long getStart () { return start; }
+    
+    /** Get the offset of the byte after the end of the chunk.
+     * @return the offset */
+    public long getEnd () { return end; }
+    
+    /** Find the start of the line that follows the given position. If the position
+     * is already at the start of a line it is returned unchanged.
+     * @param channel the file
+     * @param position the position to search from
+     * @return the offset of the start of the line or the file size if there are no more lines
+     * @throws IOException if there was an error reading the file
+     */
+    public static long findLineStart (FileChannel channel, long position) throws IOException {
+        if (position <= 0) return 0;
+        ByteBuffer buffer = ByteBuffer.allocate (4096);
+        long file_position = position - 1;
+        while (file_position >= 0) {
+            buffer.clear ();
+            int n_read = channel.read (buffer, file_position);
+            if (n_read <= 0) break;
+            for (int count = 0; count < n_read; count ++) {
+                if (buffer.get (count) == '\n')
+                    return file_position + count + 1;
+            }
+            file_position += n_read;
+        }
+        return Math.max (channel.size(), position);
+    }
+    
+    /** An InputStream that reads from a ByteBuffer, so that a mapped chunk of
+     * the file can be decoded through a Reader. */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+        
+        public ByteBufferInputStream (ByteBuffer buffer) { this.buffer = buffer; }
+        
+        @Override
+        public int read () {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+        
+        @Override
+        public int read (byte bytes [], int offset, int length) {
+            if (length == 0) return 0;
+            if (! buffer.hasRemaining()) return -1;
+            length = Math.min (length, buffer.remaining());
+            buffer.get (bytes, offset, length);
+            return length;
+        }
+    }
+}
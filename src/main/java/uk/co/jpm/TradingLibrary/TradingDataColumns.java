@@ -0,0 +1,176 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A store of trades held as columns rather than as {@link TradingData} objects.
+ * Each field has its own column of primitive values: fx, units and price,
+ * instruction, nominal and actual settlement dates as epoch days (see
+ * {@link EpochDay}), a byte for buy / sell and dictionary encoded ids for the
+ * entity and currency names. A trade takes 41 bytes, compared to well over 150
+ * for a TradingData object, and scanning a column reads memory sequentially.
+ * 
+ * Columns can optionally be held outside the Java heap (using direct buffers),
+ * which keeps large stores away from the garbage collector. A store can hold
+ * up to Integer.MAX_VALUE / 8 trades.
+ * 
+ * Implements {@link TradingDataVisitor} so it can be filled from a streaming
+ * source of trades. The store is not thread safe.
+ * 
+ * @author smf
+ */
+public class TradingDataColumns implements TradingDataVisitor, TradingDataTable {
+    
+    // initial number of trades that can be held
+    private static final int INITIAL_CAPACITY = 1024;
+    
+    // largest number of trades that can be held - limited by 8 byte
+    // values and the largest size of a ByteBuffer
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE / 8;
+    
+    // trade types, indexed by the values in the trade type column
+    private static final TradingData.TradeType TRADE_TYPES [] = TradingData.TradeType.values();
+    
+    // true to hold the columns outside the heap
+    private final boolean direct;
+    
+    // dictionaries for entity and currency names
+    private final StringDictionary entity_names;
+    private final StringDictionary currency_names;
+    
+    // the columns
+    private ByteBuffer agreed_fx;
+    private ByteBuffer number_of_units;
+    private ByteBuffer price_per_unit;
+    private ByteBuffer instruction_date;
+    private ByteBuffer nominal_settlement_date;
+    private ByteBuffer actual_settlement_date;
+    private ByteBuffer trade_type;
+    private ByteBuffer entity_id;
+    private ByteBuffer currency_id;
+    
+    // number of trades held and the number there is space for
+    private int size;
+    private int capacity;
+    
+    /** Create an empty store with columns on the heap. */
+    public TradingDataColumns () {
+        this (false);
+    }
+    
+    /** Create an empty store.
+     * @param direct true to hold the columns outside the heap
+     */
+    public TradingDataColumns (boolean direct) {
+        this.direct = direct;
+        entity_names = new StringDictionary ();
+        currency_names = new StringDictionary ();
+        size = 0;
+        capacity = 0;
+        resize (INITIAL_CAPACITY);
+    }
+    
+    /** Add a trade to the end of the store.
+     * @param trading_data the trade to add
+     */
+    public void add (TradingData trading_data) {
+        if (size == capacity) {
+            if (capacity == MAX_CAPACITY)
+                throw new IllegalStateException ("TradingDataColumns is full");
+            resize ((int) Math.min ((long) capacity * 2, MAX_CAPACITY));
+        }
+        
+        agreed_fx.putDouble (size * 8, trading_data.getAgreedFX());
+        number_of_units.putInt (size * 4, trading_data.getNumberOfUnits());
+        price_per_unit.putDouble (size * 8, trading_data.getPricePerUnit());
+        instruction_date.putInt (size * 4, trading_data.getInstructionEpochDay());
+        nominal_settlement_date.putInt (size * 4, trading_data.getNominalSettlementEpochDay());
+        actual_settlement_date.putInt (size * 4, trading_data.getActualSettlementEpochDay());
+        trade_type.put (size, (byte) trading_data.getTradeType().ordinal());
+        entity_id.putInt (size * 4, entity_names.encode (trading_data.getEntityName()));
+        currency_id.putInt (size * 4, currency_names.encode (trading_data.getCurrecnyName()));
+        size ++;
+    }
+    
+    /** Add a trade to the end of the store.
+     * @param trading_data the trade to add
+     */
+    @Override
+    public void visit (TradingData trading_data) {
+        add (trading_data);
+    }
+    
+    /** Get the number of trades in the store.
+     * @return the number of trades */
+    @Override
+    public int size () { return size; }
+    
+    /** Find out whether the columns are held outside the heap.
+     * @return true for direct buffers */
+    public boolean isDirect () { return direct; }
+    
+    public double getAgreedFX (int row) { return agreed_fx.getDouble (row * 8); }
+    public int getNumberOfUnits (int row) { return number_of_units.getInt (row * 4); }
+    public double getPricePerUnit (int row) { return price_per_unit.getDouble (row * 8); }
+    public int getInstructionEpochDay (int row) { return instruction_date.getInt (row * 4); }
+    public int getNominalSettlementEpochDay (int row) { return nominal_settlement_date.getInt (row * 4); }
+    public int getActualSettlementEpochDay (int row) { return actual_settlement_date.getInt (row * 4); }
+    public TradingData.TradeType getTradeType (int row) { return TRADE_TYPES [trade_type.get (row)]; }
+    public int getEntityId (int row) { return entity_id.getInt (row * 4); }
+    public int getCurrencyId (int row) { return currency_id.getInt (row * 4); }
+    public String getEntityName (int row) { return entity_names.decode (getEntityId (row)); }
+    public String getCurrencyName (int row) { return currency_names.decode (getCurrencyId (row)); }
+    
+    public double calcPriceUSD (int row) { return BusinessRules.calcPriceUSD (getPricePerUnit (row), getNumberOfUnits (row), getAgreedFX (row)); }
+    
+    /** Get the dictionary used to encode entity names.
+     * @return the dictionary */
+    public StringDictionary getEntityNames () { return entity_names; }
+    
+    /** Get the dictionary used to encode currency names.
+     * @return the dictionary */
+    public StringDictionary getCurrencyNames () { return currency_names; }
+    
+    /** Create a TradingData object holding one of the trades in the store.
+     * @param row the trade to get
+     * @return a new TradingData object */
+    public TradingData getTradingData (int row) {
+        return new TradingData (getEntityName (row), getTradeType (row), getAgreedFX (row), getCurrencyName (row),
+                                EpochDay.toDate (getInstructionEpochDay (row)), EpochDay.toDate (getNominalSettlementEpochDay (row)),
+                                getNumberOfUnits (row), getPricePerUnit (row));
+    }
+    
+    /** Change the space available for trades, copying existing trades.
+     * @param new_capacity the number of trades to make space for */
+    private void resize (int new_capacity) {
+        agreed_fx = resizeColumn (agreed_fx, new_capacity, 8);
+        number_of_units = resizeColumn (number_of_units, new_capacity, 4);
+        price_per_unit = resizeColumn (price_per_unit, new_capacity, 8);
+        instruction_date = resizeColumn (instruction_date, new_capacity, 4);
+        nominal_settlement_date = resizeColumn (nominal_settlement_date, new_capacity, 4);
+        actual_settlement_date = resizeColumn (actual_settlement_date, new_capacity, 4);
+        trade_type = resizeColumn (trade_type, new_capacity, 1);
+        entity_id = resizeColumn (entity_id, new_capacity, 4);
+        currency_id = resizeColumn (currency_id, new_capacity, 4);
+        capacity = new_capacity;
+    }
+    
+    /** Helper function to create a column, copying the contents of an existing column.
+     * @param column the existing column (may be null)
+     * @param new_capacity the number of values to make space for
+     * @param value_size the size of a value in bytes
+     * @return the new column */
+    private ByteBuffer resizeColumn (ByteBuffer column, int new_capacity, int value_size) {
+        int n_bytes = new_capacity * value_size;
+        ByteBuffer new_column = direct ? ByteBuffer.allocateDirect (n_bytes) : ByteBuffer.allocate (n_bytes);
+        new_column.order (ByteOrder.nativeOrder());
+        if (column != null) {
+            column.clear ();
+            column.limit (size * value_size);
+            new_column.put (column);
+            new_column.clear ();
+        }
+        return new_column;
+    }
+}
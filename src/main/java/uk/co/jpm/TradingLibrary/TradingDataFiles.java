@@ -0,0 +1,109 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Finds the CSV files of trading data named by a path, which may be a single
+ * file, a directory or a glob pattern. A directory stands for all of the ".csv"
+ * files in it. A glob may use the usual wildcards in any part of the path, e.g.
+ * "trades/desk-?/2017-01-*.csv", or "trades/**.csv" for the files in a whole
+ * tree (see {@link java.nio.file.FileSystem#getPathMatcher}).
+ *
+ * Files are always returned sorted by path, so the same files are processed in
+ * the same order on every run, whatever order the file system lists them in.
+ *
+ * @author smf
+ */
+public class TradingDataFiles {
+
+    /** Suffix of the names of the files used from a directory */
+    public static final String FILE_SUFFIX = ".csv";
+
+    // characters that make a path a glob pattern
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    /** Find the files named by a path.
+     * @param name the name of a file or directory, or a glob pattern
+     * @return the files, sorted by path
+     * @throws IOException if a directory can't be read, or a directory or
+     *         pattern doesn't hold any files
+     */
+    public static List<File> find (String name) throws IOException {
+        List<File> files = new ArrayList<> ();
+        File file = new File (name);
+        if (isGlob (name))
+            findMatching (name, files);
+        else if (file.isDirectory()) {
+            File listed [] = file.listFiles ((dir, file_name) -> file_name.toLowerCase().endsWith (FILE_SUFFIX));
+            if (listed == null)
+                throw new IOException ("Can't read trading data directory: " + name);
+            for (File csv_file : listed) {
+                if (csv_file.isFile())
+                    files.add (csv_file);
+            }
+        } else
+            return Collections.singletonList (file);
+
+        if (files.isEmpty())
+            throw new IOException ("No trading data files found: " + name);
+        Collections.sort (files);
+        return files;
+    }
+
+    /** Find out whether a path is a glob pattern rather than the name of a file.
+     * @param name the path
+     * @return true if the path holds any glob wildcards */
+    public static boolean isGlob (String name) {
+        for (int index = 0; index < name.length(); index ++) {
+            if (GLOB_CHARACTERS.indexOf (name.charAt (index)) >= 0)
+                return true;
+        }
+        return false;
+    }
+
+    /** Helper function to find the files that match a glob pattern. The search starts
+     * in the deepest directory named before the first wildcard.
+     * @param pattern the glob pattern
+     * @param files where to add the files found
+     * @throws IOException if a directory can't be read */
+    private static void findMatching (String pattern, List<File> files) throws IOException {
+        String separators = File.separatorChar == '/' ? "/" : "/" + File.separatorChar;
+        int first_wildcard = 0;
+        while (GLOB_CHARACTERS.indexOf (pattern.charAt (first_wildcard)) < 0)
+            first_wildcard ++;
+        int base_end = -1;
+        for (int index = 0; index < first_wildcard; index ++) {
+            if (separators.indexOf (pattern.charAt (index)) >= 0)
+                base_end = index;
+        }
+
+        boolean relative_to_current = base_end < 0;
+        Path base = Paths.get (relative_to_current ? "." : base_end == 0 ? pattern.substring (0, 1) : pattern.substring (0, base_end));
+        String relative_pattern = pattern.substring (base_end + 1);
+        if (! Files.isDirectory (base))
+            return;
+
+        // only search below the base as deep as the pattern can match, unless it has a "**"
+        int max_depth = relative_pattern.contains ("**") ? Integer.MAX_VALUE : 1;
+        for (int index = 0; index < relative_pattern.length(); index ++) {
+            if (separators.indexOf (relative_pattern.charAt (index)) >= 0 && max_depth < Integer.MAX_VALUE)
+                max_depth ++;
+        }
+
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher ("glob:" + relative_pattern);
+        try (Stream<Path> paths = Files.walk (base, max_depth)) {
+            paths.filter (path -> Files.isRegularFile (path) && matcher.matches (base.relativize (path)))
+                 .forEach (path -> files.add (relative_to_current ? base.relativize (path).toFile() : path.toFile()));
+        }
+    }
+}
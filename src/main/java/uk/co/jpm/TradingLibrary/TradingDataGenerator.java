@@ -0,0 +1,306 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Generates random trading data in the CSV format read by {@link TradingDataList},
+ * for load and scale testing. The entities can be given a skewed (Zipf) popularity,
+ * the mix of currencies can be weighted, and the share of nominal settlement dates
+ * that fall on a weekend (for the trade's currency) can be set. The same settings
+ * and seed always generate the same data.
+ *
+ * Records are formatted directly into a byte buffer from tables built before the
+ * first record is written (names, currencies and dates), so the generator does
+ * not allocate per record and can write hundreds of millions of records at the
+ * speed of the disk.
+ *
+ * @author smf
+ */
+public class TradingDataGenerator {
+
+    /** The header row written at the start of the data */
+    public static final String HEADER = "Entity,Buy/Sell,AgreedFx,Currency,InstructionDate,SettlementDate,Units,Price per unit\n";
+
+    // size of the output buffer, and the most that a single record can need
+    private static final int BUFFER_SIZE = 1 << 20;
+    private static final int MAX_RECORD_SIZE = 1024;
+
+    // the most days between a trade's instruction date and its nominal settlement date
+    private static final int MAX_SETTLEMENT_DELAY = 3;
+
+    // month names for dd-MMM-yyyy dates
+    private static final String MONTH_NAMES [] = {
+        "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"
+    };
+
+    // the generator's settings
+    private int n_entities;
+    private double zipf_exponent;
+    private final Map<String, Double> currency_weights;
+    private int first_day;
+    private int n_days;
+    private double weekend_share;
+    private long seed;
+
+    /** Create a generator with the default settings: 1000 entities of equal
+     * popularity, equal amounts of USD, GBP, EUR, SGD, AED and SAR, settlement
+     * dates spread over 2016 with none on a weekend, and seed 0. */
+    public TradingDataGenerator () {
+        n_entities = 1000;
+        zipf_exponent = 0.0;
+        currency_weights = new LinkedHashMap<> ();
+        for (String currency : new String [] { "USD", "GBP", "EUR", "SGD", "AED", "SAR" })
+            currency_weights.put (currency, 1.0);
+        first_day = EpochDay.of (2016, 1, 1);
+        n_days = 366;
+        weekend_share = 0.0;
+        seed = 0;
+    }
+
+    /** Set the number of different entities. Entities are named "entity1", "entity2" etc.
+     * in order of popularity.
+     * @param n_entities the number of entities */
+    public void setNEntities (int n_entities) {
+        if (n_entities <= 0)
+            throw new IllegalArgumentException ("Number of entities must be positive: " + n_entities);
+        this.n_entities = n_entities;
+    }
+
+    /** Set the skew of entity popularity. The chance of a trade being made by the n'th
+     * entity is proportional to 1 / n ^ exponent, so 0 gives equal popularity and 1
+     * gives the classic Zipf distribution.
+     * @param zipf_exponent the exponent */
+    public void setZipfExponent (double zipf_exponent) {
+        if (zipf_exponent < 0.0 || Double.isNaN (zipf_exponent))
+            throw new IllegalArgumentException ("Zipf exponent must not be negative: " + zipf_exponent);
+        this.zipf_exponent = zipf_exponent;
+    }
+
+    /** Set the mix of currencies.
+     * @param currency_weights currency codes and their relative weights (which need not add up to 1)
+     * @throws IllegalArgumentException if there are no currencies, a code is not three
+     *         letters (as ISO 4217 codes are) or a weight is negative */
+    public void setCurrencyWeights (Map<String, Double> currency_weights) {
+        if (currency_weights.isEmpty())
+            throw new IllegalArgumentException ("No currencies");
+        for (Map.Entry<String, Double> entry : currency_weights.entrySet()) {
+            // codes are three letters, which also keeps records within MAX_RECORD_SIZE
+            String code = entry.getKey();
+            if (code.length() != 3 || ! isLetter (code.charAt (0)) || ! isLetter (code.charAt (1)) || ! isLetter (code.charAt (2)))
+                throw new IllegalArgumentException ("Currency code must be three letters: " + code);
+            if (! (entry.getValue() >= 0.0))
+                throw new IllegalArgumentException ("Bad weight for currency " + entry.getKey() + ": " + entry.getValue());
+        }
+        this.currency_weights.clear();
+        this.currency_weights.putAll (currency_weights);
+    }
+
+    /** Set the range of nominal settlement dates.
+     * @param first_day the first date as an epoch day
+     * @param n_days the number of days in the range */
+    public void setDateSpan (int first_day, int n_days) {
+        if (n_days < 7)
+            throw new IllegalArgumentException ("Date span must be at least a week: " + n_days);
+        this.first_day = first_day;
+        this.n_days = n_days;
+    }
+
+    /** Set the share of nominal settlement dates that fall on a weekend, which
+     * will have to be moved to the next working day.
+     * @param weekend_share the share, from 0 to 1 */
+    public void setWeekendShare (double weekend_share) {
+        if (! (weekend_share >= 0.0 && weekend_share <= 1.0))
+            throw new IllegalArgumentException ("Weekend share must be between 0 and 1: " + weekend_share);
+        this.weekend_share = weekend_share;
+    }
+
+    /** Set the seed for the random number generator.
+     * @param seed the seed */
+    public void setSeed (long seed) {
+        this.seed = seed;
+    }
+
+    /** Write a header row followed by records of trading data.
+     * @param out where to write the data - the caller should close it
+     * @param n_records the number of records to write
+     * @throws IOException if there was an error writing the data
+     */
+    public void generate (OutputStream out, long n_records) throws IOException {
+        SplittableRandom random = new SplittableRandom (seed);
+
+        // tables of pre-formatted names, with the samplers that choose them
+        byte entity_names [][] = new byte [n_entities][];
+        double entity_weights [] = new double [n_entities];
+        for (int count = 0; count < n_entities; count ++) {
+            entity_names [count] = ("entity" + (count + 1)).getBytes (StandardCharsets.US_ASCII);
+            entity_weights [count] = Math.pow (count + 1, - zipf_exponent);
+        }
+        AliasTable entity_sampler = new AliasTable (entity_weights);
+        byte currency_names [][] = new byte [currency_weights.size()][];
+        int weekend_conventions [] = new int [currency_weights.size()];
+        double weights [] = new double [currency_weights.size()];
+        int index = 0;
+        for (Map.Entry<String, Double> entry : currency_weights.entrySet()) {
+            currency_names [index] = entry.getKey().getBytes (StandardCharsets.UTF_8);
+            weekend_conventions [index] = BusinessRules.findWeekendConvention (entry.getKey());
+            weights [index ++] = entry.getValue();
+        }
+        AliasTable currency_sampler = new AliasTable (weights);
+
+        // the working days and weekend days in the date span for each convention, and the
+        // dates formatted as dd-MMM-yyyy (instruction dates can be before the span starts)
+        int date_offset = MAX_SETTLEMENT_DELAY;
+        byte dates [][] = new byte [n_days + date_offset][];
+        for (int count = 0; count < dates.length; count ++)
+            dates [count] = formatDate (first_day - date_offset + count);
+        int working_days [][] = new int [2][];
+        int weekend_days [][] = new int [2][];
+        for (int convention = 0; convention < 2; convention ++) {
+            int n_working = 0;
+            for (int count = 0; count < n_days; count ++) {
+                if (BusinessRules.isWorkingDay (convention, EpochDay.dayOfWeek (first_day + count))) n_working ++;
+            }
+            working_days [convention] = new int [n_working];
+            weekend_days [convention] = new int [n_days - n_working];
+            int n_weekend = n_working = 0;
+            for (int count = 0; count < n_days; count ++) {
+                if (BusinessRules.isWorkingDay (convention, EpochDay.dayOfWeek (first_day + count)))
+                    working_days [convention] [n_working ++] = count;
+                else
+                    weekend_days [convention] [n_weekend ++] = count;
+            }
+        }
+
+        // write the records
+        byte buffer [] = new byte [BUFFER_SIZE];
+        int length = copy (HEADER.getBytes (StandardCharsets.US_ASCII), buffer, 0);
+        for (long record = 0; record < n_records; record ++) {
+            if (length > BUFFER_SIZE - MAX_RECORD_SIZE) {
+                out.write (buffer, 0, length);
+                length = 0;
+            }
+
+            int currency = currency_sampler.sample (random);
+            int convention = weekend_conventions [currency];
+            int settlement_days [] = random.nextDouble() < weekend_share ? weekend_days [convention] : working_days [convention];
+            int settlement_day = settlement_days [random.nextInt (settlement_days.length)] + date_offset;
+            int instruction_day = settlement_day - random.nextInt (MAX_SETTLEMENT_DELAY + 1);
+
+            length = copy (entity_names [entity_sampler.sample (random)], buffer, length);
+            buffer [length ++] = ',';
+            buffer [length ++] = random.nextBoolean() ? (byte) 'B' : (byte) 'S';
+            buffer [length ++] = ',';
+            length = appendFixedPoint (random.nextInt (1, 20001), 4, buffer, length);      // agreed FX 0.0001 to 2.0000
+            buffer [length ++] = ',';
+            length = copy (currency_names [currency], buffer, length);
+            buffer [length ++] = ',';
+            length = copy (dates [instruction_day], buffer, length);
+            buffer [length ++] = ',';
+            length = copy (dates [settlement_day], buffer, length);
+            buffer [length ++] = ',';
+            length = appendFixedPoint (random.nextInt (1, 10001), 0, buffer, length);      // units 1 to 10000
+            buffer [length ++] = ',';
+            length = appendFixedPoint (random.nextInt (1, 1000001), 2, buffer, length);    // price 0.01 to 10000.00
+            buffer [length ++] = '\n';
+        }
+        out.write (buffer, 0, length);
+        out.flush ();
+    }
+
+    /** Helper function to check a character of a currency code.
+     * @param c the character
+     * @return true if it is an ASCII letter */
+    private static boolean isLetter (char c) { return (c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z'); }
+    
+    /** Helper function to format a date as dd-MMM-yyyy.
+     * @param epoch_day the date
+     * @return the formatted date */
+    private static byte [] formatDate (int epoch_day) {
+        int year_month_day = EpochDay.toYearMonthDay (epoch_day);
+        String text = String.format ("%02d-%s-%04d", year_month_day % 100, MONTH_NAMES [year_month_day / 100 % 100 - 1], year_month_day / 10000);
+        return text.getBytes (StandardCharsets.US_ASCII);
+    }
+
+    /** Helper function to copy bytes into the buffer.
+     * @param bytes the bytes to copy
+     * @param buffer the buffer
+     * @param length the number of bytes already in the buffer
+     * @return the new number of bytes in the buffer */
+    private static int copy (byte bytes [], byte buffer [], int length) {
+        System.arraycopy (bytes, 0, buffer, length, bytes.length);
+        return length + bytes.length;
+    }
+
+    /** Helper function to write a positive integer into the buffer as a decimal number
+     * with a fixed number of decimal places, e.g. 12345 with 2 places is "123.45".
+     * @param value the value, scaled up by 10 ^ n_places
+     * @param n_places the number of decimal places
+     * @param buffer the buffer
+     * @param length the number of bytes already in the buffer
+     * @return the new number of bytes in the buffer */
+    private static int appendFixedPoint (int value, int n_places, byte buffer [], int length) {
+        // write the digits backwards, with at least one digit before the point, then reverse them
+        int start = length;
+        int n_digits = 0;
+        do {
+            buffer [length ++] = (byte) ('0' + value % 10);
+            value /= 10;
+            if (++ n_digits == n_places)
+                buffer [length ++] = '.';
+        } while (value != 0 || n_digits <= n_places);
+        for (int left = start, right = length - 1; left < right; left ++, right --) {
+            byte digit = buffer [left];
+            buffer [left] = buffer [right];
+            buffer [right] = digit;
+        }
+        return length;
+    }
+
+    /** Samples from a discrete distribution in constant time using Vose's alias method. */
+    private static class AliasTable {
+        private final double probabilities [];
+        private final int aliases [];
+
+        AliasTable (double weights []) {
+            int n = weights.length;
+            probabilities = new double [n];
+            aliases = new int [n];
+            double total = 0.0;
+            for (double weight : weights) total += weight;
+            if (! (total > 0.0))
+                throw new IllegalArgumentException ("Weights must not all be zero");
+
+            // split the entries into those below and above the average, then pair them up
+            double scaled [] = new double [n];
+            int small [] = new int [n];
+            int large [] = new int [n];
+            int n_small = 0, n_large = 0;
+            for (int count = 0; count < n; count ++) {
+                scaled [count] = weights [count] * n / total;
+                if (scaled [count] < 1.0) small [n_small ++] = count;
+                else large [n_large ++] = count;
+            }
+            while (n_small > 0 && n_large > 0) {
+                int less = small [-- n_small];
+                int more = large [-- n_large];
+                probabilities [less] = scaled [less];
+                aliases [less] = more;
+                scaled [more] = scaled [more] + scaled [less] - 1.0;
+                if (scaled [more] < 1.0) small [n_small ++] = more;
+                else large [n_large ++] = more;
+            }
+            while (n_large > 0) probabilities [large [-- n_large]] = 1.0;
+            while (n_small > 0) probabilities [small [-- n_small]] = 1.0;
+        }
+
+        int sample (SplittableRandom random) {
+            int column = random.nextInt (probabilities.length);
+            return random.nextDouble() < probabilities [column] ? column : aliases [column];
+        }
+    }
+}
@@ -1,14 +1,9 @@
 package uk.co.jpm.TradingLibrary;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVRecord;
 
 /**
  *
@@ -19,30 +14,55 @@ public class TradingDataList extends ArrayList<TradingData> {
     /** Create an array of {@link TradingData} from a CSV file. The file should
      * have a header row followed by data rows. The order of cells in
      * data rows should be the same as that in the project specification 
-     * example data table. Dates should be formatted as per the date_format 
-     * object in the TradingData object.
+     * example data table. Dates should be formatted as per the
+     * {@link TradeDateParser} class.
      * 
      * @param csv_file The CSV file.
      * @throws IOException if there was an error in the CSV data
      */
     public TradingDataList (File csv_file) throws IOException {
-        this (new FileReader (csv_file));
+        this (csv_file, null);
     }
     
     /** Create an array of {@link TradingData} from a reader. Allows class to be
      * tested with a CSV file on the classpath. The file should
      * have a header row followed by data rows. The order of cells in
      * data rows should be the same as that in the project specification 
-     * example data table. Dates should be formatted as per the date_format 
-     * object in the TradingData object.
+     * example data table. Dates should be formatted as per the
+     * {@link TradeDateParser} class.
      * 
      * @param reader The stream to read from.
      * @throws IOException if there was an error in the CSV data
      */
     public TradingDataList (Reader reader) throws IOException {
+        this (reader, null);
+    }
+    
+    /** Create an array of {@link TradingData} from a CSV file, passing records that
+     * can't be decoded to a reject handler instead of stopping (see {@link TradingDataStream}).
+     * 
+     * @param csv_file The CSV file.
+     * @param rejects The object that will receive bad records, null to stop at the first one.
+     * @throws IOException if there was an error reading the CSV data, or an error in the
+     *         CSV data and no reject handler
+     */
+    public TradingDataList (File csv_file, TradingDataRejectHandler rejects) throws IOException {
+        super ();
+        try (TradingDataStream trading_data_stream = new TradingDataStream (csv_file)) {
+            trading_data_stream.visitAll (this::add, rejects);
+        }
+    }
+    
+    /** Create an array of {@link TradingData} from a reader, passing records that
+     * can't be decoded to a reject handler instead of stopping.
+     * 
+     * @param reader The stream to read from.
+     * @param rejects The object that will receive bad records, null to stop at the first one.
+     * @throws IOException if there was an error reading the CSV data, or an error in the
+     *         CSV data and no reject handler
+     */
+    public TradingDataList (Reader reader, TradingDataRejectHandler rejects) throws IOException {
         super ();
-        Iterable<CSVRecord> records = CSVFormat.RFC4180.withFirstRecordAsHeader().parse(reader);
-        for (CSVRecord record : records)
-            add (new TradingData (record));
+        new TradingDataStream (reader).visitAll (this::add, rejects);
     }
 }
@@ -0,0 +1,285 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.io.IOException;
+import org.apache.commons.csv.CSVRecord;
+
+/**
+ * Decodes CSV records into {@link TradingData}, reporting bad records with a
+ * status code rather than an exception. Checking a record this way costs no more
+ * for a bad record than for a good one, so a file with many bad records can be
+ * read without creating and throwing an exception for each of them (see
+ * {@link TradingDataStream#visitAll(TradingDataVisitor, TradingDataRejectHandler)}).
+ *
+ * Numbers are checked character by character before they are converted. Units
+ * must be a whole number that fits in an int, and the Agreed FX and price must be
+ * plain decimal numbers, optionally with an exponent (e.g. 0.5, -1.25, 1e3) - the
+ * special values and other forms that Double.parseDouble accepts (NaN, Infinity,
+ * hexadecimal, a trailing 'd') are not valid trading data. Empty entity names and
+ * currency codes are accepted, as they always have been (an empty currency code
+ * is not known, so it uses the Monday to Friday work week).
+ *
+ * Records can be decoded from commons-csv records or, without creating Strings,
+ * from the byte ranges found by a {@link TradingDataTokenizer} - both accept and
+ * reject the same records.
+ *
+ * A parser holds the values of the last record it decoded, so each thread should
+ * use its own parser.
+ *
+ * @author smf
+ */
+public class TradingDataParser {
+
+    /** The result of decoding a record. Every status other than OK describes the
+     * first problem found in the record. */
+    public enum Status {
+        OK ("OK"),
+        MISSING_FIELDS ("Missing fields"),
+        BAD_TRADE_TYPE ("Bad buy/sell code"),
+        BAD_AGREED_FX ("Bad or missing Agreed FX value"),
+        BAD_INSTRUCTION_DATE ("Bad or mising Instruction Date"),
+        BAD_SETTLEMENT_DATE ("Bad or mising Settlement Date"),
+        BAD_UNITS ("Bad or missing Units"),
+        BAD_PRICE ("Bad or missing Price per unit");
+
+        private final String description;
+
+        Status (String description) { this.description = description; }
+
+        /** Get a description of the status, for messages.
+         * @return the description */
+        public String getDescription () { return description; }
+    }
+
+    /** Number of fields in a trading data record */
+    public static final int N_FIELDS = 8;
+
+    // value returned by parseInt for text that isn't an int - outside the range of an int
+    private static final long INVALID_INT = TradingDataTokenizer.INVALID_INT;
+
+    // the result of decoding the last record, and the value that was wrong (null if none)
+    private Status status;
+    private String bad_value;
+
+    // the values decoded from the last record - only valid if the status is OK
+    long record_number;
+    String entity_name;
+    TradingData.TradeType trade_type;
+    double agreed_fx;
+    String currency_name;
+    int currency_id;
+    int instruction_date;
+    int nominal_settlement_date;
+    int number_of_units;
+    double price_per_unit;
+
+    /** Create a parser. */
+    public TradingDataParser () {
+        status = Status.OK;
+        bad_value = null;
+    }
+
+    /** Decode a CSV record. The order of cells in the record should be the same as that
+     * in the project specification example data table. Dates should be formatted as
+     * dd-MMM-yyyy (see {@link TradeDateParser}). The currency is only registered once
+     * the whole record is known to be good.
+     *
+     * @param csv_record the CSV row
+     * @return the status, Status.OK if the record is good
+     */
+    public Status parse (CSVRecord csv_record) {
+        bad_value = null;
+        record_number = csv_record.getRecordNumber();
+        if (csv_record.size() < N_FIELDS)
+            return fail (Status.MISSING_FIELDS, null);
+
+        entity_name = csv_record.get (0);
+
+        String trade_type_string = csv_record.get (1);
+        if ("B".equalsIgnoreCase (trade_type_string))
+            trade_type = TradingData.TradeType.BUY;
+        else if ("S".equalsIgnoreCase (trade_type_string))
+            trade_type = TradingData.TradeType.SELL;
+        else
+            return fail (Status.BAD_TRADE_TYPE, trade_type_string);
+
+        String agreed_fx_string = csv_record.get (2);
+        if (! isDecimal (agreed_fx_string))
+            return fail (Status.BAD_AGREED_FX, agreed_fx_string);
+        agreed_fx = Double.parseDouble (agreed_fx_string);
+
+        currency_name = csv_record.get (3);
+
+        String instruction_date_string = csv_record.get (4);
+        instruction_date = TradeDateParser.parseEpochDay (instruction_date_string);
+        if (instruction_date == TradeDateParser.INVALID_DATE)
+            return fail (Status.BAD_INSTRUCTION_DATE, instruction_date_string);
+
+        String settlement_date_string = csv_record.get (5);
+        nominal_settlement_date = TradeDateParser.parseEpochDay (settlement_date_string);
+        if (nominal_settlement_date == TradeDateParser.INVALID_DATE)
+            return fail (Status.BAD_SETTLEMENT_DATE, settlement_date_string);
+
+        String units_string = csv_record.get (6);
+        long units = parseInt (units_string);
+        if (units == INVALID_INT)
+            return fail (Status.BAD_UNITS, units_string);
+        number_of_units = (int) units;
+
+        String price_string = csv_record.get (7);
+        if (! isDecimal (price_string))
+            return fail (Status.BAD_PRICE, price_string);
+        price_per_unit = Double.parseDouble (price_string);
+
+        currency_id = CurrencyRegistry.getDefault().internTradeCurrency (currency_name);
+        return status = Status.OK;
+    }
+
+    /** Decode the current record of a tokenizer, in the same way as a CSV record.
+     * The fields are parsed from the tokenizer's bytes, so no Strings are created
+     * for a good record apart from the names the tokenizer caches.
+     *
+     * @param tokens the tokenizer, positioned on a record
+     * @return the status, Status.OK if the record is good
+     */
+    public Status parse (TradingDataTokenizer tokens) {
+        bad_value = null;
+        record_number = tokens.getNRecords();
+        if (tokens.getNFields() < N_FIELDS)
+            return fail (Status.MISSING_FIELDS, null);
+
+        entity_name = tokens.getEntityName (0);
+
+        byte trade_type_code = tokens.getLength (1) == 1 ? tokens.getByte (1, 0) : 0;
+        if (trade_type_code == 'B' || trade_type_code == 'b')
+            trade_type = TradingData.TradeType.BUY;
+        else if (trade_type_code == 'S' || trade_type_code == 's')
+            trade_type = TradingData.TradeType.SELL;
+        else
+            return fail (Status.BAD_TRADE_TYPE, tokens.getString (1));
+
+        agreed_fx = tokens.parseDecimal (2);
+        if (Double.isNaN (agreed_fx))
+            return fail (Status.BAD_AGREED_FX, tokens.getString (2));
+
+        instruction_date = tokens.parseEpochDay (4);
+        if (instruction_date == TradeDateParser.INVALID_DATE)
+            return fail (Status.BAD_INSTRUCTION_DATE, tokens.getString (4));
+
+        nominal_settlement_date = tokens.parseEpochDay (5);
+        if (nominal_settlement_date == TradeDateParser.INVALID_DATE)
+            return fail (Status.BAD_SETTLEMENT_DATE, tokens.getString (5));
+
+        long units = tokens.parseInt (6);
+        if (units == INVALID_INT)
+            return fail (Status.BAD_UNITS, tokens.getString (6));
+        number_of_units = (int) units;
+
+        price_per_unit = tokens.parseDecimal (7);
+        if (Double.isNaN (price_per_unit))
+            return fail (Status.BAD_PRICE, tokens.getString (7));
+
+        currency_name = tokens.getCurrencyName (3);
+        currency_id = CurrencyRegistry.getDefault().internTradeCurrency (currency_name);
+        return status = Status.OK;
+    }
+
+    /** Create a trade from the last record decoded, which must have been good.
+     * @return the trade
+     * @throws IllegalStateException if the last record was bad */
+    public TradingData create () {
+        if (status != Status.OK)
+            throw new IllegalStateException ("No trade to create: " + getMessage());
+        return new TradingData (this);
+    }
+
+    /** Get the status of the last record decoded.
+     * @return the status */
+    public Status getStatus () { return status; }
+
+    /** Get the text of the field that was wrong in the last record decoded.
+     * @return the text, null if the record was good or the field was missing */
+    public String getBadValue () { return bad_value; }
+
+    /** Get a message describing the status of the last record decoded, including
+     * the text of the field that was wrong.
+     * @return the message */
+    public String getMessage () {
+        return bad_value == null ? status.getDescription() : status.getDescription() + ": " + bad_value;
+    }
+
+    /** Decode a CSV record, throwing an exception if it is bad. For callers that
+     * treat any bad record as an error in the whole input.
+     * @param csv_record the CSV row
+     * @return a parser holding the decoded values
+     * @throws IOException if there is a problem with the CSV data
+     */
+    static TradingDataParser parseStrictly (CSVRecord csv_record) throws IOException {
+        TradingDataParser parser = new TradingDataParser ();
+        if (parser.parse (csv_record) != Status.OK)
+            throw new IOException (parser.getMessage());
+        return parser;
+    }
+
+    /** Helper function to record a bad record.
+     * @param bad_status the problem
+     * @param value the text of the field that was wrong, null if it was missing
+     * @return the status */
+    private Status fail (Status bad_status, String value) {
+        bad_value = value == null || value.isEmpty() ? null : value;
+        return status = bad_status;
+    }
+
+    /** Parse a whole number that fits in an int, with an optional sign - the same
+     * text that Integer.parseInt accepts.
+     * @param text the text (may be null)
+     * @return the value, or INVALID_INT if the text is not an int */
+    static long parseInt (String text) {
+        if (text == null || text.isEmpty()) return INVALID_INT;
+        int pos = 0;
+        boolean negative = text.charAt (0) == '-';
+        if (negative || text.charAt (0) == '+') pos ++;
+        if (pos == text.length()) return INVALID_INT;
+        long value = 0;
+        for (; pos < text.length(); pos ++) {
+            char c = text.charAt (pos);
+            if (c < '0' || c > '9') return INVALID_INT;
+            value = value * 10 + (c - '0');
+            if (value > (long) Integer.MAX_VALUE + 1) return INVALID_INT;
+        }
+        if (negative) value = - value;
+        return value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ? INVALID_INT : value;
+    }
+
+    /** Check that text is a plain decimal number: an optional sign, digits with an
+     * optional decimal point (at least one digit in all) and an optional exponent.
+     * Leading and trailing spaces are allowed, as they are by Double.parseDouble.
+     * @param text the text (may be null)
+     * @return true if Double.parseDouble will convert the text */
+    static boolean isDecimal (String text) {
+        if (text == null) return false;
+        int pos = 0;
+        int end = text.length();
+        while (pos < end && text.charAt (pos) <= ' ') pos ++;
+        while (end > pos && text.charAt (end - 1) <= ' ') end --;
+
+        if (pos < end && (text.charAt (pos) == '-' || text.charAt (pos) == '+')) pos ++;
+        int n_digits = 0;
+        while (pos < end && isDigit (text.charAt (pos))) { pos ++; n_digits ++; }
+        if (pos < end && text.charAt (pos) == '.') {
+            pos ++;
+            while (pos < end && isDigit (text.charAt (pos))) { pos ++; n_digits ++; }
+        }
+        if (n_digits == 0) return false;
+
+        if (pos < end && (text.charAt (pos) == 'e' || text.charAt (pos) == 'E')) {
+            pos ++;
+            if (pos < end && (text.charAt (pos) == '-' || text.charAt (pos) == '+')) pos ++;
+            int exponent_start = pos;
+            while (pos < end && isDigit (text.charAt (pos))) pos ++;
+            if (pos == exponent_start) return false;
+        }
+        return pos == end;
+    }
+
+    private static boolean isDigit (char c) { return c >= '0' && c <= '9'; }
+}
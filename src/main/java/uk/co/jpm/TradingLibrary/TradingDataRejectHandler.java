@@ -0,0 +1,22 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.io.IOException;
+
+/**
+ * A callback that receives the records that could not be decoded as trading data,
+ * when reading in lenient mode (see {@link TradingDataStream}). Bad records are
+ * passed to the handler in input order and reading carries on with the next record.
+ * 
+ * @author smf
+ */
+public interface TradingDataRejectHandler {
+    
+    /** Called once for each record that could not be decoded.
+     * @param line_number the line of the input the record starts on, counting from 1
+     *        (the header is line 1 of a file with a header)
+     * @param reason why the record could not be decoded
+     * @param fields the text of the record's fields
+     * @throws IOException if the record could not be handled, which stops the reading
+     */
+    public void reject (long line_number, String reason, Iterable<String> fields) throws IOException;
+}
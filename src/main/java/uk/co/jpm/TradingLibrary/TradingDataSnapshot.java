@@ -0,0 +1,265 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A binary snapshot of trading data that can be reloaded without parsing. A
+ * snapshot is written from a {@link TradingDataColumns} store and read back by
+ * memory mapping the file, so trades can be scanned straight from the file.
+ * 
+ * The file format (all values little endian) is:
+ *   a header: magic number ("DTRS"), format version (int), number of trades (long),
+ *     file offset of the first trade (long), number of entity names (int) and
+ *     number of currency names (int)
+ *   the entity names then the currency names, each as a length (int, in bytes)
+ *     followed by the name in UTF-8 - a trade refers to a name by its position
+ *     in the list
+ *   fixed width records, one for each trade: entity id (int), currency id (int),
+ *     buy / sell (byte, TradeType ordinal), units (int), fx (double), price (double),
+ *     instruction, nominal settlement and actual settlement dates as epoch days (int)
+ * 
+ * The actual settlement date is worked out again from the nominal date and the
+ * currency when it is read, so the holiday calendars in use when the snapshot is
+ * reported on apply rather than those in use when it was written.
+ * 
+ * @author smf
+ */
+public class TradingDataSnapshot implements TradingDataTable, Closeable {
+    
+    /** Magic number at the start of every snapshot file - "DTRS" in ASCII */
+    public static final int MAGIC = 0x53525444;
+    
+    /** The version of the file format written by this class */
+    public static final int VERSION = 1;
+    
+    // size of the fixed part of the header
+    private static final int HEADER_SIZE = 32;
+    
+    // layout of a record
+    private static final int ENTITY_ID_OFFSET = 0;
+    private static final int CURRENCY_ID_OFFSET = 4;
+    private static final int TRADE_TYPE_OFFSET = 8;
+    private static final int UNITS_OFFSET = 9;
+    private static final int FX_OFFSET = 13;
+    private static final int PRICE_OFFSET = 21;
+    private static final int INSTRUCTION_DATE_OFFSET = 29;
+    private static final int NOMINAL_DATE_OFFSET = 33;
+    private static final int ACTUAL_DATE_OFFSET = 37;
+    private static final int RECORD_SIZE = 41;
+    
+    // records are mapped in segments as a mapping can't be larger than Integer.MAX_VALUE bytes
+    private static final int SEGMENT_BITS = 24;
+    private static final int SEGMENT_MASK = (1 << SEGMENT_BITS) - 1;
+    
+    // trade types, indexed by the values in the records
+    private static final TradingData.TradeType TRADE_TYPES [] = TradingData.TradeType.values();
+    
+    // the file being read
+    private final FileChannel channel;
+    
+    // entity and currency names, indexed by id
+    private final String entity_names [];
+    private final String currency_names [];
+    
+    // ids in the default currency registry of the currency names, indexed by id
+    private final int registry_ids [];
+    
+    // number of trades, and the size of the file
+    private final int size;
+    private final long n_bytes;
+    
+    // the records, in segments
+    private final ByteBuffer segments [];
+    
+    /** Open a snapshot file and map its records into memory.
+     * @param snapshot_file the file to read
+     * @throws IOException if the file can't be read or is not a snapshot
+     */
+    public TradingDataSnapshot (File snapshot_file) throws IOException {
+        channel = FileChannel.open (snapshot_file.toPath(), StandardOpenOption.READ);
+        try {
+            // read the header
+            n_bytes = channel.size();
+            ByteBuffer header = readFully (channel, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC)
+                throw new IOException ("Not a trading data snapshot: " + snapshot_file.getPath());
+            int version = header.getInt();
+            if (version != VERSION)
+                throw new IOException ("Unsupported trading data snapshot version: " + version);
+            long n_records = header.getLong();
+            long records_offset = header.getLong();
+            if (n_records < 0 || n_records > Integer.MAX_VALUE || records_offset + n_records * RECORD_SIZE > n_bytes)
+                throw new IOException ("Corrupt trading data snapshot: " + snapshot_file.getPath());
+            size = (int) n_records;
+            entity_names = new String [header.getInt()];
+            currency_names = new String [header.getInt()];
+            
+            // read the names
+            ByteBuffer names = readFully (channel, HEADER_SIZE, (int) (records_offset - HEADER_SIZE));
+            readNames (names, entity_names);
+            readNames (names, currency_names);
+            registry_ids = new int [currency_names.length];
+            for (int id = 0; id < currency_names.length; id ++)
+                registry_ids [id] = CurrencyRegistry.getDefault().intern (currency_names [id]);
+            
+            // map the records
+            segments = new ByteBuffer [(int) ((n_records + SEGMENT_MASK) >>> SEGMENT_BITS)];
+            for (int count = 0; count < segments.length; count ++) {
+                long first_record = (long) count << SEGMENT_BITS;
+                long n_segment_records = Math.min (n_records - first_record, 1l << SEGMENT_BITS);
+                segments [count] = channel.map (FileChannel.MapMode.READ_ONLY, records_offset + first_record * RECORD_SIZE, n_segment_records * RECORD_SIZE);
+                segments [count].order (ByteOrder.LITTLE_ENDIAN);
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close ();
+            throw e;
+        }
+    }
+    
+    /** Write the trades in a columnar store to a snapshot file.
+     * @param columns the trades to write
+     * @param snapshot_file the file to write
+     * @throws IOException if there was an error writing the file
+     */
+    public static void write (TradingDataColumns columns, File snapshot_file) throws IOException {
+        // encode the names
+        ByteArrayOutputStream name_bytes = new ByteArrayOutputStream ();
+        writeNames (name_bytes, columns.getEntityNames());
+        writeNames (name_bytes, columns.getCurrencyNames());
+        
+        try (FileChannel out = FileChannel.open (snapshot_file.toPath(), StandardOpenOption.CREATE, 
+                                                 StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate (Math.max (1024 * 1024, HEADER_SIZE + name_bytes.size()));
+            buffer.order (ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt (MAGIC);
+            buffer.putInt (VERSION);
+            buffer.putLong (columns.size());
+            buffer.putLong (HEADER_SIZE + name_bytes.size());
+            buffer.putInt (columns.getEntityNames().size());
+            buffer.putInt (columns.getCurrencyNames().size());
+            buffer.put (name_bytes.toByteArray());
+            
+            for (int row = 0; row < columns.size(); row ++) {
+                if (buffer.remaining() < RECORD_SIZE)
+                    flush (out, buffer);
+                buffer.putInt (columns.getEntityId (row));
+                buffer.putInt (columns.getCurrencyId (row));
+                buffer.put ((byte) columns.getTradeType (row).ordinal());
+                buffer.putInt (columns.getNumberOfUnits (row));
+                buffer.putDouble (columns.getAgreedFX (row));
+                buffer.putDouble (columns.getPricePerUnit (row));
+                buffer.putInt (columns.getInstructionEpochDay (row));
+                buffer.putInt (columns.getNominalSettlementEpochDay (row));
+                buffer.putInt (columns.getActualSettlementEpochDay (row));
+            }
+            flush (out, buffer);
+        }
+    }
+    
+    /** Find out whether a file is a snapshot by checking its magic number.
+     * @param file the file to check
+     * @return true if the file is a snapshot
+     * @throws IOException if there was an error reading the file
+     */
+    public static boolean isSnapshot (File file) throws IOException {
+        try (FileChannel in = FileChannel.open (file.toPath(), StandardOpenOption.READ)) {
+            if (in.size() < HEADER_SIZE) return false;
+            return readFully (in, 0, 4).getInt() == MAGIC;
+        }
+    }
+    
+    @Override
+    public int size () { return size; }
+    
+    /** Get the size of the snapshot file, including the header and the names.
+     * @return the number of bytes */
+    public long getNBytes () { return n_bytes; }
+    
+    public String getEntityName (int row) { return entity_names [getEntityId (row)]; }
+    public TradingData.TradeType getTradeType (int row) { return TRADE_TYPES [segment (row).get (offset (row) + TRADE_TYPE_OFFSET)]; }
+    public double getAgreedFX (int row) { return segment (row).getDouble (offset (row) + FX_OFFSET); }
+    public String getCurrencyName (int row) { return currency_names [getCurrencyId (row)]; }
+    public int getInstructionEpochDay (int row) { return segment (row).getInt (offset (row) + INSTRUCTION_DATE_OFFSET); }
+    public int getNominalSettlementEpochDay (int row) { return segment (row).getInt (offset (row) + NOMINAL_DATE_OFFSET); }
+    public int getNumberOfUnits (int row) { return segment (row).getInt (offset (row) + UNITS_OFFSET); }
+    public double getPricePerUnit (int row) { return segment (row).getDouble (offset (row) + PRICE_OFFSET); }
+    public int getActualSettlementEpochDay (int row) { return BusinessRules.findActualSettlementEpochDay (getNominalSettlementEpochDay (row), registry_ids [getCurrencyId (row)]); }
+    public int getEntityId (int row) { return segment (row).getInt (offset (row) + ENTITY_ID_OFFSET); }
+    public int getCurrencyId (int row) { return segment (row).getInt (offset (row) + CURRENCY_ID_OFFSET); }
+    
+    public double calcPriceUSD (int row) { return BusinessRules.calcPriceUSD (getPricePerUnit (row), getNumberOfUnits (row), getAgreedFX (row)); }
+    
+    /** Close the file. The trades can't be read once the file is closed.
+     * @throws IOException if there was an error closing the file */
+    @Override
+    public void close () throws IOException {
+        channel.close ();
+    }
+    
+    private ByteBuffer segment (int row) { return segments [row >>> SEGMENT_BITS]; }
+    private static int offset (int row) { return (row & SEGMENT_MASK) * RECORD_SIZE; }
+    
+    /** Helper function to read part of a file into a buffer.
+     * @param channel the file
+     * @param position where to start reading
+     * @param length the number of bytes to read
+     * @return the buffer, ready for reading
+     * @throws IOException if the bytes couldn't be read */
+    private static ByteBuffer readFully (FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate (length);
+        buffer.order (ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read (buffer, position + buffer.position()) < 0)
+                throw new IOException ("Unexpected end of trading data snapshot");
+        }
+        buffer.flip ();
+        return buffer;
+    }
+    
+    /** Helper function to write and empty a buffer.
+     * @param channel the file
+     * @param buffer the buffer to write
+     * @throws IOException if the bytes couldn't be written */
+    private static void flush (FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip ();
+        while (buffer.hasRemaining())
+            channel.write (buffer);
+        buffer.clear ();
+    }
+    
+    /** Helper function to encode the names from a dictionary.
+     * @param out where to write
+     * @param dictionary the names to write */
+    private static void writeNames (ByteArrayOutputStream out, StringDictionary dictionary) {
+        for (int id = 0; id < dictionary.size(); id ++) {
+            byte bytes [] = dictionary.decode (id).getBytes (StandardCharsets.UTF_8);
+            ByteBuffer length = ByteBuffer.allocate (4).order (ByteOrder.LITTLE_ENDIAN).putInt (bytes.length);
+            out.write (length.array(), 0, 4);
+            out.write (bytes, 0, bytes.length);
+        }
+    }
+    
+    /** Helper function to decode names.
+     * @param buffer the encoded names
+     * @param names array to fill with the names
+     * @throws IOException if the names are corrupt */
+    private static void readNames (ByteBuffer buffer, String names []) throws IOException {
+        for (int id = 0; id < names.length; id ++) {
+            if (buffer.remaining() < 4)
+                throw new IOException ("Corrupt trading data snapshot names");
+            int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining())
+                throw new IOException ("Corrupt trading data snapshot names");
+            names [id] = new String (buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position (buffer.position() + length);
+        }
+    }
+}
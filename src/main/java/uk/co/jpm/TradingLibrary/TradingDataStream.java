@@ -0,0 +1,286 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+
+/**
+ * A streaming source of {@link TradingData} read from CSV. Unlike {@link TradingDataList}
+ * the records are not stored - each one is passed to a {@link TradingDataVisitor} as
+ * soon as it has been parsed, so memory use does not grow with the size of the input.
+ * The CSV format is the same as for {@link TradingDataList}. Bad records either stop
+ * the reading or, in lenient mode, are passed to a {@link TradingDataRejectHandler}
+ * (e.g. a {@link QuarantineFile}) with their line numbers.
+ * 
+ * Files and buffers are read as bytes by a {@link TradingDataTokenizer}, which
+ * doesn't create a String for every field. Readers, and files when the byte
+ * tokenizer is turned off (see {@link #setByteTokenizer}), are parsed with
+ * commons-csv. Both give the same results.
+ * 
+ * @author smf
+ */
+public class TradingDataStream implements Closeable {
+    
+    // true to read files as bytes, false to use commons-csv - bytes can only be
+    // used when the default character set keeps ASCII characters as single bytes
+    private static volatile boolean byte_tokenizer = TradingDataTokenizer.isCompatible (Charset.defaultCharset());
+    
+    // the source of CSV data - either a reader parsed with commons-csv or a
+    // tokenizer, and the object to close when the stream is closed
+    private final Reader reader;
+    private final TradingDataTokenizer tokenizer;
+    private final Closeable source;
+    
+    // true if the first record is a header row that should be skipped
+    private final boolean has_header;
+    
+    // number of lines read, including the header
+    private long n_lines;
+    
+    /** Create a stream of {@link TradingData} from a CSV file.
+     * 
+     * @param csv_file The CSV file.
+     * @throws IOException if the file could not be opened
+     */
+    public TradingDataStream (File csv_file) throws IOException {
+        this (byte_tokenizer ? FileChannel.open (csv_file.toPath(), StandardOpenOption.READ) : new FileReader (csv_file), true);
+    }
+    
+    /** Helper constructor for a file, which is either a channel or a reader.
+     * @param source the open file
+     * @param has_header true if the first row is a header that should be skipped
+     */
+    private TradingDataStream (Closeable source, boolean has_header) {
+        this.reader = source instanceof Reader ? (Reader) source : null;
+        this.tokenizer = source instanceof Reader ? null : new TradingDataTokenizer ((ReadableByteChannel) source);
+        this.source = source;
+        this.has_header = has_header;
+        this.n_lines = 0;
+    }
+    
+    /** Create a stream of {@link TradingData} from a buffer of CSV data, which is
+     * read as bytes (e.g. a memory mapped chunk of a file).
+     * 
+     * @param buffer The CSV data, from the buffer's position to its limit.
+     * @param has_header true if the first row is a header that should be skipped
+     */
+    public TradingDataStream (ByteBuffer buffer, boolean has_header) {
+        this.reader = null;
+        this.tokenizer = new TradingDataTokenizer (buffer);
+        this.source = null;
+        this.has_header = has_header;
+        this.n_lines = 0;
+    }
+    
+    /** Create a stream of {@link TradingData} from a reader.
+     * 
+     * @param reader The stream to read from.
+     */
+    public TradingDataStream (Reader reader) {
+        this (reader, true);
+    }
+    
+    /** Create a stream of {@link TradingData} from a reader that may or may not
+     * start with a header row. Used when reading part of a file, where only the
+     * first part has the header.
+     * 
+     * @param reader The stream to read from.
+     * @param has_header true if the first row is a header that should be skipped
+     */
+    public TradingDataStream (Reader reader, boolean has_header) {
+        this.reader = reader;
+        this.tokenizer = null;
+        this.source = reader;
+        this.has_header = has_header;
+        this.n_lines = 0;
+    }
+    
+    /** Read the CSV data, passing each record to the visitor in turn.
+     * 
+     * @param visitor the object that will receive each record
+     * @return the number of records read
+     * @throws IOException if there was an error in the CSV data
+     */
+    public long visitAll (TradingDataVisitor visitor) throws IOException {
+        return visitAll (visitor, null);
+    }
+    
+    /** Read the CSV data, passing each good record to the visitor in turn. In lenient
+     * mode (when there is a reject handler) records that can't be decoded as trading
+     * data are passed to the handler and reading carries on; otherwise the first bad
+     * record stops the reading with an exception. Records are checked with a
+     * {@link TradingDataParser}, so bad records don't throw exceptions in lenient mode.
+     * 
+     * @param visitor the object that will receive each good record
+     * @param rejects the object that will receive each bad record, null to stop at
+     *        the first bad record
+     * @return the number of good records read
+     * @throws IOException if there was an error reading the CSV data, an error in the
+     *         CSV data and no reject handler, or the reject handler failed
+     */
+    public long visitAll (TradingDataVisitor visitor, TradingDataRejectHandler rejects) throws IOException {
+        return tokenizer != null ? visitAllTokens (visitor, rejects) : visitAllRecords (visitor, rejects);
+    }
+    
+    /** Helper function to read the CSV data as bytes with the tokenizer.
+     * @param visitor the object that will receive each good record
+     * @param rejects the object that will receive each bad record, null to stop at the first one
+     * @return the number of good records read
+     * @throws IOException if there was an error reading the CSV data, an error in the
+     *         CSV data and no reject handler, or the reject handler failed
+     */
+    private long visitAllTokens (TradingDataVisitor visitor, TradingDataRejectHandler rejects) throws IOException {
+        PipelineMetrics metrics = PipelineMetrics.getDefault();
+        TradingDataParser trading_data_parser = new TradingDataParser ();
+        long n_records = 0;
+        long n_bytes_counted = 0;
+        if (has_header)
+            tokenizer.next ();
+        n_lines = tokenizer.getNLines();
+        try {
+            while (tokenizer.next ()) {
+                // the record starts on the line after the end of the last one
+                long line_number = n_lines + 1;
+                n_lines = tokenizer.getNLines();
+                
+                TradingDataParser.Status status;
+                if (PipelineMetrics.isSampled (tokenizer.getNRecords())) {
+                    long start = System.nanoTime();
+                    status = trading_data_parser.parse (tokenizer);
+                    metrics.addSampleNanos (PipelineMetrics.Stage.PARSE, System.nanoTime() - start);
+                } else
+                    status = trading_data_parser.parse (tokenizer);
+                if (status != TradingDataParser.Status.OK) {
+                    metrics.addParseFailures (1);
+                    if (rejects == null)
+                        throw new IOException (trading_data_parser.getMessage());
+                    rejects.reject (line_number, trading_data_parser.getMessage(), tokenizer.getFields());
+                    continue;
+                }
+                visitor.visit (trading_data_parser.create ());
+
+                // count records and bytes in blocks, so the counters are only updated occasionally
+                if (++ n_records % PipelineMetrics.SAMPLE_INTERVAL == 0) {
+                    metrics.addRecordsRead (PipelineMetrics.SAMPLE_INTERVAL);
+                    metrics.addBytesRead (tokenizer.getNBytes() - n_bytes_counted);
+                    n_bytes_counted = tokenizer.getNBytes();
+                }
+            }
+            n_lines = tokenizer.getNLines();
+        } finally {
+            metrics.addRecordsRead (n_records % PipelineMetrics.SAMPLE_INTERVAL);
+            metrics.addBytesRead (tokenizer.getNBytes() - n_bytes_counted);
+        }
+        return n_records;
+    }
+    
+    /** Helper function to read the CSV data with commons-csv.
+     * @param visitor the object that will receive each good record
+     * @param rejects the object that will receive each bad record, null to stop at the first one
+     * @return the number of good records read
+     * @throws IOException if there was an error reading the CSV data, an error in the
+     *         CSV data and no reject handler, or the reject handler failed
+     */
+    private long visitAllRecords (TradingDataVisitor visitor, TradingDataRejectHandler rejects) throws IOException {
+        PipelineMetrics metrics = PipelineMetrics.getDefault();
+        TradingDataParser trading_data_parser = new TradingDataParser ();
+        long n_records = 0;
+        CSVFormat format = has_header ? CSVFormat.RFC4180.withFirstRecordAsHeader() : CSVFormat.RFC4180;
+        CSVParser csv_parser = format.parse(new CountingReader (reader, metrics));
+        n_lines = csv_parser.getCurrentLineNumber();
+        try {
+            for (CSVRecord record : csv_parser) {
+                // the record starts on the line after the end of the last one
+                long line_number = n_lines + 1;
+                n_lines = csv_parser.getCurrentLineNumber();
+                
+                TradingDataParser.Status status;
+                if (PipelineMetrics.isSampled (record.getRecordNumber())) {
+                    long start = System.nanoTime();
+                    status = trading_data_parser.parse (record);
+                    metrics.addSampleNanos (PipelineMetrics.Stage.PARSE, System.nanoTime() - start);
+                } else
+                    status = trading_data_parser.parse (record);
+                if (status != TradingDataParser.Status.OK) {
+                    metrics.addParseFailures (1);
+                    if (rejects == null)
+                        throw new IOException (trading_data_parser.getMessage());
+                    rejects.reject (line_number, trading_data_parser.getMessage(), record);
+                    continue;
+                }
+                visitor.visit (trading_data_parser.create ());
+
+                // count records in blocks, so the counter is only updated occasionally
+                if (++ n_records % PipelineMetrics.SAMPLE_INTERVAL == 0)
+                    metrics.addRecordsRead (PipelineMetrics.SAMPLE_INTERVAL);
+            }
+            n_lines = csv_parser.getCurrentLineNumber();
+        } finally {
+            metrics.addRecordsRead (n_records % PipelineMetrics.SAMPLE_INTERVAL);
+        }
+        return n_records;
+    }
+    
+    /** Get the number of lines read so far, including the header, counted as line
+     * breaks - a last line without a line break is not counted. After reading an
+     * input that ends with a line break this is the number of lines in it.
+     * @return the number of lines */
+    public long getNLines () { return n_lines; }
+    
+    /** Choose how files and mapped chunks of files are parsed. Readers are always
+     * parsed with commons-csv.
+     * @param use_bytes true to read them as bytes with a {@link TradingDataTokenizer}
+     *        (the default when the platform's character set allows it), false to
+     *        decode them to characters and parse them with commons-csv
+     */
+    public static void setByteTokenizer (boolean use_bytes) { byte_tokenizer = use_bytes; }
+    
+    /** Find out how files and mapped chunks of files are parsed.
+     * @return true if they are read as bytes, false if they are parsed with commons-csv */
+    public static boolean isByteTokenizer () { return byte_tokenizer; }
+
+    /** A Reader that counts the characters read through it as bytes read, in the pipeline
+     * metrics. The CSV parser reads in large blocks, so the metrics are only updated
+     * occasionally. */
+    private static class CountingReader extends FilterReader {
+        private final PipelineMetrics metrics;
+        
+        CountingReader (Reader reader, PipelineMetrics metrics) {
+            super (reader);
+            this.metrics = metrics;
+        }
+        
+        @Override
+        public int read () throws IOException {
+            int c = super.read();
+            if (c >= 0) metrics.addBytesRead (1);
+            return c;
+        }
+        
+        @Override
+        public int read (char buffer [], int off, int len) throws IOException {
+            int n = super.read (buffer, off, len);
+            if (n > 0) metrics.addBytesRead (n);
+            return n;
+        }
+    }
+    
+    /** Close the underlying reader or file.
+     * @throws IOException if there was an error closing the reader or file */
+    @Override
+    public void close () throws IOException {
+        if (source != null)
+            source.close ();
+    }
+}
@@ -0,0 +1,39 @@
+package uk.co.jpm.TradingLibrary;
+
+/**
+ * Random access to a table of trades, where each field of a trade is read by
+ * row number rather than through a {@link TradingData} object. Lets reports scan
+ * trades held in compact forms (e.g. columns or a binary file) without creating
+ * an object for each trade.
+ * 
+ * @author smf
+ */
+public interface TradingDataTable {
+    
+    /** Get the number of trades in the table.
+     * @return the number of trades */
+    public int size ();
+    
+    public String getEntityName (int row);
+    public TradingData.TradeType getTradeType (int row);
+    public double getAgreedFX (int row);
+    public String getCurrencyName (int row);
+    public int getInstructionEpochDay (int row);
+    public int getNominalSettlementEpochDay (int row);
+    public int getNumberOfUnits (int row);
+    public double getPricePerUnit (int row);
+    public int getActualSettlementEpochDay (int row);
+    
+    /** Calculate the USD amount of a trade.
+     * @param row the trade
+     * @return the USD amount */
+    public double calcPriceUSD (int row);
+    
+    /** Calculate the exact USD amount of a trade, see {@link BusinessRules#calcPriceUSDFixed}.
+     * @param row the trade
+     * @return the USD amount, scaled to {@link FixedPoint#USD_DIGITS} decimal places */
+    public default long calcPriceUSDFixed (int row) {
+        return BusinessRules.calcPriceUSDFixed (FixedPoint.toScaled (getPricePerUnit (row), FixedPoint.PRICE_DIGITS), getNumberOfUnits (row),
+                                                FixedPoint.toScaled (getAgreedFX (row), FixedPoint.FX_DIGITS));
+    }
+}
@@ -0,0 +1,622 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits CSV trading data into records and fields working directly on the bytes
+ * of the input, without decoding it to characters. Fields are held as byte ranges
+ * in the buffer, and numbers and dates are parsed from the bytes, so reading a
+ * good record creates no objects apart from the {@link TradingData} itself - entity
+ * and currency names are kept in a cache, so each distinct name is only made into
+ * a String once. Strings for other fields are only created for bad records.
+ *
+ * The input is either a ByteBuffer holding all of it (e.g. a memory mapped chunk
+ * of a file, see {@link TradingDataChunk}) or a channel that is read through a
+ * direct buffer, which is grown if a record doesn't fit in it.
+ *
+ * Records are split in the same way as by commons-csv with the RFC4180 format:
+ * fields are separated by commas, records end with a line feed, a carriage return
+ * or both, and a field that starts with a double quote runs to the next double
+ * quote that isn't doubled, so it may hold commas and line breaks. The input must
+ * be in a character set where the bytes of commas, quotes, line breaks, digits and
+ * ASCII letters only ever mean those characters (true of ASCII, UTF-8 and the
+ * ISO-8859 family, see {@link #isCompatible}). Names are decoded with the
+ * platform's default character set, as they are by a FileReader.
+ *
+ * A tokenizer holds the fields of the current record, so each thread should use
+ * its own tokenizer.
+ *
+ * @author smf
+ */
+public class TradingDataTokenizer {
+
+    /** Size of the buffer used to read from a channel */
+    public static final int BUFFER_SIZE = 1024 * 1024;
+
+    /** Value returned by {@link #parseInt} for a field that isn't an int - outside the range of an int */
+    public static final long INVALID_INT = Long.MIN_VALUE;
+
+    // results of tokenizing the bytes that are in the buffer
+    private static final int NEED_MORE_INPUT = -1;
+    private static final int END_OF_INPUT = -2;
+
+    // powers of ten that are exact as doubles
+    private static final double POWERS_OF_TEN [] = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // largest number of significant digits kept in a decimal's mantissa
+    private static final int MAX_MANTISSA_DIGITS = 18;
+
+    // the source of more input, null if the buffer holds all of it
+    private final ReadableByteChannel channel;
+
+    // the input - bytes from position to limit have not been tokenized yet
+    private ByteBuffer buffer;
+    private int position;
+    private int limit;
+    private boolean end_of_input;
+
+    // the fields of the current record - start and end offsets of the contents of
+    // each field in the buffer (inside any quotes), and whether a quoted field
+    // holds doubled quotes
+    private int n_fields;
+    private int starts [];
+    private int ends [];
+    private boolean escaped [];
+
+    // line breaks, records and bytes tokenized so far
+    private long n_lines;
+    private long n_records;
+    private long n_bytes;
+
+    // character set of names, and caches of names and dates
+    private final Charset charset;
+    private final ByteRangeCache entity_names;
+    private final ByteRangeCache currency_names;
+    private final ByteRangeCache dates;
+
+    // the bytes of the current record's date, seen as characters for TradeDateParser
+    private final FieldCharacters date_characters;
+
+    /** Create a tokenizer for input that is all held in a buffer. The buffer's
+     * contents are not changed.
+     * @param buffer the input, from its position to its limit
+     */
+    public TradingDataTokenizer (ByteBuffer buffer) {
+        this (null, buffer.slice(), true);
+    }
+
+    /** Create a tokenizer that reads its input from a channel.
+     * @param channel the input, which is read to its end but not closed
+     */
+    public TradingDataTokenizer (ReadableByteChannel channel) {
+        this (channel, BUFFER_SIZE);
+    }
+
+    /** Create a tokenizer that reads its input from a channel, with a given initial
+     * buffer size (small buffers are used to test records that cross the end of the buffer).
+     * @param channel the input, which is read to its end but not closed
+     * @param buffer_size the initial size of the buffer
+     */
+    TradingDataTokenizer (ReadableByteChannel channel, int buffer_size) {
+        this (channel, ByteBuffer.allocateDirect (buffer_size), false);
+        limit = 0;
+    }
+
+    /** Helper constructor.
+     * @param channel the source of more input, null if there is none
+     * @param buffer the buffer, holding input from 0 to its limit
+     * @param end_of_input true if there is no more input than the buffer holds
+     */
+    private TradingDataTokenizer (ReadableByteChannel channel, ByteBuffer buffer, boolean end_of_input) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.position = 0;
+        this.limit = buffer.limit();
+        this.end_of_input = end_of_input;
+        n_fields = 0;
+        starts = new int [TradingDataParser.N_FIELDS];
+        ends = new int [TradingDataParser.N_FIELDS];
+        escaped = new boolean [TradingDataParser.N_FIELDS];
+        n_lines = 0;
+        n_records = 0;
+        n_bytes = 0;
+        charset = Charset.defaultCharset();
+        entity_names = new ByteRangeCache ();
+        currency_names = new ByteRangeCache ();
+        dates = new ByteRangeCache ();
+        date_characters = new FieldCharacters ();
+    }
+
+    /** Find out whether input in a character set can be tokenized as bytes.
+     * @param charset the character set
+     * @return true if the bytes of the characters the tokenizer looks for are the
+     *         same as in ASCII */
+    public static boolean isCompatible (Charset charset) {
+        String probe = "\r\n,\"-.+ 0123456789eEbBsSaAzZ";
+        return Arrays.equals (probe.getBytes (charset), probe.getBytes (StandardCharsets.US_ASCII));
+    }
+
+    /** Move on to the next record. The fields of the previous record are no longer
+     * available once this has been called.
+     * @return true if there is another record, false at the end of the input
+     * @throws IOException if there was an error reading the input, or the input
+     *         ends inside a quoted field or has text after the closing quote of a field
+     */
+    public boolean next () throws IOException {
+        while (true) {
+            int record_end = tokenize ();
+            if (record_end >= 0) {
+                n_bytes += record_end - position;
+                position = record_end;
+                n_records ++;
+                return true;
+            }
+            if (record_end == END_OF_INPUT)
+                return false;
+            fill ();
+        }
+    }
+
+    /** Helper function to split the record that starts at the current position into
+     * fields. The fields are only valid if the whole record is in the buffer.
+     * @return the offset after the end of the record, NEED_MORE_INPUT if the record
+     *         doesn't end in the buffer or END_OF_INPUT if there are no more records
+     * @throws IOException if a quoted field is not finished properly
+     */
+    private int tokenize () throws IOException {
+        if (position >= limit)
+            return end_of_input ? END_OF_INPUT : NEED_MORE_INPUT;
+        int pos = position;
+        int field = 0;
+        int record_lines = 0;
+        while (true) {
+            int start, end;
+            boolean has_escapes = false;
+            if (pos < limit && buffer.get (pos) == '"') {
+                // quoted field - runs to a quote that isn't doubled, and starts on the line
+                // after any line breaks in the record's earlier fields
+                long start_line = n_lines + record_lines + 1;
+                start = ++ pos;
+                while (true) {
+                    if (pos >= limit) {
+                        if (end_of_input)
+                            throw new IOException ("(startline " + start_line + ") EOF reached before encapsulated token finished");
+                        return NEED_MORE_INPUT;
+                    }
+                    byte c = buffer.get (pos);
+                    if (c == '"') {
+                        if (pos + 1 >= limit && ! end_of_input)
+                            return NEED_MORE_INPUT;
+                        if (pos + 1 < limit && buffer.get (pos + 1) == '"') {
+                            has_escapes = true;
+                            pos += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    if (c == '\r') {
+                        if (pos + 1 >= limit && ! end_of_input)
+                            return NEED_MORE_INPUT;
+                        if (pos + 1 >= limit || buffer.get (pos + 1) != '\n')
+                            record_lines ++;
+                    } else if (c == '\n')
+                        record_lines ++;
+                    pos ++;
+                }
+                end = pos ++;
+                if (pos < limit && ! isSeparator (buffer.get (pos)))
+                    throw new IOException ("(line " + (n_lines + record_lines + 1) + ") invalid char between encapsulated token and delimiter");
+            } else {
+                start = pos;
+                while (pos < limit && ! isSeparator (buffer.get (pos)))
+                    pos ++;
+                end = pos;
+            }
+            if (pos >= limit && ! end_of_input)
+                return NEED_MORE_INPUT;
+            addField (field ++, start, end, has_escapes);
+
+            // the end of the input ends the record
+            if (pos >= limit)
+                break;
+            byte c = buffer.get (pos ++);
+            if (c == ',')
+                continue;
+
+            // end of line - a carriage return may be followed by a line feed
+            if (c == '\r') {
+                if (pos >= limit && ! end_of_input)
+                    return NEED_MORE_INPUT;
+                if (pos < limit && buffer.get (pos) == '\n')
+                    pos ++;
+            }
+            record_lines ++;
+            break;
+        }
+        n_fields = field;
+        n_lines += record_lines;
+        return pos;
+    }
+
+    private static boolean isSeparator (byte c) { return c == ',' || c == '\n' || c == '\r'; }
+
+    /** Helper function to record the position of a field, growing the arrays if needed.
+     * @param field the field number
+     * @param start the offset of the start of the field's contents
+     * @param end the offset after the end of the field's contents
+     * @param has_escapes true if the contents hold doubled quotes */
+    private void addField (int field, int start, int end, boolean has_escapes) {
+        if (field == starts.length) {
+            starts = Arrays.copyOf (starts, field * 2);
+            ends = Arrays.copyOf (ends, field * 2);
+            escaped = Arrays.copyOf (escaped, field * 2);
+        }
+        starts [field] = start;
+        ends [field] = end;
+        escaped [field] = has_escapes;
+    }
+
+    /** Helper function to read more input from the channel, moving the current record
+     * to the start of the buffer, and growing the buffer if the record already fills it.
+     * @throws IOException if there was an error reading the input */
+    private void fill () throws IOException {
+        if (channel == null) {
+            end_of_input = true;
+            return;
+        }
+        if (position > 0) {
+            buffer.limit (limit).position (position);
+            buffer.compact ();
+            limit -= position;
+            position = 0;
+        } else if (limit == buffer.capacity()) {
+            ByteBuffer larger = ByteBuffer.allocateDirect (buffer.capacity() * 2);
+            buffer.limit (limit).position (0);
+            larger.put (buffer);
+            buffer = larger;
+        }
+        buffer.limit (buffer.capacity()).position (limit);
+        int n_read;
+        do {
+            n_read = channel.read (buffer);
+        } while (n_read == 0);
+        if (n_read < 0)
+            end_of_input = true;
+        else
+            limit += n_read;
+    }
+
+    /** Get the number of fields in the current record.
+     * @return the number of fields */
+    public int getNFields () { return n_fields; }
+
+    /** Get the length of a field in bytes (as it is in the input, for a field with doubled quotes).
+     * @param field the field number
+     * @return the length */
+    public int getLength (int field) { return ends [field] - starts [field]; }
+
+    /** Get a byte of a field.
+     * @param field the field number
+     * @param index the index of the byte in the field
+     * @return the byte */
+    public byte getByte (int field, int index) { return buffer.get (starts [field] + index); }
+
+    /** Get the text of a field. Creates a new String, so is meant for fields that
+     * aren't read for every record (e.g. to report a bad value).
+     * @param field the field number
+     * @return the text */
+    public String getString (int field) {
+        int length = getLength (field);
+        byte bytes [] = new byte [length];
+        int n_bytes = 0;
+        for (int index = 0; index < length; index ++) {
+            bytes [n_bytes ++] = buffer.get (starts [field] + index);
+            // the second of a pair of quotes is dropped
+            if (escaped [field] && bytes [n_bytes - 1] == '"')
+                index ++;
+        }
+        return new String (bytes, 0, n_bytes, charset);
+    }
+
+    /** Get the text of all the fields of the current record.
+     * @return the fields */
+    public List<String> getFields () {
+        List<String> fields = new ArrayList<> (n_fields);
+        for (int field = 0; field < n_fields; field ++)
+            fields.add (getString (field));
+        return fields;
+    }
+
+    /** Get the text of a field that holds an entity name. Each distinct name is
+     * only made into a String once.
+     * @param field the field number
+     * @return the name */
+    public String getEntityName (int field) { return getName (field, entity_names); }
+
+    /** Get the text of a field that holds a currency code. Each distinct code is
+     * only made into a String once.
+     * @param field the field number
+     * @return the code */
+    public String getCurrencyName (int field) { return getName (field, currency_names); }
+
+    /** Helper function to get a name from a cache, adding it if it isn't there.
+     * @param field the field number
+     * @param cache the cache
+     * @return the name */
+    private String getName (int field, ByteRangeCache cache) {
+        if (escaped [field])
+            return getString (field);
+        int slot = cache.find (buffer, starts [field], ends [field]);
+        if (cache.values [slot] != null)
+            return (String) cache.values [slot];
+        // adding may move the slots, so keep hold of the new name
+        String name = getString (field);
+        cache.add (slot, buffer, starts [field], ends [field], name);
+        return name;
+    }
+
+    /** Parse a field that holds a date (see {@link TradeDateParser}). Recently seen
+     * dates are cached.
+     * @param field the field number
+     * @return the epoch day, or TradeDateParser.INVALID_DATE if the date could not be parsed */
+    public int parseEpochDay (int field) {
+        int slot = dates.find (buffer, starts [field], ends [field]);
+        if (dates.values [slot] != null)
+            return (Integer) dates.values [slot];
+        date_characters.set (starts [field], ends [field]);
+        int epoch_day = TradeDateParser.parseEpochDay (date_characters, 0, date_characters.length());
+        if (epoch_day != TradeDateParser.INVALID_DATE)
+            dates.add (slot, buffer, starts [field], ends [field], epoch_day);
+        return epoch_day;
+    }
+
+    /** Parse a field that holds a whole number that fits in an int, with an optional
+     * sign - the same text that Integer.parseInt accepts.
+     * @param field the field number
+     * @return the value, or INVALID_INT if the field is not an int */
+    public long parseInt (int field) {
+        int pos = starts [field];
+        int end = ends [field];
+        if (pos == end) return INVALID_INT;
+        byte first = buffer.get (pos);
+        boolean negative = first == '-';
+        if (negative || first == '+') pos ++;
+        if (pos == end) return INVALID_INT;
+        long value = 0;
+        for (; pos < end; pos ++) {
+            int digit = buffer.get (pos) - '0';
+            if (digit < 0 || digit > 9) return INVALID_INT;
+            value = value * 10 + digit;
+            if (value > (long) Integer.MAX_VALUE + 1) return INVALID_INT;
+        }
+        if (negative) value = - value;
+        return value < Integer.MIN_VALUE || value > Integer.MAX_VALUE ? INVALID_INT : value;
+    }
+
+    /** Parse a field that holds a plain decimal number, accepting the same text as
+     * {@link TradingDataParser} does. The result is the same as Double.parseDouble's -
+     * numbers with up to 15 significant digits and small exponents are converted
+     * exactly with a single rounding, other numbers are converted by Double.parseDouble.
+     * @param field the field number
+     * @return the value, or NaN if the field is not a plain decimal number */
+    public double parseDecimal (int field) {
+        int pos = starts [field];
+        int end = ends [field];
+        while (pos < end && (buffer.get (pos) & 0xff) <= ' ') pos ++;
+        while (end > pos && (buffer.get (end - 1) & 0xff) <= ' ') end --;
+
+        boolean negative = false;
+        if (pos < end && (buffer.get (pos) == '-' || buffer.get (pos) == '+'))
+            negative = buffer.get (pos ++) == '-';
+
+        // digits, with the position of the decimal point as a scale
+        long mantissa = 0;
+        int n_mantissa_digits = 0;
+        int n_digits = 0;
+        int scale = 0;
+        boolean exact = true;
+        boolean fraction = false;
+        for (; pos < end; pos ++) {
+            byte c = buffer.get (pos);
+            if (c == '.' && ! fraction) {
+                fraction = true;
+                continue;
+            }
+            int digit = c - '0';
+            if (digit < 0 || digit > 9) break;
+            n_digits ++;
+            if (mantissa == 0 && digit == 0) {
+                if (fraction) scale ++;
+            } else if (n_mantissa_digits < MAX_MANTISSA_DIGITS) {
+                mantissa = mantissa * 10 + digit;
+                n_mantissa_digits ++;
+                if (fraction) scale ++;
+            } else
+                exact = false;
+        }
+        if (n_digits == 0) return Double.NaN;
+
+        int exponent = 0;
+        if (pos < end && (buffer.get (pos) == 'e' || buffer.get (pos) == 'E')) {
+            pos ++;
+            boolean negative_exponent = false;
+            if (pos < end && (buffer.get (pos) == '-' || buffer.get (pos) == '+'))
+                negative_exponent = buffer.get (pos ++) == '-';
+            int exponent_start = pos;
+            for (; pos < end; pos ++) {
+                int digit = buffer.get (pos) - '0';
+                if (digit < 0 || digit > 9) break;
+                if (exponent < 100000) exponent = exponent * 10 + digit;
+            }
+            if (pos == exponent_start) return Double.NaN;
+            if (negative_exponent) exponent = - exponent;
+        }
+        if (pos != end) return Double.NaN;
+
+        // a mantissa and a power of ten that are both exact as doubles give a
+        // correctly rounded result with one multiplication or division
+        int power = exponent - scale;
+        double value;
+        if (exact && mantissa == 0)
+            value = 0.0;
+        else if (exact && mantissa < (1L << 53) && power >= - 22 && power <= 22)
+            value = power >= 0 ? mantissa * POWERS_OF_TEN [power] : mantissa / POWERS_OF_TEN [- power];
+        else
+            return Double.parseDouble (getString (field));
+        return negative ? - value : value;
+    }
+
+    /** Get the number of line breaks tokenized so far, including those inside
+     * quoted fields. A last line without a line break is not counted.
+     * @return the number of line breaks */
+    public long getNLines () { return n_lines; }
+
+    /** Get the number of records tokenized so far, including any header.
+     * @return the number of records */
+    public long getNRecords () { return n_records; }
+
+    /** Get the number of bytes tokenized so far.
+     * @return the number of bytes */
+    public long getNBytes () { return n_bytes; }
+
+    /** A cache of values keyed by byte ranges, held with open addressing and linear
+     * probing. It is cleared when it gets too large, so input with many distinct
+     * values only costs a bounded amount of memory. */
+    private static class ByteRangeCache {
+        // initial number of slots, and the most that are allowed - powers of 2
+        private static final int INITIAL_CAPACITY = 64;
+        private static final int MAX_CAPACITY = 1 << 20;
+
+        private byte keys [][];
+        private int hashes [];
+        private Object values [];
+        private int size;
+
+        ByteRangeCache () {
+            clear (INITIAL_CAPACITY);
+        }
+
+        /** Find the slot that holds a key, or the empty slot where it should be added.
+         * @param buffer the buffer holding the key
+         * @param start the offset of the key
+         * @param end the offset after the end of the key
+         * @return the slot */
+        int find (ByteBuffer buffer, int start, int end) {
+            int hash = hash (buffer, start, end);
+            int mask = keys.length - 1;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (keys [slot] != null && ! (hashes [slot] == hash && matches (keys [slot], buffer, start, end)))
+                slot = (slot + 1) & mask;
+            return slot;
+        }
+
+        /** Add a key and value in the slot found for the key by find.
+         * @param slot the slot
+         * @param buffer the buffer holding the key
+         * @param start the offset of the key
+         * @param end the offset after the end of the key
+         * @param value the value */
+        void add (int slot, ByteBuffer buffer, int start, int end, Object value) {
+            if ((size + 1) * 2 > keys.length) {
+                grow ();
+                slot = find (buffer, start, end);
+            }
+            byte key [] = new byte [end - start];
+            for (int index = 0; index < key.length; index ++)
+                key [index] = buffer.get (start + index);
+            keys [slot] = key;
+            hashes [slot] = hash (buffer, start, end);
+            values [slot] = value;
+            size ++;
+        }
+
+        /** Double the number of slots, or start again if the cache is as large as it may get. */
+        private void grow () {
+            byte old_keys [][] = keys;
+            int old_hashes [] = hashes;
+            Object old_values [] = values;
+            if (old_keys.length >= MAX_CAPACITY) {
+                clear (INITIAL_CAPACITY);
+                return;
+            }
+            clear (old_keys.length * 2);
+            int mask = keys.length - 1;
+            for (int old_slot = 0; old_slot < old_keys.length; old_slot ++) {
+                if (old_keys [old_slot] == null) continue;
+                int hash = old_hashes [old_slot];
+                int slot = (hash ^ (hash >>> 16)) & mask;
+                while (keys [slot] != null)
+                    slot = (slot + 1) & mask;
+                keys [slot] = old_keys [old_slot];
+                hashes [slot] = hash;
+                values [slot] = old_values [old_slot];
+                size ++;
+            }
+        }
+
+        private void clear (int capacity) {
+            keys = new byte [capacity][];
+            hashes = new int [capacity];
+            values = new Object [capacity];
+            size = 0;
+        }
+
+        private static int hash (ByteBuffer buffer, int start, int end) {
+            int hash = 1;
+            for (int pos = start; pos < end; pos ++)
+                hash = hash * 31 + buffer.get (pos);
+            return hash;
+        }
+
+        private static boolean matches (byte key [], ByteBuffer buffer, int start, int end) {
+            if (key.length != end - start) return false;
+            for (int index = 0; index < key.length; index ++) {
+                if (key [index] != buffer.get (start + index)) return false;
+            }
+            return true;
+        }
+    }
+
+    /** The bytes of a field seen as characters (one per byte), so a field can be
+     * parsed by code that works on a CharSequence without creating a String. */
+    private class FieldCharacters implements CharSequence {
+        private int start;
+        private int end;
+
+        void set (int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length () { return end - start; }
+
+        @Override
+        public char charAt (int index) { return (char) (buffer.get (start + index) & 0xff); }
+
+        @Override
+        public CharSequence subSequence (int from, int to) {
+            FieldCharacters sub = new FieldCharacters ();
+            sub.set (start + from, start + to);
+            return sub;
+        }
+
+        @Override
+        public String toString () {
+            byte bytes [] = new byte [length()];
+            for (int index = 0; index < bytes.length; index ++)
+                bytes [index] = buffer.get (start + index);
+            return new String (bytes, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Date;
+
+/**
+ * A flyweight view of the trades in a buffer of CSV trading data (e.g. a memory
+ * mapped chunk of a file, see {@link TradingDataChunk#createView}). One view walks
+ * every record in the buffer: {@link #next} moves it on to the next record, and
+ * each field is only decoded from the buffer's bytes the first time one of its
+ * getters is called for that record. A report that only reads the entity, the
+ * buy/sell code, the settlement date and the USD amount never decodes the other
+ * fields, and walking the buffer creates no objects for each record (entity names
+ * are cached by the {@link TradingDataTokenizer}).
+ *
+ * The getters have the same names and meanings as those of {@link TradingData}.
+ * Because fields are only checked when they are decoded, a bad value in a field
+ * that is never read (e.g. the instruction date) is not noticed. A bad value in a
+ * field that is read makes its getter throw an UncheckedIOException, with the same
+ * message as {@link TradingDataParser} gives. A record with too few fields is
+ * found by next.
+ *
+ * The values belong to the current record, so a view can't be kept in place of a
+ * trade - use {@link #toTradingData} to copy a record that is needed later.
+ *
+ * @author smf
+ */
+public class TradingDataView {
+
+    // flags for the fields decoded from the current record
+    private static final int ENTITY_NAME = 1;
+    private static final int TRADE_TYPE = 2;
+    private static final int AGREED_FX = 4;
+    private static final int CURRENCY_ID = 8;
+    private static final int INSTRUCTION_DATE = 16;
+    private static final int NOMINAL_SETTLEMENT_DATE = 32;
+    private static final int NUMBER_OF_UNITS = 64;
+    private static final int PRICE_PER_UNIT = 128;
+    private static final int ACTUAL_SETTLEMENT_DATE = 256;
+
+    // splits the buffer into records and fields
+    private final TradingDataTokenizer tokenizer;
+
+    // true if the first row is a header, and true until it has been skipped
+    private final boolean has_header;
+    private boolean skip_header;
+
+    // the fields decoded from the current record so far, and their values
+    private int decoded;
+    private String entity_name;
+    private TradingData.TradeType trade_type;
+    private double agreed_fx;
+    private int currency_id;
+    private int instruction_date;
+    private int nominal_settlement_date;
+    private int number_of_units;
+    private double price_per_unit;
+    private int actual_settlement_date;
+
+    /** Create a view of the trades in a buffer. The view is not on a record until
+     * next has been called.
+     *
+     * @param buffer The CSV data, from the buffer's position to its limit.
+     * @param has_header true if the first row is a header that should be skipped
+     */
+    public TradingDataView (ByteBuffer buffer, boolean has_header) {
+        this.tokenizer = new TradingDataTokenizer (buffer);
+        this.has_header = has_header;
+        this.skip_header = has_header;
+        this.decoded = 0;
+    }
+
+    /** Move on to the next record. Only the record's fields are found - none of
+     * them are decoded.
+     * @return true if the view is on a record, false at the end of the data
+     * @throws IOException if the CSV data is badly quoted or the record has too few fields
+     */
+    public boolean next () throws IOException {
+        if (skip_header) {
+            skip_header = false;
+            if (! tokenizer.next ())
+                return false;
+        }
+        decoded = 0;
+        if (! tokenizer.next ())
+            return false;
+        if (tokenizer.getNFields() < TradingDataParser.N_FIELDS)
+            throw new IOException (TradingDataParser.Status.MISSING_FIELDS.getDescription());
+        return true;
+    }
+
+    public String getEntityName () {
+        if ((decoded & ENTITY_NAME) == 0) {
+            entity_name = tokenizer.getEntityName (0);
+            decoded |= ENTITY_NAME;
+        }
+        return entity_name;
+    }
+
+    public TradingData.TradeType getTradeType () {
+        if ((decoded & TRADE_TYPE) == 0) {
+            byte trade_type_code = tokenizer.getLength (1) == 1 ? tokenizer.getByte (1, 0) : 0;
+            if (trade_type_code == 'B' || trade_type_code == 'b')
+                trade_type = TradingData.TradeType.BUY;
+            else if (trade_type_code == 'S' || trade_type_code == 's')
+                trade_type = TradingData.TradeType.SELL;
+            else
+                throw bad (TradingDataParser.Status.BAD_TRADE_TYPE, 1);
+            decoded |= TRADE_TYPE;
+        }
+        return trade_type;
+    }
+
+    public double getAgreedFX () {
+        if ((decoded & AGREED_FX) == 0) {
+            agreed_fx = tokenizer.parseDecimal (2);
+            if (Double.isNaN (agreed_fx))
+                throw bad (TradingDataParser.Status.BAD_AGREED_FX, 2);
+            decoded |= AGREED_FX;
+        }
+        return agreed_fx;
+    }
+
+    public String getCurrencyName () { return tokenizer.getCurrencyName (3); }
+
+    public int getCurrencyId () {
+        if ((decoded & CURRENCY_ID) == 0) {
+            currency_id = CurrencyRegistry.getDefault().internTradeCurrency (tokenizer.getCurrencyName (3));
+            decoded |= CURRENCY_ID;
+        }
+        return currency_id;
+    }
+
+    public int getInstructionEpochDay () {
+        if ((decoded & INSTRUCTION_DATE) == 0) {
+            instruction_date = tokenizer.parseEpochDay (4);
+            if (instruction_date == TradeDateParser.INVALID_DATE)
+                throw bad (TradingDataParser.Status.BAD_INSTRUCTION_DATE, 4);
+            decoded |= INSTRUCTION_DATE;
+        }
+        return instruction_date;
+    }
+
+    public int getNominalSettlementEpochDay () {
+        if ((decoded & NOMINAL_SETTLEMENT_DATE) == 0) {
+            nominal_settlement_date = tokenizer.parseEpochDay (5);
+            if (nominal_settlement_date == TradeDateParser.INVALID_DATE)
+                throw bad (TradingDataParser.Status.BAD_SETTLEMENT_DATE, 5);
+            decoded |= NOMINAL_SETTLEMENT_DATE;
+        }
+        return nominal_settlement_date;
+    }
+
+    public int getNumberOfUnits () {
+        if ((decoded & NUMBER_OF_UNITS) == 0) {
+            long units = tokenizer.parseInt (6);
+            if (units == TradingDataTokenizer.INVALID_INT)
+                throw bad (TradingDataParser.Status.BAD_UNITS, 6);
+            number_of_units = (int) units;
+            decoded |= NUMBER_OF_UNITS;
+        }
+        return number_of_units;
+    }
+
+    public double getPricePerUnit () {
+        if ((decoded & PRICE_PER_UNIT) == 0) {
+            price_per_unit = tokenizer.parseDecimal (7);
+            if (Double.isNaN (price_per_unit))
+                throw bad (TradingDataParser.Status.BAD_PRICE, 7);
+            decoded |= PRICE_PER_UNIT;
+        }
+        return price_per_unit;
+    }
+
+    public int getActualSettlementEpochDay () {
+        if ((decoded & ACTUAL_SETTLEMENT_DATE) == 0) {
+            actual_settlement_date = BusinessRules.findActualSettlementEpochDay (getNominalSettlementEpochDay(), getCurrencyId());
+            decoded |= ACTUAL_SETTLEMENT_DATE;
+        }
+        return actual_settlement_date;
+    }
+
+    public Date getInstructionDate () { return EpochDay.toDate (getInstructionEpochDay()); }
+    public Date getNominalSettlemenetDate () { return EpochDay.toDate (getNominalSettlementEpochDay()); }
+    public Date getActualSettlementDate () { return EpochDay.toDate (getActualSettlementEpochDay()); }
+
+    public double calcPriceUSD () { return BusinessRules.calcPriceUSD (getPricePerUnit(), getNumberOfUnits(), getAgreedFX()); }
+
+    /** Calculate the exact USD amount of the trade, see {@link BusinessRules#calcPriceUSDFixed}.
+     * @return the USD amount, scaled to {@link FixedPoint#USD_DIGITS} decimal places */
+    public long calcPriceUSDFixed () {
+        return BusinessRules.calcPriceUSDFixed (FixedPoint.toScaled (getPricePerUnit(), FixedPoint.PRICE_DIGITS), getNumberOfUnits(),
+                                                FixedPoint.toScaled (getAgreedFX(), FixedPoint.FX_DIGITS));
+    }
+
+    /** Copy the current record to a trade, decoding and checking all of its fields.
+     * @return the trade
+     * @throws IOException if there is a problem with any of the record's fields
+     */
+    public TradingData toTradingData () throws IOException {
+        TradingDataParser parser = new TradingDataParser ();
+        if (parser.parse (tokenizer) != TradingDataParser.Status.OK)
+            throw new IOException (parser.getMessage());
+        return parser.create ();
+    }
+
+    /** Get the number of records walked so far, not counting the header.
+     * @return the number of records */
+    public long getNRecords () { return has_header && tokenizer.getNRecords() > 0 ? tokenizer.getNRecords() - 1 : tokenizer.getNRecords(); }
+
+    /** Get the number of bytes walked so far, including the header.
+     * @return the number of bytes */
+    public long getNBytes () { return tokenizer.getNBytes(); }
+
+    /** Helper function to create the exception for a bad field of the current record.
+     * @param status the problem
+     * @param field the field that was wrong, -1 if it was missing
+     * @return the exception, to throw */
+    private UncheckedIOException bad (TradingDataParser.Status status, int field) {
+        String value = field < 0 ? "" : tokenizer.getString (field);
+        return new UncheckedIOException (new IOException (value.isEmpty() ? status.getDescription() : status.getDescription() + ": " + value));
+    }
+}
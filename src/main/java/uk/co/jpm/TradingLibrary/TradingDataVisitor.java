@@ -0,0 +1,16 @@
+package uk.co.jpm.TradingLibrary;
+
+/**
+ * A callback that receives {@link TradingData} records one at a time as they
+ * are read from a source. Allows trades to be processed as they are parsed
+ * without holding the whole input in memory.
+ * 
+ * @author smf
+ */
+public interface TradingDataVisitor {
+    
+    /** Called once for each trade read from the source, in input order.
+     * @param trading_data the trade that has just been read
+     */
+    public void visit (TradingData trading_data);
+}
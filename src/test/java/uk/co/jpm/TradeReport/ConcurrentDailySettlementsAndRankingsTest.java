@@ -0,0 +1,94 @@
+package uk.co.jpm.TradeReport;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import uk.co.jpm.TradingLibrary.EpochDay;
+import uk.co.jpm.TradingLibrary.TradingData;
+
+/**
+ *
+ * @author smf
+ */
+public class ConcurrentDailySettlementsAndRankingsTest {
+    
+    // a test data set, spread over several days, entities and currencies
+    private final TradingData test_data [];
+    
+    // results from appending the test data to the single threaded class
+    private final DailySettlementsAndRankings expected;
+    private final SettlementsAndRankings expected_overall;
+
+    public ConcurrentDailySettlementsAndRankingsTest() {
+        test_data = new TradingData [4000];
+        expected = new DailySettlementsAndRankings ();
+        expected_overall = new SettlementsAndRankings (null);
+        for (int count = 0; count < test_data.length; count ++) {
+            Date date = EpochDay.toDate (EpochDay.of (2017, 1, 1) + count % 11);
+            test_data [count] = new TradingData ("entity" + (count % 17), count % 3 == 0 ? TradingData.TradeType.SELL : TradingData.TradeType.BUY,
+                                                 0.5 + count % 7, count % 2 == 0 ? "AED" : "USD", date, date, count + 1, 100.25);
+            expected.append (test_data [count]);
+            expected_overall.append (test_data [count]);
+        }
+    }
+
+    /**
+     * Test of append method, of class ConcurrentDailySettlementsAndRankings, with
+     * several threads appending at once.
+     */
+    @Test
+    public void testAppend() throws InterruptedException {
+        System.out.println("append");
+        
+        int n_threads = 4;
+        ConcurrentDailySettlementsAndRankings daily_sar = new ConcurrentDailySettlementsAndRankings (n_threads);
+        Thread threads [] = new Thread [n_threads];
+        for (int thread_no = 0; thread_no < n_threads; thread_no ++) {
+            int first = thread_no;
+            threads [thread_no] = new Thread (() -> {
+                for (int count = first; count < test_data.length; count += n_threads)
+                    daily_sar.append (test_data [count]);
+            });
+            threads [thread_no].start ();
+        }
+        for (Thread thread : threads)
+            thread.join ();
+        
+        TreeMap<Date, SettlementsAndRankings> actual = daily_sar.getDailySAR();
+        assertEquals (expected.getDailySAR().size(), actual.size());
+        Iterator<Map.Entry<Date, SettlementsAndRankings>> actual_iterator = actual.entrySet().iterator();
+        for (Map.Entry<Date, SettlementsAndRankings> expected_entry : expected.getDailySAR().entrySet()) {
+            Map.Entry<Date, SettlementsAndRankings> actual_entry = actual_iterator.next();
+            assertEquals (expected_entry.getKey(), actual_entry.getKey());
+            TradeReportAggregatorTest.assertSameResults (expected_entry.getValue(), actual_entry.getValue());
+        }
+        TradeReportAggregatorTest.assertSameResults (expected_overall, daily_sar.createOverallSAR());
+        
+        Date date = EpochDay.toDate (EpochDay.of (2017, 1, 3));
+        TradeReportAggregatorTest.assertSameResults (expected.getDailySAR().get (date), daily_sar.getDaySAR (date));
+        assertNull (daily_sar.getDaySAR (EpochDay.toDate (EpochDay.of (2016, 1, 1))));
+    }
+
+    /**
+     * Test of getDailySAR method, of class ConcurrentDailySettlementsAndRankings - a
+     * snapshot is not changed by later appends.
+     */
+    @Test
+    public void testGetDailySAR() {
+        System.out.println("getDailySAR");
+        
+        ConcurrentDailySettlementsAndRankings daily_sar = new ConcurrentDailySettlementsAndRankings ();
+        daily_sar.append (test_data [0]);
+        TreeMap<Date, SettlementsAndRankings> snapshot = daily_sar.getDailySAR();
+        daily_sar.append (test_data [0]);
+        daily_sar.append (test_data [1]);
+        assertEquals (1, snapshot.size());
+        assertEquals (1, snapshot.firstEntry().getValue().getNSettlements());
+        assertEquals (2, daily_sar.getDailySAR().size());
+        assertEquals (2, daily_sar.getDailySAR().firstEntry().getValue().getNSettlements());
+    }
+    
+}
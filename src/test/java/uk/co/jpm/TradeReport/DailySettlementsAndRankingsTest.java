@@ -1,6 +1,7 @@
 package uk.co.jpm.TradeReport;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.List;
@@ -100,4 +101,46 @@ public class DailySettlementsAndRankingsTest {
         assertEquals (daily_outgoing_totals[2], sar.getOutgoingTotalUSD(), BusinessRulesTest.TEST_USD_TOLERANCE);
     }
     
+    /**
+     * Test of merge method, of class DailySettlementsAndRankings.
+     */
+    @Test
+    public void testMerge() {
+        System.out.println("merge");
+        
+        // accumulate the test data in two parts that share a day and merge them
+        DailySettlementsAndRankings daily_sar1 = new DailySettlementsAndRankings ();
+        DailySettlementsAndRankings daily_sar2 = new DailySettlementsAndRankings ();
+        for (int count = 0; count < test_data.length; count ++) {
+            if (count < 5) daily_sar1.append (test_data [count]);
+            else daily_sar2.append (test_data [count]);
+        }
+        daily_sar1.merge (daily_sar2);
+        assertSameResults (daily_sar1);
+    }
+    
+    /**
+     * Test of collector method, of class DailySettlementsAndRankings.
+     */
+    @Test
+    public void testCollector() {
+        System.out.println("collector");
+        
+        assertSameResults (Arrays.asList (test_data).parallelStream().collect (DailySettlementsAndRankings.collector()));
+    }
+    
+    /** Helper function to check daily results against the manually calculated totals
+     * @param daily_sar_to_test the results to check */
+    private void assertSameResults (DailySettlementsAndRankings daily_sar_to_test) {
+        TreeMap<Date, SettlementsAndRankings> sar_map = daily_sar_to_test.getDailySAR();
+        assertEquals (trans_dates.length, sar_map.size());
+        int count = 0;
+        for (Map.Entry<Date, SettlementsAndRankings> entry : sar_map.entrySet()) {
+            assertEquals (trans_dates[count].getTime(), entry.getKey().getTime());
+            assertEquals (trans_dates[count].getTime(), entry.getValue().getAllowedDate().getTime());
+            assertEquals (daily_outgoing_totals[count], entry.getValue().getOutgoingTotalUSD(), BusinessRulesTest.TEST_USD_TOLERANCE);
+            count ++;
+        }
+    }
+    
 }
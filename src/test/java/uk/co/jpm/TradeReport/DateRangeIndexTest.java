@@ -0,0 +1,99 @@
+package uk.co.jpm.TradeReport;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import uk.co.jpm.TradingLibrary.BusinessRulesTest;
+import uk.co.jpm.TradingLibrary.EpochDay;
+import uk.co.jpm.TradingLibrary.TradingData;
+
+/**
+ * Checks the results for random date ranges against the results of adding up
+ * the days in each range.
+ * 
+ * @author smf
+ */
+public class DateRangeIndexTest {
+    
+    // first day of the test data and number of days it covers - some days have no trades
+    private static final int FIRST_DAY = EpochDay.of (2017, 1, 1);
+    private static final int N_DAYS = 45;
+
+    /**
+     * Test of the range queries, of class DateRangeIndex.
+     */
+    @Test
+    public void testRanges() {
+        System.out.println("ranges");
+        
+        DailySettlementsAndRankings daily_sars = new DailySettlementsAndRankings ();
+        for (int count = 0; count < 500; count ++) {
+            Date date = EpochDay.toDate (FIRST_DAY + (count * 7) % N_DAYS);
+            daily_sars.append (new TradingData ("entity" + (count % 17), count % 3 == 0 ? TradingData.TradeType.SELL : TradingData.TradeType.BUY,
+                                                0.5 + count % 7, "USD", date, date, count + 1, 100.25));
+        }
+        DateRangeIndex index = new DateRangeIndex (daily_sars);
+        assertEquals (daily_sars.getDailySAR().size(), index.size());
+        
+        Random random = new Random (42);
+        for (int count = 0; count < 200; count ++) {
+            int first_day = FIRST_DAY - 3 + random.nextInt (N_DAYS + 6);
+            int last_day = first_day + random.nextInt (N_DAYS / 2);
+            SettlementsAndRankings expected = new SettlementsAndRankings (null);
+            for (SettlementsAndRankings sar : daily_sars.getDailySAR().values()) {
+                int day = EpochDay.fromDate (sar.getAllowedDate());
+                if (day >= first_day && day <= last_day)
+                    expected.merge (sar);
+            }
+            
+            assertEquals (expected.getIncomingTotalUSD(), index.getIncomingTotalUSD (first_day, last_day), BusinessRulesTest.TEST_USD_TOLERANCE);
+            assertEquals (expected.getOutgoingTotalUSD(), index.getOutgoingTotalUSD (first_day, last_day), BusinessRulesTest.TEST_USD_TOLERANCE);
+            assertEquals (expected.getNSettlements(), index.getNSettlements (first_day, last_day));
+            
+            SettlementsAndRankings actual = index.createRangeSAR (first_day, last_day);
+            assertEquals (expected.getNSettlements(), actual.getNSettlements());
+            assertEquals (expected.getEarlistActualSettlementDate(), actual.getEarlistActualSettlementDate());
+            assertEquals (expected.getLatestActualSettlementDate(), actual.getLatestActualSettlementDate());
+            assertSameTotals (expected.createIncomingRankings(), actual.createIncomingRankings());
+            assertSameTotals (expected.createOutgoingRankings(), actual.createOutgoingRankings());
+        }
+        
+        // a range the wrong way round is empty
+        assertEquals (0, index.getNSettlements (FIRST_DAY + 10, FIRST_DAY));
+        assertEquals (0, index.createRangeSAR (FIRST_DAY + 10, FIRST_DAY).getNSettlements());
+    }
+    
+    /**
+     * Test of an index with no days, of class DateRangeIndex.
+     */
+    @Test
+    public void testEmpty() {
+        System.out.println("empty");
+        
+        DateRangeIndex index = new DateRangeIndex (new DailySettlementsAndRankings ());
+        assertEquals (0, index.size());
+        assertEquals (0.0, index.getIncomingTotalUSD (FIRST_DAY, FIRST_DAY + N_DAYS), 0.0);
+        assertEquals (0, index.createRangeSAR (FIRST_DAY, FIRST_DAY + N_DAYS).getNSettlements());
+    }
+    
+    /** Helper function to check that two rankings hold the same entities and totals
+     * (entities with equal totals may be in either order).
+     * @param expected the expected ranking
+     * @param actual the ranking to check */
+    private static void assertSameTotals (List<Map.Entry<String, Double>> expected, List<Map.Entry<String, Double>> actual) {
+        assertEquals (expected.size(), actual.size());
+        Map<String, Double> actual_totals = new HashMap<> ();
+        for (Map.Entry<String, Double> entry : actual)
+            actual_totals.put (entry.getKey(), entry.getValue());
+        for (int rank = 0; rank < expected.size(); rank ++) {
+            Map.Entry<String, Double> entry = expected.get (rank);
+            assertEquals (entry.getKey(), entry.getValue(), actual_totals.get (entry.getKey()), BusinessRulesTest.TEST_USD_TOLERANCE);
+            assertEquals (entry.getValue(), actual.get (rank).getValue(), BusinessRulesTest.TEST_USD_TOLERANCE);
+        }
+    }
+    
+}
@@ -0,0 +1,153 @@
+package uk.co.jpm.TradeReport;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import uk.co.jpm.TradingLibrary.BusinessRulesTest;
+
+/**
+ *
+ * @author smf
+ */
+public class EntityTotalsTest {
+    
+    // enough entities to make the map grow several times
+    private static final int N_ENTITIES = 1000;
+
+    /**
+     * Test of add and get methods, of class EntityTotals.
+     */
+    @Test
+    public void testAdd() {
+        System.out.println("add");
+        
+        EntityTotals totals = new EntityTotals ();
+        for (int repeat = 0; repeat < 3; repeat ++) {
+            for (int count = 0; count < N_ENTITIES; count ++)
+                totals.add ("entity" + count, count);
+        }
+        assertEquals (N_ENTITIES, totals.size());
+        for (int count = 0; count < N_ENTITIES; count ++)
+            assertEquals (count * 3.0, totals.get ("entity" + count), BusinessRulesTest.TEST_USD_TOLERANCE);
+        assertEquals (0.0, totals.get ("missing"), BusinessRulesTest.TEST_USD_TOLERANCE);
+    }
+
+    /**
+     * Test of addAll method, of class EntityTotals.
+     */
+    @Test
+    public void testAddAll() {
+        System.out.println("addAll");
+        
+        EntityTotals totals1 = new EntityTotals ();
+        EntityTotals totals2 = new EntityTotals ();
+        totals1.add ("foo", 1.0);
+        totals1.add ("bar", 2.0);
+        totals2.add ("bar", 3.0);
+        totals2.add ("did", 4.0);
+        totals1.addAll (totals2);
+        assertEquals (3, totals1.size());
+        assertEquals (1.0, totals1.get ("foo"), BusinessRulesTest.TEST_USD_TOLERANCE);
+        assertEquals (5.0, totals1.get ("bar"), BusinessRulesTest.TEST_USD_TOLERANCE);
+        assertEquals (4.0, totals1.get ("did"), BusinessRulesTest.TEST_USD_TOLERANCE);
+        assertEquals (2, totals2.size());
+    }
+
+    /**
+     * Test of createSortedList method, of class EntityTotals.
+     */
+    @Test
+    public void testCreateSortedList() {
+        System.out.println("createSortedList");
+        
+        EntityTotals totals = new EntityTotals ();
+        for (int count = 0; count < N_ENTITIES; count ++)
+            totals.add ("entity" + count, count);
+        List<Map.Entry<String, Double>> list = totals.createSortedList();
+        assertEquals (N_ENTITIES, list.size());
+        for (int count = 0; count < N_ENTITIES; count ++) {
+            assertEquals ("entity" + (N_ENTITIES - count - 1), list.get(count).getKey());
+            assertEquals (N_ENTITIES - count - 1, list.get(count).getValue(), BusinessRulesTest.TEST_USD_TOLERANCE);
+        }
+    }
+    
+    /**
+     * Test of createTopList method, of class EntityTotals.
+     */
+    @Test
+    public void testCreateTopList() {
+        System.out.println("createTopList");
+        
+        // use repeated values so that the order of ties is tested
+        EntityTotals totals = new EntityTotals ();
+        for (int count = 0; count < N_ENTITIES; count ++)
+            totals.add ("entity" + count, count % 17);
+        List<Map.Entry<String, Double>> sorted_list = totals.createSortedList();
+        for (int k : new int [] {0, 1, 10, 100, N_ENTITIES, N_ENTITIES + 1}) {
+            List<Map.Entry<String, Double>> top_list = totals.createTopList (k);
+            assertEquals (Math.min (k, N_ENTITIES), top_list.size());
+            for (int count = 0; count < top_list.size(); count ++) {
+                assertEquals (sorted_list.get(count).getKey(), top_list.get(count).getKey());
+                assertEquals (sorted_list.get(count).getValue(), top_list.get(count).getValue(), BusinessRulesTest.TEST_USD_TOLERANCE);
+            }
+        }
+    }
+    
+    /**
+     * Test of the order of ties, of class EntityTotals - equal totals are ranked by
+     * name, whatever order the entities were added in.
+     */
+    @Test
+    public void testTies() {
+        System.out.println("ties");
+        
+        EntityTotals forwards = new EntityTotals (true);
+        EntityTotals backwards = new EntityTotals (true);
+        EntityTotals merged = new EntityTotals (true);
+        for (int count = 0; count < N_ENTITIES; count ++) {
+            forwards.addFixed ("entity" + count, count % 3);
+            backwards.addFixed ("entity" + (N_ENTITIES - count - 1), (N_ENTITIES - count - 1) % 3);
+        }
+        merged.addAll (backwards);
+        List<Map.Entry<String, Double>> list = forwards.createSortedList();
+        assertEquals (list, backwards.createSortedList());
+        assertEquals (list, merged.createSortedList());
+        assertEquals (list.subList (0, 10), backwards.createTopList (10));
+        for (int count = 1; count < N_ENTITIES; count ++) {
+            if (list.get(count - 1).getValue().equals (list.get(count).getValue()))
+                assertTrue (list.get(count - 1).getKey().compareTo (list.get(count).getKey()) < 0);
+        }
+    }
+    
+    /**
+     * Test of fixed point totals, of class EntityTotals.
+     */
+    @Test
+    public void testAddFixed() {
+        System.out.println("addFixed");
+        
+        // totals too large for a long that only differ by one in the last place -
+        // as doubles they are equal, but they are ranked exactly
+        EntityTotals totals1 = new EntityTotals (true);
+        EntityTotals totals2 = new EntityTotals (true);
+        for (int count = 0; count < 4; count ++) {
+            totals1.addFixed ("foo", Long.MAX_VALUE);
+            totals2.addFixed ("bar", Long.MAX_VALUE);
+        }
+        totals2.addFixed ("bar", 1);
+        totals1.addAll (totals2);
+        assertTrue (totals1.isFixedPoint());
+        assertEquals (totals1.get ("foo"), totals1.get ("bar"), 0.0);
+        List<Map.Entry<String, Double>> list = totals1.createSortedList();
+        assertEquals ("bar", list.get(0).getKey());
+        assertEquals ("foo", list.get(1).getKey());
+        assertEquals ("bar", totals1.createTopList (1).get(0).getKey());
+        
+        // doubles added to a fixed point map are rounded to the fixed point places
+        totals1.add ("did", 0.1);
+        totals1.add ("did", 0.2);
+        assertEquals (0.3, totals1.get ("did"), 0.0);
+    }
+    
+}
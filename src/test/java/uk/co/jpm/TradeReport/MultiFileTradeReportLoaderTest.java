@@ -0,0 +1,94 @@
+package uk.co.jpm.TradeReport;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import uk.co.jpm.TradingLibrary.RejectedRecords;
+import uk.co.jpm.TradingLibrary.TradingDataStream;
+
+/**
+ * Writes trades to a single file and split across several files, and checks that
+ * loading the files together gives the same results as the single file.
+ * 
+ * @author smf
+ */
+public class MultiFileTradeReportLoaderTest {
+    
+    // number of data rows in the test data, and in each file
+    private static final int N_RECORDS = 1000;
+    private static final int RECORDS_PER_FILE = 37;
+    
+    private static final String HEADER = "Entity,Buy/Sell,AgreedFx,Currency,InstructionDate,SettlementDate,Units,Price per unit";
+
+    /** Helper function to make a line of test data.
+     * @param count the number of the trade
+     * @return the line */
+    private static String line (int count) {
+        return "entity" + (count % 13) + "," + (count % 3 == 0 ? "S" : "B") + "," + (0.5 + count % 7) + "," +
+               (count % 2 == 0 ? "AED" : "SGP") + ",01-Jan-2016," + (1 + count % 9) + "-Jan-2016," + (count + 1) + ",100.25";
+    }
+
+    /**
+     * Test of load method, of class MultiFileTradeReportLoader.
+     */
+    @Test
+    public void testLoad() throws IOException {
+        System.out.println("load");
+        
+        File directory = Files.createTempDirectory ("MultiFileTradeReportLoaderTest").toFile();
+        directory.deleteOnExit();
+        File all_file = new File (directory, "all.txt");
+        all_file.deleteOnExit();
+        List<File> files = new ArrayList<> ();
+        try (PrintWriter all_writer = new PrintWriter (new FileWriter (all_file))) {
+            all_writer.println (HEADER);
+            PrintWriter writer = null;
+            for (int count = 0; count < N_RECORDS; count ++) {
+                if (count % RECORDS_PER_FILE == 0) {
+                    if (writer != null) writer.close ();
+                    File file = new File (directory, String.format ("desk-%03d.csv", files.size()));
+                    file.deleteOnExit();
+                    files.add (file);
+                    writer = new PrintWriter (new FileWriter (file));
+                    writer.println (HEADER);
+                }
+                writer.println (line (count));
+                all_writer.println (line (count));
+                
+                // the same bad record in the middle of a file and of the whole file
+                if (count == N_RECORDS / 2) {
+                    writer.println ("bad,X,1,USD,01-Jan-2016,02-Jan-2016,1,1");
+                    all_writer.println ("bad,X,1,USD,01-Jan-2016,02-Jan-2016,1,1");
+                }
+            }
+            writer.close ();
+        }
+        
+        TradeReportAggregator expected = new TradeReportAggregator ();
+        try (TradingDataStream stream = new TradingDataStream (all_file)) {
+            stream.visitAll (expected, new RejectedRecords ());
+        }
+        
+        for (int n_threads : new int [] {1, 4}) {
+            RejectedRecords rejects = new RejectedRecords ();
+            TradeReportAggregator actual = new MultiFileTradeReportLoader (n_threads).load (files, rejects);
+            TradeReportAggregatorTest.assertSameResults (expected, actual);
+            assertEquals (1, rejects.size());
+        }
+        
+        // without a reject handler the bad record stops the loading, naming the file
+        try {
+            new MultiFileTradeReportLoader (4).load (files);
+            fail ("A bad record was accepted");
+        } catch (IOException e) {
+            assertTrue (e.getMessage(), e.getMessage().startsWith (files.get ((N_RECORDS / 2) / RECORDS_PER_FILE).getPath()));
+        }
+    }
+    
+}
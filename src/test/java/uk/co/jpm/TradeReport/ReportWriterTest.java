@@ -0,0 +1,163 @@
+package uk.co.jpm.TradeReport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import uk.co.jpm.TradingLibrary.EpochDay;
+import uk.co.jpm.TradingLibrary.TradingData;
+
+/**
+ *
+ * @author smf
+ */
+public class ReportWriterTest {
+    
+    // the results for two days
+    private final SettlementsAndRankings day1_sar;
+    private final SettlementsAndRankings day2_sar;
+    private final SettlementsAndRankings overall_sar;
+    
+    public ReportWriterTest() {
+        Date day1 = EpochDay.toDate (EpochDay.of (2017, 1, 2));
+        Date day2 = EpochDay.toDate (EpochDay.of (2017, 1, 3));
+        day1_sar = new SettlementsAndRankings (day1);
+        day2_sar = new SettlementsAndRankings (day2);
+        overall_sar = new SettlementsAndRankings (null);
+        TradingData test_data [] = {
+            new TradingData ("foo", TradingData.TradeType.SELL, 1.0, "USD", day1, day1, 10, 1.5),
+            new TradingData ("b\"a,r", TradingData.TradeType.SELL, 1.0, "USD", day1, day1, 1, 0.125),
+            new TradingData ("foo", TradingData.TradeType.BUY, 1.0, "USD", day2, day2, 3, 1000.0)
+        };
+        for (TradingData td_val : test_data) {
+            (td_val.getActualSettlementDate().equals (day1) ? day1_sar : day2_sar).append (td_val);
+            overall_sar.append (td_val);
+        }
+    }
+    
+    /**
+     * Test of the TextReportWriter class.
+     */
+    @Test
+    public void testText() throws IOException {
+        System.out.println("text");
+        
+        String nl = System.lineSeparator();
+        String expected = "Daily Trade Reports" + nl +
+                          "  Total for 02-Jan-2017:" + nl +
+                          "    Total incoming (USD): 15.13" + nl +
+                          "    Total outgoing (USD): 0.00" + nl +
+                          "    Entity rankings, incoming:" + nl +
+                          "      1) foo (15.00)" + nl +
+                          "      2) b\"a,r (0.13)" + nl +
+                          "    Entity rankings, outgoing:" + nl +
+                          "  Total for 03-Jan-2017:" + nl +
+                          "    Total incoming (USD): 0.00" + nl +
+                          "    Total outgoing (USD): 3000.00" + nl +
+                          "    Entity rankings, incoming:" + nl +
+                          "    Entity rankings, outgoing:" + nl +
+                          "      1) foo (3000.00)" + nl +
+                          "  Overall total for 02-Jan-2017 to 03-Jan-2017:" + nl +
+                          "    Total incoming (USD): 15.13" + nl +
+                          "    Total outgoing (USD): 3000.00" + nl +
+                          "    Entity rankings, incoming:" + nl +
+                          "      1) foo (15.00)" + nl +
+                          "      2) b\"a,r (0.13)" + nl +
+                          "    Entity rankings, outgoing:" + nl +
+                          "      1) foo (3000.00)" + nl;
+        assertEquals (expected, writeReport ("text", Integer.MAX_VALUE));
+    }
+    
+    /**
+     * Test of the CsvReportWriter class.
+     */
+    @Test
+    public void testCsv() throws IOException {
+        System.out.println("csv");
+        
+        String expected = "Period,FirstDate,LastDate,Record,Rank,Entity,USD\r\n" +
+                          "day,2017-01-02,2017-01-02,incoming_total,,,15.13\r\n" +
+                          "day,2017-01-02,2017-01-02,outgoing_total,,,0.00\r\n" +
+                          "day,2017-01-02,2017-01-02,incoming_rank,1,foo,15.00\r\n" +
+                          "day,2017-01-03,2017-01-03,incoming_total,,,0.00\r\n" +
+                          "day,2017-01-03,2017-01-03,outgoing_total,,,3000.00\r\n" +
+                          "day,2017-01-03,2017-01-03,outgoing_rank,1,foo,3000.00\r\n" +
+                          "overall,2017-01-02,2017-01-03,incoming_total,,,15.13\r\n" +
+                          "overall,2017-01-02,2017-01-03,outgoing_total,,,3000.00\r\n" +
+                          "overall,2017-01-02,2017-01-03,incoming_rank,1,foo,15.00\r\n" +
+                          "overall,2017-01-02,2017-01-03,outgoing_rank,1,foo,3000.00\r\n";
+        assertEquals (expected, writeReport ("csv", 1));
+        assertTrue (writeReport ("csv", 2).contains ("day,2017-01-02,2017-01-02,incoming_rank,2,\"b\"\"a,r\",0.13\r\n"));
+    }
+    
+    /**
+     * Test of the JsonReportWriter class.
+     */
+    @Test
+    public void testJson() throws IOException {
+        System.out.println("json");
+        
+        String expected = "{\"days\": [\n" +
+                          "  {\"date\": \"2017-01-02\", \"incomingUSD\": 15.13, \"outgoingUSD\": 0.00,\n" +
+                          "   \"incomingRankings\": [{\"rank\": 1, \"entity\": \"foo\", \"usd\": 15.00}, {\"rank\": 2, \"entity\": \"b\\\"a,r\", \"usd\": 0.13}], \"outgoingRankings\": []},\n" +
+                          "  {\"date\": \"2017-01-03\", \"incomingUSD\": 0.00, \"outgoingUSD\": 3000.00,\n" +
+                          "   \"incomingRankings\": [], \"outgoingRankings\": [{\"rank\": 1, \"entity\": \"foo\", \"usd\": 3000.00}]}\n" +
+                          " ],\n" +
+                          " \"overall\":\n" +
+                          "  {\"firstDate\": \"2017-01-02\", \"lastDate\": \"2017-01-03\", \"incomingUSD\": 15.13, \"outgoingUSD\": 3000.00,\n" +
+                          "   \"incomingRankings\": [{\"rank\": 1, \"entity\": \"foo\", \"usd\": 15.00}, {\"rank\": 2, \"entity\": \"b\\\"a,r\", \"usd\": 0.13}], \"outgoingRankings\": [{\"rank\": 1, \"entity\": \"foo\", \"usd\": 3000.00}]}\n" +
+                          "}\n";
+        assertEquals (expected, writeReport ("json", Integer.MAX_VALUE));
+    }
+    
+    /**
+     * Test of appendMoney method, of class ReportWriter - the result must be the same as String.format.
+     */
+    @Test
+    public void testAppendMoney() throws IOException {
+        System.out.println("appendMoney");
+        
+        ByteArrayOutputStream output = new ByteArrayOutputStream ();
+        TextReportWriter writer = new TextReportWriter (Channels.newChannel (output), Integer.MAX_VALUE);
+        Random random = new Random (1);
+        double values [] = new double [20000];
+        for (int count = 0; count < values.length; count ++) {
+            // a mix of whole cents, half cents, small, large and negative values
+            switch (count % 5) {
+                case 0: values [count] = random.nextInt (1000000) / 100.0; break;
+                case 1: values [count] = random.nextInt (1000000) / 1000.0; break;
+                case 2: values [count] = random.nextDouble() * 1e6; break;
+                case 3: values [count] = random.nextDouble() * 1e14; break;
+                default: values [count] = -random.nextDouble() * 100; break;
+            }
+        }
+        double edge_values [] = { 0.005, 1.005, 2.675, 0.0, 1e10, Double.MAX_VALUE };
+        for (double value : edge_values) {
+            writer.buffer.setLength (0);
+            writer.appendMoney (value);
+            assertEquals (String.format (Locale.ROOT, "%.2f", value), writer.buffer.toString());
+        }
+        for (double value : values) {
+            writer.buffer.setLength (0);
+            writer.appendMoney (value);
+            assertEquals (String.format (Locale.ROOT, "%.2f", value), writer.buffer.toString());
+        }
+    }
+    
+    /** Helper function to write the test report.
+     * @param format the report format
+     * @param max_rankings the maximum number of entities in each ranking
+     * @return the report */
+    private String writeReport (String format, int max_rankings) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream ();
+        ReportWriter writer = ReportWriter.create (format, Channels.newChannel (output), max_rankings);
+        writer.writeReport (Arrays.asList (day1_sar, day2_sar), overall_sar);
+        return new String (output.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -1,5 +1,7 @@
 package uk.co.jpm.TradeReport;
 
+import java.math.BigDecimal;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.List;
@@ -162,6 +164,44 @@ public class SettlementsAndRankingsTest {
         }
     }
 
+    /**
+     * Test of topIncoming and topOutgoing methods, of class SettlementsAndRankings.
+     */
+    @Test
+    public void testTopRankings() {
+        System.out.println("topIncoming / topOutgoing");
+        
+        List <Map.Entry<String, Double>> ranks = sar.topIncoming(2);
+        assertEquals (2, ranks.size());
+        assertEquals ("foo", ranks.get(0).getKey());
+        assertEquals ("bar", ranks.get(1).getKey());
+        
+        ranks = sar.topOutgoing(3);
+        assertEquals (3, ranks.size());
+        assertEquals ("dod", ranks.get(0).getKey());
+        assertEquals ("did", ranks.get(1).getKey());
+        assertEquals ("bar", ranks.get(2).getKey());
+        
+        assertSameRankings (sar.createIncomingRankings(), sar.topIncoming(10));
+    }
+
+    /**
+     * Test of countEntities method, of class SettlementsAndRankings.
+     */
+    @Test
+    public void testCountEntities() {
+        System.out.println("countEntities");
+        
+        // the same 4 entities buy and sell
+        assertEquals (4, sar.countEntities());
+        SettlementsAndRankings new_sar = new SettlementsAndRankings (trans_date);
+        assertEquals (0, new_sar.countEntities());
+        new_sar.append (test_data [0]);
+        new_sar.append (test_data [8]);
+        new_sar.append (test_data [14]);
+        assertEquals (2, new_sar.countEntities());
+    }
+
     /**
      * Test of getAllowedDate method, of class SettlementsAndRankings.
      */
@@ -202,4 +242,121 @@ public class SettlementsAndRankingsTest {
         assertEquals (test_data.length, sar.getNSettlements());
     }
 
+    /**
+     * Test of merge method, of class SettlementsAndRankings.
+     */
+    @Test
+    public void testMerge() {
+        System.out.println("merge");
+        
+        // accumulate the test data in two halves and merge them
+        SettlementsAndRankings sar1 = new SettlementsAndRankings (trans_date);
+        SettlementsAndRankings sar2 = new SettlementsAndRankings (trans_date);
+        for (int count = 0; count < test_data.length; count ++) {
+            if (count % 2 == 0) sar1.append (test_data [count]);
+            else sar2.append (test_data [count]);
+        }
+        sar1.merge (sar2);
+        assertSameResults (sar, sar1);
+        
+        // merging results for another date should give an exception
+        Date bad_date = new Date (trans_date.getTime() + 86400000l);    
+        SettlementsAndRankings bad_sar = new SettlementsAndRankings (bad_date);
+        bad_sar.append (new TradingData ("aaa", TradingData.TradeType.BUY, 0.50, "SGP", bad_date, bad_date, 100, 100.25));
+        boolean exception_found = false;
+        try {
+            sar1.merge (bad_sar);
+        } catch (RuntimeException e) {
+            exception_found = true;
+        }
+        assertEquals(true, exception_found);
+    }
+    
+    /**
+     * Test of collector method, of class SettlementsAndRankings.
+     */
+    @Test
+    public void testCollector() {
+        System.out.println("collector");
+        
+        SettlementsAndRankings collected = Arrays.asList (test_data).parallelStream().collect (SettlementsAndRankings.collector());
+        assertNull (collected.getAllowedDate());
+        assertSameResults (sar, collected);
+    }
+    
+    /**
+     * Test of fixed point mode, of class SettlementsAndRankings.
+     */
+    @Test
+    public void testFixedPoint() {
+        System.out.println("fixedPoint");
+        
+        // amounts that can't be held exactly as doubles, so adding them up as
+        // doubles in different orders gives different totals
+        TradingData fixed_data [] = new TradingData [3000];
+        BigDecimal expected_total = BigDecimal.ZERO;
+        for (int count = 0; count < fixed_data.length; count ++) {
+            double price = (count % 97 + 1) / 10.0 + 1000000.0 * (count % 3);
+            double fx = (count % 13 + 1) / 100.0;
+            fixed_data [count] = new TradingData ("entity" + (count % 7), TradingData.TradeType.SELL, fx, "SGP", trans_date, trans_date, count % 11 + 1, price);
+            expected_total = expected_total.add (new BigDecimal (Double.toString (price)).multiply (BigDecimal.valueOf (count % 11 + 1))
+                                                                                          .multiply (new BigDecimal (Double.toString (fx))));
+        }
+        
+        SettlementsAndRankings forward_sar, reverse_sar, merged_sar;
+        BusinessRules.setFixedPointMoney (true);
+        try {
+            forward_sar = new SettlementsAndRankings (trans_date);
+            reverse_sar = new SettlementsAndRankings (null);
+            merged_sar = new SettlementsAndRankings (trans_date);
+            SettlementsAndRankings part_sar = new SettlementsAndRankings (trans_date);
+            for (int count = 0; count < fixed_data.length; count ++) {
+                forward_sar.append (fixed_data [count]);
+                reverse_sar.append (fixed_data [fixed_data.length - count - 1]);
+                (count % 2 == 0 ? merged_sar : part_sar).append (fixed_data [(count * 7) % fixed_data.length]);
+            }
+            merged_sar.merge (part_sar);
+        } finally {
+            BusinessRules.setFixedPointMoney (false);
+        }
+        
+        // the totals are exact, so every order gives exactly the same results
+        assertTrue (forward_sar.isFixedPoint());
+        assertEquals (0, expected_total.compareTo (forward_sar.getExactIncomingTotalUSD()));
+        assertEquals (0, BigDecimal.ZERO.compareTo (forward_sar.getExactOutgoingTotalUSD()));
+        for (SettlementsAndRankings other_sar : new SettlementsAndRankings [] {reverse_sar, merged_sar}) {
+            assertEquals (forward_sar.getExactIncomingTotalUSD(), other_sar.getExactIncomingTotalUSD());
+            assertEquals (forward_sar.getIncomingTotalUSD(), other_sar.getIncomingTotalUSD(), 0.0);
+            assertEquals (forward_sar.createIncomingRankings(), other_sar.createIncomingRankings());
+            assertEquals (forward_sar.topIncoming (3), other_sar.topIncoming (3));
+        }
+        
+        // results created after the mode is turned off use doubles
+        assertFalse (new SettlementsAndRankings (null).isFixedPoint());
+    }
+    
+    /** Helper function to check that two SettlementsAndRankings hold the same results
+     * @param expected the expected results
+     * @param actual the results to check */
+    private static void assertSameResults (SettlementsAndRankings expected, SettlementsAndRankings actual) {
+        assertEquals (expected.getNSettlements(), actual.getNSettlements());
+        assertEquals (expected.getIncomingTotalUSD(), actual.getIncomingTotalUSD(), BusinessRulesTest.TEST_USD_TOLERANCE);
+        assertEquals (expected.getOutgoingTotalUSD(), actual.getOutgoingTotalUSD(), BusinessRulesTest.TEST_USD_TOLERANCE);
+        assertEquals (expected.getEarlistActualSettlementDate().getTime(), actual.getEarlistActualSettlementDate().getTime());
+        assertEquals (expected.getLatestActualSettlementDate().getTime(), actual.getLatestActualSettlementDate().getTime());
+        assertSameRankings (expected.createIncomingRankings(), actual.createIncomingRankings());
+        assertSameRankings (expected.createOutgoingRankings(), actual.createOutgoingRankings());
+    }
+    
+    /** Helper function to check that two lists of rankings are the same
+     * @param expected the expected rankings
+     * @param actual the rankings to check */
+    private static void assertSameRankings (List<Map.Entry<String, Double>> expected, List<Map.Entry<String, Double>> actual) {
+        assertEquals (expected.size(), actual.size());
+        for (int count = 0; count < expected.size(); count ++) {
+            assertEquals (expected.get(count).getKey(), actual.get(count).getKey());
+            assertEquals (expected.get(count).getValue(), actual.get(count).getValue(), BusinessRulesTest.TEST_USD_TOLERANCE);
+        }
+    }
+
 }
@@ -0,0 +1,78 @@
+package uk.co.jpm.TradeReport;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import uk.co.jpm.TradingLibrary.EpochDay;
+import uk.co.jpm.TradingLibrary.TradingData;
+
+/**
+ *
+ * @author smf
+ */
+public class TailingTradeReportTest {
+    
+    /**
+     * Test of run method, of class TailingTradeReport.
+     */
+    @Test
+    public void testRun() throws IOException {
+        System.out.println("run");
+        
+        String csv = "Entity,Buy/Sell,AgreedFx,Currency,InstructionDate,SettlementDate,Units,Price per unit\n" +
+                     "foo,B,0.5,SGP,01-Jan-2016,04-Jan-2016,200,100.25\n" +
+                     "bar,S,0.22,AED,05-Jan-2016,07-Jan-2016,450,150.5\n" +
+                     "bad,X,0.22,AED,05-Jan-2016,07-Jan-2016,450,150.5\n" +
+                     "foo,S,0.5,SGP,01-Jan-2016,04-Jan-2016,10,10";
+        ByteArrayOutputStream output = new ByteArrayOutputStream ();
+        TailingTradeReport report = new TailingTradeReport (new PrintStream (output), Integer.MAX_VALUE, 0);
+        report.run (new ByteArrayInputStream (csv.getBytes (StandardCharsets.US_ASCII)), false);
+        
+        // the bad record is skipped, the last record doesn't need a line ending
+        assertEquals (3, report.getNTrades());
+        assertEquals (1, report.getNBadRecords());
+        assertEquals (2, report.getAggregator().getDailySARs().getDailySAR().size());
+        assertEquals (0.5 * 200 * 100.25, report.getAggregator().getOverallSAR().getOutgoingTotalUSD(), 0.001);
+        assertEquals (0.22 * 450 * 150.5 + 0.5 * 10 * 10, report.getAggregator().getOverallSAR().getIncomingTotalUSD(), 0.001);
+        assertTrue (output.toString().contains ("Total for 04-Jan-2016:"));
+        assertTrue (output.toString().contains ("Total for 07-Jan-2016:"));
+    }
+
+    /**
+     * Test of printUpdate method, of class TailingTradeReport.
+     */
+    @Test
+    public void testPrintUpdate() {
+        System.out.println("printUpdate");
+        
+        ByteArrayOutputStream output = new ByteArrayOutputStream ();
+        TailingTradeReport report = new TailingTradeReport (new PrintStream (output), Integer.MAX_VALUE, 0);
+        Date day1 = EpochDay.toDate (EpochDay.of (2017, 1, 2));
+        Date day2 = EpochDay.toDate (EpochDay.of (2017, 1, 3));
+        report.visit (new TradingData ("foo", TradingData.TradeType.BUY, 1.0, "USD", day1, day1, 10, 1.0));
+        report.visit (new TradingData ("bar", TradingData.TradeType.SELL, 1.0, "USD", day2, day2, 20, 1.0));
+        report.printUpdate ();
+        assertTrue (output.toString().contains ("Total for 02-Jan-2017:"));
+        assertTrue (output.toString().contains ("Total for 03-Jan-2017:"));
+        
+        // nothing has changed, so nothing is printed
+        output.reset ();
+        report.printUpdate ();
+        assertEquals (0, output.size());
+        assertFalse (report.printUpdateIfDue ());
+        
+        // only the day that changed is printed
+        report.visit (new TradingData ("foo", TradingData.TradeType.SELL, 1.0, "USD", day2, day2, 5, 1.0));
+        assertTrue (report.printUpdateIfDue ());
+        assertFalse (output.toString().contains ("Total for 02-Jan-2017:"));
+        assertTrue (output.toString().contains ("Total for 03-Jan-2017:"));
+        assertTrue (output.toString().contains ("Total incoming (USD): 25.00"));
+        assertTrue (output.toString().contains ("Overall total for 02-Jan-2017 to 03-Jan-2017:"));
+    }
+    
+}
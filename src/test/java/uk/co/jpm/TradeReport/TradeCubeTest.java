@@ -0,0 +1,151 @@
+package uk.co.jpm.TradeReport;
+
+import java.util.Date;
+import java.util.EnumSet;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import uk.co.jpm.TradingLibrary.BusinessRulesTest;
+import uk.co.jpm.TradingLibrary.CurrencyRegistry;
+import uk.co.jpm.TradingLibrary.EpochDay;
+import uk.co.jpm.TradingLibrary.TradingData;
+import uk.co.jpm.TradingLibrary.TradingDataColumns;
+
+/**
+ * Checks groupings rolled up from a cube against totals worked out trade by trade.
+ * 
+ * @author smf
+ */
+public class TradeCubeTest {
+    
+    private static final String CURRENCIES [] = { "AED", "SGP", "USD" };
+    
+    // a test data set, spread over several days, entities and currencies
+    private final TradingData test_data [];
+
+    public TradeCubeTest() {
+        test_data = new TradingData [300];
+        for (int count = 0; count < test_data.length; count ++) {
+            Date date = EpochDay.toDate (EpochDay.of (2017, 1, 2) + count % 5);
+            test_data [count] = new TradingData ("entity" + (count % 11), count % 3 == 0 ? TradingData.TradeType.SELL : TradingData.TradeType.BUY,
+                                                 0.5 + count % 7, CURRENCIES [count % CURRENCIES.length], date, date, count + 1, 100.25);
+        }
+    }
+
+    /**
+     * Test of rollUp method, of class TradeCube.
+     */
+    @Test
+    public void testRollUp() {
+        System.out.println("rollUp");
+        
+        TradeCube cube = new TradeCube (TradeCube.Dimension.values());
+        for (TradingData trading_data : test_data)
+            cube.visit (trading_data);
+        
+        // one total
+        TradeCube.Grouping total = cube.rollUp ();
+        assertEquals (1, total.size());
+        assertEquals (test_data.length, total.getNTrades (0));
+        double expected_total = 0.0;
+        for (TradingData trading_data : test_data)
+            expected_total += trading_data.calcPriceUSD();
+        assertEquals (expected_total, total.getTotalUSD (0), BusinessRulesTest.TEST_USD_TOLERANCE);
+        
+        // by currency and day, then by currency alone (rolled up from the smaller grouping)
+        TradeCube.Grouping by_currency_day = cube.rollUp (TradeCube.Dimension.CURRENCY, TradeCube.Dimension.DAY);
+        assertEquals (EnumSet.of (TradeCube.Dimension.CURRENCY, TradeCube.Dimension.DAY), by_currency_day.getDimensions());
+        TradeCube.Grouping by_currency = cube.rollUp (TradeCube.Dimension.CURRENCY);
+        assertSame (by_currency, cube.rollUp (TradeCube.Dimension.CURRENCY));
+        assertEquals (CURRENCIES.length, by_currency.size());
+        for (String currency : CURRENCIES) {
+            double expected = 0.0;
+            for (TradingData trading_data : test_data) {
+                if (trading_data.getCurrecnyName().equals (currency))
+                    expected += trading_data.calcPriceUSD();
+            }
+            int cell = by_currency.find (currency, null, null, null);
+            assertEquals (currency, by_currency.getCurrency (cell));
+            assertEquals (expected, by_currency.getTotalUSD (cell), BusinessRulesTest.TEST_USD_TOLERANCE);
+        }
+        
+        // by entity and currency
+        TradeCube.Grouping by_entity_currency = cube.rollUp (TradeCube.Dimension.ENTITY, TradeCube.Dimension.CURRENCY);
+        for (int cell = 0; cell < by_entity_currency.size(); cell ++) {
+            double expected = 0.0;
+            long n_trades = 0;
+            for (TradingData trading_data : test_data) {
+                if (trading_data.getEntityName().equals (by_entity_currency.getEntityName (cell)) &&
+                    trading_data.getCurrecnyName().equals (by_entity_currency.getCurrency (cell))) {
+                    expected += trading_data.calcPriceUSD();
+                    n_trades ++;
+                }
+            }
+            assertEquals (expected, by_entity_currency.getTotalUSD (cell), BusinessRulesTest.TEST_USD_TOLERANCE);
+            assertEquals (n_trades, by_entity_currency.getNTrades (cell));
+        }
+        assertEquals (-1, by_entity_currency.find ("SGP", "nobody", null, null));
+        
+        // a currency that isn't in the registry isn't found, and isn't added
+        int n_currencies = CurrencyRegistry.getDefault().size();
+        assertEquals (-1, by_currency.find ("QQQ", null, null, null));
+        assertEquals (-1, CurrencyRegistry.getDefault().find ("QQQ"));
+        assertEquals (n_currencies, CurrencyRegistry.getDefault().size());
+        
+        // incoming by day gives the same totals as the daily settlements
+        DailySettlementsAndRankings daily_sars = new DailySettlementsAndRankings ();
+        for (TradingData trading_data : test_data)
+            daily_sars.append (trading_data);
+        TradeCube.Grouping by_day_direction = cube.rollUp (TradeCube.Dimension.DAY, TradeCube.Dimension.DIRECTION);
+        for (SettlementsAndRankings sar : daily_sars.getDailySAR().values()) {
+            int cell = by_day_direction.find (null, null, sar.getAllowedDate(), TradingData.TradeType.SELL);
+            if (cell < 0) {
+                // a day with only outgoing trades
+                assertEquals (0.0, sar.getIncomingTotalUSD(), 0.0);
+                continue;
+            }
+            assertEquals (sar.getAllowedDate(), by_day_direction.getDay (cell));
+            assertEquals (TradingData.TradeType.SELL, by_day_direction.getTradeType (cell));
+            assertEquals (sar.getIncomingTotalUSD(), by_day_direction.getTotalUSD (cell), BusinessRulesTest.TEST_USD_TOLERANCE);
+        }
+        
+        try {
+            by_currency.getEntityName (0);
+            fail ("Got an entity from a grouping by currency");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+    
+    /**
+     * Test of appendAll method, of class TradeCube.
+     */
+    @Test
+    public void testAppendAll() {
+        System.out.println("appendAll");
+        
+        TradeCube expected = new TradeCube (TradeCube.Dimension.ENTITY, TradeCube.Dimension.CURRENCY);
+        TradingDataColumns columns = new TradingDataColumns ();
+        for (TradingData trading_data : test_data) {
+            expected.visit (trading_data);
+            columns.add (trading_data);
+        }
+        TradeCube actual = new TradeCube (TradeCube.Dimension.ENTITY, TradeCube.Dimension.CURRENCY);
+        actual.appendAll (columns);
+        assertEquals (expected.size(), actual.size());
+        
+        TradeCube.Grouping expected_grouping = expected.rollUp (TradeCube.Dimension.ENTITY, TradeCube.Dimension.CURRENCY);
+        TradeCube.Grouping actual_grouping = actual.rollUp (TradeCube.Dimension.ENTITY, TradeCube.Dimension.CURRENCY);
+        for (int cell = 0; cell < expected_grouping.size(); cell ++) {
+            int actual_cell = actual_grouping.find (expected_grouping.getCurrency (cell), expected_grouping.getEntityName (cell), null, null);
+            assertEquals (expected_grouping.getTotalUSD (cell), actual_grouping.getTotalUSD (actual_cell), BusinessRulesTest.TEST_USD_TOLERANCE);
+        }
+        
+        try {
+            actual.rollUp (TradeCube.Dimension.DAY);
+            fail ("Grouped by a dimension that isn't in the cube");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+    
+}
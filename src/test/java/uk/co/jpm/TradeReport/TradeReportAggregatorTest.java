@@ -0,0 +1,141 @@
+package uk.co.jpm.TradeReport;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import uk.co.jpm.TradingLibrary.BusinessRulesTest;
+import uk.co.jpm.TradingLibrary.EpochDay;
+import uk.co.jpm.TradingLibrary.PipelineMetrics;
+import uk.co.jpm.TradingLibrary.TradingData;
+import uk.co.jpm.TradingLibrary.TradingDataColumns;
+import uk.co.jpm.TradingLibrary.TradingDataSnapshot;
+import uk.co.jpm.TradingLibrary.TradingDataView;
+
+/**
+ *
+ * @author smf
+ */
+public class TradeReportAggregatorTest {
+    
+    // a test data set, spread over several days, entities and currencies
+    private final TradingData test_data [];
+    
+    // results from appending the test data one transaction at a time
+    private final TradeReportAggregator expected;
+
+    public TradeReportAggregatorTest() {
+        test_data = new TradingData [200];
+        expected = new TradeReportAggregator ();
+        for (int count = 0; count < test_data.length; count ++) {
+            Date date = EpochDay.toDate (EpochDay.of (2017, 1, 1) + count % 9);
+            test_data [count] = new TradingData ("entity" + (count % 13), count % 3 == 0 ? TradingData.TradeType.SELL : TradingData.TradeType.BUY,
+                                                 0.5 + count % 7, count % 2 == 0 ? "AED" : "SGP", date, date, count + 1, 100.25);
+            expected.visit (test_data [count]);
+        }
+    }
+
+    /**
+     * Test of appendAll method, of class TradeReportAggregator.
+     */
+    @Test
+    public void testAppendAll() {
+        System.out.println("appendAll");
+        
+        TradingDataColumns columns = new TradingDataColumns ();
+        for (TradingData td_val : test_data)
+            columns.add (td_val);
+        TradeReportAggregator aggregator = new TradeReportAggregator ();
+        aggregator.appendAll (columns);
+        assertSameResults (expected, aggregator);
+    }
+    
+    /**
+     * Test of appendAll method with a snapshot, of class TradeReportAggregator.
+     */
+    @Test
+    public void testAppendAllSnapshot() throws IOException {
+        System.out.println("appendAll snapshot");
+        
+        TradingDataColumns columns = new TradingDataColumns ();
+        for (TradingData td_val : test_data)
+            columns.add (td_val);
+        File snapshot_file = File.createTempFile ("TradeReportAggregatorTest", ".dtrs");
+        snapshot_file.deleteOnExit();
+        TradingDataSnapshot.write (columns, snapshot_file);
+        
+        // the snapshot's trades and bytes are counted as read
+        PipelineMetrics metrics = PipelineMetrics.getDefault();
+        metrics.reset ();
+        TradeReportAggregator aggregator = new TradeReportAggregator ();
+        try (TradingDataSnapshot snapshot = new TradingDataSnapshot (snapshot_file)) {
+            aggregator.appendAll (snapshot);
+        }
+        assertSameResults (expected, aggregator);
+        assertEquals (test_data.length, metrics.getRecordsRead());
+        assertEquals (snapshot_file.length(), metrics.getBytesRead());
+    }
+    
+    /**
+     * Test of appendAll method with a lazy view, of class TradeReportAggregator.
+     */
+    @Test
+    public void testAppendAllView() throws IOException {
+        System.out.println("appendAll view");
+        
+        SimpleDateFormat date_format = new SimpleDateFormat ("dd-MMM-yyyy", Locale.ENGLISH);
+        StringBuilder csv = new StringBuilder ("Entity,Buy/Sell,AgreedFx,Currency,InstructionDate,SettlementDate,Units,Price per unit\n");
+        for (TradingData td_val : test_data)
+            csv.append (td_val.getEntityName()).append (td_val.getTradeType() == TradingData.TradeType.BUY ? ",B," : ",S,")
+               .append (td_val.getAgreedFX()).append (',').append (td_val.getCurrecnyName()).append (',')
+               .append (date_format.format (td_val.getInstructionDate())).append (',')
+               .append (date_format.format (td_val.getNominalSettlemenetDate())).append (',')
+               .append (td_val.getNumberOfUnits()).append (',').append (td_val.getPricePerUnit()).append ('\n');
+        TradingDataView view = new TradingDataView (ByteBuffer.wrap (csv.toString().getBytes (StandardCharsets.US_ASCII)), true);
+        TradeReportAggregator aggregator = new TradeReportAggregator ();
+        assertEquals (test_data.length, aggregator.appendAll (view));
+        assertSameResults (expected, aggregator);
+    }
+    
+    /** Helper function to check that two aggregators hold the same results
+     * @param expected the expected results
+     * @param actual the results to check */
+    static void assertSameResults (TradeReportAggregator expected, TradeReportAggregator actual) {
+        assertSameResults (expected.getOverallSAR(), actual.getOverallSAR());
+        assertEquals (expected.getDailySARs().getDailySAR().size(), actual.getDailySARs().getDailySAR().size());
+        Iterator<Map.Entry<Date, SettlementsAndRankings>> actual_iterator = actual.getDailySARs().getDailySAR().entrySet().iterator();
+        for (Map.Entry<Date, SettlementsAndRankings> expected_entry : expected.getDailySARs().getDailySAR().entrySet()) {
+            Map.Entry<Date, SettlementsAndRankings> actual_entry = actual_iterator.next();
+            assertEquals (expected_entry.getKey(), actual_entry.getKey());
+            assertSameResults (expected_entry.getValue(), actual_entry.getValue());
+        }
+    }
+    
+    /** Helper function to check that two SettlementsAndRankings hold the same results
+     * @param expected the expected results
+     * @param actual the results to check */
+    static void assertSameResults (SettlementsAndRankings expected, SettlementsAndRankings actual) {
+        assertEquals (expected.getAllowedDate(), actual.getAllowedDate());
+        assertEquals (expected.getNSettlements(), actual.getNSettlements());
+        assertEquals (expected.getIncomingTotalUSD(), actual.getIncomingTotalUSD(), BusinessRulesTest.TEST_USD_TOLERANCE);
+        assertEquals (expected.getOutgoingTotalUSD(), actual.getOutgoingTotalUSD(), BusinessRulesTest.TEST_USD_TOLERANCE);
+        assertEquals (expected.getEarlistActualSettlementDate(), actual.getEarlistActualSettlementDate());
+        assertEquals (expected.getLatestActualSettlementDate(), actual.getLatestActualSettlementDate());
+        assertEquals (expected.createIncomingRankings().size(), actual.createIncomingRankings().size());
+        for (Map.Entry<String, Double> entry : expected.createIncomingRankings())
+            assertTrue (actual.createIncomingRankings().stream().anyMatch (e -> e.getKey().equals (entry.getKey()) &&
+                        Math.abs (e.getValue() - entry.getValue()) < BusinessRulesTest.TEST_USD_TOLERANCE));
+        assertEquals (expected.createOutgoingRankings().size(), actual.createOutgoingRankings().size());
+        for (Map.Entry<String, Double> entry : expected.createOutgoingRankings())
+            assertTrue (actual.createOutgoingRankings().stream().anyMatch (e -> e.getKey().equals (entry.getKey()) &&
+                        Math.abs (e.getValue() - entry.getValue()) < BusinessRulesTest.TEST_USD_TOLERANCE));
+    }
+    
+}
@@ -0,0 +1,184 @@
+package uk.co.jpm.TradeReport;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import uk.co.jpm.TradingLibrary.TradingDataStream;
+
+/**
+ * Writes CSV files, changes them between loads and checks that the results
+ * loaded through the cache are the same as reading the files in full.
+ *
+ * @author smf
+ */
+public class TradeReportCacheTest {
+
+    // the cache directory and the CSV file, deleted after each test
+    private File directory;
+    private File csv_file;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory ("TradeReportCacheTest").toFile();
+        csv_file = new File (directory, "trades.csv");
+    }
+
+    @After
+    public void tearDown() {
+        delete (directory);
+    }
+
+    private static void delete (File file) {
+        if (file.isDirectory()) {
+            for (File child : file.listFiles ())
+                delete (child);
+        }
+        file.delete ();
+    }
+
+    // average size of the segments in the tests, so that the files have many of them
+    private static final int SEGMENT_SIZE = 512;
+
+    /**
+     * Test of load method, of class TradeReportCache.
+     */
+    @Test
+    public void testLoad() throws IOException {
+        System.out.println("load");
+
+        File cache_directory = new File (directory, "cache");
+        TradeReportCache cache = new TradeReportCache (cache_directory, TradeReportCache.DEFAULT_MAX_SIZE, SEGMENT_SIZE);
+        writeTrades (0, 200, false);
+        TradeReportAggregatorTest.assertSameResults (readAll (), cache.load (csv_file, null));
+        assertEquals (0, cache.getNCachedBytes());
+
+        // loaded from the cache the second time
+        TradeReportAggregatorTest.assertSameResults (readAll (), cache.load (csv_file, null));
+        assertEquals (csv_file.length(), cache.getNCachedBytes());
+
+        // only the last segment and the trades added to the end are read
+        long old_length = csv_file.length();
+        writeTrades (200, 300, true);
+        TradeReportAggregatorTest.assertSameResults (readAll (), cache.load (csv_file, null));
+        assertTrue (cache.getNCachedBytes() >= old_length - 4 * SEGMENT_SIZE);
+        assertTrue (cache.getNCachedBytes() < old_length);
+
+        // a trade corrected or added near the start only changes the segment it is in,
+        // as segment boundaries are chosen by content, not by offset
+        List<String> lines = Files.readAllLines (csv_file.toPath());
+        lines.set (10, lines.get (10).replace (",100.25", ",100.5"));
+        lines.add (20, lines.get (21));
+        Files.write (csv_file.toPath(), lines);
+        TradeReportAggregatorTest.assertSameResults (readAll (), cache.load (csv_file, null));
+        assertTrue (cache.getNCachedBytes() >= csv_file.length() - 8 * SEGMENT_SIZE);
+        assertTrue (cache.getNCachedBytes() < csv_file.length());
+
+        // as does a trade deleted from the start
+        writeTrades (1, 300, false);
+        TradeReportAggregatorTest.assertSameResults (readAll (), cache.load (csv_file, null));
+        assertTrue (cache.getNCachedBytes() >= csv_file.length() - 8 * SEGMENT_SIZE);
+
+        // a file of other trades is read in full
+        writeTrades (1000, 1300, false);
+        TradeReportAggregatorTest.assertSameResults (readAll (), cache.load (csv_file, null));
+        assertEquals (0, cache.getNCachedBytes());
+
+        // as are the results with other settings
+        cache = new TradeReportCache (cache_directory, TradeReportCache.DEFAULT_MAX_SIZE, SEGMENT_SIZE);
+        cache.addSetting ("years 2000-2010");
+        cache.load (csv_file, null);
+        assertEquals (0, cache.getNCachedBytes());
+        assertNull (cache.getWriteError());
+    }
+
+    /**
+     * Test of load method with bad records, of class TradeReportCache.
+     */
+    @Test
+    public void testLoadRejects() throws IOException {
+        System.out.println("load rejects");
+
+        File cache_directory = new File (directory, "cache");
+        TradeReportCache cache = new TradeReportCache (cache_directory, TradeReportCache.DEFAULT_MAX_SIZE, SEGMENT_SIZE);
+        writeTrades (0, 100, false);
+        cache.load (csv_file, null);
+        try (PrintWriter writer = new PrintWriter (new FileWriter (csv_file, true))) {
+            writer.println ("bad,X,0.5,SGP,01-Jan-2016,02-Jan-2016,1,100.25");
+        }
+        writeTrades (100, 150, true);
+
+        // bad records are numbered from the start of the file, whether the segments
+        // before them are read or loaded from the cache, and are always read again
+        for (int count = 0; count < 2; count ++) {
+            List<Long> line_numbers = new ArrayList<> ();
+            cache.load (csv_file, (line_number, reason, fields) -> line_numbers.add (line_number));
+            assertEquals (1, line_numbers.size());
+            assertEquals (102, (long) line_numbers.get (0));
+            assertTrue (cache.getNCachedBytes() > 0);
+        }
+
+        try {
+            cache.load (csv_file, null);
+            fail ("A bad record was accepted");
+        } catch (IOException e) {
+        }
+    }
+
+    /**
+     * Test of the eviction of entries, of class TradeReportCache.
+     */
+    @Test
+    public void testEvict() throws IOException {
+        System.out.println("evict");
+
+        // the most recently used file is kept even if it is larger than the cache
+        File cache_directory = new File (directory, "cache");
+        TradeReportCache cache = new TradeReportCache (cache_directory, 1, SEGMENT_SIZE);
+        writeTrades (0, 100, false);
+        cache.load (csv_file, null);
+        assertEquals (1, cache_directory.list().length);
+        writeTrades (0, 150, false);
+        TradeReportAggregatorTest.assertSameResults (readAll (), cache.load (csv_file, null));
+        assertEquals (1, cache_directory.list().length);
+
+        // the results are the same however little is kept
+        cache = new TradeReportCache (cache_directory, 4 * SEGMENT_SIZE, SEGMENT_SIZE);
+        cache.load (csv_file, null);
+        TradeReportAggregatorTest.assertSameResults (readAll (), cache.load (csv_file, null));
+        assertTrue (cache.getNCachedBytes() > 0);
+        assertTrue (cache.getNCachedBytes() < csv_file.length());
+    }
+
+    /** Helper function to write trades to the CSV file.
+     * @param first the number of the first trade
+     * @param end the number of the trade after the last
+     * @param append true to add the trades to the end of the file, false to replace it */
+    private void writeTrades (int first, int end, boolean append) throws IOException {
+        try (PrintWriter writer = new PrintWriter (new FileWriter (csv_file, append))) {
+            if (! append)
+                writer.println ("Entity,Buy/Sell,AgreedFx,Currency,InstructionDate,SettlementDate,Units,Price per unit");
+            for (int count = first; count < end; count ++)
+                writer.println ("entity" + (count % 13) + (count % 3 == 0 ? ",S," : ",B,") + (0.5 + count % 7) + (count % 2 == 0 ? ",AED," : ",SGP,") +
+                                "01-Jan-2016," + String.format ("%02d", 1 + count % 28) + "-Jan-2016," + (count + 1) + ",100.25");
+        }
+    }
+
+    /** Helper function to read the whole CSV file without the cache.
+     * @return the results */
+    private TradeReportAggregator readAll () throws IOException {
+        TradeReportAggregator aggregator = new TradeReportAggregator ();
+        try (TradingDataStream stream = new TradingDataStream (csv_file)) {
+            stream.visitAll (aggregator, null);
+        }
+        return aggregator;
+    }
+
+}
@@ -61,6 +61,24 @@ public class BusinessRulesTest {
         assertEquals ("2017-01-08", date_format.format (BusinessRules.findActualSettlementDate (test_date.getTime(), "AED")));
     }
 
+    /**
+     * Test of findActualSettlementEpochDay method, of class BusinessRules.
+     */
+    @Test
+    public void testFindActualSettlementEpochDay() {
+        System.out.println("findActualSettlementEpochDay");
+        
+        // 2017-1-1 was a Sunday
+        int sunday = EpochDay.of (2017, 1, 1);
+        int expected_sgp [] = { 1, 1, 2, 3, 4, 5, 8 };
+        int expected_aed [] = { 0, 1, 2, 3, 4, 7, 7 };
+        for (int count = 0; count < 7; count ++) {
+            assertEquals (sunday + expected_sgp [count], BusinessRules.findActualSettlementEpochDay (sunday + count, "SGP"));
+            assertEquals (sunday + expected_aed [count], BusinessRules.findActualSettlementEpochDay (sunday + count, "AED"));
+            assertEquals (sunday + expected_aed [count], BusinessRules.findActualSettlementEpochDay (sunday + count, "sar"));
+        }
+    }
+
     /**
      * Test of findActualSettlementOffset method, of class BusinessRules.
      */
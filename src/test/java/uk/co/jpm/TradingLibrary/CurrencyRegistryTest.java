@@ -0,0 +1,119 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.util.Date;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author smf
+ */
+public class CurrencyRegistryTest {
+    
+    /**
+     * Test of intern and get methods, of class CurrencyRegistry.
+     */
+    @Test
+    public void testIntern() {
+        System.out.println("intern");
+        
+        CurrencyRegistry registry = new CurrencyRegistry ();
+        int usd = registry.intern ("USD");
+        int aed = registry.intern ("aed");
+        assertEquals (usd, registry.intern ("USD"));
+        assertEquals (usd, registry.intern ("usd"));
+        assertEquals (aed, registry.intern ("AED"));
+        assertEquals (2, registry.size());
+        
+        // find doesn't add currencies
+        assertEquals (usd, registry.find ("usd"));
+        assertEquals (aed, registry.find ("AED"));
+        assertEquals (-1, registry.find ("GBP"));
+        assertEquals (2, registry.size());
+        
+        CurrencyInfo usd_info = registry.get (usd);
+        assertEquals (usd, usd_info.getId());
+        assertEquals ("USD", usd_info.getCode());
+        assertTrue (usd_info.isKnown());
+        assertEquals (2, usd_info.getFractionDigits());
+        assertEquals (BusinessRules.WEEKEND_SAT_SUN, usd_info.getWeekendConvention());
+        
+        CurrencyInfo aed_info = registry.get (aed);
+        assertEquals ("AED", aed_info.getCode());
+        assertEquals (BusinessRules.WEEKEND_FRI_SAT, aed_info.getWeekendConvention());
+        assertNull (aed_info.getCalendar());
+    }
+
+    /**
+     * Test of internTradeCurrency and getUnknownCurrencyCounts methods, of class CurrencyRegistry.
+     */
+    @Test
+    public void testUnknownCurrencies() {
+        System.out.println("getUnknownCurrencyCounts");
+        
+        CurrencyRegistry registry = new CurrencyRegistry ();
+        registry.internTradeCurrency ("USD");
+        registry.internTradeCurrency ("SGP");
+        registry.internTradeCurrency ("sgp");
+        registry.internTradeCurrency ("XYZ");
+        registry.intern ("ABC");
+        assertFalse (registry.get (registry.intern ("SGP")).isKnown());
+        
+        Map<String, Long> counts = registry.getUnknownCurrencyCounts();
+        assertEquals (2, counts.size());
+        assertEquals (Long.valueOf (2), counts.get ("SGP"));
+        assertEquals (Long.valueOf (1), counts.get ("XYZ"));
+    }
+
+    /**
+     * Test of internTradeCurrency method with more codes that aren't known than
+     * the registry keeps, of class CurrencyRegistry.
+     */
+    @Test
+    public void testMaxUnknownCurrencies() {
+        System.out.println("internTradeCurrency (too many codes)");
+        
+        CurrencyRegistry registry = new CurrencyRegistry ();
+        int usd = registry.intern ("USD");
+        for (int count = 0; count < CurrencyRegistry.MAX_UNKNOWN_CURRENCIES; count ++)
+            assertEquals (count + 1, registry.internTradeCurrency ("X" + count));
+        
+        // further codes share an id, but known currencies still get their own
+        int other = registry.internTradeCurrency ("junk");
+        assertEquals (other, registry.internTradeCurrency ("more junk"));
+        assertEquals (CurrencyRegistry.OTHER_CODE, registry.get (other).getCode());
+        assertNotEquals (other, registry.intern ("GBP"));
+        assertEquals (usd, registry.intern ("usd"));
+        assertEquals (CurrencyRegistry.MAX_UNKNOWN_CURRENCIES + 3, registry.size());
+        assertEquals (Long.valueOf (2), registry.getUnknownCurrencyCounts().get (CurrencyRegistry.OTHER_CODE));
+        assertEquals (other, registry.find (CurrencyRegistry.OTHER_CODE));
+        assertEquals (other, registry.intern (CurrencyRegistry.OTHER_CODE));
+        
+        // trades keep the code as it was given
+        assertEquals ("junk", new TradingData ("foo", TradingData.TradeType.BUY, 0.5, "junk", new Date (0), new Date (0), 1, 1.0).getCurrecnyName());
+        assertEquals ("usd", new TradingData ("foo", TradingData.TradeType.BUY, 0.5, "usd", new Date (0), new Date (0), 1, 1.0).getCurrecnyName());
+    }
+
+    /**
+     * Test of setHolidayCalendars method, of class CurrencyRegistry.
+     */
+    @Test
+    public void testSetHolidayCalendars() {
+        System.out.println("setHolidayCalendars");
+        
+        CurrencyRegistry registry = new CurrencyRegistry ();
+        int gbp = registry.intern ("GBP");
+        HolidayCalendar gbp_calendar = new HolidayCalendar (BusinessRules.WEEKEND_SAT_SUN, new int [0], 2017, 2017);
+        HolidayCalendars calendars = new HolidayCalendars ();
+        calendars.put ("gbp", gbp_calendar);
+        registry.setHolidayCalendars (calendars);
+        
+        // currencies already interned and new currencies both get calendars
+        assertSame (gbp_calendar, registry.get (gbp).getCalendar());
+        assertNull (registry.get (registry.intern ("EUR")).getCalendar());
+        registry.setHolidayCalendars (null);
+        assertNull (registry.get (gbp).getCalendar());
+    }
+    
+}
@@ -0,0 +1,71 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.time.LocalDate;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author smf
+ */
+public class EpochDayTest {
+    
+    /**
+     * Test of of method, of class EpochDay.
+     */
+    @Test
+    public void testOf() {
+        System.out.println("of");
+        
+        // check every day for several centuries either side of the epoch
+        for (LocalDate date = LocalDate.of (1600, 1, 1); date.getYear() < 2400; date = date.plusDays (1))
+            assertEquals (date.toEpochDay(), EpochDay.of (date.getYear(), date.getMonthValue(), date.getDayOfMonth()));
+        
+        // days past the end of the month roll over into the next month
+        assertEquals (EpochDay.of (2016, 2, 1), EpochDay.of (2016, 1, 32));
+        assertEquals (EpochDay.of (2016, 3, 1), EpochDay.of (2016, 2, 30));
+    }
+
+    /**
+     * Test of toYearMonthDay method, of class EpochDay.
+     */
+    @Test
+    public void testToYearMonthDay() {
+        System.out.println("toYearMonthDay");
+        
+        for (LocalDate date = LocalDate.of (1600, 1, 1); date.getYear() < 2400; date = date.plusDays (1))
+            assertEquals (date.getYear() * 10000 + date.getMonthValue() * 100 + date.getDayOfMonth(),
+                          EpochDay.toYearMonthDay ((int) date.toEpochDay()));
+    }
+
+    /**
+     * Test of fromDate and toDate methods, of class EpochDay.
+     */
+    @Test
+    public void testDateConversion() {
+        System.out.println("fromDate / toDate");
+        
+        assertEquals (0, EpochDay.fromDate (new Date (0)));
+        assertEquals (0, EpochDay.fromDate (new Date (EpochDay.MILLIS_PER_DAY - 1)));
+        assertEquals (-1, EpochDay.fromDate (new Date (-1)));
+        assertEquals (17167, EpochDay.fromDate (EpochDay.toDate (17167)));
+        assertEquals (17167 * EpochDay.MILLIS_PER_DAY, EpochDay.toDate (17167).getTime());
+    }
+
+    /**
+     * Test of dayOfWeek method, of class EpochDay.
+     */
+    @Test
+    public void testDayOfWeek() {
+        System.out.println("dayOfWeek");
+        
+        // 2017-1-1 was a Sunday, 1969-12-31 was a Wednesday
+        int sunday = EpochDay.of (2017, 1, 1);
+        for (int count = 0; count < 7; count ++)
+            assertEquals (GregorianCalendar.SUNDAY + count, EpochDay.dayOfWeek (sunday + count));
+        assertEquals (GregorianCalendar.WEDNESDAY, EpochDay.dayOfWeek (-1));
+    }
+    
+}
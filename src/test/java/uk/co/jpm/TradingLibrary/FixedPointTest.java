@@ -0,0 +1,115 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.SplittableRandom;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author smf
+ */
+public class FixedPointTest {
+
+    /**
+     * Test of toScaled method, of class FixedPoint.
+     */
+    @Test
+    public void testToScaled() {
+        System.out.println("toScaled");
+
+        assertEquals (100250000L, FixedPoint.toScaled (100.25, FixedPoint.PRICE_DIGITS));
+        assertEquals (50000000L, FixedPoint.toScaled (0.50, FixedPoint.FX_DIGITS));
+        assertEquals (22000000L, FixedPoint.toScaled (0.22, FixedPoint.FX_DIGITS));
+        assertEquals (-1234567L, FixedPoint.toScaled (-1.234567, FixedPoint.PRICE_DIGITS));
+        assertEquals (0L, FixedPoint.toScaled (0.0, FixedPoint.PRICE_DIGITS));
+
+        // too many places - rounded, ties to even
+        assertEquals (1234568L, FixedPoint.toScaled (1.2345678, FixedPoint.PRICE_DIGITS));
+        assertEquals (2L, FixedPoint.toScaled (0.0000025, FixedPoint.PRICE_DIGITS));
+        assertEquals (4L, FixedPoint.toScaled (0.0000035, FixedPoint.PRICE_DIGITS));
+
+        // too large for the fast path
+        assertEquals (123456789012345L, FixedPoint.toScaled (1234567890.12345, 5));
+
+        try {
+            FixedPoint.toScaled (Double.NaN, FixedPoint.PRICE_DIGITS);
+            fail ("NaN converted");
+        } catch (ArithmeticException e) {
+        }
+    }
+
+    /**
+     * Test of multiplyUSD method, of class FixedPoint.
+     */
+    @Test
+    public void testMultiplyUSD() {
+        System.out.println("multiplyUSD");
+
+        // 100.25 * 200 * 0.50 = 10025.00
+        assertEquals (10025000000L, FixedPoint.multiplyUSD (100250000L, 200, 50000000L));
+        assertEquals (-10025000000L, FixedPoint.multiplyUSD (-100250000L, 200, 50000000L));
+
+        // 0.000001 * 1 * 0.5 is a tie, rounded to even
+        assertEquals (0L, FixedPoint.multiplyUSD (1L, 1, 50000000L));
+        assertEquals (2L, FixedPoint.multiplyUSD (3L, 1, 50000000L));
+
+        // products larger than a long, compared with BigDecimal
+        SplittableRandom random = new SplittableRandom (1);
+        for (int count = 0; count < 10000; count ++) {
+            long price = random.nextLong (1L, 1L << random.nextInt (1, 50));
+            int units = random.nextInt (1, 1 << random.nextInt (1, 31));
+            long fx = random.nextLong (1L, 1L << random.nextInt (1, 40));
+            BigDecimal expected = BigDecimal.valueOf (price, FixedPoint.PRICE_DIGITS).multiply (BigDecimal.valueOf (units))
+                                            .multiply (BigDecimal.valueOf (fx, FixedPoint.FX_DIGITS))
+                                            .setScale (FixedPoint.USD_DIGITS, RoundingMode.HALF_EVEN);
+            if (expected.unscaledValue().bitLength() < 64)
+                assertEquals (expected.unscaledValue().longValue(), FixedPoint.multiplyUSD (price, units, fx));
+            else {
+                try {
+                    FixedPoint.multiplyUSD (price, units, fx);
+                    fail ("overflow not detected");
+                } catch (ArithmeticException e) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Test of addHigh, compare and toBigDecimal methods, of class FixedPoint.
+     */
+    @Test
+    public void test128BitTotals() {
+        System.out.println("128BitTotals");
+
+        // add up values whose total is far too large for a long
+        long high = 0, low = 0;
+        BigDecimal expected = BigDecimal.ZERO;
+        for (int count = 0; count < 1000; count ++) {
+            long value = Long.MAX_VALUE - count;
+            high = FixedPoint.addHigh (high, low, value);
+            low += value;
+            expected = expected.add (BigDecimal.valueOf (value, FixedPoint.USD_DIGITS));
+        }
+        assertEquals (expected, FixedPoint.toBigDecimal (high, low, FixedPoint.USD_DIGITS));
+        assertEquals (expected.doubleValue(), FixedPoint.toDouble (high, low, FixedPoint.USD_DIGITS), 0.0);
+        assertTrue (FixedPoint.compare (high, low, 0, Long.MAX_VALUE) > 0);
+
+        // and back down below zero, through the sum of two totals
+        long minus_high = 0, minus_low = 0;
+        for (int count = 0; count < 1000; count ++) {
+            minus_high = FixedPoint.addHigh (minus_high, minus_low, count - Long.MAX_VALUE);
+            minus_low += count - Long.MAX_VALUE;
+        }
+        minus_high = FixedPoint.addHigh (minus_high, minus_low, -5);
+        minus_low += -5;
+        high = FixedPoint.addHigh (high, low, minus_high, minus_low);
+        low += minus_low;
+        assertEquals (BigDecimal.valueOf (-5, FixedPoint.USD_DIGITS), FixedPoint.toBigDecimal (high, low, FixedPoint.USD_DIGITS));
+        assertEquals (-0.000005, FixedPoint.toDouble (high, low, FixedPoint.USD_DIGITS), 0.0);
+        assertEquals (-1, Long.signum (FixedPoint.compare (-1, -1, 0, 0)));
+        assertEquals (0, FixedPoint.compare (3, -1, 3, -1));
+    }
+
+}
@@ -0,0 +1,89 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author smf
+ */
+public class HolidayCalendarTest {
+    
+    /**
+     * Test of nextBusinessDay method, of class HolidayCalendar, with no holidays.
+     */
+    @Test
+    public void testWeekendsOnly() {
+        System.out.println("nextBusinessDay (weekends only)");
+        
+        // without holidays the calendar should agree with the weekend rules
+        HolidayCalendar sat_sun = new HolidayCalendar (BusinessRules.WEEKEND_SAT_SUN, new int [0], 2000, 2030);
+        HolidayCalendar fri_sat = new HolidayCalendar (BusinessRules.WEEKEND_FRI_SAT, new int [0], 2000, 2030);
+        for (int day = EpochDay.of (2000, 1, 1); day < EpochDay.of (2030, 12, 30); day ++) {
+            assertEquals (BusinessRules.findActualSettlementEpochDay (day, "SGP"), sat_sun.nextBusinessDay (day));
+            assertEquals (BusinessRules.findActualSettlementEpochDay (day, "AED"), fri_sat.nextBusinessDay (day));
+        }
+        
+        // outside the range of the calendar
+        assertEquals (HolidayCalendar.OUTSIDE_CALENDAR, sat_sun.nextBusinessDay (EpochDay.of (1999, 12, 31)));
+        assertEquals (HolidayCalendar.OUTSIDE_CALENDAR, sat_sun.nextBusinessDay (EpochDay.of (2031, 1, 1)));
+        // the last day in the calendar (a Tuesday)
+        assertEquals (EpochDay.of (2030, 12, 31), sat_sun.nextBusinessDay (EpochDay.of (2030, 12, 31)));
+    }
+
+    /**
+     * Test of load and nextBusinessDay methods, of class HolidayCalendar, with holidays.
+     */
+    @Test
+    public void testHolidays() throws IOException {
+        System.out.println("load / nextBusinessDay (holidays)");
+        
+        File holiday_file = File.createTempFile ("GBP", HolidayCalendars.FILE_SUFFIX);
+        holiday_file.deleteOnExit();
+        Files.write (holiday_file.toPath(), Arrays.asList ("# UK bank holidays", "", "25-Dec-2017", "26-Dec-2017", "01-Jan-2018"));
+        HolidayCalendar calendar = HolidayCalendar.load (holiday_file, BusinessRules.WEEKEND_SAT_SUN, 2017, 2018);
+        
+        // Saturday 23-Dec-2017 is followed by a weekend and two holidays
+        assertEquals (EpochDay.of (2017, 12, 27), calendar.nextBusinessDay (EpochDay.of (2017, 12, 23)));
+        assertEquals (EpochDay.of (2017, 12, 27), calendar.nextBusinessDay (EpochDay.of (2017, 12, 25)));
+        assertEquals (EpochDay.of (2018, 1, 2), calendar.nextBusinessDay (EpochDay.of (2017, 12, 30)));
+        assertFalse (calendar.isBusinessDay (EpochDay.of (2018, 1, 1)));
+        assertTrue (calendar.isBusinessDay (EpochDay.of (2018, 1, 2)));
+        
+        // a bad date gives an exception
+        Files.write (holiday_file.toPath(), Arrays.asList ("25-Dec-2017", "Christmas"));
+        boolean exception_found = false;
+        try {
+            HolidayCalendar.load (holiday_file, BusinessRules.WEEKEND_SAT_SUN, 2017, 2018);
+        } catch (IOException e) {
+            exception_found = true;
+        }
+        assertTrue (exception_found);
+    }
+
+    /**
+     * Test of BusinessRules.findActualSettlementEpochDay with holiday calendars.
+     */
+    @Test
+    public void testBusinessRulesWithCalendars() {
+        System.out.println("findActualSettlementEpochDay (holidays)");
+        
+        HolidayCalendars calendars = new HolidayCalendars ();
+        calendars.put ("GBP", new HolidayCalendar (BusinessRules.WEEKEND_SAT_SUN, new int [] { EpochDay.of (2017, 12, 25) }, 2017, 2017));
+        BusinessRules.setHolidayCalendars (calendars);
+        try {
+            assertEquals (EpochDay.of (2017, 12, 26), BusinessRules.findActualSettlementEpochDay (EpochDay.of (2017, 12, 24), "GBP"));
+            assertEquals (EpochDay.of (2017, 12, 26), BusinessRules.findActualSettlementEpochDay (EpochDay.of (2017, 12, 24), "gbp"));
+            // other currencies and dates outside the calendar only use the weekend rules
+            assertEquals (EpochDay.of (2017, 12, 25), BusinessRules.findActualSettlementEpochDay (EpochDay.of (2017, 12, 24), "USD"));
+            assertEquals (EpochDay.of (2018, 12, 24), BusinessRules.findActualSettlementEpochDay (EpochDay.of (2018, 12, 23), "GBP"));
+        } finally {
+            BusinessRules.setHolidayCalendars (null);
+        }
+    }
+    
+}
@@ -0,0 +1,80 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.io.IOException;
+import java.io.StringReader;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author smf
+ */
+public class PipelineMetricsTest {
+    
+    /**
+     * Test of addStageNanos and addSampleNanos methods, of class PipelineMetrics.
+     */
+    @Test
+    public void testStageNanos() {
+        System.out.println("getStageNanos");
+        
+        PipelineMetrics metrics = new PipelineMetrics ();
+        assertFalse (PipelineMetrics.isSampled (0));
+        assertFalse (PipelineMetrics.isSampled (1));
+        assertTrue (PipelineMetrics.isSampled (PipelineMetrics.SAMPLE_INTERVAL));
+        
+        // samples are scaled up to the number of records, measured times are not
+        metrics.addStageNanos (PipelineMetrics.Stage.RENDERING, 5000000);
+        metrics.addSampleNanos (PipelineMetrics.Stage.PARSE, 1000);
+        metrics.addSampleNanos (PipelineMetrics.Stage.PARSE, 2000);
+        metrics.addSampleNanos (PipelineMetrics.Stage.AGGREGATION, 500);
+        metrics.addRecordsRead (3000);
+        metrics.addParseFailures (1000);
+        assertEquals (5000000, metrics.getStageNanos (PipelineMetrics.Stage.RENDERING));
+        assertEquals (5, metrics.getRenderingMillis());
+        assertEquals (1500l * 4000, metrics.getStageNanos (PipelineMetrics.Stage.PARSE));
+        assertEquals (500l * 3000, metrics.getStageNanos (PipelineMetrics.Stage.AGGREGATION));
+        assertEquals (0, metrics.getStageNanos (PipelineMetrics.Stage.SETTLEMENT));
+        
+        // but are no more than the load time
+        metrics.addStageNanos (PipelineMetrics.Stage.LOAD, 2000000);
+        assertEquals (2000000, metrics.getStageNanos (PipelineMetrics.Stage.PARSE));
+        assertEquals (500l * 3000, metrics.getStageNanos (PipelineMetrics.Stage.AGGREGATION));
+        
+        metrics.reset ();
+        assertEquals (0, metrics.getStageNanos (PipelineMetrics.Stage.RENDERING));
+        assertEquals (0, metrics.getStageNanos (PipelineMetrics.Stage.PARSE));
+    }
+
+    /**
+     * Test of the metrics recorded by TradingDataStream.visitAll.
+     */
+    @Test
+    public void testVisitAll() throws IOException {
+        System.out.println("visitAll");
+        
+        String header = "Entity,Buy/Sell,AgreedFx,Currency,InstructionDate,SettlementDate,Units,Price per unit\n";
+        String record = "foo,B,0.5,USD,01-Jan-2016,04-Jan-2016,200,100.25\n";
+        StringBuilder csv = new StringBuilder (header);
+        for (int count = 0; count < 3000; count ++)
+            csv.append (record);
+        
+        PipelineMetrics metrics = PipelineMetrics.getDefault();
+        metrics.reset ();
+        try (TradingDataStream stream = new TradingDataStream (new StringReader (csv.toString()))) {
+            stream.visitAll (trading_data -> { });
+        }
+        assertEquals (3000, metrics.getRecordsRead());
+        assertEquals (csv.length(), metrics.getBytesRead());
+        assertEquals (0, metrics.getParseFailures());
+        
+        try (TradingDataStream stream = new TradingDataStream (new StringReader (header + record + "bar,X" + record.substring (5)))) {
+            stream.visitAll (trading_data -> { });
+            fail ("Expected an IOException");
+        } catch (IOException e) {
+            assertEquals (1, metrics.getParseFailures());
+        }
+        assertEquals (3001, metrics.getRecordsRead());
+    }
+    
+}
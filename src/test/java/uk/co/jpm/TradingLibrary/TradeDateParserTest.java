@@ -0,0 +1,99 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.GregorianCalendar;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks TradeDateParser against the SimpleDateFormat that it replaces.
+ * 
+ * @author smf
+ */
+public class TradeDateParserTest {
+    
+    // the formatter used to check results
+    private final SimpleDateFormat date_format;
+    
+    public TradeDateParserTest() {
+        date_format = new SimpleDateFormat ("dd-MMM-yyyy", Locale.ENGLISH);
+        date_format.setTimeZone(TimeZone.getTimeZone("GMT"));
+    }
+
+    /**
+     * Test of parseEpochDay method, of class TradeDateParser, with valid dates.
+     */
+    @Test
+    public void testParseValidDates() throws ParseException {
+        System.out.println("parseEpochDay (valid dates)");
+        
+        // every day from 2000 to 2030, parsed twice to check the cache
+        GregorianCalendar cal = new GregorianCalendar (TimeZone.getTimeZone("GMT"));
+        cal.clear ();
+        cal.set (2000, 0, 1);
+        while (cal.get (GregorianCalendar.YEAR) < 2030) {
+            String text = date_format.format (cal.getTime());
+            int expected = EpochDay.fromDate (cal.getTime());
+            assertEquals (text, expected, TradeDateParser.parseEpochDay (text));
+            assertEquals (text, expected, TradeDateParser.parseEpochDay (text));
+            cal.add (GregorianCalendar.DAY_OF_MONTH, 1);
+        }
+        
+        // the more unusual forms that SimpleDateFormat accepts
+        for (String text : new String [] { "2-jan-2016", "02-JAN-2016", "02-January-2016", "32-Jan-2016",
+                                           "00-Mar-2016", "02-Jan-2016 trailing text", "29-Feb-2017" })
+            assertEquals (text, EpochDay.fromDate (date_format.parse (text)), TradeDateParser.parseEpochDay (text));
+    }
+
+    /**
+     * Test of parseEpochDay method, of class TradeDateParser, with invalid dates.
+     */
+    @Test
+    public void testParseInvalidDates() {
+        System.out.println("parseEpochDay (invalid dates)");
+        
+        for (String text : new String [] { "", "02", "02-", "02-Jan", "02-Jan-", "02/Jan/2016", "-Jan-2016",
+                                           "02-Ja-2016", "02-Janu-2016", "02-Foo-2016", "2016-01-02", "x2-Jan-2016" }) {
+            assertEquals (text, TradeDateParser.INVALID_DATE, TradeDateParser.parseEpochDay (text));
+            boolean exception_found = false;
+            try {
+                date_format.parse (text);
+            } catch (ParseException e) {
+                exception_found = true;
+            }
+            assertTrue (text, exception_found);
+        }
+        assertEquals (TradeDateParser.INVALID_DATE, TradeDateParser.parseEpochDay (null));
+    }
+
+    /**
+     * Test of parseEpochDay method, of class TradeDateParser, from several threads.
+     */
+    @Test
+    public void testParseConcurrently() throws InterruptedException {
+        System.out.println("parseEpochDay (concurrent)");
+        
+        // a small set of dates parsed many times by each thread, so the cache is well used
+        AtomicInteger n_errors = new AtomicInteger ();
+        Thread threads [] = new Thread [4];
+        for (int count = 0; count < threads.length; count ++) {
+            threads [count] = new Thread (() -> {
+                for (int repeat = 0; repeat < 10000; repeat ++) {
+                    int day_of_month = repeat % 28 + 1;
+                    String text = String.format ("%02d-Feb-2016", day_of_month);
+                    if (TradeDateParser.parseEpochDay (text) != EpochDay.of (2016, 2, day_of_month))
+                        n_errors.incrementAndGet ();
+                }
+            });
+            threads [count].start ();
+        }
+        for (Thread thread : threads)
+            thread.join ();
+        assertEquals (0, n_errors.get());
+    }
+    
+}
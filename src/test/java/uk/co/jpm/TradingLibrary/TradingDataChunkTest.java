@@ -0,0 +1,60 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Writes a CSV file with numbered records and checks that however it is split
+ * every record is read exactly once.
+ * 
+ * @author smf
+ */
+public class TradingDataChunkTest {
+    
+    // number of data rows in the test file
+    private static final int N_RECORDS = 1000;
+
+    /**
+     * Test of split and visitAll methods, of class TradingDataChunk.
+     */
+    @Test
+    public void testSplit() throws IOException {
+        System.out.println("split");
+        
+        File csv_file = File.createTempFile ("TradingDataChunkTest", ".csv");
+        csv_file.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter (new FileWriter (csv_file))) {
+            writer.println ("Entity,Buy/Sell,AgreedFx,Currency,InstructionDate,SettlementDate,Units,Price per unit");
+            for (int count = 0; count < N_RECORDS; count ++)
+                writer.println ("entity" + count + ",B,0.5,SGP,01-Jan-2016,02-Jan-2016," + (count + 1) + ",100.25");
+        }
+        
+        try (FileChannel channel = FileChannel.open (csv_file.toPath(), StandardOpenOption.READ)) {
+            for (int n_chunks : new int [] {1, 2, 7, 64, 100000}) {
+                List<TradingDataChunk> chunks = TradingDataChunk.split (channel, n_chunks);
+                assertTrue (chunks.size() <= n_chunks);
+                assertEquals (0, chunks.get(0).getStart());
+                assertEquals (channel.size(), chunks.get(chunks.size() - 1).getEnd());
+                
+                List<TradingData> visited = new ArrayList<> ();
+                long n_records = 0;
+                for (TradingDataChunk chunk : chunks)
+                    n_records += chunk.visitAll (visited::add);
+                assertEquals (N_RECORDS, n_records);
+                for (int count = 0; count < N_RECORDS; count ++) {
+                    assertEquals ("entity" + count, visited.get(count).getEntityName());
+                    assertEquals (count + 1, visited.get(count).getNumberOfUnits());
+                }
+            }
+        }
+    }
+    
+}
@@ -0,0 +1,65 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.util.Date;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author smf
+ */
+public class TradingDataColumnsTest {
+    
+    // enough trades to make the store grow several times
+    private static final int N_TRADES = 5000;
+    
+    /**
+     * Test of add method and getters, of class TradingDataColumns, on the heap.
+     */
+    @Test
+    public void testAddHeap() {
+        System.out.println("add (heap)");
+        testAdd (new TradingDataColumns (false));
+    }
+
+    /**
+     * Test of add method and getters, of class TradingDataColumns, off the heap.
+     */
+    @Test
+    public void testAddDirect() {
+        System.out.println("add (direct)");
+        testAdd (new TradingDataColumns (true));
+    }
+    
+    /** Helper function to fill a store and check its contents
+     * @param columns the store to test */
+    private static void testAdd (TradingDataColumns columns) {
+        TradingData test_data [] = new TradingData [N_TRADES];
+        for (int count = 0; count < N_TRADES; count ++) {
+            Date date = EpochDay.toDate (EpochDay.of (2017, 1, 1) + count % 30);
+            test_data [count] = new TradingData ("entity" + (count % 100), count % 3 == 0 ? TradingData.TradeType.SELL : TradingData.TradeType.BUY,
+                                                 0.5 + count % 7, count % 2 == 0 ? "AED" : "SGP", date, date, count, 100.25 + count);
+            columns.visit (test_data [count]);
+        }
+        
+        assertEquals (N_TRADES, columns.size());
+        assertEquals (100, columns.getEntityNames().size());
+        assertEquals (2, columns.getCurrencyNames().size());
+        for (int count = 0; count < N_TRADES; count ++) {
+            TradingData expected = test_data [count];
+            TradingData actual = columns.getTradingData (count);
+            assertEquals (expected.getEntityName(), columns.getEntityName (count));
+            assertEquals (expected.getEntityName(), actual.getEntityName());
+            assertEquals (expected.getTradeType(), actual.getTradeType());
+            assertEquals (expected.getAgreedFX(), actual.getAgreedFX(), 0.0);
+            assertEquals (expected.getCurrecnyName(), actual.getCurrecnyName());
+            assertEquals (expected.getInstructionEpochDay(), actual.getInstructionEpochDay());
+            assertEquals (expected.getNominalSettlementEpochDay(), actual.getNominalSettlementEpochDay());
+            assertEquals (expected.getActualSettlementEpochDay(), columns.getActualSettlementEpochDay (count));
+            assertEquals (expected.getNumberOfUnits(), actual.getNumberOfUnits());
+            assertEquals (expected.getPricePerUnit(), actual.getPricePerUnit(), 0.0);
+            assertEquals (expected.calcPriceUSD(), columns.calcPriceUSD (count), 0.0);
+        }
+    }
+    
+}
@@ -0,0 +1,71 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the files found for a single file, a directory and glob patterns.
+ * 
+ * @author smf
+ */
+public class TradingDataFilesTest {
+
+    /** Helper function to create an empty file that is deleted when the tests end. */
+    private static File create (File directory, String name) throws IOException {
+        File file = new File (directory, name);
+        file.getParentFile().mkdirs();
+        file.createNewFile();
+        file.deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Test of find method, of class TradingDataFiles.
+     */
+    @Test
+    public void testFind() throws IOException {
+        System.out.println("find");
+        
+        File directory = Files.createTempDirectory ("TradingDataFilesTest").toFile();
+        directory.deleteOnExit();
+        File b = create (directory, "b.csv");
+        File a = create (directory, "a.CSV");
+        create (directory, "notes.txt");
+        File sub = new File (directory, "sub");
+        sub.deleteOnExit();
+        File c = create (directory, "sub/c.csv");
+        
+        assertEquals (Arrays.asList (b), TradingDataFiles.find (b.getPath()));
+        assertEquals (Arrays.asList (a, b), TradingDataFiles.find (directory.getPath()));
+        assertEquals (Arrays.asList (b), TradingDataFiles.find (directory.getPath() + File.separator + "*.csv"));
+        assertEquals (Arrays.asList (c), TradingDataFiles.find (directory.getPath() + File.separator + "*" + File.separator + "*.csv"));
+        List<File> tree = TradingDataFiles.find (directory.getPath() + File.separator + "**.csv");
+        assertEquals (Arrays.asList (b, c), tree);
+        
+        try {
+            TradingDataFiles.find (directory.getPath() + File.separator + "*.json");
+            fail ("Found files that don't match");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Test of isGlob method, of class TradingDataFiles.
+     */
+    @Test
+    public void testIsGlob() {
+        System.out.println("isGlob");
+        
+        assertTrue (TradingDataFiles.isGlob ("trades/*.csv"));
+        assertTrue (TradingDataFiles.isGlob ("trades/desk-?.csv"));
+        assertTrue (TradingDataFiles.isGlob ("trades/{a,b}.csv"));
+        assertFalse (TradingDataFiles.isGlob ("trades/desk-1.csv"));
+    }
+    
+}
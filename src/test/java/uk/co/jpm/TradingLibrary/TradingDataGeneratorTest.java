@@ -0,0 +1,124 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author smf
+ */
+public class TradingDataGeneratorTest {
+    
+    /**
+     * Test of generate method, of class TradingDataGenerator - the data can be read
+     * by TradingDataList and the same seed gives the same data.
+     */
+    @Test
+    public void testGenerate() throws IOException {
+        System.out.println("generate");
+        
+        TradingDataGenerator generator = new TradingDataGenerator ();
+        generator.setSeed (42);
+        String csv = generate (generator, 2000);
+        assertTrue (csv.startsWith (TradingDataGenerator.HEADER));
+        TradingDataList trading_data_list = new TradingDataList (new StringReader (csv));
+        assertEquals (2000, trading_data_list.size());
+        for (TradingData td_val : trading_data_list) {
+            assertTrue (td_val.getAgreedFX() > 0.0 && td_val.getAgreedFX() <= 2.0);
+            assertTrue (td_val.getNumberOfUnits() >= 1 && td_val.getNumberOfUnits() <= 10000);
+            assertTrue (td_val.getPricePerUnit() > 0.0 && td_val.getPricePerUnit() <= 10000.0);
+            assertTrue (td_val.getInstructionEpochDay() <= td_val.getNominalSettlementEpochDay());
+            assertTrue (td_val.getNominalSettlementEpochDay() >= EpochDay.of (2016, 1, 1));
+            assertTrue (td_val.getNominalSettlementEpochDay() <= EpochDay.of (2016, 12, 31));
+        }
+        
+        assertEquals (csv, generate (generator, 2000));
+        generator.setSeed (43);
+        assertNotEquals (csv, generate (generator, 2000));
+    }
+    
+    /**
+     * Test of setWeekendShare and setCurrencyWeights methods, of class TradingDataGenerator.
+     */
+    @Test
+    public void testWeekendShare() throws IOException {
+        System.out.println("setWeekendShare");
+        
+        TradingDataGenerator generator = new TradingDataGenerator ();
+        Map<String, Double> currency_weights = new LinkedHashMap<> ();
+        currency_weights.put ("GBP", 1.0);
+        currency_weights.put ("AED", 1.0);
+        currency_weights.put ("EUR", 0.0);
+        generator.setCurrencyWeights (currency_weights);
+        
+        // no weekend dates, then only weekend dates, for each currency's weekend
+        for (double weekend_share : new double [] { 0.0, 1.0 }) {
+            generator.setWeekendShare (weekend_share);
+            for (TradingData td_val : new TradingDataList (new StringReader (generate (generator, 1000)))) {
+                assertNotEquals ("EUR", td_val.getCurrecnyName());
+                int convention = BusinessRules.findWeekendConvention (td_val.getCurrecnyName());
+                boolean working_day = BusinessRules.isWorkingDay (convention, EpochDay.dayOfWeek (td_val.getNominalSettlementEpochDay()));
+                assertEquals (weekend_share == 0.0, working_day);
+            }
+        }
+    }
+    
+    /**
+     * Test of setCurrencyWeights method with bad currency codes, of class TradingDataGenerator.
+     */
+    @Test
+    public void testBadCurrencyCodes() {
+        System.out.println("setCurrencyWeights (bad codes)");
+        
+        TradingDataGenerator generator = new TradingDataGenerator ();
+        char long_code [] = new char [2000];
+        Arrays.fill (long_code, 'X');
+        for (String code : new String [] { "", "GB", "GBPX", "G1P", "G,P", new String (long_code) }) {
+            try {
+                generator.setCurrencyWeights (Collections.singletonMap (code, 1.0));
+                fail ("Bad currency code accepted: " + code);
+            } catch (IllegalArgumentException e) {
+            }
+        }
+        generator.setCurrencyWeights (Collections.singletonMap ("sgp", 1.0));
+    }
+    
+    /**
+     * Test of setZipfExponent method, of class TradingDataGenerator.
+     */
+    @Test
+    public void testZipfExponent() throws IOException {
+        System.out.println("setZipfExponent");
+        
+        TradingDataGenerator generator = new TradingDataGenerator ();
+        generator.setNEntities (10);
+        generator.setZipfExponent (1.0);
+        int counts [] = new int [10];
+        for (TradingData td_val : new TradingDataList (new StringReader (generate (generator, 20000))))
+            counts [Integer.parseInt (td_val.getEntityName().substring ("entity".length())) - 1] ++;
+        
+        // with Zipf's law the first entity makes about twice as many trades as the
+        // second and ten times as many as the tenth
+        assertEquals (2.0, (double) counts [0] / counts [1], 0.2);
+        assertEquals (10.0, (double) counts [0] / counts [9], 1.5);
+        assertEquals (20000, Arrays.stream (counts).sum());
+    }
+    
+    /** Helper function to generate data as a string.
+     * @param generator the generator
+     * @param n_records the number of records
+     * @return the CSV data */
+    private static String generate (TradingDataGenerator generator, int n_records) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream ();
+        generator.generate (out, n_records);
+        return new String (out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,119 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the status given for good records and for each kind of bad record.
+ * 
+ * @author smf
+ */
+public class TradingDataParserTest {
+    
+    /** Helper function to decode a line of CSV.
+     * @param line the line
+     * @return the record */
+    private static CSVRecord record (String line) throws IOException {
+        return CSVFormat.RFC4180.parse (new StringReader (line)).getRecords().get (0);
+    }
+    
+    /**
+     * Test of parse and create methods, of class TradingDataParser.
+     */
+    @Test
+    public void testParse() throws IOException {
+        System.out.println("parse");
+        
+        TradingDataParser parser = new TradingDataParser ();
+        assertEquals (TradingDataParser.Status.OK, parser.parse (record ("foo,S,0.5,SGP,01-Jan-2016,02-Jan-2016,200,100.25")));
+        TradingData trading_data = parser.create ();
+        assertEquals ("foo", trading_data.getEntityName());
+        assertEquals (TradingData.TradeType.SELL, trading_data.getTradeType());
+        assertEquals (200, trading_data.getNumberOfUnits());
+        assertEquals (0.50 * 200.00 * 100.25, trading_data.calcPriceUSD(), BusinessRulesTest.TEST_USD_TOLERANCE);
+        
+        assertStatus (parser, TradingDataParser.Status.MISSING_FIELDS, "foo,B,0.5,SGP,01-Jan-2016,02-Jan-2016,200");
+        assertStatus (parser, TradingDataParser.Status.BAD_TRADE_TYPE, "foo,X,0.5,SGP,01-Jan-2016,02-Jan-2016,200,100.25");
+        assertStatus (parser, TradingDataParser.Status.BAD_AGREED_FX, "foo,B,NaN,SGP,01-Jan-2016,02-Jan-2016,200,100.25");
+        assertStatus (parser, TradingDataParser.Status.BAD_INSTRUCTION_DATE, "foo,B,0.5,SGP,01-Foo-2016,02-Jan-2016,200,100.25");
+        assertStatus (parser, TradingDataParser.Status.BAD_SETTLEMENT_DATE, "foo,B,0.5,SGP,01-Jan-2016,2016-01-02,200,100.25");
+        assertStatus (parser, TradingDataParser.Status.BAD_UNITS, "foo,B,0.5,SGP,01-Jan-2016,02-Jan-2016,2.5,100.25");
+        assertStatus (parser, TradingDataParser.Status.BAD_UNITS, "foo,B,0.5,SGP,01-Jan-2016,02-Jan-2016,3000000000,100.25");
+        assertStatus (parser, TradingDataParser.Status.BAD_PRICE, "foo,B,0.5,SGP,01-Jan-2016,02-Jan-2016,200,");
+        assertEquals ("Bad or mising Settlement Date: 2016-01-02", messageFor (parser, "foo,B,0.5,SGP,01-Jan-2016,2016-01-02,200,100.25"));
+        assertEquals ("Bad or missing Price per unit", messageFor (parser, "foo,B,0.5,SGP,01-Jan-2016,02-Jan-2016,200,"));
+        
+        // empty entity names and currencies are accepted, from CSV records and tokens
+        for (String line : new String [] { ",B,0.5,SGP,01-Jan-2016,02-Jan-2016,200,100.25", "foo,B,0.5,,01-Jan-2016,02-Jan-2016,200,100.25" }) {
+            assertStatus (parser, TradingDataParser.Status.OK, line);
+            TradingDataTokenizer tokenizer = new TradingDataTokenizer (ByteBuffer.wrap (line.getBytes (StandardCharsets.US_ASCII)));
+            assertTrue (tokenizer.next ());
+            assertEquals (line, TradingDataParser.Status.OK, parser.parse (tokenizer));
+            assertEquals (line.substring (0, line.indexOf (',')), parser.create().getEntityName());
+        }
+        assertEquals ("", parser.create().getCurrecnyName());
+        
+        parser.parse (record ("foo,X,0.5,SGP,01-Jan-2016,02-Jan-2016,200,100.25"));
+        try {
+            parser.create ();
+            fail ("A trade was created from a bad record");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        
+        try {
+            new TradingData (record ("foo,X,0.5,SGP,01-Jan-2016,02-Jan-2016,200,100.25"));
+            fail ("A trade was created from a bad record");
+        } catch (IOException e) {
+            assertEquals ("Bad buy/sell code: X", e.getMessage());
+        }
+    }
+    
+    /** Helper function to check the status of a bad record. */
+    private static void assertStatus (TradingDataParser parser, TradingDataParser.Status expected, String line) throws IOException {
+        assertEquals (line, expected, parser.parse (record (line)));
+        assertEquals (expected, parser.getStatus());
+    }
+    
+    /** Helper function to get the message for a bad record. */
+    private static String messageFor (TradingDataParser parser, String line) throws IOException {
+        parser.parse (record (line));
+        return parser.getMessage();
+    }
+
+    /**
+     * Test of parseInt method, of class TradingDataParser.
+     */
+    @Test
+    public void testParseInt() {
+        System.out.println("parseInt");
+        
+        assertEquals (0, TradingDataParser.parseInt ("0"));
+        assertEquals (-42, TradingDataParser.parseInt ("-42"));
+        assertEquals (42, TradingDataParser.parseInt ("+42"));
+        assertEquals (Integer.MAX_VALUE, TradingDataParser.parseInt ("2147483647"));
+        assertEquals (Integer.MIN_VALUE, TradingDataParser.parseInt ("-2147483648"));
+        for (String text : new String [] {null, "", "-", "2147483648", "-2147483649", "1 ", "1e3", "99999999999999999999"})
+            assertEquals (text, Long.MIN_VALUE, TradingDataParser.parseInt (text));
+    }
+
+    /**
+     * Test of isDecimal method, of class TradingDataParser.
+     */
+    @Test
+    public void testIsDecimal() {
+        System.out.println("isDecimal");
+        
+        for (String text : new String [] {"0", "0.5", ".5", "5.", "-1.25", "+3", "1e3", "2.5E-2", " 7 "})
+            assertTrue (text, TradingDataParser.isDecimal (text));
+        for (String text : new String [] {null, "", ".", "-", "e3", "1e", "1.2.3", "NaN", "Infinity", "0x1p3", "1d", "1,000"})
+            assertFalse (text, TradingDataParser.isDecimal (text));
+    }
+    
+}
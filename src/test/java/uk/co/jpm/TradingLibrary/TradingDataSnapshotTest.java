@@ -0,0 +1,98 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Date;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author smf
+ */
+public class TradingDataSnapshotTest {
+    
+    /**
+     * Test of write method and getters, of class TradingDataSnapshot.
+     */
+    @Test
+    public void testWriteAndRead() throws IOException {
+        System.out.println("write / read");
+        
+        TradingDataColumns columns = new TradingDataColumns ();
+        for (int count = 0; count < 5000; count ++) {
+            Date date = EpochDay.toDate (EpochDay.of (2017, 1, 1) + count % 30);
+            columns.add (new TradingData ("entityé" + (count % 100), count % 3 == 0 ? TradingData.TradeType.SELL : TradingData.TradeType.BUY,
+                                          0.5 + count % 7, count % 2 == 0 ? "AED" : "SGP", date, date, count, 100.25 + count));
+        }
+        
+        File snapshot_file = File.createTempFile ("TradingDataSnapshotTest", ".dtrs");
+        snapshot_file.deleteOnExit();
+        TradingDataSnapshot.write (columns, snapshot_file);
+        assertTrue (TradingDataSnapshot.isSnapshot (snapshot_file));
+        
+        try (TradingDataSnapshot snapshot = new TradingDataSnapshot (snapshot_file)) {
+            assertEquals (columns.size(), snapshot.size());
+            for (int row = 0; row < columns.size(); row ++) {
+                assertEquals (columns.getEntityName (row), snapshot.getEntityName (row));
+                assertEquals (columns.getTradeType (row), snapshot.getTradeType (row));
+                assertEquals (columns.getAgreedFX (row), snapshot.getAgreedFX (row), 0.0);
+                assertEquals (columns.getCurrencyName (row), snapshot.getCurrencyName (row));
+                assertEquals (columns.getInstructionEpochDay (row), snapshot.getInstructionEpochDay (row));
+                assertEquals (columns.getNominalSettlementEpochDay (row), snapshot.getNominalSettlementEpochDay (row));
+                assertEquals (columns.getNumberOfUnits (row), snapshot.getNumberOfUnits (row));
+                assertEquals (columns.getPricePerUnit (row), snapshot.getPricePerUnit (row), 0.0);
+                assertEquals (columns.getActualSettlementEpochDay (row), snapshot.getActualSettlementEpochDay (row));
+                assertEquals (columns.calcPriceUSD (row), snapshot.calcPriceUSD (row), 0.0);
+            }
+        }
+    }
+
+    /**
+     * Test of getActualSettlementEpochDay method, of class TradingDataSnapshot, with
+     * holiday calendars set after the snapshot was written.
+     */
+    @Test
+    public void testActualSettlementWithCalendars() throws IOException {
+        System.out.println("getActualSettlementEpochDay (holidays)");
+        
+        TradingDataColumns columns = new TradingDataColumns ();
+        Date date = EpochDay.toDate (EpochDay.of (2017, 12, 25));
+        columns.add (new TradingData ("foo", TradingData.TradeType.BUY, 0.5, "GBP", date, date, 1, 100.25));
+        File snapshot_file = File.createTempFile ("TradingDataSnapshotTest", ".dtrs");
+        snapshot_file.deleteOnExit();
+        TradingDataSnapshot.write (columns, snapshot_file);
+        
+        HolidayCalendars calendars = new HolidayCalendars ();
+        calendars.put ("GBP", new HolidayCalendar (BusinessRules.WEEKEND_SAT_SUN, new int [] { EpochDay.of (2017, 12, 25) }, 2017, 2017));
+        BusinessRules.setHolidayCalendars (calendars);
+        try (TradingDataSnapshot snapshot = new TradingDataSnapshot (snapshot_file)) {
+            assertEquals (EpochDay.of (2017, 12, 26), snapshot.getActualSettlementEpochDay (0));
+        } finally {
+            BusinessRules.setHolidayCalendars (null);
+        }
+    }
+
+    /**
+     * Test of isSnapshot method, of class TradingDataSnapshot, with a CSV file.
+     */
+    @Test
+    public void testIsSnapshot() throws IOException {
+        System.out.println("isSnapshot");
+        
+        File csv_file = File.createTempFile ("TradingDataSnapshotTest", ".csv");
+        csv_file.deleteOnExit();
+        Files.write (csv_file.toPath(), "Entity,Buy/Sell,AgreedFx,Currency,InstructionDate,SettlementDate,Units,Price per unit\n".getBytes());
+        assertFalse (TradingDataSnapshot.isSnapshot (csv_file));
+        
+        boolean exception_found = false;
+        try {
+            new TradingDataSnapshot (csv_file).close ();
+        } catch (IOException e) {
+            exception_found = true;
+        }
+        assertTrue (exception_found);
+    }
+    
+}
@@ -0,0 +1,137 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Uses the same test data as {@link TradingDataListTest} to check that records
+ * are passed to the visitor in input order.
+ * 
+ * @author smf
+ */
+public class TradingDataStreamTest {
+    
+    /**
+     * Test of visitAll method, of class TradingDataStream.
+     */
+    @Test
+    public void testVisitAll() throws IOException {
+        System.out.println("visitAll");
+        
+        List<TradingData> visited = new ArrayList<> ();
+        Reader reader = new InputStreamReader (this.getClass().getResourceAsStream("testTradingData.csv"));
+        long n_records;
+        try (TradingDataStream stream = new TradingDataStream (reader)) {
+            n_records = stream.visitAll (visited::add);
+        }
+        
+        assertEquals (2, n_records);
+        assertEquals (2, visited.size());
+        assertEquals ("foo", visited.get(0).getEntityName());
+        assertEquals (0.50 * 200.00 * 100.25, visited.get(0).calcPriceUSD(), BusinessRulesTest.TEST_USD_TOLERANCE);
+        assertEquals ("bar", visited.get(1).getEntityName());
+        assertEquals (0.22 * 450.00 * 150.50, visited.get(1).calcPriceUSD(), BusinessRulesTest.TEST_USD_TOLERANCE);
+    }
+    
+    private static final String LENIENT_CSV =
+            "Entity,Buy/Sell,AgreedFx,Currency,InstructionDate,SettlementDate,Units,Price per unit\n" +
+            "foo,B,0.5,SGP,01-Jan-2016,02-Jan-2016,200,100.25\n" +
+            "bad,X,0.5,SGP,01-Jan-2016,02-Jan-2016,200,100.25\n" +
+            "\"multi\nline\",S,0.5,SGP,01-Jan-2016,02-Jan-2016,200,100.25\n" +
+            "short,B,0.5\n" +
+            "bar,S,0.22,AED,05-Jan-2016,07-Jan-2016,450,150.5";
+    
+    /**
+     * Test of visitAll method in lenient mode, of class TradingDataStream.
+     */
+    @Test
+    public void testVisitAllLenient() throws IOException {
+        System.out.println("visitAll lenient");
+        
+        String csv = LENIENT_CSV;
+        List<TradingData> visited = new ArrayList<> ();
+        StringWriter quarantined = new StringWriter ();
+        QuarantineFile quarantine = new QuarantineFile (quarantined, false);
+        long n_records;
+        try (TradingDataStream stream = new TradingDataStream (new StringReader (csv))) {
+            n_records = stream.visitAll (visited::add, quarantine);
+            assertEquals (6, stream.getNLines());
+        }
+        quarantine.close ();
+        
+        assertEquals (3, n_records);
+        assertEquals ("multi\nline", visited.get(1).getEntityName());
+        assertEquals ("bar", visited.get(2).getEntityName());
+        assertEquals (2, quarantine.getNRecords());
+        assertEquals ("Line,Reason,Entity,Buy/Sell,AgreedFx,Currency,InstructionDate,SettlementDate,Units,Price per unit\r\n" +
+                      "3,Bad buy/sell code: X,bad,X,0.5,SGP,01-Jan-2016,02-Jan-2016,200,100.25\r\n" +
+                      "6,Missing fields,short,B,0.5\r\n", quarantined.toString());
+        
+        // the quarantine file can be read with its header
+        try (CSVParser parser = CSVFormat.RFC4180.withFirstRecordAsHeader().parse (new StringReader (quarantined.toString()))) {
+            CSVRecord record = parser.iterator().next();
+            assertEquals ("3", record.get ("Line"));
+            assertEquals ("bad", record.get ("Entity"));
+            assertEquals ("100.25", record.get ("Price per unit"));
+        }
+        
+        // without a reject handler the first bad record stops the reading
+        try (TradingDataStream stream = new TradingDataStream (new StringReader (csv))) {
+            stream.visitAll (trading_data -> { });
+            fail ("A bad record was accepted");
+        } catch (IOException e) {
+            assertEquals ("Bad buy/sell code: X", e.getMessage());
+        }
+    }
+    
+    /**
+     * Test of visitAll method reading bytes in lenient mode, of class TradingDataStream.
+     * The results should be the same as with commons-csv.
+     */
+    @Test
+    public void testVisitAllBytes() throws IOException {
+        System.out.println("visitAll bytes");
+        
+        ByteBuffer buffer = ByteBuffer.wrap (LENIENT_CSV.getBytes (StandardCharsets.US_ASCII));
+        List<TradingData> visited = new ArrayList<> ();
+        StringWriter quarantined = new StringWriter ();
+        QuarantineFile quarantine = new QuarantineFile (quarantined, false);
+        long n_records;
+        try (TradingDataStream stream = new TradingDataStream (buffer, true)) {
+            n_records = stream.visitAll (visited::add, quarantine);
+            assertEquals (6, stream.getNLines());
+        }
+        quarantine.close ();
+        
+        assertEquals (3, n_records);
+        assertEquals ("foo", visited.get(0).getEntityName());
+        assertEquals (0.5 * 200 * 100.25, visited.get(0).calcPriceUSD(), BusinessRulesTest.TEST_USD_TOLERANCE);
+        assertEquals ("multi\nline", visited.get(1).getEntityName());
+        assertEquals ("bar", visited.get(2).getEntityName());
+        assertEquals (0.22 * 450 * 150.5, visited.get(2).calcPriceUSD(), BusinessRulesTest.TEST_USD_TOLERANCE);
+        assertEquals ("Line,Reason,Entity,Buy/Sell,AgreedFx,Currency,InstructionDate,SettlementDate,Units,Price per unit\r\n" +
+                      "3,Bad buy/sell code: X,bad,X,0.5,SGP,01-Jan-2016,02-Jan-2016,200,100.25\r\n" +
+                      "6,Missing fields,short,B,0.5\r\n", quarantined.toString());
+        
+        buffer.rewind ();
+        try (TradingDataStream stream = new TradingDataStream (buffer, true)) {
+            stream.visitAll (trading_data -> { });
+            fail ("A bad record was accepted");
+        } catch (IOException e) {
+            assertEquals ("Bad buy/sell code: X", e.getMessage());
+        }
+    }
+    
+}
@@ -0,0 +1,170 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the tokenizer splits records in the same way as commons-csv, with
+ * buffers small enough that records are split across reads.
+ *
+ * @author smf
+ */
+public class TradingDataTokenizerTest {
+
+    // awkward CSV - quotes, escaped quotes, line breaks in fields, all kinds of
+    // line endings, empty lines and fields, and no line break at the end
+    private static final String AWKWARD_CSV =
+            "Entity,Buy/Sell\n" +
+            "foo,B,0.5\r\n" +
+            "\"quoted, with comma\",\"say \"\"hi\"\"\"\r" +
+            "\n" +
+            "\"multi\r\nline\nfield\",S\n" +
+            ",,\n" +
+            "trailing,comma,\n" +
+            "\"\",\"\"\"\"\r\r" +
+            "last";
+
+    /**
+     * Test of next method, of class TradingDataTokenizer.
+     */
+    @Test
+    public void testNext() throws IOException {
+        System.out.println("next");
+
+        List<List<String>> expected = new ArrayList<> ();
+        List<Long> expected_lines = new ArrayList<> ();
+        try (CSVParser parser = new CSVParser (new StringReader (AWKWARD_CSV), CSVFormat.RFC4180)) {
+            for (CSVRecord record : parser) {
+                List<String> fields = new ArrayList<> ();
+                record.forEach (fields::add);
+                expected.add (fields);
+                expected_lines.add (parser.getCurrentLineNumber());
+            }
+        }
+
+        // the whole input in a buffer, and read through buffers of several sizes
+        byte bytes [] = AWKWARD_CSV.getBytes (StandardCharsets.US_ASCII);
+        checkRecords (expected, expected_lines, new TradingDataTokenizer (ByteBuffer.wrap (bytes)));
+        for (int buffer_size : new int [] { 1, 2, 3, 8, 64 })
+            checkRecords (expected, expected_lines, new TradingDataTokenizer (Channels.newChannel (new ByteArrayInputStream (bytes)), buffer_size));
+    }
+
+    private static void checkRecords (List<List<String>> expected, List<Long> expected_lines, TradingDataTokenizer tokenizer) throws IOException {
+        int n_records = 0;
+        while (tokenizer.next ()) {
+            assertEquals (expected.get (n_records), tokenizer.getFields());
+            assertEquals ((long) expected_lines.get (n_records), tokenizer.getNLines());
+            n_records ++;
+            assertEquals (n_records, tokenizer.getNRecords());
+        }
+        assertEquals (expected.size(), n_records);
+        assertEquals (AWKWARD_CSV.length(), tokenizer.getNBytes());
+        assertFalse (tokenizer.next ());
+    }
+
+    /**
+     * Test of next method with badly quoted fields, of class TradingDataTokenizer.
+     */
+    @Test
+    public void testNextBadQuotes() throws IOException {
+        System.out.println("next bad quotes");
+
+        // the same errors and line numbers as commons-csv, including after a quoted
+        // field with line breaks in the same record
+        for (String csv : new String [] { "a,b\n\"open,c\n", "a,b\n\"closed\"x,c\n",
+                                          "a,b\n\"two\nlines\",\"open,c\n", "a,b\n\"two\r\nlines\",\"closed\"x,c\n" }) {
+            String expected = null;
+            try (CSVParser parser = new CSVParser (new StringReader (csv), CSVFormat.RFC4180)) {
+                parser.getRecords ();
+            } catch (IOException e) {
+                expected = e.getMessage();
+            }
+            assertNotNull (expected);
+
+            TradingDataTokenizer tokenizer = new TradingDataTokenizer (ByteBuffer.wrap (csv.getBytes (StandardCharsets.US_ASCII)));
+            assertTrue (tokenizer.next ());
+            try {
+                tokenizer.next ();
+                fail ("Bad quotes accepted: " + csv);
+            } catch (IOException e) {
+                assertEquals (expected, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Test of the field parsing methods, of class TradingDataTokenizer.
+     */
+    @Test
+    public void testParseFields() throws IOException {
+        System.out.println("parseFields");
+
+        TradingDataTokenizer tokenizer = tokenize ("foo,foo,USD,05-Jan-2016,05-Jan-2016,-2147483648,2147483648,+12,1x,,100.25,-0.0000035,1e3");
+        assertEquals (13, tokenizer.getNFields());
+        assertEquals ("foo", tokenizer.getEntityName (0));
+        assertSame (tokenizer.getEntityName (0), tokenizer.getEntityName (1));
+        assertEquals ("USD", tokenizer.getCurrencyName (2));
+        assertEquals (EpochDay.of (2016, 1, 5), tokenizer.parseEpochDay (3));
+        assertEquals (tokenizer.parseEpochDay (3), tokenizer.parseEpochDay (4));
+        assertEquals (Integer.MIN_VALUE, tokenizer.parseInt (5));
+        assertEquals (TradingDataTokenizer.INVALID_INT, tokenizer.parseInt (6));
+        assertEquals (12, tokenizer.parseInt (7));
+        assertEquals (TradingDataTokenizer.INVALID_INT, tokenizer.parseInt (8));
+        assertEquals (TradingDataTokenizer.INVALID_INT, tokenizer.parseInt (9));
+        assertEquals (100.25, tokenizer.parseDecimal (10), 0.0);
+        assertEquals (-0.0000035, tokenizer.parseDecimal (11), 0.0);
+        assertEquals (1000.0, tokenizer.parseDecimal (12), 0.0);
+
+        tokenizer = tokenize ("01-Foo-2016,,.,-,1.2.3,1e,0x10,NaN,1 2");
+        assertEquals (TradeDateParser.INVALID_DATE, tokenizer.parseEpochDay (0));
+        for (int field = 1; field < tokenizer.getNFields(); field ++)
+            assertTrue (tokenizer.getString (field), Double.isNaN (tokenizer.parseDecimal (field)));
+    }
+
+    /**
+     * Test of parseDecimal method, of class TradingDataTokenizer.
+     */
+    @Test
+    public void testParseDecimal() throws IOException {
+        System.out.println("parseDecimal");
+
+        // the same doubles as Double.parseDouble, on both the fast and slow paths
+        SplittableRandom random = new SplittableRandom (1);
+        StringBuilder csv = new StringBuilder ();
+        for (int count = 0; count < 10000; count ++) {
+            long digits = random.nextLong (1L, 1L << random.nextInt (1, 63));
+            String number = Long.toString (digits);
+            int point = random.nextInt (number.length() + 1);
+            number = number.substring (0, point) + "." + number.substring (point);
+            if (random.nextInt (4) == 0) number = "-" + number;
+            if (random.nextInt (4) == 0) number += "e" + random.nextInt (-30, 30);
+            csv.append (number).append (count % 10 == 9 ? "\n" : ",");
+        }
+        TradingDataTokenizer tokenizer = new TradingDataTokenizer (ByteBuffer.wrap (csv.toString().getBytes (StandardCharsets.US_ASCII)));
+        while (tokenizer.next ()) {
+            for (int field = 0; field < tokenizer.getNFields(); field ++) {
+                String number = tokenizer.getString (field);
+                assertEquals (number, Double.parseDouble (number), tokenizer.parseDecimal (field), 0.0);
+            }
+        }
+    }
+
+    private static TradingDataTokenizer tokenize (String record) throws IOException {
+        TradingDataTokenizer tokenizer = new TradingDataTokenizer (ByteBuffer.wrap (record.getBytes (StandardCharsets.US_ASCII)));
+        assertTrue (tokenizer.next ());
+        return tokenizer;
+    }
+
+}
@@ -0,0 +1,96 @@
+package uk.co.jpm.TradingLibrary;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author smf
+ */
+public class TradingDataViewTest {
+
+    private static final String TEST_CSV =
+            "Entity,Buy/Sell,AgreedFx,Currency,InstructionDate,SettlementDate,Units,Price per unit\n" +
+            "foo,B,0.50,SGP,01-Jan-2016,02-Jan-2016,200,100.25\n" +
+            "bar,s,0.22,AED,05-Jan-2016,07-Jan-2016,450,150.5\n" +
+            "foo,S,1.5,GBP,not a date,08-Jan-2016,10,2.5\n" +
+            "baz,B,0.5,USD,08-Jan-2016,08-Jan-2016,ten,2.5\n";
+
+    /**
+     * Test of next method and the getters, of class TradingDataView.
+     */
+    @Test
+    public void testNext() throws IOException {
+        System.out.println("next");
+
+        // the same values as the records loaded in full
+        TradingDataList list = new TradingDataList (new StringReader (TEST_CSV), new RejectedRecords ());
+        TradingDataView view = new TradingDataView (ByteBuffer.wrap (TEST_CSV.getBytes (StandardCharsets.US_ASCII)), true);
+        for (TradingData trading_data : list) {
+            assertTrue (view.next ());
+            assertEquals (trading_data.getEntityName(), view.getEntityName());
+            assertEquals (trading_data.getTradeType(), view.getTradeType());
+            assertEquals (trading_data.getAgreedFX(), view.getAgreedFX(), 0.0);
+            assertEquals (trading_data.getCurrencyId(), view.getCurrencyId());
+            assertEquals (trading_data.getInstructionEpochDay(), view.getInstructionEpochDay());
+            assertEquals (trading_data.getNominalSettlementEpochDay(), view.getNominalSettlementEpochDay());
+            assertEquals (trading_data.getActualSettlementEpochDay(), view.getActualSettlementEpochDay());
+            assertEquals (trading_data.getNumberOfUnits(), view.getNumberOfUnits());
+            assertEquals (trading_data.calcPriceUSD(), view.calcPriceUSD(), 0.0);
+            assertEquals (trading_data.calcPriceUSDFixed(), view.calcPriceUSDFixed());
+            assertEquals (trading_data.getEntityName(), view.toTradingData().getEntityName());
+        }
+
+        // a bad field is only found if it is read
+        assertTrue (view.next ());
+        assertEquals ("foo", view.getEntityName());
+        assertEquals (1.5 * 10 * 2.5, view.calcPriceUSD(), 0.0);
+        try {
+            view.getInstructionEpochDay ();
+            fail ("A bad date was decoded");
+        } catch (UncheckedIOException e) {
+            assertEquals ("Bad or mising Instruction Date: not a date", e.getCause().getMessage());
+        }
+        try {
+            view.toTradingData ();
+            fail ("A bad record was copied");
+        } catch (IOException e) {
+            assertEquals ("Bad or mising Instruction Date: not a date", e.getMessage());
+        }
+
+        assertTrue (view.next ());
+        assertEquals (TradingData.TradeType.BUY, view.getTradeType());
+        try {
+            view.calcPriceUSD ();
+            fail ("Bad units were decoded");
+        } catch (UncheckedIOException e) {
+            assertEquals ("Bad or missing Units: ten", e.getCause().getMessage());
+        }
+
+        assertFalse (view.next ());
+        assertEquals (4, view.getNRecords());
+        assertEquals (TEST_CSV.length(), view.getNBytes());
+    }
+
+    /**
+     * Test of next method with too few fields, of class TradingDataView.
+     */
+    @Test
+    public void testNextMissingFields() throws IOException {
+        System.out.println("next missing fields");
+
+        TradingDataView view = new TradingDataView (ByteBuffer.wrap ("foo,B,0.5\n".getBytes (StandardCharsets.US_ASCII)), false);
+        try {
+            view.next ();
+            fail ("A short record was accepted");
+        } catch (IOException e) {
+            assertEquals ("Missing fields", e.getMessage());
+        }
+    }
+
+}